@@ -251,6 +251,7 @@ project(":core:server") {
     dependencies {
         api(project(":core:common"))
         api("io.aeron", "aeron-client", Versions.aeron)
+        implementation("org.hdrhistogram", "HdrHistogram", Versions.hdrHistogram)
     }
 
 }
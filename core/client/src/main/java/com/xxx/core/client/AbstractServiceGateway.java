@@ -2,6 +2,9 @@ package com.xxx.core.client;
 
 import com.xxx.core.client.pool.FixSizeObjectPool;
 import com.xxx.core.client.pool.ObjectPool;
+import com.xxx.core.protocol.Configuration;
+import com.xxx.core.protocol.HeartbeatMessage;
+import com.xxx.core.protocol.Lanes;
 import com.xxx.core.protocol.Message;
 import io.aeron.Aeron;
 import io.aeron.FragmentAssembler;
@@ -33,6 +36,18 @@ import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.TRAILER_LENG
  * 2. Initiate and set up connection to server (setup of Aeron publication and subscription)
  * 3. (NOT FULLY IMPLEMENTED) Handle broken connection (reconnect)
  *
+ * Service can be partitioned to several server shards, each one listens its own channel and stream.
+ * Gateway connects to all shards, responses of all shards are received by the single client subscription.
+ * Requests are routed to a shard by the service client, see {@link BaseServiceClient#makeCall(Message, int)}.
+ *
+ * Shard can take requests on several lanes (see {@link Lanes}). If the gateway uses more than one lane
+ * (see {@link #lanesNumber()}), it has a publication per lane of each shard and routes each request
+ * to the lane of its type automatically, see {@link #lane(int)}. All lanes of the shard share the connection ID.
+ * Lanes are different streams, so order of requests is kept only within a lane.
+ *
+ * Read thread of the gateway sends heartbeat to the control lane of each shard every
+ * {@link Configuration#HEARTBEAT_INTERVAL} ms, server closes connections without heartbeats.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public abstract class AbstractServiceGateway<C extends BaseServiceClient> implements AutoCloseable {
@@ -42,10 +57,12 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
     private final Lock lock;
 
     private final Aeron aeron;
+    private final NanoClock nanoClock;
     private final IdleStrategy readCycleIdleStrategy;
+    private final HeartbeatMessage heartbeatMessage = new HeartbeatMessage();
 
-    private final String serverChannel;
-    private final int serverStreamId;
+    private final String[] serverChannels;
+    private final int[] serverStreamIds;
     private final String clientChannel;
     private final int clientStreamId;
 
@@ -53,8 +70,8 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
     private final ObjectPool<C> clients;
 
     // should be volatile since it can be updated by one thread during connect and
-    // read by multiple clients threads
-    private volatile ServerPublication registeredPublication;
+    // read by multiple clients threads, publication per lane of each shard
+    private volatile ServerPublication[][] registeredPublications;
 
     private ReadCycleTask readCycleTask;
     private final ExecutorService executorService;
@@ -72,11 +89,35 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
         Supplier<IdleStrategy> clientIdleStrategyFactory,
         ExecutorService executorService) {
 
+        this(lock, aeron, nanoClock, readCycleIdleStrategy,
+            new String[] {serverChannel}, new int[] {serverStreamId},
+            clientChannel, clientStreamId, maxClients, clientIdleStrategyFactory, executorService);
+    }
+
+    protected AbstractServiceGateway(
+        Lock lock,
+        Aeron aeron,
+        NanoClock nanoClock,
+        IdleStrategy readCycleIdleStrategy,
+        String[] serverChannels,
+        int[] serverStreamIds,
+        String clientChannel,
+        int clientStreamId,
+        int maxClients,
+        Supplier<IdleStrategy> clientIdleStrategyFactory,
+        ExecutorService executorService) {
+
+        if (serverChannels.length == 0 || serverChannels.length != serverStreamIds.length) {
+            throw new IllegalArgumentException("Channel and stream ID should be defined for each server shard");
+        }
         this.lock = lock;
         this.aeron = aeron;
+        this.nanoClock = nanoClock;
         this.readCycleIdleStrategy = readCycleIdleStrategy;
-        this.serverChannel = serverChannel;
-        this.serverStreamId = serverStreamId;
+        Message.allocateMemoryForMessage(heartbeatMessage);
+        heartbeatMessage.clientId(CONNECTION_CONTROL_CLIENT_ID);
+        this.serverChannels = serverChannels.clone();
+        this.serverStreamIds = serverStreamIds.clone();
         this.clientChannel = clientChannel;
         this.clientStreamId = clientStreamId;
         this.serverConnectionClient = new ConnectionControlClient(
@@ -99,31 +140,50 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
      *
      * 1. stop receiving any messages from previous subscription
      * 2. close previous registeredPublication
-     * 3. create new subscription and publication
+     * 3. create new subscription and publication for each lane of each shard
      * 4. setup and run new read cycle with new subscription in separate thread
-     * 5. make request to server to open a new registeredPublication,
-     *    server should assign registeredPublication id we will use for all outgoing requests
-     * 6. atomically update registeredPublication, so all outgoing messages will be sent using new publication
-     * 7. if something goes wrong do not forget close publication and subscription
+     * 5. make request to control lane of each shard to open a new registered publication,
+     *    shard should assign connection id we will use for all outgoing requests to it
+     * 6. atomically update registered publications, so all outgoing messages will be sent using new publications
+     * 7. if something goes wrong do not forget close publications and subscription
      *
      * @throws ConnectionException if can not connect
      */
     public void connect() throws ConnectionException {
         lock.lock();
-        Publication publication = null;
+        final int lanesNumber = Lanes.checkLanesNumber(lanesNumber());
+        final Publication[][] publications = new Publication[serverChannels.length][lanesNumber];
         Subscription subscription = null;
         try {
             this.close();
-            publication = createServerPublication();
+            final ServerPublication[][] connectingPublications = new ServerPublication[serverChannels.length][lanesNumber];
+            for (int shard = 0; shard < serverChannels.length; shard++) {
+                for (int lane = 0; lane < lanesNumber; lane++) {
+                    publications[shard][lane] = createServerPublication(
+                        serverChannels[shard], Lanes.laneStreamId(serverStreamIds[shard], lane)
+                    );
+                    connectingPublications[shard][lane] = new ServerPublication(0L, publications[shard][lane]);
+                }
+            }
             subscription = createClientSubscription();
             readCycleTask = new ReadCycleTask(subscription, readCycleIdleStrategy);
             executorService.execute(readCycleTask);
-            registeredPublication = new ServerPublication(0L, publication);
-            final long serverConnectionId = serverConnectionClient.connect();
-            registeredPublication = new ServerPublication(serverConnectionId, publication);
+            registeredPublications = connectingPublications;
+            final ServerPublication[][] connectedPublications = new ServerPublication[serverChannels.length][lanesNumber];
+            for (int shard = 0; shard < serverChannels.length; shard++) {
+                final long serverConnectionId = serverConnectionClient.connect(shard);
+                for (int lane = 0; lane < lanesNumber; lane++) {
+                    connectedPublications[shard][lane] = new ServerPublication(serverConnectionId, publications[shard][lane]);
+                }
+            }
+            registeredPublications = connectedPublications;
         } catch (Throwable e) {
-            if (publication != null) {
-                publication.close();
+            for (Publication[] shardPublications : publications) {
+                for (Publication publication : shardPublications) {
+                    if (publication != null) {
+                        publication.close();
+                    }
+                }
             }
             if (subscription != null) {
                 subscription.close();
@@ -153,11 +213,24 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
         if (readCycleTask != null && readCycleTask.isRunning()) {
             readCycleTask.stop();
         }
-        if (registeredPublication != null) {
-            registeredPublication.close();
+        if (registeredPublications != null) {
+            for (ServerPublication[] shardPublications : registeredPublications) {
+                for (ServerPublication registeredPublication : shardPublications) {
+                    registeredPublication.close();
+                }
+            }
         }
     }
 
+    /**
+     * Returns number of server shards the gateway is connected to.
+     *
+     * @return shards number
+     */
+    public int shardsNumber() {
+        return serverChannels.length;
+    }
+
     /**
      * Produces client. Method is used to initialise pool of service clients.
      *
@@ -167,6 +240,40 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
      */
     protected abstract C createClient(int clientId, NanoClock nanoClock, IdleStrategy idleStrategy);
 
+    /**
+     * Defines number of lanes the gateway sends requests on, server shards should take requests on the same lanes.
+     * By default all requests are sent on the control lane.
+     *
+     * @return lanes number
+     */
+    protected int lanesNumber() {
+        return 1;
+    }
+
+    /**
+     * Defines lane requests of the given type are sent on, it's used only if the gateway has several lanes.
+     * System messages should be sent on the control lane.
+     *
+     * @param messageType request message type
+     * @return lane of the request
+     */
+    protected int lane(int messageType) {
+        return Lanes.CONTROL_LANE;
+    }
+
+    /**
+     * Defines lane the request is actually sent on. Requests of lanes the gateway doesn't have,
+     * e.g. the bulk lane when there are only 2 lanes, are sent on the control lane.
+     *
+     * @param messageType request message type
+     * @param lanesNumber number of lanes the gateway has
+     * @return lane to send the request on
+     */
+    protected final int publicationLane(int messageType, int lanesNumber) {
+        final int lane = lane(messageType);
+        return lane < lanesNumber ? lane : Lanes.CONTROL_LANE;
+    }
+
     /**
      * Generates new correlation ID. This value guaranteed to be unique.
      *
@@ -177,7 +284,12 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
     }
 
     void send(Message message) {
-        registeredPublication.sendRequest(message);
+        send(message, 0);
+    }
+
+    void send(Message message, int shard) {
+        final ServerPublication[] shardPublications = registeredPublications[shard];
+        shardPublications[publicationLane(message.type(), shardPublications.length)].sendRequest(message);
     }
 
     @SuppressWarnings("unchecked")
@@ -198,7 +310,7 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
         return aeron.addSubscription(clientChannel, clientStreamId);
     }
 
-    private Publication createServerPublication() {
+    private Publication createServerPublication(String serverChannel, int serverStreamId) {
         final Publication publication = aeron.addPublication(serverChannel, serverStreamId);
         if (!publication.isConnected()) {
             WAIT_PUB_SUB_IDLE_STRATEGY.reset();
@@ -215,12 +327,14 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
     private final class ReadCycleTask implements Runnable {
 
         private static final int FRAGMENT_LIMIT = 10;
+        private final long heartbeatIntervalNs = TimeUnit.MILLISECONDS.toNanos(Configuration.HEARTBEAT_INTERVAL);
 
         private final Subscription subscription;
         private final IdleStrategy idleStrategy;
         private final FragmentAssembler assembler = new FragmentAssembler(this::onFragment);
 
         final AtomicBoolean running = new AtomicBoolean(false);
+        private long nextHeartbeatTime;
 
         private ReadCycleTask(Subscription subscription, IdleStrategy idleStrategy) {
             this.subscription = subscription;
@@ -231,7 +345,7 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
         public void run() {
             running.set(true);
             while (running.get()) {
-                idleStrategy.idle(pollNewMessages());
+                idleStrategy.idle(pollNewMessages() + sendHeartbeats());
             }
         }
 
@@ -239,6 +353,20 @@ public abstract class AbstractServiceGateway<C extends BaseServiceClient> implem
             return subscription.poll(assembler, FRAGMENT_LIMIT);
         }
 
+        private int sendHeartbeats() {
+            final long now = nanoClock.nanoTime();
+            final ServerPublication[][] publications = registeredPublications;
+            if (now - nextHeartbeatTime < 0 || publications == null) {
+                return 0;
+            }
+            nextHeartbeatTime = now + heartbeatIntervalNs;
+            for (ServerPublication[] shardPublications : publications) {
+                // lost heartbeat is fine, the next one is sent soon
+                shardPublications[Lanes.CONTROL_LANE].trySendRequest(heartbeatMessage);
+            }
+            return 1;
+        }
+
         private void onFragment(final DirectBuffer buffer, final int offset, final int length, final Header header) {
             final int messageType = buffer.getInt(offset + Message.TYPE_FIELD_OFFSET);
             final int clientId = buffer.getInt(offset + Message.CLIENT_ID_FIELD_OFFSET);
@@ -2,6 +2,7 @@ package com.xxx.core.client;
 
 import com.xxx.core.client.pool.PoolInstance;
 import com.xxx.core.protocol.Message;
+import com.xxx.core.protocol.SystemMessageTypes;
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.IdleStrategy;
@@ -74,6 +75,76 @@ public class BaseServiceClient implements PoolInstance, AutoCloseable {
     protected CallStatus makeCall(final Message request) throws ConnectionTimeoutException {
         final long correlationId = startOperation(request);
         serviceGateway.send(request);
+        return awaitResponse(correlationId);
+    }
+
+    /**
+     * Makes call of a service method on the given server shard, see {@link #makeCall(Message)}.
+     *
+     * @param request request to send
+     * @param shard index of the shard to send the request to
+     * @return call status
+     * @throws ConnectionTimeoutException if there was no response received in time
+     */
+    protected CallStatus makeCall(final Message request, final int shard) throws ConnectionTimeoutException {
+        final long correlationId = startOperation(request);
+        serviceGateway.send(request, shard);
+        return awaitResponse(correlationId);
+    }
+
+    /**
+     * Sends request to the given server shard without waiting for the response, so several requests can be in flight.
+     * Responses are received with {@link #pollResponse(long)} and matched to the requests by correlation ID.
+     * Requests in flight should be completed before the next {@link #makeCall} as it skips responses of other requests.
+     *
+     * @param request request to send
+     * @param shard index of the shard to send the request to
+     * @return correlation ID of the request
+     */
+    protected long sendRequest(final Message request, final int shard) {
+        final long correlationId = startOperation(request);
+        serviceGateway.send(request, shard);
+        return correlationId;
+    }
+
+    /**
+     * Polls for the next response with any correlation ID, see {@link #sendRequest(Message, int)}.
+     * Received response is read as usual and its correlation ID is returned by {@link #responseCorrelationId()}.
+     *
+     * @param deadlineNs deadline until which to poll for the response, inbound buffer is checked at least once
+     * @return call status, {@link CallStatus#TIMEOUT} if there was no response until the deadline
+     */
+    protected CallStatus pollResponse(final long deadlineNs) {
+        return responsePoller.pollNextMessage(deadlineNs);
+    }
+
+    /**
+     * Returns correlation ID of the last received response.
+     *
+     * @return correlation ID
+     */
+    protected long responseCorrelationId() {
+        return responsePoller.readCorrelationId();
+    }
+
+    protected long nanoTime() {
+        return nanoClock.nanoTime();
+    }
+
+    protected long waitTimeoutNs() {
+        return waitTimeoutNs;
+    }
+
+    /**
+     * Returns number of server shards the service is partitioned to.
+     *
+     * @return shards number
+     */
+    protected int shardsNumber() {
+        return serviceGateway.shardsNumber();
+    }
+
+    private CallStatus awaitResponse(final long correlationId) throws ConnectionTimeoutException {
         final long nanoTime = nanoClock.nanoTime();
         final long deadline = nanoTime + waitTimeoutNs;
         final CallStatus callStatus = responsePoller.pollNextMessage(deadline, correlationId);
@@ -105,11 +176,15 @@ public class BaseServiceClient implements PoolInstance, AutoCloseable {
      *
      * @param callStatus call status
      * @throws ConnectionTimeoutException if timeout has occurred
+     * @throws ServerBusyException if server rejected the request because the client is lagging
      */
     protected void checkForErrors(CallStatus callStatus) throws ConnectionTimeoutException {
         if (callStatus == CallStatus.TIMEOUT) {
             throw new ConnectionTimeoutException("Client did not receive server acknowledge in time");
         }
+        if (callStatus == CallStatus.SERVER_BUSY) {
+            throw new ServerBusyException("Server is busy, request was not processed");
+        }
     }
 
     /**
@@ -128,8 +203,6 @@ public class BaseServiceClient implements PoolInstance, AutoCloseable {
      */
     protected class ResponsePoller implements MessageHandler {
 
-        private static final int MAX_RESPONSE_SIZE = 512;
-
         private final NanoClock nanoClock;
         private final IdleStrategy idleStrategy;
         private final RingBuffer ringBuffer;
@@ -139,7 +212,8 @@ public class BaseServiceClient implements PoolInstance, AutoCloseable {
         private int length;
 
         private ResponsePoller(NanoClock nanoClock, IdleStrategy idleStrategy, RingBuffer ringBuffer) {
-            this.buffer = new UnsafeBuffer(allocateDirectAligned(MAX_RESPONSE_SIZE, CACHE_LINE_LENGTH));
+            // any message which fits the inbound ring buffer can be received
+            this.buffer = new UnsafeBuffer(allocateDirectAligned(ringBuffer.maxMsgLength(), CACHE_LINE_LENGTH));
             this.nanoClock = nanoClock;
             this.idleStrategy = idleStrategy;
             this.ringBuffer = ringBuffer;
@@ -153,11 +227,26 @@ public class BaseServiceClient implements PoolInstance, AutoCloseable {
          * @return call status
          */
         public CallStatus pollNextMessage(final long deadlineNs, final long correlationId) {
+            return pollNextMessage(deadlineNs, correlationId, false);
+        }
+
+        /**
+         * Actively waits response polling ring buffer for next message with any correlationId.
+         *
+         * @param deadlineNs deadline until which to poll for the message
+         * @return call status
+         */
+        public CallStatus pollNextMessage(final long deadlineNs) {
+            return pollNextMessage(deadlineNs, 0L, true);
+        }
+
+        private CallStatus pollNextMessage(final long deadlineNs, final long correlationId, final boolean anyCorrelationId) {
             idleStrategy.reset();
             while (true) {
                 final boolean messageReceived = ringBuffer.read(this, 1) == 1;
-                if (messageReceived && (readCorrelationId() == correlationId)) {
-                    return CallStatus.RESPONSE_RECEIVED;
+                if (messageReceived && (anyCorrelationId || readCorrelationId() == correlationId)) {
+                    return messageType == SystemMessageTypes.SERVER_BUSY_MESSAGE_TYPE ?
+                        CallStatus.SERVER_BUSY : CallStatus.RESPONSE_RECEIVED;
                 }
                 final long nanoTime = nanoClock.nanoTime();
                 if (deadlineNs - nanoTime < 0) {
@@ -184,7 +273,8 @@ public class BaseServiceClient implements PoolInstance, AutoCloseable {
      */
     protected enum CallStatus {
         RESPONSE_RECEIVED,
-        TIMEOUT
+        TIMEOUT,
+        SERVER_BUSY
     }
 
 }
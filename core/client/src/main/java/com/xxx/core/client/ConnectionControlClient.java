@@ -43,7 +43,18 @@ public class ConnectionControlClient extends BaseServiceClient {
      * @throws ConnectionTimeoutException if response was not received in time
      */
     long connect() throws ConnectionTimeoutException {
-        makeCall(createConnectionCommand);
+        return connect(0);
+    }
+
+    /**
+     * Sends connection request to the given server shard.
+     *
+     * @param shard server shard index
+     * @return assigned by the shard connection ID, this value should be sent in each subsequent requests to the shard.
+     * @throws ConnectionTimeoutException if response was not received in time
+     */
+    long connect(int shard) throws ConnectionTimeoutException {
+        makeCall(createConnectionCommand, shard);
         return connectionAckResponse.connectionId();
     }
 
@@ -0,0 +1,12 @@
+package com.xxx.core.client;
+
+/**
+ * Server did not process the request because the client does not read responses fast enough.
+ * Unlike the timeout, it is known the request was not processed, so it can be safely repeated.
+ * Extends {@link ConnectionTimeoutException} to be handled by the existing timeout handling code.
+ */
+public class ServerBusyException extends ConnectionTimeoutException {
+    public ServerBusyException(String message) {
+        super(message);
+    }
+}
@@ -39,6 +39,18 @@ public class ServerPublication implements AutoCloseable {
         }
     }
 
+    /**
+     * Tries to send given message with the propagated {@link #connectionId} once, never blocks.
+     * Can be used for messages which may be lost, e.g. heartbeats.
+     *
+     * @param message message to send
+     * @return true if the message is sent
+     */
+    public boolean trySendRequest(Message message) {
+        message.connectionId(connectionId);
+        return publication.offer(message.getReadBuffer(), message.getOffset(), message.sizeInBytes()) > 0;
+    }
+
     private void checkResult(final long result) {
         if (result == CLOSED || result == MAX_POSITION_EXCEEDED) {
             close();
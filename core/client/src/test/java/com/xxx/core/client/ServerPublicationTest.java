@@ -10,9 +10,12 @@ import org.mockito.Mockito;
 
 import static com.xxx.core.protocol.Message.MESSAGE_HEADER_LENGTH;
 import static java.nio.ByteBuffer.allocateDirect;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -59,6 +62,16 @@ public class ServerPublicationTest {
         });
     }
 
+    @Test
+    public void whenTrySendAndPublicationIsBackPressuredThenMessageIsNotSent() {
+        when(publication.offer(buffer, 0, MESSAGE_HEADER_LENGTH)).thenReturn(Publication.BACK_PRESSURED, 10L);
+        assertThat(serverPublication.trySendRequest(message), is(false));
+        assertThat(serverPublication.trySendRequest(message), is(true));
+        verify(message, times(2)).connectionId(100500L);
+        when(publication.offer(buffer, 0, MESSAGE_HEADER_LENGTH)).thenReturn(Publication.CLOSED);
+        assertThat(serverPublication.trySendRequest(message), is(false));
+    }
+
     @Test
     public void shouldSendRightData() {
         serverPublication.sendRequest(message);
@@ -1,6 +1,7 @@
 package com.xxx.core.client;
 
 import com.xxx.core.protocol.Message;
+import com.xxx.core.protocol.SystemMessageTypes;
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.BusySpinIdleStrategy;
@@ -73,6 +74,13 @@ public class ServiceClientTest {
         verify(gateway).send(request);
     }
 
+    @Test
+    public void shouldSendRequestToGatewayShard() throws ConnectionTimeoutException {
+        putResponseToInboundBuffer(CORRELATION_ID);
+        client.makeCall(request, 2);
+        verify(gateway).send(request, 2);
+    }
+
     @Test
     public void shouldReplyWithTimeoutIfThereWasNoAnswer() throws ConnectionTimeoutException {
         when(nanoClock.nanoTime()).thenReturn(0L, 50L, Long.MAX_VALUE);
@@ -82,6 +90,30 @@ public class ServiceClientTest {
         });
     }
 
+    @Test
+    public void shouldThrowServerBusyExceptionIfServerRejectedRequest() {
+        responseBuffer.putLong(CORRELATION_ID_FIELD_OFFSET, CORRELATION_ID);
+        client.receiveMessage(
+            SystemMessageTypes.SERVER_BUSY_MESSAGE_TYPE, response.getReadBuffer(), response.getOffset(), response.sizeInBytes()
+        );
+        assertThrows(ServerBusyException.class, () -> client.makeCall(request));
+    }
+
+    @Test
+    public void shouldSendRequestWithoutWaitingForResponse() {
+        assertThat(client.sendRequest(request, 1), is(CORRELATION_ID));
+        verify(gateway).send(request, 1);
+    }
+
+    @Test
+    public void shouldPollResponseWithAnyCorrelationId() {
+        putResponseToInboundBuffer(CORRELATION_ID + 1);
+        assertThat(client.pollResponse(100L), is(BaseServiceClient.CallStatus.RESPONSE_RECEIVED));
+        assertThat(client.responseCorrelationId(), is(CORRELATION_ID + 1));
+        when(nanoClock.nanoTime()).thenReturn(Long.MAX_VALUE);
+        assertThat(client.pollResponse(100L), is(BaseServiceClient.CallStatus.TIMEOUT));
+    }
+
     @Test
     public void shouldAskGatewayToCloseItself() {
         client.close();
@@ -8,4 +8,11 @@ public class Configuration {
     private static final String MAX_CHANNEL_LENGTH_PROP = "connection.channel.max_length";
     public static final int MAX_CHANNEL_LENGTH = Integer.getInteger(MAX_CHANNEL_LENGTH_PROP, 256);
 
+    private static final String HEARTBEAT_INTERVAL_PROP = "connection.heartbeat_interval";
+    public static final long HEARTBEAT_INTERVAL = Integer.getInteger(HEARTBEAT_INTERVAL_PROP, 1000);
+
+    // shards of a service usually take consecutive streams, so lanes are shifted far enough not to clash with them
+    private static final String LANE_STREAM_ID_STEP_PROP = "connection.lane.stream_id_step";
+    public static final int LANE_STREAM_ID_STEP = Integer.getInteger(LANE_STREAM_ID_STEP_PROP, 1000);
+
 }
@@ -0,0 +1,24 @@
+package com.xxx.core.protocol;
+
+
+import static com.xxx.core.protocol.SystemMessageTypes.HEARTBEAT_MESSAGE_TYPE;
+
+/**
+ * Message sent by the client to each server it is connected to every {@link Configuration#HEARTBEAT_INTERVAL} ms,
+ * so the server knows the connection is alive even if the client sends no requests. Server does not respond to it.
+ */
+public class HeartbeatMessage extends Message {
+
+    public static final int MESSAGE_SIZE = MESSAGE_HEADER_LENGTH;
+
+    @Override
+    public int sizeInBytes() {
+        return MESSAGE_SIZE;
+    }
+
+    @Override
+    public int uniqueType() {
+        return HEARTBEAT_MESSAGE_TYPE;
+    }
+
+}
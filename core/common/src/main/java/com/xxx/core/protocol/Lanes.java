@@ -0,0 +1,46 @@
+package com.xxx.core.protocol;
+
+/**
+ * Traffic classes of requests. Server can take requests of each lane on its own stream and poll the lanes
+ * with different weights, so small queries don't wait behind reassembled bulk data. Lane 0 uses the server
+ * stream itself, every next lane is shifted by {@link Configuration#LANE_STREAM_ID_STEP},
+ * see {@link #laneStreamId(int, int)}. Connections are always created on the control lane.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public final class Lanes {
+
+    private Lanes() {
+    }
+
+    public static final int CONTROL_LANE = 0;
+    public static final int QUERY_LANE = 1;
+    public static final int BULK_LANE = 2;
+
+    public static final int MAX_LANES_NUMBER = 3;
+
+    /**
+     * Defines stream ID the server takes requests of the lane on.
+     *
+     * @param serverStreamId server stream ID
+     * @param lane lane
+     * @return stream ID of the lane
+     */
+    public static int laneStreamId(int serverStreamId, int lane) {
+        return serverStreamId + lane * Configuration.LANE_STREAM_ID_STEP;
+    }
+
+    /**
+     * Checks lanes number is supported.
+     *
+     * @param lanesNumber lanes number
+     * @return lanes number
+     */
+    public static int checkLanesNumber(int lanesNumber) {
+        if (lanesNumber < 1 || lanesNumber > MAX_LANES_NUMBER) {
+            throw new IllegalArgumentException("Lanes number should be from 1 to " + MAX_LANES_NUMBER + ": " + lanesNumber);
+        }
+        return lanesNumber;
+    }
+
+}
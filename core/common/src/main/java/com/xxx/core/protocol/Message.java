@@ -1,5 +1,6 @@
 package com.xxx.core.protocol;
 
+import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
@@ -15,7 +16,7 @@ public abstract class Message extends Flyweight {
     public static final int CORRELATION_ID_FIELD_OFFSET = CLIENT_ID_FIELD_OFFSET + SIZE_OF_INT;
     public static final int MESSAGE_HEADER_LENGTH = CORRELATION_ID_FIELD_OFFSET + SIZE_OF_LONG;
 
-    public void init(UnsafeBuffer buffer, int offset) {
+    public void init(MutableDirectBuffer buffer, int offset) {
         wrapForWrite(buffer, offset);
         type(uniqueType());
     }
@@ -0,0 +1,24 @@
+package com.xxx.core.protocol;
+
+
+import static com.xxx.core.protocol.SystemMessageTypes.SERVER_BUSY_MESSAGE_TYPE;
+
+/**
+ * Response sent by the server instead of processing a request when the client does not read
+ * responses fast enough. Request was not processed and can be safely repeated.
+ */
+public class ServerBusyResponse extends Message {
+
+    public static final int MESSAGE_SIZE = MESSAGE_HEADER_LENGTH;
+
+    @Override
+    public int sizeInBytes() {
+        return MESSAGE_SIZE;
+    }
+
+    @Override
+    public int uniqueType() {
+        return SERVER_BUSY_MESSAGE_TYPE;
+    }
+
+}
@@ -10,5 +10,7 @@ public final class SystemMessageTypes {
 
     public static final int CREATE_CONNECTION_MESSAGE_TYPE = 1;
     public static final int CONNECTION_ACK_MESSAGE_TYPE = 2;
+    public static final int SERVER_BUSY_MESSAGE_TYPE = 3;
+    public static final int HEARTBEAT_MESSAGE_TYPE = 4;
 
 }
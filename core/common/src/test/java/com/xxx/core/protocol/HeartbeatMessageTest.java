@@ -0,0 +1,34 @@
+package com.xxx.core.protocol;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static com.xxx.core.protocol.Message.allocateMemoryForMessage;
+import static com.xxx.core.protocol.SystemMessageTypes.HEARTBEAT_MESSAGE_TYPE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class HeartbeatMessageTest {
+
+    private static final HeartbeatMessage HEARTBEAT_MESSAGE = new HeartbeatMessage();
+
+    @BeforeAll
+    public static void init() {
+        allocateMemoryForMessage(HEARTBEAT_MESSAGE);
+    }
+
+    @Test
+    public void uniqueTypeTest() {
+        assertThat(HEARTBEAT_MESSAGE.uniqueType(), is(HEARTBEAT_MESSAGE_TYPE));
+        assertThat(HEARTBEAT_MESSAGE.type(), is(HEARTBEAT_MESSAGE_TYPE));
+    }
+
+    @Test
+    public void sizeInBytesTest() {
+        assertThat(HEARTBEAT_MESSAGE.sizeInBytes(), is(Message.MESSAGE_HEADER_LENGTH));
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.xxx.core.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static com.xxx.core.protocol.Configuration.LANE_STREAM_ID_STEP;
+import static com.xxx.core.protocol.Lanes.BULK_LANE;
+import static com.xxx.core.protocol.Lanes.CONTROL_LANE;
+import static com.xxx.core.protocol.Lanes.MAX_LANES_NUMBER;
+import static com.xxx.core.protocol.Lanes.QUERY_LANE;
+import static com.xxx.core.protocol.Lanes.checkLanesNumber;
+import static com.xxx.core.protocol.Lanes.laneStreamId;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class LanesTest {
+
+    @Test
+    public void whenControlLaneThenServerStreamIsUsed() {
+        assertThat(laneStreamId(2001, CONTROL_LANE), is(2001));
+        assertThat(laneStreamId(2001, QUERY_LANE), is(2001 + LANE_STREAM_ID_STEP));
+        assertThat(laneStreamId(2001, BULK_LANE), is(2001 + 2 * LANE_STREAM_ID_STEP));
+    }
+
+    @Test
+    public void whenLanesNumberIsNotSupportedThenException() {
+        assertThat(checkLanesNumber(1), is(1));
+        assertThat(checkLanesNumber(MAX_LANES_NUMBER), is(MAX_LANES_NUMBER));
+        assertThrows(IllegalArgumentException.class, () -> checkLanesNumber(0));
+        assertThrows(IllegalArgumentException.class, () -> checkLanesNumber(MAX_LANES_NUMBER + 1));
+    }
+
+}
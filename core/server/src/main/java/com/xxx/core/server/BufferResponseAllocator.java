@@ -0,0 +1,32 @@
+package com.xxx.core.server;
+
+import com.xxx.core.protocol.Message;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.findNextPositivePowerOfTwo;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+
+/**
+ * Allocates responses in its own direct buffer. Buffer is reused by every response and grows if a bigger
+ * response is requested, so only the last allocated response is valid.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class BufferResponseAllocator implements ResponseAllocator {
+
+    private UnsafeBuffer buffer;
+
+    public BufferResponseAllocator(int initialCapacity) {
+        this.buffer = new UnsafeBuffer(allocateDirectAligned(findNextPositivePowerOfTwo(initialCapacity), CACHE_LINE_LENGTH));
+    }
+
+    @Override
+    public void allocate(Message response, int length) {
+        if (length > buffer.capacity()) {
+            buffer = new UnsafeBuffer(allocateDirectAligned(findNextPositivePowerOfTwo(length), CACHE_LINE_LENGTH));
+        }
+        response.init(buffer, 0);
+    }
+
+}
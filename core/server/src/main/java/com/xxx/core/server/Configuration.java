@@ -0,0 +1,48 @@
+package com.xxx.core.server;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class Configuration {
+
+    private static final String OUTBOUND_QUEUE_CAPACITY_PROP = "properties.server.outbound_queue_capacity";
+    public static final int OUTBOUND_QUEUE_CAPACITY = Integer.getInteger(OUTBOUND_QUEUE_CAPACITY_PROP, 64 * 1024);
+
+    private static final String OUTBOUND_OVERFLOW_POLICY_PROP = "properties.server.outbound_overflow_policy";
+    public static final OverflowPolicy OUTBOUND_OVERFLOW_POLICY =
+        OverflowPolicy.valueOf(System.getProperty(OUTBOUND_OVERFLOW_POLICY_PROP, OverflowPolicy.BUSY.name()));
+
+    private static final String THREADING_MODE_PROP = "properties.server.threading_mode";
+    public static final ThreadingMode THREADING_MODE =
+        ThreadingMode.valueOf(System.getProperty(THREADING_MODE_PROP, ThreadingMode.DEDICATED.name()));
+
+    // connection without requests and heartbeats for this time in ms is closed by the server
+    private static final String CONNECTION_IDLE_TIMEOUT_PROP = "properties.server.connection_idle_timeout";
+    public static final long CONNECTION_IDLE_TIMEOUT = Integer.getInteger(CONNECTION_IDLE_TIMEOUT_PROP, 10_000);
+
+    // length of the counters values buffer, it defines max number of counters, see ServerCounters
+    private static final String COUNTERS_VALUES_BUFFER_LENGTH_PROP = "properties.server.counters_values_buffer_length";
+    public static final int COUNTERS_VALUES_BUFFER_LENGTH = Integer.getInteger(COUNTERS_VALUES_BUFFER_LENGTH_PROP, 16 * 1024);
+
+    // file to log interval histograms of the handler service time to, not recorded if not defined
+    private static final String SERVICE_TIME_LOG_FILE_PROP = "properties.server.service_time_log_file";
+    public static final String SERVICE_TIME_LOG_FILE = System.getProperty(SERVICE_TIME_LOG_FILE_PROP);
+
+    private static final String SERVICE_TIME_LOG_INTERVAL_PROP = "properties.server.service_time_log_interval";
+    public static final long SERVICE_TIME_LOG_INTERVAL = Integer.getInteger(SERVICE_TIME_LOG_INTERVAL_PROP, 1000);
+
+    // max length of requests parked while the handler has a pending request, see Server
+    private static final String PARKED_REQUESTS_BUFFER_LENGTH_PROP = "properties.server.parked_requests_buffer_length";
+    public static final int PARKED_REQUESTS_BUFFER_LENGTH = Integer.getInteger(PARKED_REQUESTS_BUFFER_LENGTH_PROP, 1024 * 1024);
+
+    // max fragments taken from each lane per duty cycle, the query lane is polled first and gets the biggest share
+    private static final String QUERY_LANE_FRAGMENT_LIMIT_PROP = "properties.server.query_lane_fragment_limit";
+    public static final int QUERY_LANE_FRAGMENT_LIMIT = Integer.getInteger(QUERY_LANE_FRAGMENT_LIMIT_PROP, 32);
+
+    private static final String CONTROL_LANE_FRAGMENT_LIMIT_PROP = "properties.server.control_lane_fragment_limit";
+    public static final int CONTROL_LANE_FRAGMENT_LIMIT = Integer.getInteger(CONTROL_LANE_FRAGMENT_LIMIT_PROP, 10);
+
+    private static final String BULK_LANE_FRAGMENT_LIMIT_PROP = "properties.server.bulk_lane_fragment_limit";
+    public static final int BULK_LANE_FRAGMENT_LIMIT = Integer.getInteger(BULK_LANE_FRAGMENT_LIMIT_PROP, 8);
+
+}
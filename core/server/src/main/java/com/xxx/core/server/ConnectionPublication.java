@@ -1,27 +1,110 @@
 package com.xxx.core.server;
 
 import com.xxx.core.protocol.Message;
+import com.xxx.core.protocol.ServerBusyResponse;
 import io.aeron.Publication;
+import io.aeron.logbuffer.BufferClaim;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.xxx.core.server.Configuration.OUTBOUND_OVERFLOW_POLICY;
+import static com.xxx.core.server.Configuration.OUTBOUND_QUEUE_CAPACITY;
 import static io.aeron.Publication.CLOSED;
 import static io.aeron.Publication.MAX_POSITION_EXCEEDED;
 import static io.aeron.Publication.NOT_CONNECTED;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.TRAILER_LENGTH;
 
 /**
  * Publication for connection. Allows to send a message back to the clients.
  * Propagates connection and client IDs.
  * This object is created as a result of connection process.
  *
+ * Responses can be sent by copying them to the publication with {@link #sendResponse} or encoded directly into
+ * the publication log buffer claimed by {@link #tryClaim} and then committed by {@link #commitResponse}.
+ *
+ * Sending never blocks. If the publication is back pressured, the response is put to the bounded off-heap
+ * outbound queue of the connection, which is drained by the server thread with {@link #drainOutbound(int)}.
+ * While the queue is not empty all responses go through it to keep their order. What happens when the queue
+ * is full is defined by {@link OverflowPolicy}. Counters of the connection show how much it is lagging,
+ * the same events are summed up for all connections by {@link ServerCounters}.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public class ConnectionPublication implements AutoCloseable {
 
+    private static final int RESPONSE_MSG_TYPE_ID = 1;
+
     private final long connectionId;
     private final Publication publication;
+    private final OverflowPolicy overflowPolicy;
+
+    private final RingBuffer outboundQueue;
+    private final int busyThreshold;
+    // queue can be consumed by the draining server thread or by a conflating producer
+    private final AtomicBoolean consumerLock = new AtomicBoolean();
+    private final MessageHandler drainHandler = this::onQueuedResponse;
+    private final MessageHandler discardHandler = (msgTypeId, buffer, index, length) -> { };
+    // response read from the queue, but not accepted by the publication yet
+    private final MutableDirectBuffer pendingResponse;
+    private int pendingResponseLength;
+    private volatile boolean hasPendingResponse;
+
+    private final AtomicLong backPressureCount = new AtomicLong();
+    private final AtomicLong droppedResponsesCount = new AtomicLong();
+    private final AtomicLong busyResponsesCount = new AtomicLong();
+    // shared by all connections of the server, so incremented atomically
+    private final AtomicCounter backPressureEvents;
+    private final AtomicCounter droppedResponses;
+    private final AtomicCounter busyResponses;
+
+    // epoch time in ms of the last request or heartbeat of the client, maintained by the server thread
+    private long lastActivityTime;
 
     ConnectionPublication(long connectionId, Publication publication) {
+        this(connectionId, publication, new ServerCounters());
+    }
+
+    ConnectionPublication(long connectionId, Publication publication, ServerCounters counters) {
+        this(connectionId, publication, OUTBOUND_QUEUE_CAPACITY, OUTBOUND_OVERFLOW_POLICY, counters);
+    }
+
+    ConnectionPublication(long connectionId, Publication publication, int outboundQueueCapacity, OverflowPolicy overflowPolicy) {
+        this(connectionId, publication, outboundQueueCapacity, overflowPolicy, new ServerCounters());
+    }
+
+    /**
+     * Creates connection publication.
+     *
+     * @param connectionId connection ID
+     * @param publication publication to the client
+     * @param outboundQueueCapacity capacity of the outbound queue in bytes, should be power of two
+     * @param overflowPolicy policy to apply when the outbound queue is full
+     * @param counters server counters to sum up events of the connection to
+     */
+    ConnectionPublication(
+        long connectionId, Publication publication, int outboundQueueCapacity, OverflowPolicy overflowPolicy, ServerCounters counters) {
+
         this.connectionId = connectionId;
         this.publication = publication;
+        this.overflowPolicy = overflowPolicy;
+        this.outboundQueue = new ManyToOneRingBuffer(
+            new UnsafeBuffer(allocateDirectAligned(outboundQueueCapacity + TRAILER_LENGTH, CACHE_LINE_LENGTH))
+        );
+        this.busyThreshold = outboundQueueCapacity / 2;
+        this.pendingResponse = new UnsafeBuffer(allocateDirectAligned(outboundQueue.maxMsgLength(), CACHE_LINE_LENGTH));
+        this.backPressureEvents = counters.backPressureEvents();
+        this.droppedResponses = counters.droppedResponses();
+        this.busyResponses = counters.busyResponses();
     }
 
     public boolean isConnected() {
@@ -32,8 +115,21 @@ public class ConnectionPublication implements AutoCloseable {
         return connectionId;
     }
 
+    public boolean isClosed() {
+        return publication.isClosed();
+    }
+
+    long lastActivityTime() {
+        return lastActivityTime;
+    }
+
+    void lastActivityTime(long lastActivityTime) {
+        this.lastActivityTime = lastActivityTime;
+    }
+
     /**
      * Sends response to the client with the given ID.
+     * If the publication is back pressured the response is queued.
      *
      * @param message message to send
      * @param clientId client ID
@@ -43,13 +139,223 @@ public class ConnectionPublication implements AutoCloseable {
         if (publication.isClosed()) {
             throw new IllegalStateException();
         }
-        long result;
         message.connectionId(connectionId);
         message.clientId(clientId);
         message.correlationId(correlationId);
-        while ((result = publication.offer(message.getReadBuffer(), message.getOffset(), message.sizeInBytes())) < 0) {
+        sendResponse(message.getReadBuffer(), message.getOffset(), message.sizeInBytes());
+    }
+
+    /**
+     * Sends encoded response which header already has connection, client and correlation IDs.
+     * If the publication is back pressured the response is queued.
+     *
+     * @param buffer buffer with the response
+     * @param offset offset of the response in the buffer
+     * @param length response length
+     */
+    public void sendResponse(DirectBuffer buffer, int offset, int length) {
+        if (publication.isClosed()) {
+            throw new IllegalStateException();
+        }
+        if (!isLagging()) {
+            final long result = publication.offer(buffer, offset, length);
+            if (result > 0) {
+                return;
+            }
             checkResult(result);
-            Thread.yield();
+            backPressureCount.incrementAndGet();
+            backPressureEvents.increment();
+        }
+        enqueue(buffer, offset, length);
+    }
+
+    /**
+     * Tries to claim a range in the publication log buffer to encode a response of the given length into.
+     * Claim is not possible while there are queued responses.
+     *
+     * @param length response length
+     * @param bufferClaim claim to be wrapped over the claimed range
+     * @return true if the range is claimed, false if the publication is back pressured, the connection is lagging
+     * or the response does not fit into a single frame
+     */
+    public boolean tryClaim(int length, BufferClaim bufferClaim) {
+        if (length > publication.maxPayloadLength() || isLagging()) {
+            return false;
+        }
+        final long result = publication.tryClaim(length, bufferClaim);
+        if (result < 0) {
+            checkResult(result);
+            backPressureCount.incrementAndGet();
+            backPressureEvents.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Commits response encoded into the claimed range.
+     *
+     * @param message message encoded in the claimed range
+     * @param clientId client ID
+     * @param correlationId request correlation ID
+     * @param bufferClaim claim returned by {@link #tryClaim}
+     */
+    public void commitResponse(Message message, int clientId, long correlationId, BufferClaim bufferClaim) {
+        message.connectionId(connectionId);
+        message.clientId(clientId);
+        message.correlationId(correlationId);
+        bufferClaim.commit();
+    }
+
+    /**
+     * Checks if new requests of the connection should be rejected with
+     * {@link ServerBusyResponse}. It is possible with {@link OverflowPolicy#BUSY} policy only.
+     *
+     * @return true if the connection is too busy to process new requests
+     */
+    public boolean isOverloaded() {
+        return overflowPolicy == OverflowPolicy.BUSY && outboundQueue.size() > busyThreshold;
+    }
+
+    /**
+     * Responds with busy response instead of processing the request.
+     *
+     * @param busyResponse busy response
+     * @param clientId client ID
+     * @param correlationId request correlation ID
+     */
+    public void sendBusyResponse(ServerBusyResponse busyResponse, int clientId, long correlationId) {
+        busyResponsesCount.incrementAndGet();
+        busyResponses.increment();
+        sendResponse(busyResponse, clientId, correlationId);
+    }
+
+    /**
+     * Sends queued responses to the publication while it accepts them.
+     * Should be called by the server thread only.
+     *
+     * @param limit max number of responses to send
+     * @return number of sent responses
+     */
+    public int drainOutbound(int limit) {
+        if (!isLagging() || !consumerLock.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            int sent = 0;
+            while (sent < limit) {
+                if (hasPendingResponse) {
+                    final long result = publication.offer(pendingResponse, 0, pendingResponseLength);
+                    if (result < 0) {
+                        checkResult(result);
+                        break;
+                    }
+                    hasPendingResponse = false;
+                    sent++;
+                } else if (outboundQueue.read(drainHandler, 1) == 0 || hasPendingResponse) {
+                    break;
+                } else {
+                    sent++;
+                }
+            }
+            return sent;
+        } finally {
+            consumerLock.set(false);
+        }
+    }
+
+    /**
+     * Checks if there are responses waiting in the outbound queue.
+     *
+     * @return true if the connection has queued responses
+     */
+    public boolean isLagging() {
+        return hasPendingResponse || outboundQueue.size() > 0;
+    }
+
+    /**
+     * Returns number of bytes waiting in the outbound queue.
+     *
+     * @return queued bytes
+     */
+    public int queuedBytes() {
+        return outboundQueue.size();
+    }
+
+    /**
+     * Returns how many times the publication did not accept a response.
+     *
+     * @return back pressure events count
+     */
+    public long backPressureCount() {
+        return backPressureCount.get();
+    }
+
+    /**
+     * Returns number of responses lost due to the outbound queue overflow.
+     *
+     * @return dropped responses count
+     */
+    public long droppedResponsesCount() {
+        return droppedResponsesCount.get();
+    }
+
+    /**
+     * Returns number of requests rejected because of the connection overload.
+     *
+     * @return busy responses count
+     */
+    public long busyResponsesCount() {
+        return busyResponsesCount.get();
+    }
+
+    private void onQueuedResponse(int msgTypeId, MutableDirectBuffer buffer, int index, int length) {
+        final long result = publication.offer(buffer, index, length);
+        if (result < 0) {
+            // keep the response until the publication accepts it
+            pendingResponse.putBytes(0, buffer, index, length);
+            pendingResponseLength = length;
+            hasPendingResponse = true;
+            checkResult(result);
+        }
+    }
+
+    private void enqueue(DirectBuffer buffer, int offset, int length) {
+        if (length <= outboundQueue.maxMsgLength() && outboundQueue.write(RESPONSE_MSG_TYPE_ID, buffer, offset, length)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case DISCONNECT:
+                close();
+                throw new IllegalStateException("Outbound queue overflow, connection " + connectionId + " is closed");
+            case CONFLATE:
+                if (length <= outboundQueue.maxMsgLength() && conflate(buffer, offset, length)) {
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        droppedResponsesCount.incrementAndGet();
+        droppedResponses.increment();
+    }
+
+    private boolean conflate(DirectBuffer buffer, int offset, int length) {
+        if (!consumerLock.compareAndSet(false, true)) {
+            // queue is being drained right now, the new response is dropped
+            return false;
+        }
+        try {
+            while (outboundQueue.read(discardHandler, 1) == 1) {
+                droppedResponsesCount.incrementAndGet();
+                droppedResponses.increment();
+                if (outboundQueue.write(RESPONSE_MSG_TYPE_ID, buffer, offset, length)) {
+                    return true;
+                }
+            }
+            return outboundQueue.write(RESPONSE_MSG_TYPE_ID, buffer, offset, length);
+        } finally {
+            consumerLock.set(false);
         }
     }
 
@@ -0,0 +1,130 @@
+package com.xxx.core.server;
+
+import com.xxx.core.protocol.Message;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.util.Arrays;
+
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.align;
+import static org.agrona.BitUtil.findNextPositivePowerOfTwo;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+
+/**
+ * Keeps responses which can not be sent until changes made by their requests are synced,
+ * see {@link ServiceHandler#sync()}. Responses are encoded directly into the own buffer of this object
+ * and sent all together after the sync, so one sync is made for all requests of a poll cycle.
+ *
+ * Object is used by the server thread only. Expected usage is {@link #connection} - {@link #allocate} - {@link #add}
+ * for each request, or {@link #abort} if the response can not be completed, and then {@link #send} of all responses
+ * followed by {@link #reset()}.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+class DeferredResponses implements ResponseAllocator {
+
+    private static final int INITIAL_RESPONSES_CAPACITY = 16;
+
+    private UnsafeBuffer buffer;
+    private int position;
+
+    private ConnectionPublication publication;
+    private int allocatedOffset = -1;
+
+    private ConnectionPublication[] publications = new ConnectionPublication[INITIAL_RESPONSES_CAPACITY];
+    private int[] offsets = new int[INITIAL_RESPONSES_CAPACITY];
+    private int[] lengths = new int[INITIAL_RESPONSES_CAPACITY];
+    private int size;
+
+    DeferredResponses(int initialCapacity) {
+        this.buffer = new UnsafeBuffer(allocateDirectAligned(findNextPositivePowerOfTwo(initialCapacity), CACHE_LINE_LENGTH));
+    }
+
+    /**
+     * Selects connection to send the next response to.
+     *
+     * @param publication connection publication
+     */
+    void connection(ConnectionPublication publication) {
+        this.publication = publication;
+        this.allocatedOffset = -1;
+    }
+
+    @Override
+    public void allocate(Message response, int length) {
+        final int requiredCapacity = position + length;
+        if (requiredCapacity > buffer.capacity()) {
+            // already deferred responses are moved to the bigger buffer
+            final UnsafeBuffer newBuffer = new UnsafeBuffer(
+                allocateDirectAligned(findNextPositivePowerOfTwo(requiredCapacity), CACHE_LINE_LENGTH)
+            );
+            newBuffer.putBytes(0, buffer, 0, position);
+            buffer = newBuffer;
+        }
+        allocatedOffset = position;
+        response.init(buffer, position);
+    }
+
+    /**
+     * Defers sending of the response allocated by {@link #allocate}.
+     *
+     * @param response response to send
+     * @param clientId client ID
+     * @param correlationId request correlation ID
+     */
+    void add(Message response, int clientId, long correlationId) {
+        if (allocatedOffset < 0 || response.getOffset() != allocatedOffset) {
+            throw new IllegalStateException("Response should be allocated by the deferred responses");
+        }
+        response.connectionId(publication.getConnectionId());
+        response.clientId(clientId);
+        response.correlationId(correlationId);
+        if (size == offsets.length) {
+            publications = Arrays.copyOf(publications, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        publications[size] = publication;
+        offsets[size] = allocatedOffset;
+        lengths[size] = response.sizeInBytes();
+        size++;
+        position = align(allocatedOffset + response.sizeInBytes(), SIZE_OF_LONG);
+        allocatedOffset = -1;
+    }
+
+    /**
+     * Releases memory allocated for the response which is not going to be sent.
+     */
+    void abort() {
+        allocatedOffset = -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    ConnectionPublication publication(int index) {
+        return publications[index];
+    }
+
+    /**
+     * Sends deferred response with the given index to its connection.
+     *
+     * @param index index of the response
+     */
+    void send(int index) {
+        publications[index].sendResponse(buffer, offsets[index], lengths[index]);
+    }
+
+    /**
+     * Forgets all deferred responses.
+     */
+    void reset() {
+        Arrays.fill(publications, 0, size, null);
+        size = 0;
+        position = 0;
+        allocatedOffset = -1;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.xxx.core.server;
+
+import org.agrona.concurrent.Agent;
+
+/**
+ * Agent doing background work of the service handler, such as eviction of outdated state, snapshots and
+ * publishing of updates, see {@link ServiceHandler#doWork()}. Handler is single threaded, so the agent is always
+ * composed with the server agent and runs right after it on the same thread.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+class HousekeepingAgent implements Agent {
+
+    private final ServiceHandler serviceHandler;
+
+    HousekeepingAgent(ServiceHandler serviceHandler) {
+        this.serviceHandler = serviceHandler;
+    }
+
+    @Override
+    public int doWork() {
+        return serviceHandler.doWork();
+    }
+
+    @Override
+    public String roleName() {
+        return "housekeeping";
+    }
+
+}
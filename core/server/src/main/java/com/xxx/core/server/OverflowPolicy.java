@@ -0,0 +1,29 @@
+package com.xxx.core.server;
+
+/**
+ * Defines how a connection reacts when its outbound queue is full, i.e. the client does not read responses
+ * fast enough.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Connection is closed, the client has to reconnect.
+     */
+    DISCONNECT,
+
+    /**
+     * The oldest queued responses are discarded to give place to the new ones. Clients waiting for the
+     * discarded responses most probably have already given up waiting for them.
+     */
+    CONFLATE,
+
+    /**
+     * When more than a half of the queue is used the server stops processing requests of the connection and
+     * responds with {@link com.xxx.core.protocol.ServerBusyResponse} instead. Remaining half of the queue is
+     * reserved for such responses.
+     */
+    BUSY
+
+}
@@ -0,0 +1,63 @@
+package com.xxx.core.server;
+
+/**
+ * Connection waiting for its publication to the client to connect. Server does not block till the publication
+ * connects, it polls pending connections on each duty cycle (see {@link #poll(long)}) and acknowledges
+ * the connection to the client once it is connected.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+class PendingConnection {
+
+    enum State {
+        PENDING,
+        CONNECTED,
+        TIMED_OUT
+    }
+
+    private final ConnectionPublication connectionPublication;
+    private final int clientId;
+    private final long correlationId;
+    private final long deadline;
+
+    /**
+     * Creates pending connection.
+     *
+     * @param connectionPublication publication to the client
+     * @param clientId client ID of the create connection command
+     * @param correlationId correlation ID of the create connection command
+     * @param deadline epoch time in ms the publication should be connected till
+     */
+    PendingConnection(ConnectionPublication connectionPublication, int clientId, long correlationId, long deadline) {
+        this.connectionPublication = connectionPublication;
+        this.clientId = clientId;
+        this.correlationId = correlationId;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Checks if the connection is established.
+     *
+     * @param now current epoch time in ms
+     * @return state of the connection, the connection is given up after the deadline
+     */
+    State poll(long now) {
+        if (connectionPublication.isConnected()) {
+            return State.CONNECTED;
+        }
+        return now > deadline ? State.TIMED_OUT : State.PENDING;
+    }
+
+    ConnectionPublication connectionPublication() {
+        return connectionPublication;
+    }
+
+    int clientId() {
+        return clientId;
+    }
+
+    long correlationId() {
+        return correlationId;
+    }
+
+}
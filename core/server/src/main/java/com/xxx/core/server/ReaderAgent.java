@@ -0,0 +1,164 @@
+package com.xxx.core.server;
+
+import com.xxx.core.protocol.Message;
+import com.xxx.core.protocol.ServerBusyResponse;
+import io.aeron.Aeron;
+import io.aeron.FragmentAssembler;
+import io.aeron.Subscription;
+import io.aeron.logbuffer.Header;
+import org.agrona.CloseHelper;
+import org.agrona.DirectBuffer;
+import org.agrona.ErrorHandler;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.OneToOneConcurrentArrayQueue;
+import org.agrona.concurrent.QueuedPipe;
+
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Agent serving read requests of the service in a separate thread.
+ * Reader has its own subscription to the stream read requests are taken on (see {@link com.xxx.core.protocol.Lanes})
+ * and takes every read request which correlation ID
+ * belongs to the reader's partition, so N readers share the read load evenly. All other messages are
+ * ignored by the reader and processed by the server thread.
+ *
+ * Connections are established and closed by the server thread only, reader learns about them through
+ * {@link #onConnection(ConnectionPublication)}. Connection failed by the reader is passed back to the server thread
+ * to be closed, the reader stops serving it right away.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+class ReaderAgent implements Agent {
+
+    private static final int FRAGMENT_LIMIT = 10;
+    private static final int NEW_CONNECTIONS_QUEUE_CAPACITY = 1024;
+
+    private final LongSupplier idGenerator;
+    private final Subscription subscription;
+    private final ServiceHandler readHandler;
+    private final int readerIndex;
+    private final int readersNumber;
+    // errors are reported and failed connections are closed by the server
+    private final ErrorHandler errorHandler;
+    private final QueuedPipe<ConnectionPublication> failedConnections;
+    // null if service time is not recorded
+    private final ServiceTimeRecorders serviceTimeRecorders;
+
+    private final OneToOneConcurrentArrayQueue<ConnectionPublication> newConnections =
+        new OneToOneConcurrentArrayQueue<>(NEW_CONNECTIONS_QUEUE_CAPACITY);
+    private final Long2ObjectHashMap<ConnectionPublication> connections = new Long2ObjectHashMap<>();
+    private final FragmentAssembler assembler = new FragmentAssembler(this::onMessage);
+    private final Consumer<ConnectionPublication> connectionsConsumer = this::addConnection;
+    private final ResponseClaim responseClaim = new ResponseClaim();
+    private final ServerBusyResponse serverBusyResponse = new ServerBusyResponse();
+
+    ReaderAgent(
+        Aeron aeron, Subscription subscription, ServiceHandler readHandler, int readerIndex, int readersNumber,
+        ErrorHandler errorHandler, QueuedPipe<ConnectionPublication> failedConnections, ServiceTimeRecorders serviceTimeRecorders) {
+
+        this.idGenerator = aeron::nextCorrelationId;
+        this.subscription = subscription;
+        this.readHandler = readHandler;
+        this.readerIndex = readerIndex;
+        this.readersNumber = readersNumber;
+        this.errorHandler = errorHandler;
+        this.failedConnections = failedConnections;
+        this.serviceTimeRecorders = serviceTimeRecorders;
+        Message.allocateMemoryForMessage(serverBusyResponse);
+    }
+
+    /**
+     * Passes new connection to the reader. Called by the server thread.
+     *
+     * @param connectionPublication established connection
+     */
+    void onConnection(ConnectionPublication connectionPublication) {
+        while (!newConnections.offer(connectionPublication)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Tells the reader to forget the connection closed by the server. Called by the server thread.
+     *
+     * @param connectionPublication closed connection
+     */
+    void onConnectionClosed(ConnectionPublication connectionPublication) {
+        // closed connections go the same way as the new ones, so the reader never sees them out of order
+        onConnection(connectionPublication);
+    }
+
+    @Override
+    public int doWork() {
+        return newConnections.drain(connectionsConsumer) + subscription.poll(assembler, FRAGMENT_LIMIT);
+    }
+
+    @Override
+    public void onClose() {
+        CloseHelper.close(subscription);
+    }
+
+    @Override
+    public String roleName() {
+        return "reader-" + readerIndex;
+    }
+
+    private void onMessage(final DirectBuffer buffer, final int offset, final int length, final Header header) {
+        final int messageType = buffer.getInt(offset + Message.TYPE_FIELD_OFFSET);
+        final long correlationId = buffer.getLong(offset + Message.CORRELATION_ID_FIELD_OFFSET);
+        if (!readHandler.isReadRequest(messageType) || Math.floorMod(correlationId, readersNumber) != readerIndex) {
+            return;
+        }
+        final long connectionId = buffer.getLong(offset + Message.CONNECTION_ID_FIELD_OFFSET);
+        final int clientId = buffer.getInt(offset + Message.CLIENT_ID_FIELD_OFFSET);
+        final ConnectionPublication publication = findConnection(connectionId);
+        if (publication != null) {
+            try {
+                if (publication.isOverloaded()) {
+                    publication.sendBusyResponse(serverBusyResponse, clientId, correlationId);
+                    return;
+                }
+                responseClaim.connection(publication);
+                final long startTime = serviceTimeRecorders == null ? 0 : System.nanoTime();
+                final Message response = readHandler.handleRequest(
+                    messageType,
+                    idGenerator,
+                    buffer, offset, length,
+                    responseClaim
+                );
+                if (serviceTimeRecorders != null) {
+                    serviceTimeRecorders.record(messageType, System.nanoTime() - startTime);
+                }
+                responseClaim.send(response, clientId, correlationId);
+            } catch (Throwable e) {
+                responseClaim.abort();
+                errorHandler.onError(e);
+                connections.remove(connectionId);
+                while (!failedConnections.offer(publication)) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private ConnectionPublication findConnection(long connectionId) {
+        ConnectionPublication publication = connections.get(connectionId);
+        if (publication == null) {
+            // connection could be published by the server after the last drain
+            newConnections.drain(connectionsConsumer);
+            publication = connections.get(connectionId);
+        }
+        return publication;
+    }
+
+    private void addConnection(ConnectionPublication connectionPublication) {
+        if (connectionPublication.isClosed()) {
+            connections.remove(connectionPublication.getConnectionId());
+        } else {
+            connections.put(connectionPublication.getConnectionId(), connectionPublication);
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.xxx.core.server;
+
+import com.xxx.core.protocol.Message;
+
+/**
+ * Provides memory for response messages. Handler asks for the memory before it starts to encode a response,
+ * so the response can be written directly to the place it is going to be sent from, e.g. Aeron log buffer.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@FunctionalInterface
+public interface ResponseAllocator {
+
+    /**
+     * Wraps the given response over memory of the given length and initializes its type.
+     * Should be called once per request, before any field of the response is written.
+     *
+     * @param response response message to wrap
+     * @param length length of the response in bytes
+     */
+    void allocate(Message response, int length);
+
+    /**
+     * Wraps the given fixed size response over memory of {@link Message#sizeInBytes()} length.
+     *
+     * @param response response message to wrap
+     */
+    default void allocate(Message response) {
+        allocate(response, response.sizeInBytes());
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.xxx.core.server;
+
+import com.xxx.core.protocol.Message;
+import io.aeron.logbuffer.BufferClaim;
+
+/**
+ * Allocates responses directly in the log buffer of the connection publication using
+ * {@link io.aeron.Publication#tryClaim}, so encoded response is sent without copying.
+ * If the claim is not possible (the publication is back pressured or response does not fit into a single frame)
+ * response is allocated in own buffer and then sent by {@link ConnectionPublication#sendResponse}.
+ *
+ * Object is not thread safe, each thread sending responses should have its own instance.
+ * Expected usage is {@link #connection} - {@link #allocate} - {@link #send}, or {@link #abort} if
+ * the response can not be completed.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+class ResponseClaim implements ResponseAllocator {
+
+    private static final int INITIAL_FALLBACK_BUFFER_CAPACITY = 1024;
+
+    private final BufferClaim bufferClaim = new BufferClaim();
+    private final BufferResponseAllocator fallbackAllocator = new BufferResponseAllocator(INITIAL_FALLBACK_BUFFER_CAPACITY);
+
+    private ConnectionPublication publication;
+    private boolean claimed;
+
+    /**
+     * Selects connection to send the next response to.
+     *
+     * @param publication connection publication
+     */
+    void connection(ConnectionPublication publication) {
+        this.publication = publication;
+        this.claimed = false;
+    }
+
+    @Override
+    public void allocate(Message response, int length) {
+        if (publication.tryClaim(length, bufferClaim)) {
+            claimed = true;
+            response.init(bufferClaim.buffer(), bufferClaim.offset());
+        } else {
+            fallbackAllocator.allocate(response, length);
+        }
+    }
+
+    /**
+     * Sends response to the selected connection, commits the claim if the response was allocated in it.
+     *
+     * @param response response to send
+     * @param clientId client ID
+     * @param correlationId request correlation ID
+     */
+    void send(Message response, int clientId, long correlationId) {
+        if (claimed) {
+            claimed = false;
+            publication.commitResponse(response, clientId, correlationId, bufferClaim);
+        } else {
+            publication.sendResponse(response, clientId, correlationId);
+        }
+    }
+
+    /**
+     * Aborts the claim if it was made, so the publication is not blocked by an uncommitted frame.
+     */
+    void abort() {
+        if (claimed) {
+            claimed = false;
+            bufferClaim.abort();
+        }
+    }
+
+}
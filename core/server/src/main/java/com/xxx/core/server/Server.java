@@ -2,34 +2,111 @@ package com.xxx.core.server;
 
 import com.xxx.core.protocol.ConnectionAckResponse;
 import com.xxx.core.protocol.CreateConnectionCommand;
+import com.xxx.core.protocol.Lanes;
 import com.xxx.core.protocol.Message;
+import com.xxx.core.protocol.ServerBusyResponse;
 import com.xxx.core.protocol.SystemMessageTypes;
 import io.aeron.Aeron;
-import io.aeron.FragmentAssembler;
+import io.aeron.ControlledFragmentAssembler;
 import io.aeron.Publication;
 import io.aeron.Subscription;
+import io.aeron.logbuffer.ControlledFragmentHandler.Action;
 import io.aeron.logbuffer.Header;
+import org.agrona.CloseHelper;
+import org.agrona.collections.ArrayListUtil;
 import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.collections.Int2ObjectHashMap;
 import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AgentInvoker;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.CompositeAgent;
 import org.agrona.concurrent.EpochClock;
 import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
 import org.agrona.concurrent.SigInt;
 import org.agrona.concurrent.SleepingMillisIdleStrategy;
+import org.agrona.concurrent.status.AtomicCounter;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static com.xxx.core.server.Configuration.PARKED_REQUESTS_BUFFER_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
 
 /**
+ * Server listens to the service stream, establishes connections with clients and passes their requests
+ * to the {@link ServiceHandler}. Server never waits for a publication to a new client to connect,
+ * pending connections are polled on each duty cycle (see {@link PendingConnection}), so established
+ * connections are served meanwhile.
+ *
+ * Clients send heartbeats (see {@link com.xxx.core.protocol.HeartbeatMessage}), connection without requests
+ * and heartbeats for {@link Configuration#CONNECTION_IDLE_TIMEOUT} or with disconnected publication is closed
+ * by the liveness sweep of the server thread, so responses are never sent to dead clients.
+ *
+ * By default all requests are handled by the single server thread. If readers number is specified,
+ * server starts that number of reader threads, each with its own read handler
+ * (see {@link ServiceHandler#newReadHandler()}). Read requests are then served by readers only,
+ * while the server thread handles connections and all requests which change service state.
+ * Server thread also gives the handler a chance to do background work on each duty cycle,
+ * see {@link ServiceHandler#doWork()} and {@link HousekeepingAgent}.
+ * Responses to requests which changes should be synced (see {@link ServiceHandler#isSyncRequired(int)}) are deferred
+ * till the end of the poll cycle, then the handler is synced once and all of them are sent.
+ *
+ * Server can take requests on several lanes (see {@link Lanes}), each lane on its own stream. On each duty cycle
+ * the query lane is polled first, then the control and the bulk lanes, each one up to its own fragment limit
+ * (see {@link Configuration#QUERY_LANE_FRAGMENT_LIMIT}), so queries don't wait behind reassembled bulk requests.
+ * Readers take read requests from the query lane only, read requests sent to other lanes are served by the server thread.
+ *
+ * Handler can process a long request across several duty cycles, see {@link ServiceHandler#isRequestPending()}.
+ * Server resumes the pending request once per duty cycle and keeps serving read requests meanwhile,
+ * other requests are parked (copied) and handled in order once the pending one is finished, so read requests behind
+ * them in the same stream are not blocked. Requests which do not fit {@link Configuration#PARKED_REQUESTS_BUFFER_LENGTH}
+ * are left in their streams till the parked ones are handled.
+ *
+ * Server counts requests by message type, errors, connections and outbound events in {@link ServerCounters},
+ * which can be mapped to a file and read by another process.
+ *
+ * If {@link Configuration#SERVICE_TIME_LOG_FILE} is defined, service time of the handler is recorded per message type
+ * by the server thread and each reader (see {@link ServiceTimeRecorders}), so server processing time can be told apart
+ * from the transport time. Interval histograms are written to the file by {@link ServiceTimeLogAgent}.
+ *
+ * Server is an {@link Agent}, it is composed with the housekeeping agent and, depending on the {@link ThreadingMode},
+ * with the readers. {@link #start()} runs the composite on the calling thread till the server is closed,
+ * in {@link ThreadingMode#INVOKER} mode the owner invokes it from its own duty loop instead, see {@link #invoker()}.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
-public class Server implements AutoCloseable {
+public class Server implements Agent, AutoCloseable {
 
     private static final long CLIENT_CONNECTION_TIMEOUT = 1000;
+    private static final long LIVENESS_SWEEP_INTERVAL = 1000;
+    private static final long SERVICE_TIME_LOG_IDLE_MS = 1;
+
+    private static final int[] LANES_POLL_ORDER = {Lanes.QUERY_LANE, Lanes.CONTROL_LANE, Lanes.BULK_LANE};
+    private static final int[] LANE_FRAGMENT_LIMITS = new int[Lanes.MAX_LANES_NUMBER];
 
-    private static final int FRAGMENT_LIMIT = 10;
-    private static final IdleStrategy WAIT_PUB_SUB_IDLE_STRATEGY = new SleepingMillisIdleStrategy(10);
+    static {
+        LANE_FRAGMENT_LIMITS[Lanes.CONTROL_LANE] = Configuration.CONTROL_LANE_FRAGMENT_LIMIT;
+        LANE_FRAGMENT_LIMITS[Lanes.QUERY_LANE] = Configuration.QUERY_LANE_FRAGMENT_LIMIT;
+        LANE_FRAGMENT_LIMITS[Lanes.BULK_LANE] = Configuration.BULK_LANE_FRAGMENT_LIMIT;
+    }
+
+    private static final int OUTBOUND_DRAIN_LIMIT = 10;
+    private static final int INITIAL_DEFERRED_RESPONSES_CAPACITY = 4096;
+    private static final int INITIAL_PARKED_REQUESTS_CAPACITY = 4096;
+    private static final int FAILED_CONNECTIONS_QUEUE_CAPACITY = 1024;
 
     private final CreateConnectionCommand createConnectionCommand = new CreateConnectionCommand();
     private final ConnectionAckResponse connectionAckResponse = new ConnectionAckResponse();
+    private final ServerBusyResponse serverBusyResponse = new ServerBusyResponse();
 
     private final Aeron aeron;
     private final EpochClock epochClock;
@@ -39,99 +116,587 @@ public class Server implements AutoCloseable {
     private final int serverStreamId;
 
     private final Long2ObjectHashMap<ConnectionPublication> connections = new Long2ObjectHashMap<>();
-    private final FragmentAssembler assembler = new FragmentAssembler(this::onMessage);
+    private final ArrayList<PendingConnection> pendingConnections = new ArrayList<>();
+    // connections to close after the iteration over the connections map
+    private final ArrayList<ConnectionPublication> closingConnections = new ArrayList<>();
+    // connections failed by the readers, the server thread closes them as the owner of the connections
+    private final ManyToOneConcurrentArrayQueue<ConnectionPublication> failedReaderConnections =
+        new ManyToOneConcurrentArrayQueue<>(FAILED_CONNECTIONS_QUEUE_CAPACITY);
+    private final Consumer<ConnectionPublication> closingConnectionsConsumer = closingConnections::add;
+    private final int lanesNumber;
+    private final int readersLane;
+    private final Subscription[] laneSubscriptions;
+    private final ControlledFragmentAssembler[] laneAssemblers;
     private final AtomicBoolean running = new AtomicBoolean(true);
+    private final ResponseClaim responseClaim = new ResponseClaim();
+    private final DeferredResponses deferredResponses = new DeferredResponses(INITIAL_DEFERRED_RESPONSES_CAPACITY);
+    // requests taken while another one is pending, each one is prefixed with its length
+    private final ExpandableArrayBuffer parkedRequests = new ExpandableArrayBuffer(INITIAL_PARKED_REQUESTS_CAPACITY);
+    private int parkedRequestsOffset;
+    private int parkedRequestsLength;
     private final ServiceHandler serviceHandler;
+    private final HousekeepingAgent housekeepingAgent;
+    private final LongSupplier idGenerator;
+    private final ThreadingMode threadingMode;
+    private AgentInvoker invoker;
+
+    private final ServerCounters counters;
+    // allocated by the server thread when the message type is seen the first time
+    private final Int2ObjectHashMap<AtomicCounter> requestCounters = new Int2ObjectHashMap<>();
+
+    // null if service time is not recorded
+    private final ServiceTimeLogAgent serviceTimeLogAgent;
+    private final ServiceTimeRecorders serviceTimeRecorders;
+    private AgentRunner serviceTimeLogRunner;
+
+    // epoch time read once per duty cycle
+    private long dutyCycleTime;
+    private long nextLivenessSweepTime;
+
+    // request the handler has not finished yet, see ServiceHandler#isRequestPending()
+    private ConnectionPublication pendingPublication;
+    private int pendingMessageType;
+    private int pendingClientId;
+    private long pendingCorrelationId;
+    // time the handler has spent on the pending request so far, recorded once the response is produced
+    private long pendingServiceTime;
+
+    private final int readersNumber;
+    private final Supplier<IdleStrategy> readerIdleStrategySupplier;
+    private final ReaderAgent[] readers;
+    private final AgentRunner[] readerRunners;
 
     public Server(EpochClock epochClock, Aeron aeron, String serverChannel, int serverStreamId,
                   IdleStrategy serverIdleStrategy, ServiceHandler serviceHandler) {
+        this(epochClock, aeron, serverChannel, serverStreamId, serverIdleStrategy, serviceHandler, 0, null);
+    }
+
+    public Server(EpochClock epochClock, Aeron aeron, String serverChannel, int serverStreamId,
+                  IdleStrategy serverIdleStrategy, ServiceHandler serviceHandler,
+                  int readersNumber, Supplier<IdleStrategy> readerIdleStrategySupplier) {
+        this(epochClock, aeron, serverChannel, serverStreamId, serverIdleStrategy, serviceHandler,
+            readersNumber, readerIdleStrategySupplier, 1);
+    }
+
+    public Server(EpochClock epochClock, Aeron aeron, String serverChannel, int serverStreamId,
+                  IdleStrategy serverIdleStrategy, ServiceHandler serviceHandler,
+                  int readersNumber, Supplier<IdleStrategy> readerIdleStrategySupplier, int lanesNumber) {
+        this(epochClock, aeron, serverChannel, serverStreamId, serverIdleStrategy, serviceHandler,
+            readersNumber, readerIdleStrategySupplier, lanesNumber, Configuration.THREADING_MODE);
+    }
+
+    public Server(EpochClock epochClock, Aeron aeron, String serverChannel, int serverStreamId,
+                  IdleStrategy serverIdleStrategy, ServiceHandler serviceHandler,
+                  int readersNumber, Supplier<IdleStrategy> readerIdleStrategySupplier, int lanesNumber,
+                  ThreadingMode threadingMode) {
+        this(epochClock, aeron, serverChannel, serverStreamId, serverIdleStrategy, serviceHandler,
+            readersNumber, readerIdleStrategySupplier, lanesNumber, threadingMode, new ServerCounters());
+    }
+
+    /**
+     * Creates server which serves read requests by the given number of reader threads.
+     *
+     * @param epochClock epoch clock
+     * @param aeron aeron client
+     * @param serverChannel channel to listen requests on
+     * @param serverStreamId stream to listen requests on
+     * @param serverIdleStrategy idle strategy for the server thread
+     * @param serviceHandler service handler
+     * @param readersNumber number of reader threads, 0 means all requests are served by the server thread
+     * @param readerIdleStrategySupplier supplies idle strategy for each reader thread, used in DEDICATED mode only
+     * @param lanesNumber number of lanes to take requests on, 1 means all requests are taken on the server stream
+     * @param threadingMode defines how the server agents are mapped to threads
+     * @param counters counters to update, can be shared with the service handler
+     */
+    public Server(EpochClock epochClock, Aeron aeron, String serverChannel, int serverStreamId,
+                  IdleStrategy serverIdleStrategy, ServiceHandler serviceHandler,
+                  int readersNumber, Supplier<IdleStrategy> readerIdleStrategySupplier, int lanesNumber,
+                  ThreadingMode threadingMode, ServerCounters counters) {
+        this(epochClock, aeron, serverChannel, serverStreamId, serverIdleStrategy, serviceHandler,
+            readersNumber, readerIdleStrategySupplier, lanesNumber, threadingMode, counters,
+            Configuration.SERVICE_TIME_LOG_FILE == null ? null : new File(Configuration.SERVICE_TIME_LOG_FILE));
+    }
+
+    Server(EpochClock epochClock, Aeron aeron, String serverChannel, int serverStreamId,
+           IdleStrategy serverIdleStrategy, ServiceHandler serviceHandler,
+           int readersNumber, Supplier<IdleStrategy> readerIdleStrategySupplier, int lanesNumber,
+           ThreadingMode threadingMode, ServerCounters counters, File serviceTimeLogFile) {
+        if (readersNumber < 0) {
+            throw new IllegalArgumentException("Readers number can not be negative: " + readersNumber);
+        }
+        this.lanesNumber = Lanes.checkLanesNumber(lanesNumber);
+        this.readersLane = lanesNumber > Lanes.QUERY_LANE ? Lanes.QUERY_LANE : Lanes.CONTROL_LANE;
+        this.laneSubscriptions = new Subscription[lanesNumber];
+        this.laneAssemblers = new ControlledFragmentAssembler[lanesNumber];
+        for (int lane = 0; lane < lanesNumber; lane++) {
+            final int messagesLane = lane;
+            laneAssemblers[lane] = new ControlledFragmentAssembler(
+                (buffer, offset, length, header) -> onMessage(buffer, offset, length, header, messagesLane)
+            );
+        }
         this.epochClock = epochClock;
         this.aeron = aeron;
         this.serverChannel = serverChannel;
         this.serverStreamId = serverStreamId;
         this.serverIdleStrategy = serverIdleStrategy;
         this.serviceHandler = serviceHandler;
+        this.housekeepingAgent = new HousekeepingAgent(serviceHandler);
+        this.threadingMode = threadingMode;
+        this.counters = counters;
+        this.serviceTimeLogAgent = serviceTimeLogFile == null ? null :
+            new ServiceTimeLogAgent(serviceTimeLogFile, Configuration.SERVICE_TIME_LOG_INTERVAL, epochClock);
+        this.serviceTimeRecorders = serviceTimeLogAgent == null ? null : new ServiceTimeRecorders(roleName(), serviceTimeLogAgent);
+        this.idGenerator = aeron::nextCorrelationId;
+        this.readersNumber = readersNumber;
+        this.readerIdleStrategySupplier = readerIdleStrategySupplier;
+        this.readers = new ReaderAgent[readersNumber];
+        this.readerRunners = new AgentRunner[readersNumber];
         Message.allocateMemoryForMessage(connectionAckResponse);
+        Message.allocateMemoryForMessage(serverBusyResponse);
     }
 
+    /**
+     * Starts the server and runs its agents on the calling thread with the server idle strategy till the server
+     * is closed. Readers get their own threads in {@link ThreadingMode#DEDICATED} mode.
+     */
     public void start() {
+        if (threadingMode == ThreadingMode.INVOKER) {
+            throw new IllegalStateException("Server in INVOKER threading mode is run by its owner, see invoker()");
+        }
         SigInt.register(this::close);
+        final AgentInvoker agentInvoker = invoker();
         serverIdleStrategy.reset();
-        try (final Subscription subscription = aeron.addSubscription(serverChannel, serverStreamId)) {
+        try {
             while (running.get()) {
-                serverIdleStrategy.idle(subscription.poll(assembler, FRAGMENT_LIMIT));
+                serverIdleStrategy.idle(agentInvoker.invoke());
+            }
+        } finally {
+            agentInvoker.close();
+        }
+    }
+
+    /**
+     * Returns invoker of the server agents, agents are created and started on the first call.
+     * In {@link ThreadingMode#INVOKER} mode the owner calls {@link AgentInvoker#invoke()} from its own duty loop
+     * and closes the server, when it's not needed anymore.
+     *
+     * @return invoker of the server agents
+     */
+    public AgentInvoker invoker() {
+        if (invoker == null) {
+            invoker = new AgentInvoker(this::onError, null, new CompositeAgent(createAgents()));
+            invoker.start();
+        }
+        return invoker;
+    }
+
+    @Override
+    public int doWork() {
+        dutyCycleTime = epochClock.time();
+        final int fragmentsRead = pollLanes();
+        final int requestsResumed = resumePendingRequest() + replayParkedRequests();
+        sendDeferredResponses();
+        final int workCount = fragmentsRead + requestsResumed + pollPendingConnections() + drainOutboundQueues();
+        return workCount + closeFailedReaderConnections() + sweepIdleConnections();
+    }
+
+    @Override
+    public void onClose() {
+        CloseHelper.closeAll(readerRunners);
+        CloseHelper.close(serviceTimeLogRunner);
+        CloseHelper.closeAll(laneSubscriptions);
+    }
+
+    @Override
+    public String roleName() {
+        return "server";
+    }
+
+    private List<Agent> createAgents() {
+        for (int lane = 0; lane < lanesNumber; lane++) {
+            laneSubscriptions[lane] = aeron.addSubscription(serverChannel, Lanes.laneStreamId(serverStreamId, lane));
+        }
+        createReaders();
+        final List<Agent> agents = new ArrayList<>();
+        agents.add(this);
+        agents.add(housekeepingAgent);
+        if (threadingMode == ThreadingMode.DEDICATED) {
+            startReaders();
+        } else {
+            Collections.addAll(agents, readers);
+        }
+        if (serviceTimeLogAgent != null) {
+            if (threadingMode == ThreadingMode.DEDICATED) {
+                // the agent has nothing to do between log intervals, so it doesn't spin
+                serviceTimeLogRunner = new AgentRunner(
+                    new SleepingMillisIdleStrategy(SERVICE_TIME_LOG_IDLE_MS), this::onError, null, serviceTimeLogAgent
+                );
+                AgentRunner.startOnThread(serviceTimeLogRunner);
+            } else {
+                agents.add(serviceTimeLogAgent);
             }
         }
+        return agents;
+    }
+
+    private int pollLanes() {
+        int fragmentsRead = 0;
+        for (final int lane : LANES_POLL_ORDER) {
+            if (lane < lanesNumber) {
+                fragmentsRead += laneSubscriptions[lane].controlledPoll(laneAssemblers[lane], LANE_FRAGMENT_LIMITS[lane]);
+            }
+        }
+        return fragmentsRead;
+    }
+
+    private void createReaders() {
+        for (int i = 0; i < readersNumber; i++) {
+            // subscriptions are created before any client is connected, so readers do not miss any request
+            final Subscription subscription = aeron.addSubscription(serverChannel, Lanes.laneStreamId(serverStreamId, readersLane));
+            readers[i] = new ReaderAgent(
+                aeron, subscription, serviceHandler.newReadHandler(), i, readersNumber, this::onError, failedReaderConnections,
+                serviceTimeLogAgent == null ? null : new ServiceTimeRecorders("reader-" + i, serviceTimeLogAgent)
+            );
+        }
     }
 
-    private void onMessage(final DirectBuffer buffer, final int offset, final int length, final Header header) {
+    private void startReaders() {
+        for (int i = 0; i < readersNumber; i++) {
+            readerRunners[i] = new AgentRunner(
+                readerIdleStrategySupplier.get(), this::onError, null, readers[i]
+            );
+            AgentRunner.startOnThread(readerRunners[i]);
+        }
+    }
+
+    private Action onMessage(final DirectBuffer buffer, final int offset, final int length, final Header header, final int lane) {
         final int messageType = buffer.getInt(offset + Message.TYPE_FIELD_OFFSET);
         if (messageType == SystemMessageTypes.CREATE_CONNECTION_MESSAGE_TYPE) {
             createConnectionCommand.wrapForRead(buffer, offset);
             onConnect(createConnectionCommand);
-        } else {
-            final long connectionId = buffer.getLong(offset + Message.CONNECTION_ID_FIELD_OFFSET);
-            final int clientId = buffer.getInt(offset + Message.CLIENT_ID_FIELD_OFFSET);
-            final long correlationId = buffer.getLong(offset + Message.CORRELATION_ID_FIELD_OFFSET);
-            final ConnectionPublication publication = connections.get(connectionId);
+        } else if (messageType == SystemMessageTypes.HEARTBEAT_MESSAGE_TYPE) {
+            final ConnectionPublication publication = connections.get(buffer.getLong(offset + Message.CONNECTION_ID_FIELD_OFFSET));
             if (publication != null) {
-                try {
-                    final Message response = serviceHandler.handleRequest(
-                        messageType,
-                        aeron::nextCorrelationId,
-                        buffer, offset, length
-                    );
-                    publication.sendResponse(response, clientId, correlationId);
-                } catch (Throwable e) {
-                    // at the moment do not try to understand the problem, just close client publication.
-                    // not very graceful solution, but fast =)
-                    e.printStackTrace();
-                    publication.close();
-                    connections.remove(connectionId);
+                publication.lastActivityTime(dutyCycleTime);
+            }
+        } else if (readersNumber > 0 && lane == readersLane && serviceHandler.isReadRequest(messageType)) {
+            // served by readers, the server thread only counts it and keeps the connection alive
+            requestsCounter(messageType).incrementOrdered();
+            final ConnectionPublication publication = connections.get(buffer.getLong(offset + Message.CONNECTION_ID_FIELD_OFFSET));
+            if (publication != null) {
+                publication.lastActivityTime(dutyCycleTime);
+            }
+        } else {
+            if ((pendingPublication != null || parkedRequestsLength > 0) && !serviceHandler.isReadRequest(messageType)) {
+                return parkRequest(buffer, offset, length);
+            }
+            onRequest(buffer, offset, length, messageType);
+        }
+        return Action.CONTINUE;
+    }
+
+    private void onRequest(final DirectBuffer buffer, final int offset, final int length, final int messageType) {
+        requestsCounter(messageType).incrementOrdered();
+        final long connectionId = buffer.getLong(offset + Message.CONNECTION_ID_FIELD_OFFSET);
+        final int clientId = buffer.getInt(offset + Message.CLIENT_ID_FIELD_OFFSET);
+        final long correlationId = buffer.getLong(offset + Message.CORRELATION_ID_FIELD_OFFSET);
+        final ConnectionPublication publication = connections.get(connectionId);
+        if (publication != null) {
+            publication.lastActivityTime(dutyCycleTime);
+            try {
+                if (publication.isOverloaded()) {
+                    publication.sendBusyResponse(serverBusyResponse, clientId, correlationId);
+                    return;
                 }
+                if (serviceHandler.isSyncRequired(messageType)) {
+                    deferredResponses.connection(publication);
+                    final Message response = handleRequest(messageType, buffer, offset, length, deferredResponses);
+                    if (response == null) {
+                        pendingRequest(publication, messageType, clientId, correlationId);
+                    } else {
+                        deferredResponses.add(response, clientId, correlationId);
+                    }
+                    return;
+                }
+                responseClaim.connection(publication);
+                final Message response = handleRequest(messageType, buffer, offset, length, responseClaim);
+                if (response == null) {
+                    pendingRequest(publication, messageType, clientId, correlationId);
+                } else {
+                    responseClaim.send(response, clientId, correlationId);
+                }
+            } catch (Throwable e) {
+                responseClaim.abort();
+                deferredResponses.abort();
+                // at the moment do not try to understand the problem, just close client publication.
+                // not very graceful solution, but fast =)
+                onError(e);
+                closeConnection(publication);
             }
         }
     }
 
-    private void onConnect(CreateConnectionCommand createConnectionCommand) {
-        final ConnectionPublication connectionPublication = createConnection(
-            createConnectionCommand.clientChannel(), createConnectionCommand.clientStreamId()
-        );
-        if (connectionPublication != null) {
+    /**
+     * Copies the request taken while another one is pending, so the requests behind it in the stream are not blocked.
+     */
+    private Action parkRequest(final DirectBuffer buffer, final int offset, final int length) {
+        if (parkedRequestsLength + SIZE_OF_INT + length > PARKED_REQUESTS_BUFFER_LENGTH) {
+            // the request will be polled again once the parked ones are replayed
+            return Action.ABORT;
+        }
+        parkedRequests.putInt(parkedRequestsLength, length);
+        parkedRequests.putBytes(parkedRequestsLength + SIZE_OF_INT, buffer, offset, length);
+        parkedRequestsLength += SIZE_OF_INT + length;
+        return Action.CONTINUE;
+    }
+
+    /**
+     * Handles the parked requests in order till the handler takes a pending request again.
+     */
+    private int replayParkedRequests() {
+        int workCount = 0;
+        while (pendingPublication == null && parkedRequestsOffset < parkedRequestsLength) {
+            final int length = parkedRequests.getInt(parkedRequestsOffset);
+            final int offset = parkedRequestsOffset + SIZE_OF_INT;
+            parkedRequestsOffset = offset + length;
+            onRequest(parkedRequests, offset, length, parkedRequests.getInt(offset + Message.TYPE_FIELD_OFFSET));
+            workCount++;
+        }
+        if (parkedRequestsOffset == parkedRequestsLength) {
+            parkedRequestsOffset = 0;
+            parkedRequestsLength = 0;
+        }
+        return workCount;
+    }
+
+    private Message handleRequest(
+        int messageType, DirectBuffer buffer, int offset, int length, ResponseAllocator responseAllocator) {
+
+        if (serviceTimeRecorders == null) {
+            return serviceHandler.handleRequest(messageType, idGenerator, buffer, offset, length, responseAllocator);
+        }
+        final long startTime = System.nanoTime();
+        final Message response = serviceHandler.handleRequest(messageType, idGenerator, buffer, offset, length, responseAllocator);
+        final long serviceTime = System.nanoTime() - startTime;
+        if (response == null) {
+            // the request is pending, its time is summed up with the time of resuming it
+            pendingServiceTime = serviceTime;
+        } else {
+            serviceTimeRecorders.record(messageType, serviceTime);
+        }
+        return response;
+    }
+
+    private Message resumeRequest(ResponseAllocator responseAllocator) {
+        if (serviceTimeRecorders == null) {
+            return serviceHandler.resumeRequest(responseAllocator);
+        }
+        final long startTime = System.nanoTime();
+        final Message response = serviceHandler.resumeRequest(responseAllocator);
+        pendingServiceTime += System.nanoTime() - startTime;
+        if (response != null) {
+            serviceTimeRecorders.record(pendingMessageType, pendingServiceTime);
+        }
+        return response;
+    }
+
+    private AtomicCounter requestsCounter(int messageType) {
+        AtomicCounter counter = requestCounters.get(messageType);
+        if (counter == null) {
+            counter = counters.newRequestsCounter(messageType);
+            requestCounters.put(messageType, counter);
+        }
+        return counter;
+    }
+
+    // readers report their errors here too, so it's thread safe
+    private void onError(Throwable e) {
+        counters.errors().increment();
+        e.printStackTrace();
+    }
+
+    private void pendingRequest(ConnectionPublication publication, int messageType, int clientId, long correlationId) {
+        pendingPublication = publication;
+        pendingMessageType = messageType;
+        pendingClientId = clientId;
+        pendingCorrelationId = correlationId;
+    }
+
+    /**
+     * Gives the handler a chance to continue the pending request and sends the response once it's finished.
+     */
+    private int resumePendingRequest() {
+        final ConnectionPublication publication = pendingPublication;
+        if (publication == null) {
+            return 0;
+        }
+        pendingPublication = null;
+        try {
+            final Message response;
+            if (serviceHandler.isSyncRequired(pendingMessageType)) {
+                deferredResponses.connection(publication);
+                response = resumeRequest(deferredResponses);
+                if (response != null) {
+                    deferredResponses.add(response, pendingClientId, pendingCorrelationId);
+                }
+            } else {
+                responseClaim.connection(publication);
+                response = resumeRequest(responseClaim);
+                if (response != null) {
+                    responseClaim.send(response, pendingClientId, pendingCorrelationId);
+                }
+            }
+            if (response == null) {
+                pendingPublication = publication;
+            }
+        } catch (Throwable e) {
+            responseClaim.abort();
+            deferredResponses.abort();
+            onError(e);
+            closeConnection(publication);
+        }
+        return 1;
+    }
+
+    /**
+     * Syncs changes of the requests handled in the poll cycle and sends responses to them.
+     */
+    private void sendDeferredResponses() {
+        if (deferredResponses.size() == 0) {
+            return;
+        }
+        serviceHandler.sync();
+        for (int index = 0; index < deferredResponses.size(); index++) {
+            final ConnectionPublication publication = deferredResponses.publication(index);
             try {
-                connectionPublication.sendResponse(
-                    connectionAckResponse,
-                    createConnectionCommand.clientId(),
-                    createConnectionCommand.correlationId()
-                );
-                connections.put(connectionPublication.getConnectionId(), connectionPublication);
+                deferredResponses.send(index);
             } catch (Throwable e) {
-                e.printStackTrace();
-                connectionPublication.close();
+                onError(e);
+                closeConnection(publication);
             }
         }
+        deferredResponses.reset();
     }
 
-    private ConnectionPublication createConnection(String clientChannel, int clientStreamId) {
+    private int drainOutboundQueues() {
+        int workCount = 0;
+        for (final ConnectionPublication publication : connections.values()) {
+            try {
+                workCount += publication.drainOutbound(OUTBOUND_DRAIN_LIMIT);
+            } catch (Throwable e) {
+                onError(e);
+                closingConnections.add(publication);
+            }
+        }
+        closeConnections();
+        return workCount;
+    }
+
+    private void onConnect(CreateConnectionCommand createConnectionCommand) {
         final long connectionId = aeron.nextCorrelationId();
-        final Publication publication = createClientPublication(clientChannel, clientStreamId, CLIENT_CONNECTION_TIMEOUT);
-        return publication != null ? new ConnectionPublication(connectionId, publication) : null;
-    }
-
-    private Publication createClientPublication(String clientChannel, int streamId, long timeout) {
-        final Publication publication = aeron.addPublication(clientChannel, streamId);
-        final long startTime = epochClock.time();
-        if (!publication.isConnected()) {
-            WAIT_PUB_SUB_IDLE_STRATEGY.reset();
-            while (!publication.isConnected()) {
-                WAIT_PUB_SUB_IDLE_STRATEGY.idle();
-                if (epochClock.time() - startTime > timeout) {
-                    publication.close();
-                    return null;
+        final Publication publication = createClientPublication(
+            createConnectionCommand.clientChannel(), createConnectionCommand.clientStreamId()
+        );
+        pendingConnections.add(new PendingConnection(
+            new ConnectionPublication(connectionId, publication, counters),
+            createConnectionCommand.clientId(),
+            createConnectionCommand.correlationId(),
+            epochClock.time() + CLIENT_CONNECTION_TIMEOUT
+        ));
+    }
+
+    private int pollPendingConnections() {
+        if (pendingConnections.isEmpty()) {
+            return 0;
+        }
+        final long now = dutyCycleTime;
+        int workCount = 0;
+        for (int index = pendingConnections.size() - 1; index >= 0; index--) {
+            final PendingConnection pendingConnection = pendingConnections.get(index);
+            final PendingConnection.State state = pendingConnection.poll(now);
+            if (state != PendingConnection.State.PENDING) {
+                ArrayListUtil.fastUnorderedRemove(pendingConnections, index);
+                if (state == PendingConnection.State.CONNECTED) {
+                    establishConnection(pendingConnection);
+                } else {
+                    pendingConnection.connectionPublication().close();
                 }
+                workCount++;
             }
         }
-        return publication;
+        return workCount;
+    }
+
+    private void establishConnection(PendingConnection pendingConnection) {
+        final ConnectionPublication connectionPublication = pendingConnection.connectionPublication();
+        try {
+            // readers should know about the connection before the client gets the ack and starts to send requests
+            for (final ReaderAgent reader : readers) {
+                reader.onConnection(connectionPublication);
+            }
+            connectionPublication.sendResponse(
+                connectionAckResponse,
+                pendingConnection.clientId(),
+                pendingConnection.correlationId()
+            );
+            connectionPublication.lastActivityTime(dutyCycleTime);
+            connections.put(connectionPublication.getConnectionId(), connectionPublication);
+            counters.activeConnections().setOrdered(connections.size());
+        } catch (Throwable e) {
+            onError(e);
+            connectionPublication.close();
+        }
+    }
+
+    /**
+     * Closes connections which clients are gone, so they don't take resources and responses are not sent to them.
+     */
+    private int sweepIdleConnections() {
+        if (dutyCycleTime < nextLivenessSweepTime) {
+            return 0;
+        }
+        nextLivenessSweepTime = dutyCycleTime + LIVENESS_SWEEP_INTERVAL;
+        for (final ConnectionPublication publication : connections.values()) {
+            if (!publication.isConnected() || dutyCycleTime - publication.lastActivityTime() > Configuration.CONNECTION_IDLE_TIMEOUT) {
+                closingConnections.add(publication);
+            }
+        }
+        return closeConnections();
+    }
+
+    private int closeFailedReaderConnections() {
+        failedReaderConnections.drain(closingConnectionsConsumer);
+        return closeConnections();
+    }
+
+    private int closeConnections() {
+        final int closedNumber = closingConnections.size();
+        for (int index = 0; index < closedNumber; index++) {
+            closeConnection(closingConnections.get(index));
+        }
+        closingConnections.clear();
+        return closedNumber;
+    }
+
+    /**
+     * Closes the connection and lets the readers and the service handler forget about it.
+     */
+    private void closeConnection(ConnectionPublication publication) {
+        publication.close();
+        if (connections.remove(publication.getConnectionId()) == null) {
+            return;
+        }
+        for (final ReaderAgent reader : readers) {
+            reader.onConnectionClosed(publication);
+        }
+        serviceHandler.onConnectionClosed(publication.getConnectionId());
+        counters.activeConnections().setOrdered(connections.size());
+    }
+
+    private Publication createClientPublication(String clientChannel, int streamId) {
+        // without readers the server thread is the only one writing to the client, so it can own the publication
+        return readersNumber == 0 ?
+            aeron.addExclusivePublication(clientChannel, streamId) : aeron.addPublication(clientChannel, streamId);
     }
 
     @Override
@@ -140,5 +705,11 @@ public class Server implements AutoCloseable {
         for (ConnectionPublication publication : connections.values()) {
             publication.close();
         }
+        for (PendingConnection pendingConnection : pendingConnections) {
+            pendingConnection.connectionPublication().close();
+        }
+        if (threadingMode == ThreadingMode.INVOKER) {
+            CloseHelper.close(invoker);
+        }
     }
 }
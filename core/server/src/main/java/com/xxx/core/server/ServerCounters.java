@@ -0,0 +1,185 @@
+package com.xxx.core.server;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersManager;
+import org.agrona.concurrent.status.CountersReader;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import static com.xxx.core.server.Configuration.COUNTERS_VALUES_BUFFER_LENGTH;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+import static org.agrona.concurrent.status.CountersReader.COUNTER_LENGTH;
+import static org.agrona.concurrent.status.CountersReader.METADATA_LENGTH;
+
+/**
+ * Lock free counters of the server kept in Agrona {@link CountersManager} buffers. Counters can be mapped to a file
+ * with {@link #create(File)}, then another process can read them with {@link #mapForRead(File)} without any
+ * coordination with the server, like Aeron tools read the CnC file of the media driver.
+ *
+ * File layout:
+ * <pre>
+ *   header (one cache line): layout version, metadata buffer length, values buffer length, start timestamp
+ *   metadata buffer:         {@link CountersReader#METADATA_LENGTH} per counter
+ *   values buffer:           {@link CountersReader#COUNTER_LENGTH} per counter
+ * </pre>
+ *
+ * Server counters are allocated up front, counters of requests by message type are allocated by the server thread
+ * when the type is seen the first time. Service handlers can allocate own counters with {@link #newCounter(String)}
+ * before the server is started. Counters updated by several threads are incremented atomically, all others
+ * are updated with ordered writes by their single writer.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ServerCounters implements AutoCloseable {
+
+    static final int LAYOUT_VERSION = 1;
+
+    static final int LAYOUT_VERSION_FIELD_OFFSET = 0;
+    static final int METADATA_LENGTH_FIELD_OFFSET = LAYOUT_VERSION_FIELD_OFFSET + SIZE_OF_INT;
+    static final int VALUES_LENGTH_FIELD_OFFSET = METADATA_LENGTH_FIELD_OFFSET + SIZE_OF_INT;
+    static final int START_TIMESTAMP_FIELD_OFFSET = VALUES_LENGTH_FIELD_OFFSET + SIZE_OF_INT;
+    static final int HEADER_SIZE = CACHE_LINE_LENGTH;
+
+    public static final int SERVER_COUNTER_TYPE_ID = 1;
+    public static final int REQUESTS_COUNTER_TYPE_ID = 2;
+    public static final int SERVICE_COUNTER_TYPE_ID = 3;
+
+    // null if counters are kept in memory only
+    private final MappedByteBuffer mappedBuffer;
+    private final CountersManager countersManager;
+
+    private final AtomicCounter errors;
+    private final AtomicCounter activeConnections;
+    private final AtomicCounter backPressureEvents;
+    private final AtomicCounter droppedResponses;
+    private final AtomicCounter busyResponses;
+
+    /**
+     * Creates counters kept in memory only.
+     */
+    public ServerCounters() {
+        this(null, new UnsafeBuffer(allocateDirectAligned(fileLength(COUNTERS_VALUES_BUFFER_LENGTH), CACHE_LINE_LENGTH)));
+    }
+
+    private ServerCounters(MappedByteBuffer mappedBuffer, AtomicBuffer buffer) {
+        this.mappedBuffer = mappedBuffer;
+        final int valuesLength = COUNTERS_VALUES_BUFFER_LENGTH;
+        final int metadataLength = metadataLength(valuesLength);
+        buffer.putInt(METADATA_LENGTH_FIELD_OFFSET, metadataLength);
+        buffer.putInt(VALUES_LENGTH_FIELD_OFFSET, valuesLength);
+        buffer.putLong(START_TIMESTAMP_FIELD_OFFSET, System.currentTimeMillis());
+        this.countersManager = new CountersManager(
+            new UnsafeBuffer(buffer, HEADER_SIZE, metadataLength),
+            new UnsafeBuffer(buffer, HEADER_SIZE + metadataLength, valuesLength),
+            US_ASCII
+        );
+        this.errors = newServerCounter("errors");
+        this.activeConnections = newServerCounter("active connections");
+        this.backPressureEvents = newServerCounter("back pressure events");
+        this.droppedResponses = newServerCounter("dropped responses");
+        this.busyResponses = newServerCounter("busy responses");
+        // readers check the version last, so they never see the buffers before they are initialized
+        buffer.putIntVolatile(LAYOUT_VERSION_FIELD_OFFSET, LAYOUT_VERSION);
+    }
+
+    /**
+     * Creates counters in a new memory mapped file, existing file is replaced.
+     *
+     * @param file file to map counters to
+     * @return counters mapped to the file
+     */
+    public static ServerCounters create(File file) {
+        IoUtil.deleteIfExists(file);
+        final MappedByteBuffer mappedBuffer = IoUtil.mapNewFile(file, fileLength(COUNTERS_VALUES_BUFFER_LENGTH));
+        return new ServerCounters(mappedBuffer, new UnsafeBuffer(mappedBuffer));
+    }
+
+    /**
+     * Maps counters file created by the server for read. File stays mapped till the end of the process.
+     *
+     * @param file counters file
+     * @return reader of the counters
+     */
+    public static CountersReader mapForRead(File file) {
+        final AtomicBuffer buffer = new UnsafeBuffer(IoUtil.mapExistingFile(file, "server counters"));
+        final int layoutVersion = buffer.getIntVolatile(LAYOUT_VERSION_FIELD_OFFSET);
+        if (layoutVersion != LAYOUT_VERSION) {
+            throw new IllegalStateException("Unexpected layout version " + layoutVersion + " of the counters file: " + file);
+        }
+        final int metadataLength = buffer.getInt(METADATA_LENGTH_FIELD_OFFSET);
+        final int valuesLength = buffer.getInt(VALUES_LENGTH_FIELD_OFFSET);
+        return new CountersReader(
+            new UnsafeBuffer(buffer, HEADER_SIZE, metadataLength),
+            new UnsafeBuffer(buffer, HEADER_SIZE + metadataLength, valuesLength),
+            US_ASCII
+        );
+    }
+
+    /**
+     * Allocates a counter of the service. Should be called before the server is started.
+     *
+     * @param label counter label
+     * @return allocated counter
+     */
+    public AtomicCounter newCounter(String label) {
+        return countersManager.newCounter(label, SERVICE_COUNTER_TYPE_ID);
+    }
+
+    /**
+     * Returns reader of the counters, see {@link CountersReader#forEach(CountersReader.CounterConsumer)}.
+     *
+     * @return counters reader
+     */
+    public CountersReader reader() {
+        return countersManager;
+    }
+
+    AtomicCounter newRequestsCounter(int messageType) {
+        return countersManager.newCounter("requests: type=" + messageType, REQUESTS_COUNTER_TYPE_ID);
+    }
+
+    AtomicCounter errors() {
+        return errors;
+    }
+
+    AtomicCounter activeConnections() {
+        return activeConnections;
+    }
+
+    AtomicCounter backPressureEvents() {
+        return backPressureEvents;
+    }
+
+    AtomicCounter droppedResponses() {
+        return droppedResponses;
+    }
+
+    AtomicCounter busyResponses() {
+        return busyResponses;
+    }
+
+    @Override
+    public void close() {
+        IoUtil.unmap(mappedBuffer);
+    }
+
+    private AtomicCounter newServerCounter(String label) {
+        return countersManager.newCounter(label, SERVER_COUNTER_TYPE_ID);
+    }
+
+    private static int metadataLength(int valuesLength) {
+        return valuesLength / COUNTER_LENGTH * METADATA_LENGTH;
+    }
+
+    private static int fileLength(int valuesLength) {
+        return HEADER_SIZE + metadataLength(valuesLength) + valuesLength;
+    }
+
+}
@@ -8,6 +8,10 @@ import java.util.function.LongSupplier;
 /**
  * Handler for incoming requests. Implementation should contain service business logic.
  *
+ * Handler is always called from the single server thread. If the service has requests which do not change
+ * its state, they can be served concurrently by reader threads, see {@link #isReadRequest(int)} and
+ * {@link #newReadHandler()}.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public interface ServiceHandler {
@@ -28,4 +32,109 @@ public interface ServiceHandler {
         int offset,
         int length);
 
+    /**
+     * Handles incoming service request encoding the response in the memory provided by the given allocator.
+     * It allows server to encode responses directly into publication log buffer.
+     * Default implementation ignores the allocator and responds with a message from handler's own memory.
+     *
+     * @param messageType message type
+     * @param idGenerator generates long IDs
+     * @param buffer buffer to read request data from
+     * @param offset start of the read buffer
+     * @param length length of the request message
+     * @param responseAllocator allocator to wrap the response message over
+     */
+    default Message handleRequest(
+        int messageType,
+        LongSupplier idGenerator,
+        DirectBuffer buffer,
+        int offset,
+        int length,
+        ResponseAllocator responseAllocator) {
+
+        return handleRequest(messageType, idGenerator, buffer, offset, length);
+    }
+
+    /**
+     * Checks if the handler has taken a request it has not finished yet. Handler returns {@code null} response
+     * from {@link #handleRequest(int, LongSupplier, DirectBuffer, int, int, ResponseAllocator)} to process a long
+     * request across several duty cycles. While the request is pending, the server handles no other request
+     * except read requests, others are parked and handled in order once it's finished.
+     *
+     * @return true if there is a pending request
+     */
+    default boolean isRequestPending() {
+        return false;
+    }
+
+    /**
+     * Continues processing of the pending request, see {@link #isRequestPending()}. Called by the server thread
+     * on each duty cycle till the response is returned. The response is sent the same way as a response
+     * returned from the handle method would be, see {@link #isSyncRequired(int)}.
+     *
+     * @param responseAllocator allocator to wrap the response message over
+     * @return response to the pending request or {@code null} if it is still pending
+     */
+    default Message resumeRequest(ResponseAllocator responseAllocator) {
+        throw new IllegalStateException("There is no pending request");
+    }
+
+    /**
+     * Checks if requests of the given type only read the service state and can be handled by a read handler.
+     *
+     * @param messageType message type
+     * @return true if request of the given type can be handled by a read handler
+     */
+    default boolean isReadRequest(int messageType) {
+        return false;
+    }
+
+    /**
+     * Creates handler for read requests which is safe to use from another thread while this handler
+     * is processing other requests. Each reader thread gets its own read handler.
+     *
+     * @return new read handler
+     */
+    default ServiceHandler newReadHandler() {
+        throw new UnsupportedOperationException("Service does not support concurrent reads");
+    }
+
+    /**
+     * Checks if changes made by requests of the given type should be synced before responses to them are sent.
+     * Server defers responses to such requests and calls {@link #sync()} once per poll cycle, so the cost of
+     * the sync is shared by all requests of the cycle.
+     *
+     * @param messageType message type
+     * @return true if response can be sent only after {@link #sync()}
+     */
+    default boolean isSyncRequired(int messageType) {
+        return false;
+    }
+
+    /**
+     * Makes changes of all requests handled since the previous call durable. Called by the server thread
+     * before deferred responses are sent.
+     */
+    default void sync() {
+    }
+
+    /**
+     * Does background work of the service, e.g. publishes updates to subscribers.
+     * Called by the server thread on each duty cycle, so it should never block.
+     *
+     * @return amount of work done, 0 if there was nothing to do
+     */
+    default int doWork() {
+        return 0;
+    }
+
+    /**
+     * Notifies the handler that connection is closed by the server, so the handler can release
+     * resources kept for the connection. Called by the server thread.
+     *
+     * @param connectionId ID of the closed connection
+     */
+    default void onConnectionClosed(long connectionId) {
+    }
+
 }
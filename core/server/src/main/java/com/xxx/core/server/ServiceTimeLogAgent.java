@@ -0,0 +1,135 @@
+package com.xxx.core.server;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.EpochClock;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+
+/**
+ * Agent writing interval histograms of the handler service time (see {@link ServiceTimeRecorders}) to the HdrHistogram
+ * log file once per log interval. Each histogram is tagged with the role of the recording thread and the message type,
+ * e.g. {@code server:1003} or {@code reader-0:1009}, intervals without requests are skipped.
+ * Log can be processed by the HdrHistogram tools, e.g. {@code HistogramLogProcessor -tag server:1003}.
+ *
+ * Agent does blocking file writes, so it's not supposed to share a thread with request processing,
+ * unless the server runs on a single thread by intention.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+class ServiceTimeLogAgent implements Agent {
+
+    private final File logFile;
+    private final long logInterval;
+    private final EpochClock epochClock;
+
+    // recorders are registered by the recording threads
+    private final ManyToOneConcurrentLinkedQueue<TaggedRecorder> registeredRecorders = new ManyToOneConcurrentLinkedQueue<>();
+    private final ArrayList<TaggedRecorder> recorders = new ArrayList<>();
+    private HistogramLogWriter logWriter;
+    private long nextLogTime;
+
+    /**
+     * Creates log agent.
+     *
+     * @param logFile file to write the log to, existing file is replaced
+     * @param logInterval log interval in ms
+     * @param epochClock epoch clock
+     */
+    ServiceTimeLogAgent(File logFile, long logInterval, EpochClock epochClock) {
+        this.logFile = logFile;
+        this.logInterval = logInterval;
+        this.epochClock = epochClock;
+    }
+
+    /**
+     * Registers recorder to log its histograms with the given tag. Can be called by any thread.
+     *
+     * @param tag histogram tag
+     * @param recorder recorder
+     */
+    void register(String tag, Recorder recorder) {
+        registeredRecorders.offer(new TaggedRecorder(tag, recorder));
+    }
+
+    @Override
+    public void onStart() {
+        try {
+            logWriter = new HistogramLogWriter(logFile);
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+        final long now = epochClock.time();
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(now);
+        logWriter.setBaseTime(now);
+        logWriter.outputLegend();
+        nextLogTime = now + logInterval;
+    }
+
+    @Override
+    public int doWork() {
+        TaggedRecorder taggedRecorder;
+        while ((taggedRecorder = registeredRecorders.poll()) != null) {
+            recorders.add(taggedRecorder);
+        }
+        if (epochClock.time() < nextLogTime) {
+            return 0;
+        }
+        nextLogTime += logInterval;
+        return logIntervals();
+    }
+
+    @Override
+    public void onClose() {
+        if (logWriter != null) {
+            logIntervals();
+            logWriter.close();
+        }
+    }
+
+    @Override
+    public String roleName() {
+        return "service-time-log";
+    }
+
+    private int logIntervals() {
+        int logged = 0;
+        for (int i = 0; i < recorders.size(); i++) {
+            final TaggedRecorder taggedRecorder = recorders.get(i);
+            final Histogram intervalHistogram = taggedRecorder.nextIntervalHistogram();
+            if (intervalHistogram.getTotalCount() > 0) {
+                logWriter.outputIntervalHistogram(intervalHistogram);
+                logged++;
+            }
+        }
+        return logged;
+    }
+
+    private static final class TaggedRecorder {
+
+        private final String tag;
+        private final Recorder recorder;
+        // histogram of the previous interval, recycled by the recorder
+        private Histogram intervalHistogram;
+
+        private TaggedRecorder(String tag, Recorder recorder) {
+            this.tag = tag;
+            this.recorder = recorder;
+        }
+
+        private Histogram nextIntervalHistogram() {
+            intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
+            intervalHistogram.setTag(tag);
+            return intervalHistogram;
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.xxx.core.server;
+
+import org.HdrHistogram.Recorder;
+import org.agrona.collections.Int2ObjectHashMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records service time of {@link ServiceHandler#handleRequest} per message type into HdrHistogram recorders
+ * of a single thread, the server thread or a reader. Recorder of a message type is created the first time
+ * the type is recorded and registered in the {@link ServiceTimeLogAgent}, afterwards recording does not allocate.
+ * Recorders have fixed range, longer service times are recorded as {@link #HIGHEST_TRACKABLE_VALUE}.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+class ServiceTimeRecorders {
+
+    static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.SECONDS.toNanos(10);
+    static final int SIGNIFICANT_VALUE_DIGITS = 3;
+
+    private final String role;
+    private final ServiceTimeLogAgent logAgent;
+    private final Int2ObjectHashMap<Recorder> recorders = new Int2ObjectHashMap<>();
+
+    /**
+     * Creates recorders of the thread.
+     *
+     * @param role role of the recording thread, the log tags of its histograms start with it
+     * @param logAgent agent logging the recorded histograms
+     */
+    ServiceTimeRecorders(String role, ServiceTimeLogAgent logAgent) {
+        this.role = role;
+        this.logAgent = logAgent;
+    }
+
+    /**
+     * Records service time of the request.
+     *
+     * @param messageType request message type
+     * @param serviceTimeNs service time in nanoseconds
+     */
+    void record(int messageType, long serviceTimeNs) {
+        Recorder recorder = recorders.get(messageType);
+        if (recorder == null) {
+            recorder = new Recorder(HIGHEST_TRACKABLE_VALUE, SIGNIFICANT_VALUE_DIGITS);
+            recorders.put(messageType, recorder);
+            logAgent.register(role + ":" + messageType, recorder);
+        }
+        recorder.recordValue(Math.min(serviceTimeNs, HIGHEST_TRACKABLE_VALUE));
+    }
+
+}
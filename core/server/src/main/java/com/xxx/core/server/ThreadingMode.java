@@ -0,0 +1,28 @@
+package com.xxx.core.server;
+
+/**
+ * Defines how agents of the {@link Server} are mapped to threads. The server agent and the housekeeping agent
+ * (see {@link HousekeepingAgent}) always share a thread, because the service handler is single threaded,
+ * threading mode only defines where they run and where reader agents run.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public enum ThreadingMode {
+
+    /**
+     * Server and housekeeping agents run on the thread which starts the server, each reader runs on its own thread.
+     */
+    DEDICATED,
+
+    /**
+     * All agents run on the thread which starts the server, so the whole server takes a single core.
+     */
+    SHARED,
+
+    /**
+     * No threads are started, all agents are invoked by the owner of the server from its own duty loop,
+     * see {@link Server#invoker()}.
+     */
+    INVOKER
+
+}
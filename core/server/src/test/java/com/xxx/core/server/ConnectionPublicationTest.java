@@ -1,7 +1,9 @@
 package com.xxx.core.server;
 
 import com.xxx.core.protocol.Message;
+import com.xxx.core.protocol.ServerBusyResponse;
 import io.aeron.Publication;
+import io.aeron.logbuffer.BufferClaim;
 import org.agrona.DirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.hamcrest.Matchers;
@@ -13,16 +15,21 @@ import org.mockito.Mockito;
 
 import static com.xxx.core.protocol.Message.MESSAGE_HEADER_LENGTH;
 import static com.xxx.core.protocol.Message.allocateMemoryForMessage;
+import static io.aeron.Publication.BACK_PRESSURED;
 import static io.aeron.Publication.CLOSED;
 import static io.aeron.Publication.MAX_POSITION_EXCEEDED;
 import static io.aeron.Publication.NOT_CONNECTED;
+import static io.aeron.protocol.DataHeaderFlyweight.HEADER_LENGTH;
 import static java.nio.ByteBuffer.allocateDirect;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.any;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -106,6 +113,138 @@ public class ConnectionPublicationTest {
         shouldThrowIllegalStateExceptionIfPublicationHasStatus(NOT_CONNECTED);
     }
 
+    @Test
+    public void shouldNotClaimIfResponseDoesNotFitIntoFrame() {
+        when(publication.maxPayloadLength()).thenReturn(MESSAGE_HEADER_LENGTH - 1);
+        final ConnectionPublication connectionPublication = new ConnectionPublication(100500L, publication);
+        assertThat(connectionPublication.tryClaim(MESSAGE_HEADER_LENGTH, new BufferClaim()), is(false));
+        verify(publication, never()).tryClaim(anyInt(), Mockito.any(BufferClaim.class));
+    }
+
+    @Test
+    public void shouldNotClaimIfPublicationIsBackPressured() {
+        when(publication.maxPayloadLength()).thenReturn(1024);
+        when(publication.tryClaim(anyInt(), Mockito.any(BufferClaim.class))).thenReturn(BACK_PRESSURED);
+        final ConnectionPublication connectionPublication = new ConnectionPublication(100500L, publication);
+        assertThat(connectionPublication.tryClaim(MESSAGE_HEADER_LENGTH, new BufferClaim()), is(false));
+    }
+
+    @Test
+    public void shouldThrowIllegalStateExceptionIfClaimOnClosedPublication() {
+        when(publication.maxPayloadLength()).thenReturn(1024);
+        when(publication.tryClaim(anyInt(), Mockito.any(BufferClaim.class))).thenReturn(CLOSED);
+        final ConnectionPublication connectionPublication = new ConnectionPublication(100500L, publication);
+        assertThrows(IllegalStateException.class, () -> {
+            connectionPublication.tryClaim(MESSAGE_HEADER_LENGTH, new BufferClaim());
+        });
+        verify(publication).close();
+    }
+
+    @Test
+    public void shouldPopulateSystemFieldsAndCommitClaimedResponse() {
+        final UnsafeBuffer logBuffer = new UnsafeBuffer(allocateDirect(HEADER_LENGTH + MESSAGE_HEADER_LENGTH));
+        when(publication.maxPayloadLength()).thenReturn(1024);
+        when(publication.tryClaim(anyInt(), Mockito.any(BufferClaim.class))).thenAnswer(invocation -> {
+            final BufferClaim claim = invocation.getArgument(1);
+            claim.wrap(logBuffer, 0, HEADER_LENGTH + (int) invocation.getArgument(0));
+            return 10L;
+        });
+        final ConnectionPublication connectionPublication = new ConnectionPublication(100500L, publication);
+        final BufferClaim bufferClaim = new BufferClaim();
+        assertThat(connectionPublication.tryClaim(MESSAGE_HEADER_LENGTH, bufferClaim), is(true));
+        final TestMessage response = new TestMessage();
+        response.init(bufferClaim.buffer(), bufferClaim.offset());
+        connectionPublication.commitResponse(response, 123, 321L, bufferClaim);
+        assertThat(logBuffer.getInt(0), is(HEADER_LENGTH + MESSAGE_HEADER_LENGTH));
+        assertThat(logBuffer.getInt(HEADER_LENGTH + Message.TYPE_FIELD_OFFSET), is(-1));
+        assertThat(logBuffer.getLong(HEADER_LENGTH + Message.CONNECTION_ID_FIELD_OFFSET), is(100500L));
+        assertThat(logBuffer.getInt(HEADER_LENGTH + Message.CLIENT_ID_FIELD_OFFSET), is(123));
+        assertThat(logBuffer.getLong(HEADER_LENGTH + Message.CORRELATION_ID_FIELD_OFFSET), is(321L));
+    }
+
+    @Test
+    public void shouldQueueResponseIfBackPressuredAndDrainItLater() {
+        when(publication.offer(Mockito.any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(BACK_PRESSURED);
+        final ConnectionPublication connectionPublication =
+            new ConnectionPublication(100500L, publication, 1024, OverflowPolicy.DISCONNECT);
+        connectionPublication.sendResponse(TEST_MESSAGE, 1, 1L);
+        connectionPublication.sendResponse(TEST_MESSAGE, 1, 2L);
+        assertThat(connectionPublication.isLagging(), is(true));
+        assertThat(connectionPublication.backPressureCount(), is(1L));
+        // publication still does not accept responses, they stay in the queue
+        assertThat(connectionPublication.drainOutbound(10), is(0));
+        assertThat(connectionPublication.isLagging(), is(true));
+
+        when(publication.offer(Mockito.any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(10L);
+        assertThat(connectionPublication.drainOutbound(10), is(2));
+        assertThat(connectionPublication.isLagging(), is(false));
+        assertThat(connectionPublication.queuedBytes(), is(0));
+    }
+
+    @Test
+    public void shouldNotClaimWhileResponsesAreQueued() {
+        when(publication.maxPayloadLength()).thenReturn(1024);
+        when(publication.offer(Mockito.any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(BACK_PRESSURED);
+        final ConnectionPublication connectionPublication = new ConnectionPublication(100500L, publication);
+        connectionPublication.sendResponse(TEST_MESSAGE, 1, 1L);
+        assertThat(connectionPublication.tryClaim(MESSAGE_HEADER_LENGTH, new BufferClaim()), is(false));
+        verify(publication, never()).tryClaim(anyInt(), Mockito.any(BufferClaim.class));
+    }
+
+    @Test
+    public void shouldCloseConnectionOnOverflowIfDisconnectPolicy() {
+        when(publication.offer(Mockito.any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(BACK_PRESSURED);
+        final ConnectionPublication connectionPublication =
+            new ConnectionPublication(100500L, publication, 256, OverflowPolicy.DISCONNECT);
+        connectionPublication.sendResponse(TEST_MESSAGE, 1, 1L);
+        assertThrows(IllegalStateException.class, () -> {
+            for (int i = 0; i < 64; i++) {
+                connectionPublication.sendResponse(TEST_MESSAGE, 1, 1L);
+            }
+        });
+        verify(publication).close();
+    }
+
+    @Test
+    public void shouldDiscardOldestResponsesOnOverflowIfConflatePolicy() {
+        when(publication.offer(Mockito.any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(BACK_PRESSURED);
+        // queue of 256 bytes takes eight 24 bytes header responses with 8 bytes record headers
+        final ConnectionPublication connectionPublication =
+            new ConnectionPublication(100500L, publication, 256, OverflowPolicy.CONFLATE);
+        for (long correlationId = 1; correlationId <= 10; correlationId++) {
+            connectionPublication.sendResponse(TEST_MESSAGE, 1, correlationId);
+        }
+        assertThat(connectionPublication.droppedResponsesCount(), is(2L));
+
+        final UnsafeBuffer sent = new UnsafeBuffer(allocateDirect(MESSAGE_HEADER_LENGTH));
+        when(publication.offer(Mockito.any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenAnswer(invocation -> {
+            sent.putBytes(0, (DirectBuffer) invocation.getArgument(0), invocation.getArgument(1), MESSAGE_HEADER_LENGTH);
+            return 10L;
+        });
+        assertThat(connectionPublication.drainOutbound(10), is(8));
+        // the newest response survives
+        assertThat(sent.getLong(Message.CORRELATION_ID_FIELD_OFFSET), is(10L));
+        assertThat(connectionPublication.isLagging(), is(false));
+    }
+
+    @Test
+    public void shouldBeOverloadedIfHalfOfQueueIsUsedAndBusyPolicy() {
+        when(publication.offer(Mockito.any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(BACK_PRESSURED);
+        final ConnectionPublication connectionPublication =
+            new ConnectionPublication(100500L, publication, 256, OverflowPolicy.BUSY);
+        for (long correlationId = 1; correlationId <= 4; correlationId++) {
+            connectionPublication.sendResponse(TEST_MESSAGE, 1, correlationId);
+        }
+        assertThat(connectionPublication.isOverloaded(), is(false));
+        connectionPublication.sendResponse(TEST_MESSAGE, 1, 5L);
+        assertThat(connectionPublication.isOverloaded(), is(true));
+        final ServerBusyResponse busyResponse = new ServerBusyResponse();
+        allocateMemoryForMessage(busyResponse);
+        connectionPublication.sendBusyResponse(busyResponse, 1, 6L);
+        assertThat(connectionPublication.busyResponsesCount(), is(1L));
+        assertThat(connectionPublication.droppedResponsesCount(), is(0L));
+    }
+
     private void shouldThrowIllegalStateExceptionIfPublicationHasStatus(long status) {
         when(publication.offer(buffer, 0, MESSAGE_HEADER_LENGTH)).thenReturn(status);
         final ConnectionPublication connectionPublication = new ConnectionPublication(100500L, publication);
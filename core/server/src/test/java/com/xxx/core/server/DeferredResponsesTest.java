@@ -0,0 +1,89 @@
+package com.xxx.core.server;
+
+import com.xxx.core.protocol.Message;
+import org.agrona.DirectBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.xxx.core.protocol.Message.MESSAGE_HEADER_LENGTH;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class DeferredResponsesTest {
+
+    private final ConnectionPublication firstPublication = mock(ConnectionPublication.class);
+    private final ConnectionPublication secondPublication = mock(ConnectionPublication.class);
+    private final DeferredResponses deferredResponses = new DeferredResponses(MESSAGE_HEADER_LENGTH);
+
+    @Test
+    public void shouldKeepStampedResponsesTillTheyAreSent() {
+        when(firstPublication.getConnectionId()).thenReturn(10L);
+        when(secondPublication.getConnectionId()).thenReturn(20L);
+        final List<Long> sentCorrelationIds = new ArrayList<>();
+        final Message sentResponse = new TestMessage();
+        doAnswer(invocation -> {
+            sentResponse.wrapForRead(invocation.getArgument(0, DirectBuffer.class), invocation.getArgument(1));
+            assertThat(invocation.getArgument(2), is(MESSAGE_HEADER_LENGTH));
+            sentCorrelationIds.add(sentResponse.correlationId());
+            return null;
+        }).when(firstPublication).sendResponse(any(DirectBuffer.class), anyInt(), eq(MESSAGE_HEADER_LENGTH));
+
+        // buffer is grown on the third response, the deferred ones are kept
+        for (int i = 0; i < 3; i++) {
+            deferredResponses.connection(firstPublication);
+            final TestMessage response = new TestMessage();
+            deferredResponses.allocate(response);
+            deferredResponses.add(response, 1, 100L + i);
+        }
+        deferredResponses.connection(secondPublication);
+        final TestMessage aborted = new TestMessage();
+        deferredResponses.allocate(aborted);
+        deferredResponses.abort();
+
+        assertThat(deferredResponses.size(), is(3));
+        for (int i = 0; i < deferredResponses.size(); i++) {
+            assertThat(deferredResponses.publication(i), is(firstPublication));
+            deferredResponses.send(i);
+        }
+        assertThat(sentCorrelationIds, is(List.of(100L, 101L, 102L)));
+        assertThat(sentResponse.connectionId(), is(10L));
+        assertThat(sentResponse.clientId(), is(1));
+
+        deferredResponses.reset();
+        assertThat(deferredResponses.size(), is(0));
+    }
+
+    @Test
+    public void shouldNotAddResponseAllocatedElsewhere() {
+        deferredResponses.connection(firstPublication);
+        final TestMessage response = new TestMessage();
+        Message.allocateMemoryForMessage(response);
+        assertThrows(IllegalStateException.class, () -> deferredResponses.add(response, 1, 2L));
+    }
+
+    private static final class TestMessage extends Message {
+
+        @Override
+        public int uniqueType() {
+            return -1;
+        }
+
+        @Override
+        public int sizeInBytes() {
+            return MESSAGE_HEADER_LENGTH;
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.xxx.core.server;
+
+import io.aeron.Publication;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PendingConnectionTest {
+
+    private final Publication publication = mock(Publication.class);
+    private final PendingConnection pendingConnection = new PendingConnection(
+        new ConnectionPublication(1L, publication), 2, 3L, 1000L
+    );
+
+    @Test
+    public void whenPublicationIsNotConnectedThenConnectionIsPendingTillDeadline() {
+        when(publication.isConnected()).thenReturn(false);
+        assertThat(pendingConnection.poll(0L), is(PendingConnection.State.PENDING));
+        assertThat(pendingConnection.poll(1000L), is(PendingConnection.State.PENDING));
+        assertThat(pendingConnection.poll(1001L), is(PendingConnection.State.TIMED_OUT));
+    }
+
+    @Test
+    public void whenPublicationIsConnectedThenConnectionIsEstablished() {
+        when(publication.isConnected()).thenReturn(true);
+        assertThat(pendingConnection.poll(0L), is(PendingConnection.State.CONNECTED));
+        assertThat(pendingConnection.poll(1001L), is(PendingConnection.State.CONNECTED));
+        assertThat(pendingConnection.clientId(), is(2));
+        assertThat(pendingConnection.correlationId(), is(3L));
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.xxx.core.server;
+
+import com.xxx.core.protocol.Message;
+import io.aeron.logbuffer.BufferClaim;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import static com.xxx.core.protocol.Message.MESSAGE_HEADER_LENGTH;
+import static io.aeron.protocol.DataHeaderFlyweight.HEADER_LENGTH;
+import static java.nio.ByteBuffer.allocateDirect;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ResponseClaimTest {
+
+    private final UnsafeBuffer logBuffer = new UnsafeBuffer(allocateDirect(1024));
+    private final ConnectionPublication publication = mock(ConnectionPublication.class);
+    private final TestMessage response = new TestMessage();
+    private final ResponseClaim responseClaim = new ResponseClaim();
+
+    @Test
+    public void shouldEncodeResponseIntoClaimAndCommitIt() {
+        when(publication.tryClaim(eq(MESSAGE_HEADER_LENGTH), any(BufferClaim.class))).thenAnswer(invocation -> {
+            final BufferClaim claim = invocation.getArgument(1);
+            claim.wrap(logBuffer, 0, 1024);
+            return true;
+        });
+        responseClaim.connection(publication);
+        responseClaim.allocate(response);
+        // response is encoded right after the frame header
+        assertThat(logBuffer.getInt(HEADER_LENGTH + Message.TYPE_FIELD_OFFSET), is(response.uniqueType()));
+        responseClaim.send(response, 1, 2L);
+        verify(publication).commitResponse(eq(response), eq(1), eq(2L), any(BufferClaim.class));
+        verify(publication, never()).sendResponse(any(Message.class), anyInt(), anyLong());
+    }
+
+    @Test
+    public void shouldSendResponseFromOwnMemoryIfClaimIsNotPossible() {
+        when(publication.tryClaim(anyInt(), any(BufferClaim.class))).thenReturn(false);
+        responseClaim.connection(publication);
+        responseClaim.allocate(response);
+        assertThat(logBuffer.getInt(HEADER_LENGTH + Message.TYPE_FIELD_OFFSET), is(0));
+        assertThat(response.type(), is(response.uniqueType()));
+        responseClaim.send(response, 1, 2L);
+        verify(publication).sendResponse(response, 1, 2L);
+        verify(publication, never()).commitResponse(any(Message.class), anyInt(), anyLong(), any(BufferClaim.class));
+    }
+
+    @Test
+    public void shouldAbortClaim() {
+        when(publication.tryClaim(anyInt(), any(BufferClaim.class))).thenAnswer(invocation -> {
+            final BufferClaim claim = invocation.getArgument(1);
+            claim.wrap(logBuffer, 0, 1024);
+            return true;
+        });
+        responseClaim.connection(publication);
+        responseClaim.allocate(response);
+        responseClaim.abort();
+        // aborted frame is turned into padding
+        assertThat(logBuffer.getShort(6), is((short) 0));
+        responseClaim.connection(publication);
+        responseClaim.send(response, 1, 2L);
+        verify(publication).sendResponse(response, 1, 2L);
+    }
+
+    private static final class TestMessage extends Message {
+
+        @Override
+        public int uniqueType() {
+            return -1;
+        }
+
+        @Override
+        public int sizeInBytes() {
+            return MESSAGE_HEADER_LENGTH;
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.xxx.core.server;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.agrona.concurrent.status.CountersReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ServerCountersTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void shouldAllocateServerCountersUpFront() {
+        final ServerCounters counters = new ServerCounters();
+        assertThat(labels(counters.reader()), contains(
+            "errors", "active connections", "back pressure events", "dropped responses", "busy responses"
+        ));
+    }
+
+    @Test
+    public void whenCountersMappedToFileThenAnotherReaderSeesThem() {
+        final File file = new File(tempDir, "server.cnc");
+        try (ServerCounters counters = ServerCounters.create(file)) {
+            final AtomicCounter serviceCounter = counters.newCounter("rejected chunks");
+            final AtomicCounter requestsCounter = counters.newRequestsCounter(7);
+            serviceCounter.incrementOrdered();
+            requestsCounter.getAndAddOrdered(3);
+            counters.errors().increment();
+
+            final CountersReader reader = ServerCounters.mapForRead(file);
+            assertThat(reader.getCounterLabel(serviceCounter.id()), is("rejected chunks"));
+            assertThat(reader.getCounterValue(serviceCounter.id()), is(1L));
+            assertThat(reader.getCounterLabel(requestsCounter.id()), is("requests: type=7"));
+            assertThat(reader.getCounterValue(requestsCounter.id()), is(3L));
+            assertThat(reader.getCounterValue(counters.errors().id()), is(1L));
+        }
+    }
+
+    @Test
+    public void whenFileHasUnexpectedLayoutThenException() {
+        final File file = new File(tempDir, "server.cnc");
+        ServerCounters.create(file).close();
+        final MappedByteBuffer mappedBuffer = IoUtil.mapExistingFile(file, "server counters");
+        new UnsafeBuffer(mappedBuffer).putInt(ServerCounters.LAYOUT_VERSION_FIELD_OFFSET, ServerCounters.LAYOUT_VERSION + 1);
+        IoUtil.unmap(mappedBuffer);
+        assertThrows(IllegalStateException.class, () -> ServerCounters.mapForRead(file));
+    }
+
+    private static List<String> labels(CountersReader reader) {
+        final List<String> labels = new ArrayList<>();
+        reader.forEach((value, counterId, label) -> labels.add(label));
+        return labels;
+    }
+
+}
@@ -0,0 +1,269 @@
+package com.xxx.core.server;
+
+import com.xxx.core.protocol.CreateConnectionCommand;
+import com.xxx.core.protocol.Message;
+import com.xxx.core.protocol.ServerBusyResponse;
+import io.aeron.Aeron;
+import io.aeron.ConcurrentPublication;
+import io.aeron.ExclusivePublication;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.logbuffer.ControlledFragmentHandler;
+import io.aeron.logbuffer.FragmentHandler;
+import io.aeron.logbuffer.FrameDescriptor;
+import io.aeron.logbuffer.Header;
+import io.aeron.protocol.DataHeaderFlyweight;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.AgentInvoker;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.SystemEpochClock;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+
+import java.io.File;
+import java.util.ArrayDeque;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ServerTest {
+
+    private static final String SERVER_CHANNEL = "aeron:ipc";
+    private static final int SERVER_STREAM_ID = 10;
+    private static final int WRITE_REQUEST_TYPE = 100;
+    private static final int PARKED_WRITE_REQUEST_TYPE = 101;
+    private static final int READ_REQUEST_TYPE = 102;
+
+    @TempDir
+    File tempDir;
+
+    private final Aeron aeron = mock(Aeron.class);
+    private final Subscription subscription = mock(Subscription.class);
+    private final ServiceHandler serviceHandler = mock(ServiceHandler.class);
+    private final ServiceHandler readHandler = mock(ServiceHandler.class);
+    // fragments taken by the next polls of the lane subscription
+    private final ArrayDeque<UnsafeBuffer> fragments = new ArrayDeque<>();
+    private long time;
+
+    @BeforeEach
+    public void setUp() {
+        when(aeron.addSubscription(anyString(), anyInt())).thenReturn(subscription);
+        when(serviceHandler.newReadHandler()).thenReturn(readHandler);
+        when(serviceHandler.doWork()).thenReturn(1);
+    }
+
+    @Test
+    public void whenInvokedThenServerAndHousekeepingDoWork() {
+        final Server server = newServer(0, ThreadingMode.INVOKER);
+        final AgentInvoker invoker = server.invoker();
+        assertThat(invoker.invoke(), is(1));
+        assertThat(invoker.invoke(), is(1));
+        verify(aeron).addSubscription(SERVER_CHANNEL, SERVER_STREAM_ID);
+        verify(subscription, times(2)).controlledPoll(any(ControlledFragmentHandler.class), anyInt());
+        verify(serviceHandler, times(2)).doWork();
+    }
+
+    @Test
+    public void whenSharedThenReadersAreInvokedOnServerThread() {
+        final Server server = newServer(2, ThreadingMode.SHARED);
+        server.invoker().invoke();
+        verify(aeron, times(3)).addSubscription(SERVER_CHANNEL, SERVER_STREAM_ID);
+        verify(subscription).controlledPoll(any(ControlledFragmentHandler.class), anyInt());
+        verify(subscription, times(2)).poll(any(FragmentHandler.class), anyInt());
+    }
+
+    @Test
+    public void whenInvokerModeThenServerCanNotBeStarted() {
+        final Server server = newServer(0, ThreadingMode.INVOKER);
+        assertThrows(IllegalStateException.class, server::start);
+        verify(aeron, never()).addSubscription(anyString(), anyInt());
+    }
+
+    @Test
+    public void whenClosedInInvokerModeThenAgentsAreClosed() {
+        final Server server = newServer(1, ThreadingMode.INVOKER);
+        final AgentInvoker invoker = server.invoker();
+        server.close();
+        assertThat(invoker.isClosed(), is(true));
+        verify(subscription, times(2)).close();
+        assertThat(invoker.invoke(), is(0));
+        verify(serviceHandler, never()).doWork();
+    }
+
+    @Test
+    public void shouldTakeRequestsOnEachLane() {
+        final Server server = new Server(
+            SystemEpochClock.INSTANCE, aeron, SERVER_CHANNEL, SERVER_STREAM_ID, BusySpinIdleStrategy.INSTANCE,
+            serviceHandler, 0, null, 3, ThreadingMode.INVOKER
+        );
+        server.invoker().invoke();
+        verify(aeron, times(3)).addSubscription(eq(SERVER_CHANNEL), anyInt());
+        verify(subscription, times(3)).controlledPoll(any(ControlledFragmentHandler.class), anyInt());
+    }
+
+    @Test
+    public void whenServiceTimeLogFileIsDefinedThenLogAgentRunsWithServer() {
+        final File logFile = new File(tempDir, "service-time.hlog");
+        final Server server = new Server(
+            SystemEpochClock.INSTANCE, aeron, SERVER_CHANNEL, SERVER_STREAM_ID, BusySpinIdleStrategy.INSTANCE,
+            serviceHandler, 0, null, 1, ThreadingMode.INVOKER, new ServerCounters(), logFile
+        );
+        server.invoker().invoke();
+        assertThat(logFile.exists(), is(true));
+        server.close();
+        assertThat(logFile.length() > 0, is(true));
+    }
+
+    @Test
+    public void whenRequestIsPendingThenOtherRequestsAreParkedAndReadRequestsAreNotBlocked() {
+        final ServerBusyResponse response = new ServerBusyResponse();
+        Message.allocateMemoryForMessage(response);
+        when(serviceHandler.isReadRequest(READ_REQUEST_TYPE)).thenReturn(true);
+        when(serviceHandler.handleRequest(eq(PARKED_WRITE_REQUEST_TYPE), any(), any(), anyInt(), anyInt(), any())).thenReturn(response);
+        when(serviceHandler.handleRequest(eq(READ_REQUEST_TYPE), any(), any(), anyInt(), anyInt(), any())).thenReturn(response);
+        when(serviceHandler.resumeRequest(any())).thenReturn(response);
+
+        final Server server = newServer(0, ThreadingMode.INVOKER);
+        connect(server);
+        fragments.add(request(WRITE_REQUEST_TYPE));
+        fragments.add(request(PARKED_WRITE_REQUEST_TYPE));
+        fragments.add(request(READ_REQUEST_TYPE));
+        server.invoker().invoke();
+        assertThat(fragments.isEmpty(), is(true));
+        final InOrder inOrder = inOrder(serviceHandler);
+        inOrder.verify(serviceHandler).handleRequest(eq(WRITE_REQUEST_TYPE), any(), any(), anyInt(), anyInt(), any());
+        inOrder.verify(serviceHandler).handleRequest(eq(READ_REQUEST_TYPE), any(), any(), anyInt(), anyInt(), any());
+        inOrder.verify(serviceHandler).resumeRequest(any());
+        inOrder.verify(serviceHandler).handleRequest(eq(PARKED_WRITE_REQUEST_TYPE), any(), any(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    public void whenReadRequestsAreServedByReadersThenConnectionIsNotIdle() {
+        when(serviceHandler.isReadRequest(READ_REQUEST_TYPE)).thenReturn(true);
+        final Server server = new Server(
+            () -> time, aeron, SERVER_CHANNEL, SERVER_STREAM_ID, BusySpinIdleStrategy.INSTANCE,
+            serviceHandler, 1, () -> BusySpinIdleStrategy.INSTANCE, 1, ThreadingMode.INVOKER
+        );
+        connect(server);
+        time = Configuration.CONNECTION_IDLE_TIMEOUT;
+        fragments.add(request(READ_REQUEST_TYPE));
+        server.invoker().invoke();
+        time += Configuration.CONNECTION_IDLE_TIMEOUT;
+        server.invoker().invoke();
+        verify(serviceHandler, never()).onConnectionClosed(anyLong());
+    }
+
+    @Test
+    public void whenReaderFailsThenServerClosesConnection() {
+        when(serviceHandler.isReadRequest(READ_REQUEST_TYPE)).thenReturn(true);
+        when(readHandler.isReadRequest(READ_REQUEST_TYPE)).thenReturn(true);
+        when(readHandler.handleRequest(eq(READ_REQUEST_TYPE), any(), any(), anyInt(), anyInt(), any()))
+            .thenThrow(new IllegalStateException("test"));
+        final ServerCounters counters = new ServerCounters();
+        final Server server = new Server(
+            SystemEpochClock.INSTANCE, aeron, SERVER_CHANNEL, SERVER_STREAM_ID, BusySpinIdleStrategy.INSTANCE,
+            serviceHandler, 1, () -> BusySpinIdleStrategy.INSTANCE, 1, ThreadingMode.INVOKER, counters
+        );
+        connect(server);
+        final ArrayDeque<UnsafeBuffer> readerFragments = new ArrayDeque<>();
+        readerFragments.add(request(READ_REQUEST_TYPE));
+        when(subscription.poll(any(FragmentHandler.class), anyInt())).thenAnswer(invocation -> {
+            final FragmentHandler handler = invocation.getArgument(0);
+            int fragmentsRead = 0;
+            for (UnsafeBuffer fragment = readerFragments.poll(); fragment != null; fragment = readerFragments.poll()) {
+                handler.onFragment(fragment, 0, fragment.capacity(), unfragmentedHeader());
+                fragmentsRead++;
+            }
+            return fragmentsRead;
+        });
+        // reader fails after the server thread in the same duty cycle, the connection is closed in the next one
+        server.invoker().invoke();
+        verify(serviceHandler, never()).onConnectionClosed(anyLong());
+        server.invoker().invoke();
+        verify(serviceHandler).onConnectionClosed(anyLong());
+        assertThat(counters.errors().get(), is(1L));
+    }
+
+    private void stubLanePoll() {
+        final Header header = unfragmentedHeader();
+        when(subscription.controlledPoll(any(ControlledFragmentHandler.class), anyInt())).thenAnswer(invocation -> {
+            final ControlledFragmentHandler handler = invocation.getArgument(0);
+            int fragmentsRead = 0;
+            while (!fragments.isEmpty()) {
+                final UnsafeBuffer fragment = fragments.peek();
+                if (handler.onFragment(fragment, 0, fragment.capacity(), header) == ControlledFragmentHandler.Action.ABORT) {
+                    break;
+                }
+                fragments.poll();
+                fragmentsRead++;
+            }
+            return fragmentsRead;
+        });
+    }
+
+    private static Header unfragmentedHeader() {
+        final Header header = new Header(0, 0);
+        final UnsafeBuffer frame = new UnsafeBuffer(new byte[DataHeaderFlyweight.HEADER_LENGTH]);
+        frame.putByte(DataHeaderFlyweight.FLAGS_FIELD_OFFSET, FrameDescriptor.UNFRAGMENTED);
+        header.buffer(frame);
+        return header;
+    }
+
+    private void connect(Server server) {
+        stubLanePoll();
+        final ExclusivePublication exclusivePublication = mock(ExclusivePublication.class);
+        final ConcurrentPublication concurrentPublication = mock(ConcurrentPublication.class);
+        when(aeron.addExclusivePublication(anyString(), anyInt())).thenReturn(exclusivePublication);
+        when(aeron.addPublication(anyString(), anyInt())).thenReturn(concurrentPublication);
+        for (final Publication publication : new Publication[] {exclusivePublication, concurrentPublication}) {
+            when(publication.isConnected()).thenReturn(true);
+            when(publication.offer(any(DirectBuffer.class), anyInt(), anyInt(), any())).thenReturn(1L);
+        }
+        final CreateConnectionCommand createConnectionCommand = new CreateConnectionCommand();
+        Message.allocateMemoryForMessage(createConnectionCommand);
+        createConnectionCommand.clientChannel(SERVER_CHANNEL);
+        fragments.add(fragment(createConnectionCommand.getReadBuffer(), createConnectionCommand.sizeInBytes()));
+        server.invoker().invoke();
+    }
+
+    private static UnsafeBuffer request(int messageType) {
+        final UnsafeBuffer request = new UnsafeBuffer(new byte[Message.MESSAGE_HEADER_LENGTH]);
+        // the connection ID is the first correlation ID of the mocked Aeron client
+        request.putInt(Message.TYPE_FIELD_OFFSET, messageType);
+        return request;
+    }
+
+    private static UnsafeBuffer fragment(DirectBuffer buffer, int length) {
+        final UnsafeBuffer fragment = new UnsafeBuffer(new byte[length]);
+        fragment.putBytes(0, buffer, 0, length);
+        return fragment;
+    }
+
+    private Server newServer(int readersNumber, ThreadingMode threadingMode) {
+        final IdleStrategy idleStrategy = BusySpinIdleStrategy.INSTANCE;
+        return new Server(
+            SystemEpochClock.INSTANCE, aeron, SERVER_CHANNEL, SERVER_STREAM_ID, idleStrategy,
+            serviceHandler, readersNumber, () -> idleStrategy, 1, threadingMode
+        );
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.xxx.core.server;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.Recorder;
+import org.agrona.concurrent.EpochClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ServiceTimeLogAgentTest {
+
+    private static final long LOG_INTERVAL = 1000;
+
+    @TempDir
+    File tempDir;
+
+    private final EpochClock epochClock = mock(EpochClock.class);
+
+    @Test
+    public void shouldLogIntervalHistogramsOfRegisteredRecorders() throws FileNotFoundException {
+        final File logFile = new File(tempDir, "service-time.hlog");
+        final ServiceTimeLogAgent logAgent = new ServiceTimeLogAgent(logFile, LOG_INTERVAL, epochClock);
+        when(epochClock.time()).thenReturn(0L);
+        logAgent.onStart();
+        final Recorder uploadRecorder = newRecorder();
+        final Recorder queryRecorder = newRecorder();
+        logAgent.register("server:1003", uploadRecorder);
+        logAgent.register("reader-0:1009", queryRecorder);
+        uploadRecorder.recordValue(1_000);
+        uploadRecorder.recordValue(2_000);
+        queryRecorder.recordValue(500);
+        assertThat(logAgent.doWork(), is(0));
+        when(epochClock.time()).thenReturn(LOG_INTERVAL);
+        assertThat(logAgent.doWork(), is(2));
+        // intervals without requests are skipped
+        uploadRecorder.recordValue(3_000);
+        when(epochClock.time()).thenReturn(2 * LOG_INTERVAL);
+        assertThat(logAgent.doWork(), is(1));
+        logAgent.onClose();
+
+        final HistogramLogReader logReader = new HistogramLogReader(logFile);
+        final Histogram first = (Histogram) logReader.nextIntervalHistogram();
+        assertThat(first.getTag(), is("server:1003"));
+        assertThat(first.getTotalCount(), is(2L));
+        final Histogram second = (Histogram) logReader.nextIntervalHistogram();
+        assertThat(second.getTag(), is("reader-0:1009"));
+        assertThat(second.getTotalCount(), is(1L));
+        final Histogram third = (Histogram) logReader.nextIntervalHistogram();
+        assertThat(third.getTag(), is("server:1003"));
+        assertThat(third.getTotalCount(), is(1L));
+        assertThat(logReader.nextIntervalHistogram(), is(nullValue()));
+        logReader.close();
+    }
+
+    @Test
+    public void whenClosedThenLastIntervalIsLogged() throws FileNotFoundException {
+        final File logFile = new File(tempDir, "service-time.hlog");
+        final ServiceTimeLogAgent logAgent = new ServiceTimeLogAgent(logFile, LOG_INTERVAL, epochClock);
+        when(epochClock.time()).thenReturn(0L);
+        logAgent.onStart();
+        final Recorder recorder = newRecorder();
+        logAgent.register("server:1003", recorder);
+        logAgent.doWork();
+        recorder.recordValue(1_000);
+        logAgent.onClose();
+
+        final HistogramLogReader logReader = new HistogramLogReader(logFile);
+        final Histogram histogram = (Histogram) logReader.nextIntervalHistogram();
+        assertThat(histogram.getTag(), is("server:1003"));
+        assertThat(histogram.getTotalCount(), is(1L));
+        logReader.close();
+    }
+
+    private static Recorder newRecorder() {
+        return new Recorder(ServiceTimeRecorders.HIGHEST_TRACKABLE_VALUE, ServiceTimeRecorders.SIGNIFICANT_VALUE_DIGITS);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.xxx.core.server;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ServiceTimeRecordersTest {
+
+    private final ServiceTimeLogAgent logAgent = mock(ServiceTimeLogAgent.class);
+    private final ServiceTimeRecorders recorders = new ServiceTimeRecorders("server", logAgent);
+
+    @Test
+    public void shouldRegisterRecorderOncePerMessageType() {
+        recorders.record(1003, 1_000);
+        recorders.record(1003, 2_000);
+        recorders.record(1009, 3_000);
+        verify(logAgent, times(1)).register(eq("server:1003"), any(Recorder.class));
+        verify(logAgent, times(1)).register(eq("server:1009"), any(Recorder.class));
+    }
+
+    @Test
+    public void shouldRecordServiceTimeOfMessageType() {
+        final ArgumentCaptor<Recorder> recorderCaptor = ArgumentCaptor.forClass(Recorder.class);
+        recorders.record(1003, 1_000);
+        recorders.record(1003, 2_000);
+        verify(logAgent).register(eq("server:1003"), recorderCaptor.capture());
+        final Histogram histogram = recorderCaptor.getValue().getIntervalHistogram();
+        assertThat(histogram.getTotalCount(), is(2L));
+        assertThat(histogram.valuesAreEquivalent(histogram.getMaxValue(), 2_000), is(true));
+    }
+
+    @Test
+    public void whenServiceTimeIsOutOfRangeThenHighestTrackableValueIsRecorded() {
+        final ArgumentCaptor<Recorder> recorderCaptor = ArgumentCaptor.forClass(Recorder.class);
+        recorders.record(1003, Long.MAX_VALUE);
+        verify(logAgent).register(eq("server:1003"), recorderCaptor.capture());
+        final Histogram histogram = recorderCaptor.getValue().getIntervalHistogram();
+        assertThat(histogram.getTotalCount(), is(1L));
+        assertThat(histogram.getMaxValue(), greaterThanOrEqualTo(ServiceTimeRecorders.HIGHEST_TRACKABLE_VALUE));
+    }
+
+}
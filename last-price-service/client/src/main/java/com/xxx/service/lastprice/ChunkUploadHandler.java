@@ -0,0 +1,37 @@
+package com.xxx.service.lastprice;
+
+import com.xxx.service.lastprice.messages.UploadChunkResponse;
+
+/**
+ * Callback for results of chunks uploaded with {@link LastPriceServiceClient#uploadChunkAsync}.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@FunctionalInterface
+public interface ChunkUploadHandler {
+
+    /**
+     * Response was not received in time, chunk could be uploaded or not. Chunk with the sequence
+     * can be uploaded again, it's not applied twice.
+     */
+    int TIMEOUT_STATUS = -1;
+
+    /**
+     * Server rejected the chunk because the client is lagging.
+     */
+    int SERVER_BUSY_STATUS = -2;
+
+    /**
+     * Handles upload result of the chunk part sent to the server shard. Chunk is split by shards if the service
+     * is partitioned, the result is reported for each part.
+     *
+     * Handler is called in the client thread and should not use the client.
+     *
+     * @param batchRunId batch run id the chunk was uploaded to
+     * @param chunkId id of the chunk given to the upload
+     * @param shard index of the shard
+     * @param status {@link UploadChunkResponse} status, {@link #TIMEOUT_STATUS} or {@link #SERVER_BUSY_STATUS}
+     */
+    void onUploadResult(long batchRunId, long chunkId, int shard, int status);
+
+}
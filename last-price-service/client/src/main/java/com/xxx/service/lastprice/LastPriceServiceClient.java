@@ -3,16 +3,24 @@ package com.xxx.service.lastprice;
 import com.xxx.core.client.BaseServiceClient;
 import com.xxx.core.client.AbstractServiceGateway;
 import com.xxx.core.client.ConnectionTimeoutException;
+import com.xxx.core.protocol.Message;
+import com.xxx.service.lastprice.messages.AddInstrumentRequest;
+import com.xxx.service.lastprice.messages.AddInstrumentResponse;
 import com.xxx.service.lastprice.messages.CancelBatchRunRequest;
 import com.xxx.service.lastprice.messages.CancelBatchRunResponse;
 import com.xxx.service.lastprice.messages.CompleteBatchRunRequest;
 import com.xxx.service.lastprice.messages.CompleteBatchRunResponse;
 import com.xxx.service.lastprice.messages.LastPriceRequest;
 import com.xxx.service.lastprice.messages.LastPriceResponse;
+import com.xxx.service.lastprice.messages.MultiLastPriceRequest;
+import com.xxx.service.lastprice.messages.MultiLastPriceResponse;
+import com.xxx.service.lastprice.messages.PackedPriceRecord;
 import com.xxx.service.lastprice.messages.PriceRecord;
 import com.xxx.service.lastprice.messages.PriceRecordsChunk;
 import com.xxx.service.lastprice.messages.StartBatchRunRequest;
 import com.xxx.service.lastprice.messages.StartBatchRunResponse;
+import com.xxx.service.lastprice.messages.SubscribeRequest;
+import com.xxx.service.lastprice.messages.SubscribeResponse;
 import com.xxx.service.lastprice.messages.UploadChunkRequest;
 import com.xxx.service.lastprice.messages.UploadChunkResponse;
 import org.agrona.concurrent.IdleStrategy;
@@ -20,26 +28,79 @@ import org.agrona.concurrent.NanoClock;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.agrona.concurrent.ringbuffer.RingBuffer;
 
+import java.util.List;
+
 import static com.xxx.core.protocol.Message.allocateMemoryForMessage;
+import static com.xxx.service.lastprice.Configuration.CLIENT_UPLOAD_WINDOW_SIZE;
+import static com.xxx.service.lastprice.Configuration.MAX_MULTI_LAST_PRICE_INSTRUMENTS;
+import static com.xxx.service.lastprice.Configuration.MAX_SUBSCRIPTION_INSTRUMENTS;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BufferUtil.allocateDirectAligned;
 
 /**
  * {@inheritDoc}
+ *
+ * If the service is partitioned to several shards, price requests are routed to the shard owning the instrument,
+ * see {@link InstrumentSharding}. Batch run is started on all shards with the same ID, uploaded chunks are split
+ * by shards and the batch is completed on each shard one by one. Completion is not atomic across shards,
+ * readers can observe prices of the batch on one shard before it is completed on another one.
+ *
+ * Chunks can be uploaded asynchronously with {@link #uploadChunkAsync}, so upload throughput is not bound by
+ * the round trip time. At most {@link Configuration#CLIENT_UPLOAD_WINDOW_SIZE} upload requests are in flight,
+ * responses are matched to them by correlation ID and reported to {@link ChunkUploadHandler}.
+ *
+ * Several producers, e.g. clients of different processes, can upload chunks to one batch run concurrently.
+ * The batch run is started with the number of producers by one of them ({@link #startBatchRun(int)}),
+ * its ID is passed to the others, each producer numbers its chunks and completes the batch run.
+ * Prices are applied once the last producer has completed it.
+ *
+ * Subscriptions to price updates belong to the gateway connection, so they are shared by all clients of the gateway.
+ * Updates are received by {@link PriceUpdatesSubscriber}.
  */
 public class LastPriceServiceClient extends BaseServiceClient {
 
+    /**
+     * Batch run ID returned when the batch run was not started, server never assigns it to a batch run.
+     */
+    public static final long NOT_STARTED_BATCH_ID = StartBatchRunRequest.SERVER_ASSIGNED_BATCH_ID;
+
+    /**
+     * Last chunk sequence reported when it's not known, because some of the shards have not answered.
+     */
+    public static final long UNKNOWN_CHUNK_SEQUENCE = -1L;
+
+    private static final int MAX_START_BATCH_RUN_ATTEMPTS = 3;
+    private static final int MAX_UPLOAD_CHUNK_ATTEMPTS = 3;
+
     private final LastPriceRequest lastPriceRequest = new LastPriceRequest();
     private final StartBatchRunRequest startBatchRequest = new StartBatchRunRequest();
     private final UploadChunkRequest uploadChunkRequest = new UploadChunkRequest();
     private final CancelBatchRunRequest cancelBatchRunRequest = new CancelBatchRunRequest();
     private final CompleteBatchRunRequest completeBatchRunRequest = new CompleteBatchRunRequest();
+    private final AddInstrumentRequest addInstrumentRequest = new AddInstrumentRequest();
+    private final MultiLastPriceRequest multiLastPriceRequest = new MultiLastPriceRequest();
+    private final SubscribeRequest subscribeRequest = new SubscribeRequest();
 
     private final LastPriceResponse lastPriceResponse = new LastPriceResponse();
     private final StartBatchRunResponse batchStartedResponse = new StartBatchRunResponse();
     private final UploadChunkResponse uploadChunkResponse = new UploadChunkResponse();
     private final CancelBatchRunResponse cancelBatchRunResponse = new CancelBatchRunResponse();
     private final CompleteBatchRunResponse completeBatchRunResponse = new CompleteBatchRunResponse();
+    private final AddInstrumentResponse addInstrumentResponse = new AddInstrumentResponse();
+    private final MultiLastPriceResponse multiLastPriceResponse = new MultiLastPriceResponse();
+    private final SubscribeResponse subscribeResponse = new SubscribeResponse();
+    // responses of several shards are merged into this one
+    private final MultiLastPriceResponse mergedMultiLastPriceResponse = new MultiLastPriceResponse();
+
+    // upload requests in flight, kept packed in the first uploadsInFlight slots
+    private final long[] uploadCorrelationIds = new long[CLIENT_UPLOAD_WINDOW_SIZE];
+    private final long[] uploadBatchRunIds = new long[CLIENT_UPLOAD_WINDOW_SIZE];
+    private final long[] uploadChunkIds = new long[CLIENT_UPLOAD_WINDOW_SIZE];
+    private final int[] uploadShards = new int[CLIENT_UPLOAD_WINDOW_SIZE];
+    private final long[] uploadDeadlines = new long[CLIENT_UPLOAD_WINDOW_SIZE];
+    private final ChunkUploadHandler[] uploadHandlers = new ChunkUploadHandler[CLIENT_UPLOAD_WINDOW_SIZE];
+    private int uploadsInFlight;
+    private long lastChunkSequence = UNKNOWN_CHUNK_SEQUENCE;
 
     public LastPriceServiceClient(
         int clientId,
@@ -63,7 +124,7 @@ public class LastPriceServiceClient extends BaseServiceClient {
      */
     public PriceRecord requestLastPrice(CharSequence instrument) throws ConnectionTimeoutException {
         lastPriceRequest.instrument(instrument);
-        makeCall(lastPriceRequest);
+        makeCall(lastPriceRequest, InstrumentSharding.shardOf(instrument, shardsNumber()));
         final int status = lastPriceResponse.status();
         if (status != LastPriceResponse.SUCCESS_STATUS) {
             return null;
@@ -72,14 +133,149 @@ public class LastPriceServiceClient extends BaseServiceClient {
     }
 
     /**
-     * Send command to start a batch run.
+     * Requests last prices of the given instruments in one round trip per server shard.
+     * Returned response is valid until the next call of the client.
+     *
+     * @param instruments instruments to receive prices for, at most
+     * {@link Configuration#MAX_MULTI_LAST_PRICE_INSTRUMENTS}
+     * @return response with price record and status of each instrument in the same order as the given instruments
+     * @throws ConnectionTimeoutException if response was not received in time
+     */
+    public MultiLastPriceResponse requestLastPrices(List<? extends CharSequence> instruments) throws ConnectionTimeoutException {
+        final int instrumentsNumber = instruments.size();
+        if (instrumentsNumber > MAX_MULTI_LAST_PRICE_INSTRUMENTS) {
+            throw new IllegalArgumentException(
+                "Number of instruments can not be more than: " + MAX_MULTI_LAST_PRICE_INSTRUMENTS
+            );
+        }
+        final int shardsNumber = shardsNumber();
+        if (shardsNumber == 1) {
+            multiLastPriceRequest.reset();
+            for (int index = 0; index < instrumentsNumber; index++) {
+                multiLastPriceRequest.addInstrument(instruments.get(index));
+            }
+            makeCall(multiLastPriceRequest, 0);
+            return multiLastPriceResponse;
+        }
+        mergedMultiLastPriceResponse.status(MultiLastPriceResponse.SUCCESS_STATUS);
+        mergedMultiLastPriceResponse.recordsNumber(instrumentsNumber);
+        for (int shard = 0; shard < shardsNumber; shard++) {
+            multiLastPriceRequest.reset();
+            for (int index = 0; index < instrumentsNumber; index++) {
+                if (InstrumentSharding.shardOf(instruments.get(index), shardsNumber) == shard) {
+                    multiLastPriceRequest.addInstrument(instruments.get(index));
+                }
+            }
+            if (multiLastPriceRequest.instrumentsNumber() == 0) {
+                continue;
+            }
+            makeCall(multiLastPriceRequest, shard);
+            if (multiLastPriceResponse.status() != MultiLastPriceResponse.SUCCESS_STATUS) {
+                mergedMultiLastPriceResponse.status(multiLastPriceResponse.status());
+                mergedMultiLastPriceResponse.recordsNumber(0);
+                return mergedMultiLastPriceResponse;
+            }
+            int shardIndex = 0;
+            for (int index = 0; index < instrumentsNumber; index++) {
+                if (InstrumentSharding.shardOf(instruments.get(index), shardsNumber) == shard) {
+                    mergedMultiLastPriceResponse.putRecord(index, multiLastPriceResponse, shardIndex++);
+                }
+            }
+        }
+        return mergedMultiLastPriceResponse;
+    }
+
+    /**
+     * Subscribes the gateway connection to price updates of the given instruments.
+     * Server publishes last prices of the instruments changed by each completed batch run.
+     *
+     * @param instruments instruments to subscribe to, at most {@link Configuration#MAX_SUBSCRIPTION_INSTRUMENTS}
+     * @return {@code true} if subscribed to all instruments, {@code false} if some of them are unknown
+     * or the service does not support subscriptions
+     * @throws ConnectionTimeoutException if response was not received in time
+     */
+    public boolean subscribe(List<? extends CharSequence> instruments) throws ConnectionTimeoutException {
+        return changeSubscriptions(SubscribeRequest.SUBSCRIBE_ACTION, instruments);
+    }
+
+    /**
+     * Unsubscribes the gateway connection from price updates of the given instruments.
      *
-     * @return started batch id
+     * @param instruments instruments to unsubscribe from, at most {@link Configuration#MAX_SUBSCRIPTION_INSTRUMENTS}
+     * @return {@code true} if unsubscribed from all instruments, {@code false} if some of them are unknown
+     * or the service does not support subscriptions
+     * @throws ConnectionTimeoutException if response was not received in time
+     */
+    public boolean unsubscribe(List<? extends CharSequence> instruments) throws ConnectionTimeoutException {
+        return changeSubscriptions(SubscribeRequest.UNSUBSCRIBE_ACTION, instruments);
+    }
+
+    /**
+     * Adds instrument to the service universe, so prices of it can be uploaded and requested.
+     *
+     * @param instrument instrument to add
+     * @return {@code true} if instrument was added, {@code false} if it's already known or the ticker is wrong
+     * @throws ConnectionTimeoutException if response was not received in time
+     */
+    public boolean addInstrument(CharSequence instrument) throws ConnectionTimeoutException {
+        addInstrumentRequest.instrument(instrument);
+        makeCall(addInstrumentRequest, InstrumentSharding.shardOf(instrument, shardsNumber()));
+        return addInstrumentResponse.status() == AddInstrumentResponse.SUCCESS_STATUS;
+    }
+
+    /**
+     * Send command to start a batch run uploaded by the single producer.
+     *
+     * @return started batch id, {@link #NOT_STARTED_BATCH_ID} if the batch run was not started
      * @throws ConnectionTimeoutException if response was not received in time
      */
     public long startBatchRun() throws ConnectionTimeoutException {
-        makeCall(startBatchRequest);
-        return batchStartedResponse.batchId();
+        return startBatchRun(StartBatchRunRequest.SINGLE_PRODUCER);
+    }
+
+    /**
+     * Send command to start a batch run uploaded by the given number of producers.
+     *
+     * @param producersNumber number of producers, at most {@link Configuration#MAX_BATCH_PRODUCERS}
+     * @return started batch id, {@link #NOT_STARTED_BATCH_ID} if the batch run was not started on all shards
+     * @throws ConnectionTimeoutException if response was not received in time
+     */
+    public long startBatchRun(int producersNumber) throws ConnectionTimeoutException {
+        startBatchRequest.producersNumber(producersNumber);
+        startBatchRequest.batchId(StartBatchRunRequest.SERVER_ASSIGNED_BATCH_ID);
+        makeCall(startBatchRequest, 0);
+        if (batchStartedResponse.status() != StartBatchRunResponse.SUCCESS_STATUS) {
+            return NOT_STARTED_BATCH_ID;
+        }
+        final int shardsNumber = shardsNumber();
+        int attempt = 1;
+        int shard = 1;
+        long batchId = batchStartedResponse.batchId();
+        while (shard < shardsNumber) {
+            startBatchRequest.batchId(batchId);
+            makeCall(startBatchRequest, shard);
+            // responses share the buffer, so the status is read before the next call
+            final int status = batchStartedResponse.status();
+            if (status == StartBatchRunResponse.SUCCESS_STATUS) {
+                shard++;
+            } else if (status == StartBatchRunResponse.BATCH_ALREADY_EXISTS_STATUS && attempt < MAX_START_BATCH_RUN_ATTEMPTS) {
+                // ID generated by the first shard is taken on another one, start over with a new ID
+                cancelBatchRun(batchId, shard);
+                attempt++;
+                startBatchRequest.batchId(StartBatchRunRequest.SERVER_ASSIGNED_BATCH_ID);
+                makeCall(startBatchRequest, 0);
+                if (batchStartedResponse.status() != StartBatchRunResponse.SUCCESS_STATUS) {
+                    return NOT_STARTED_BATCH_ID;
+                }
+                batchId = batchStartedResponse.batchId();
+                shard = 1;
+            } else {
+                // batch run can not be started on all shards, do not leave it started on some of them
+                cancelBatchRun(batchId, shard);
+                return NOT_STARTED_BATCH_ID;
+            }
+        }
+        return batchId;
     }
 
     /**
@@ -91,10 +287,145 @@ public class LastPriceServiceClient extends BaseServiceClient {
      * @throws ConnectionTimeoutException if response was not received in time
      */
     public boolean uploadChunk(long batchRunId, PriceRecordsChunk priceRecordsChunk) throws ConnectionTimeoutException {
-        uploadChunkRequest.batchId(batchRunId);
-        uploadChunkRequest.putChunk(priceRecordsChunk);
-        makeCall(uploadChunkRequest);
-        return uploadChunkResponse.status() == UploadChunkResponse.SUCCESS_STATUS;
+        return uploadChunk(batchRunId, 0, UploadChunkRequest.UNTRACKED_CHUNK_SEQUENCE, priceRecordsChunk);
+    }
+
+    /**
+     * Uploads given price records chunk of the producer to the service. Chunks of the producer should be numbered
+     * from 1, chunk uploaded again with the same sequence is not applied twice. So the chunk is sent again if
+     * the response was not received in time, and if the chunk was not uploaded the producer can find the chunk
+     * to continue from with {@link #lastChunkSequence()} instead of uploading the whole batch run again.
+     *
+     * @param batchRunId batch run id to upload the chunk to
+     * @param producerId id of the producer from 0 until the producers number of the batch run
+     * @param chunkSequence sequence of the chunk
+     * @param priceRecordsChunk chunk to upload
+     * @return {@code true} if chunk was uploaded, else {@code false}
+     * @throws ConnectionTimeoutException if response was not received in time after all attempts
+     */
+    public boolean uploadChunk(
+        long batchRunId, int producerId, long chunkSequence, PriceRecordsChunk priceRecordsChunk) throws ConnectionTimeoutException {
+
+        putUploadChunkHeader(batchRunId, producerId, chunkSequence);
+        // stays unknown if the call fails before all the shards have answered
+        lastChunkSequence = UNKNOWN_CHUNK_SEQUENCE;
+        final int shardsNumber = shardsNumber();
+        if (shardsNumber == 1) {
+            uploadChunkRequest.putChunk(priceRecordsChunk);
+            lastChunkSequence = callUploadChunk(0, chunkSequence);
+            return uploadChunkResponse.status() == UploadChunkResponse.SUCCESS_STATUS;
+        }
+        boolean uploaded = true;
+        long appliedChunkSequence = Long.MAX_VALUE;
+        for (int shard = 0; shard < shardsNumber; shard++) {
+            if (putShardRecords(priceRecordsChunk, shard, shardsNumber) > 0 || isTracked(chunkSequence)) {
+                appliedChunkSequence = Math.min(appliedChunkSequence, callUploadChunk(shard, chunkSequence));
+                uploaded &= uploadChunkResponse.status() == UploadChunkResponse.SUCCESS_STATUS;
+            }
+        }
+        if (appliedChunkSequence != Long.MAX_VALUE) {
+            lastChunkSequence = appliedChunkSequence;
+        }
+        return uploaded;
+    }
+
+    /**
+     * Returns sequence of the last chunk of the producer applied by all the shards, as reported to the last
+     * {@link #uploadChunk(long, int, long, PriceRecordsChunk)} call.
+     *
+     * @return chunk sequence, 0 if there were no chunks applied, {@link #UNKNOWN_CHUNK_SEQUENCE} if the call
+     * has failed before all the shards have answered
+     */
+    public long lastChunkSequence() {
+        return lastChunkSequence;
+    }
+
+    /**
+     * Uploads given price records chunk to the service without waiting for the server acknowledgement.
+     * The call blocks only while the upload window is full, until responses or timeouts of the chunks
+     * in flight free it. Results are reported to the handler by this and following calls of
+     * {@link #pollUploads()} and {@link #awaitUploads()}.
+     *
+     * Uploads in flight should be awaited before other calls of the client, e.g. before the batch run is completed.
+     *
+     * @param batchRunId batch run id to upload the chunk to
+     * @param chunkId id of the chunk to report to the handler
+     * @param priceRecordsChunk chunk to upload, can be reused after the call
+     * @param handler handler of the upload result
+     */
+    public void uploadChunkAsync(long batchRunId, long chunkId, PriceRecordsChunk priceRecordsChunk, ChunkUploadHandler handler) {
+        uploadChunkAsync(batchRunId, 0, UploadChunkRequest.UNTRACKED_CHUNK_SEQUENCE, chunkId, priceRecordsChunk, handler);
+    }
+
+    /**
+     * Uploads given price records chunk of the producer to the service without waiting for the server acknowledgement,
+     * see {@link #uploadChunkAsync(long, long, PriceRecordsChunk, ChunkUploadHandler)}. Chunk sequence is reported
+     * to the handler as the chunk id, the chunk failed with any status can be uploaded again with the same sequence.
+     *
+     * @param batchRunId batch run id to upload the chunk to
+     * @param producerId id of the producer from 0 until the producers number of the batch run
+     * @param chunkSequence sequence of the chunk, chunks of the producer should be numbered from 1
+     * @param priceRecordsChunk chunk to upload, can be reused after the call
+     * @param handler handler of the upload result
+     */
+    public void uploadChunkAsync(
+        long batchRunId, int producerId, long chunkSequence, PriceRecordsChunk priceRecordsChunk, ChunkUploadHandler handler) {
+
+        uploadChunkAsync(batchRunId, producerId, chunkSequence, chunkSequence, priceRecordsChunk, handler);
+    }
+
+    private void uploadChunkAsync(
+        long batchRunId, int producerId, long chunkSequence, long chunkId,
+        PriceRecordsChunk priceRecordsChunk, ChunkUploadHandler handler) {
+
+        putUploadChunkHeader(batchRunId, producerId, chunkSequence);
+        final int shardsNumber = shardsNumber();
+        if (shardsNumber == 1) {
+            uploadChunkRequest.putChunk(priceRecordsChunk);
+            sendUploadChunkRequest(batchRunId, chunkId, 0, handler);
+            return;
+        }
+        for (int shard = 0; shard < shardsNumber; shard++) {
+            if (putShardRecords(priceRecordsChunk, shard, shardsNumber) > 0 || isTracked(chunkSequence)) {
+                sendUploadChunkRequest(batchRunId, chunkId, shard, handler);
+            }
+        }
+    }
+
+    /**
+     * Reports results of the received upload responses and expired uploads without waiting.
+     *
+     * @return number of reported uploads
+     */
+    public int pollUploads() {
+        int reported = 0;
+        while (uploadsInFlight > 0) {
+            // inbound buffer is checked once with the deadline in the past
+            final CallStatus callStatus = pollResponse(nanoTime() - 1);
+            if (callStatus == CallStatus.TIMEOUT) {
+                break;
+            }
+            reported += completeUpload(responseCorrelationId(), uploadStatus(callStatus));
+        }
+        return reported + expireUploads(nanoTime());
+    }
+
+    /**
+     * Waits until results of all uploads in flight are reported.
+     */
+    public void awaitUploads() {
+        while (uploadsInFlight > 0) {
+            pollUploads(nextUploadDeadline());
+        }
+    }
+
+    /**
+     * Returns number of upload requests in flight.
+     *
+     * @return number of uploads which results are not reported yet
+     */
+    public int uploadsInFlight() {
+        return uploadsInFlight;
     }
 
     /**
@@ -105,9 +436,7 @@ public class LastPriceServiceClient extends BaseServiceClient {
      * @throws ConnectionTimeoutException if response was not received in time
      */
     public boolean cancelBatchRun(long batchRunId) throws ConnectionTimeoutException {
-        cancelBatchRunRequest.batchId(batchRunId);
-        makeCall(cancelBatchRunRequest);
-        return cancelBatchRunResponse.status() == CancelBatchRunResponse.SUCCESS_STATUS;
+        return cancelBatchRun(batchRunId, shardsNumber());
     }
 
     /**
@@ -119,9 +448,193 @@ public class LastPriceServiceClient extends BaseServiceClient {
      * @throws ConnectionTimeoutException if response was not received in time
      */
     public boolean completeBatchRun(long batchRunId) throws ConnectionTimeoutException {
+        return completeBatchRun(batchRunId, 0, CompleteBatchRunResponse.SUCCESS_STATUS);
+    }
+
+    /**
+     * Completes batch run with the given id by the producer. Price changes in batch are applied
+     * when the last of the batch run producers has completed it.
+     *
+     * @param batchRunId batch run id to complete
+     * @param producerId id of the producer from 0 until the producers number of the batch run
+     * @return {@code true} if the producer has completed the batch run, else {@code false}
+     * @throws ConnectionTimeoutException if response was not received in time
+     */
+    public boolean completeBatchRun(long batchRunId, int producerId) throws ConnectionTimeoutException {
+        return completeBatchRun(batchRunId, producerId, CompleteBatchRunResponse.PRODUCERS_PENDING_STATUS);
+    }
+
+    @Override
+    protected CallStatus makeCall(Message request, int shard) throws ConnectionTimeoutException {
+        if (uploadsInFlight > 0) {
+            throw new IllegalStateException("There are " + uploadsInFlight + " uploads in flight, they should be awaited first");
+        }
+        return super.makeCall(request, shard);
+    }
+
+    private boolean completeBatchRun(long batchRunId, int producerId, int acceptedStatus) throws ConnectionTimeoutException {
         completeBatchRunRequest.batchId(batchRunId);
-        makeCall(completeBatchRunRequest);
-        return completeBatchRunResponse.status() == CompleteBatchRunResponse.SUCCESS_STATUS;
+        completeBatchRunRequest.producerId(producerId);
+        boolean completed = true;
+        for (int shard = 0; shard < shardsNumber(); shard++) {
+            makeCall(completeBatchRunRequest, shard);
+            final int status = completeBatchRunResponse.status();
+            completed &= status == CompleteBatchRunResponse.SUCCESS_STATUS || status == acceptedStatus;
+        }
+        return completed;
+    }
+
+    private long callUploadChunk(int shard, long chunkSequence) throws ConnectionTimeoutException {
+        int attempt = 1;
+        while (true) {
+            try {
+                makeCall(uploadChunkRequest, shard);
+                break;
+            } catch (ConnectionTimeoutException e) {
+                // tracked chunk is not applied twice, so it's safe to send it again after timeout or rejection
+                if (!isTracked(chunkSequence) || attempt++ == MAX_UPLOAD_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+        return uploadChunkResponse.lastChunkSequence();
+    }
+
+    private void putUploadChunkHeader(long batchRunId, int producerId, long chunkSequence) {
+        uploadChunkRequest.batchId(batchRunId);
+        uploadChunkRequest.producerId(producerId);
+        uploadChunkRequest.chunkSequence(chunkSequence);
+    }
+
+    private static boolean isTracked(long chunkSequence) {
+        // empty part of the tracked chunk is sent to keep the sequence of the shard
+        return chunkSequence != UploadChunkRequest.UNTRACKED_CHUNK_SEQUENCE;
+    }
+
+    private void sendUploadChunkRequest(long batchRunId, long chunkId, int shard, ChunkUploadHandler handler) {
+        while (uploadsInFlight == CLIENT_UPLOAD_WINDOW_SIZE) {
+            pollUploads(nextUploadDeadline());
+        }
+        final int slot = uploadsInFlight++;
+        uploadCorrelationIds[slot] = sendRequest(uploadChunkRequest, shard);
+        uploadBatchRunIds[slot] = batchRunId;
+        uploadChunkIds[slot] = chunkId;
+        uploadShards[slot] = shard;
+        uploadDeadlines[slot] = nanoTime() + waitTimeoutNs();
+        uploadHandlers[slot] = handler;
+    }
+
+    private void pollUploads(long deadlineNs) {
+        final CallStatus callStatus = pollResponse(deadlineNs);
+        if (callStatus != CallStatus.TIMEOUT) {
+            completeUpload(responseCorrelationId(), uploadStatus(callStatus));
+        }
+        expireUploads(nanoTime());
+    }
+
+    private int uploadStatus(CallStatus callStatus) {
+        return callStatus == CallStatus.SERVER_BUSY ? ChunkUploadHandler.SERVER_BUSY_STATUS : uploadChunkResponse.status();
+    }
+
+    private int completeUpload(long correlationId, int status) {
+        for (int slot = 0; slot < uploadsInFlight; slot++) {
+            if (uploadCorrelationIds[slot] == correlationId) {
+                reportUpload(slot, status);
+                return 1;
+            }
+        }
+        // response of the expired upload
+        return 0;
+    }
+
+    private int expireUploads(long nanoTime) {
+        int expired = 0;
+        int slot = 0;
+        while (slot < uploadsInFlight) {
+            if (uploadDeadlines[slot] - nanoTime < 0) {
+                reportUpload(slot, ChunkUploadHandler.TIMEOUT_STATUS);
+                expired++;
+            } else {
+                slot++;
+            }
+        }
+        return expired;
+    }
+
+    private void reportUpload(int slot, int status) {
+        final ChunkUploadHandler handler = uploadHandlers[slot];
+        final long batchRunId = uploadBatchRunIds[slot];
+        final long chunkId = uploadChunkIds[slot];
+        final int shard = uploadShards[slot];
+        // the last upload takes the reported slot
+        final int last = --uploadsInFlight;
+        uploadCorrelationIds[slot] = uploadCorrelationIds[last];
+        uploadBatchRunIds[slot] = uploadBatchRunIds[last];
+        uploadChunkIds[slot] = uploadChunkIds[last];
+        uploadShards[slot] = uploadShards[last];
+        uploadDeadlines[slot] = uploadDeadlines[last];
+        uploadHandlers[slot] = uploadHandlers[last];
+        uploadHandlers[last] = null;
+        handler.onUploadResult(batchRunId, chunkId, shard, status);
+    }
+
+    private long nextUploadDeadline() {
+        long deadline = uploadDeadlines[0];
+        for (int slot = 1; slot < uploadsInFlight; slot++) {
+            if (uploadDeadlines[slot] - deadline < 0) {
+                deadline = uploadDeadlines[slot];
+            }
+        }
+        return deadline;
+    }
+
+    private boolean changeSubscriptions(int action, List<? extends CharSequence> instruments) throws ConnectionTimeoutException {
+        if (instruments.size() > MAX_SUBSCRIPTION_INSTRUMENTS) {
+            throw new IllegalArgumentException(
+                "Number of instruments can not be more than: " + MAX_SUBSCRIPTION_INSTRUMENTS
+            );
+        }
+        final int shardsNumber = shardsNumber();
+        boolean changed = true;
+        for (int shard = 0; shard < shardsNumber; shard++) {
+            subscribeRequest.reset(action);
+            for (int index = 0; index < instruments.size(); index++) {
+                if (InstrumentSharding.shardOf(instruments.get(index), shardsNumber) == shard) {
+                    subscribeRequest.addInstrument(instruments.get(index));
+                }
+            }
+            if (subscribeRequest.instrumentsNumber() > 0) {
+                makeCall(subscribeRequest, shard);
+                changed &= subscribeResponse.status() == SubscribeResponse.SUCCESS_STATUS;
+            }
+        }
+        return changed;
+    }
+
+    private boolean cancelBatchRun(long batchRunId, int shardsToCancel) throws ConnectionTimeoutException {
+        cancelBatchRunRequest.batchId(batchRunId);
+        boolean canceled = true;
+        for (int shard = 0; shard < shardsToCancel; shard++) {
+            makeCall(cancelBatchRunRequest, shard);
+            canceled &= cancelBatchRunResponse.status() == CancelBatchRunResponse.SUCCESS_STATUS;
+        }
+        return canceled;
+    }
+
+    private int putShardRecords(PriceRecordsChunk priceRecordsChunk, int shard, int shardsNumber) {
+        final PriceRecordsChunk shardChunk = uploadChunkRequest.getChunk();
+        shardChunk.reset();
+        for (int index = 0; index < priceRecordsChunk.recordsNumber(); index++) {
+            final PackedPriceRecord priceRecord = priceRecordsChunk.priceRecord(index);
+            final CharSequence instrument = priceRecord.instrument();
+            if (InstrumentSharding.shardOf(instrument, shardsNumber) == shard) {
+                shardChunk.addRecord(
+                    instrument, priceRecord.asOfTimestamp(),
+                    priceRecord.getReadBuffer(), priceRecord.absolutePayloadOffset(), priceRecord.payloadSize()
+                );
+            }
+        }
+        return shardChunk.recordsNumber();
     }
 
     private void allocateMemoryForRequestMessages() {
@@ -130,6 +643,12 @@ public class LastPriceServiceClient extends BaseServiceClient {
         uploadChunkRequest.init(new UnsafeBuffer(allocateDirectAligned(UploadChunkRequest.maxSize(), CACHE_LINE_LENGTH)), 0);
         allocateMemoryForMessage(cancelBatchRunRequest);
         allocateMemoryForMessage(completeBatchRunRequest);
+        allocateMemoryForMessage(addInstrumentRequest);
+        multiLastPriceRequest.init(new UnsafeBuffer(allocateDirectAligned(MultiLastPriceRequest.maxSize(), CACHE_LINE_LENGTH)), 0);
+        subscribeRequest.init(new UnsafeBuffer(allocateDirectAligned(SubscribeRequest.maxSize(), CACHE_LINE_LENGTH)), 0);
+        mergedMultiLastPriceResponse.init(
+            new UnsafeBuffer(allocateDirectAligned(MultiLastPriceResponse.maxSize(), CACHE_LINE_LENGTH)), 0
+        );
     }
 
     private void wrapResponseBufferForRead() {
@@ -138,5 +657,8 @@ public class LastPriceServiceClient extends BaseServiceClient {
         wrapResponseBufferForRead(uploadChunkResponse);
         wrapResponseBufferForRead(cancelBatchRunResponse);
         wrapResponseBufferForRead(completeBatchRunResponse);
+        wrapResponseBufferForRead(addInstrumentResponse);
+        wrapResponseBufferForRead(multiLastPriceResponse);
+        wrapResponseBufferForRead(subscribeResponse);
     }
 }
@@ -1,6 +1,7 @@
 package com.xxx.service.lastprice;
 
 import com.xxx.core.client.AbstractServiceGateway;
+import com.xxx.core.protocol.Lanes;
 import io.aeron.Aeron;
 import org.agrona.concurrent.IdleStrategy;
 import org.agrona.concurrent.NanoClock;
@@ -11,10 +12,19 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Supplier;
 
+import static com.xxx.service.lastprice.messages.MessageTypes.LAST_PRICE_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BufferUtil.allocateDirectAligned;
 import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.TRAILER_LENGTH;
 
+/**
+ * Gateway to the last price service. If {@link Configuration#LANES_NUMBER} lanes are used, price queries
+ * are sent on the query lane, chunks on the bulk lane and all other requests on the control lane.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
 public class LastPriceServiceGateway extends AbstractServiceGateway<LastPriceServiceClient> {
 
     public LastPriceServiceGateway(
@@ -34,6 +44,41 @@ public class LastPriceServiceGateway extends AbstractServiceGateway<LastPriceSer
             serverStreamId, clientChannel, clientStreamId, maxClients, clientIdleStrategyFactory, executorService);
     }
 
+    public LastPriceServiceGateway(
+        Lock lock,
+        Aeron aeron,
+        NanoClock nanoClock,
+        IdleStrategy readCycleIdleStrategy,
+        String[] serverChannels,
+        int[] serverStreamIds,
+        String clientChannel,
+        int clientStreamId,
+        int maxClients,
+        Supplier<IdleStrategy> clientIdleStrategyFactory,
+        ExecutorService executorService) {
+
+        super(lock, aeron, nanoClock, readCycleIdleStrategy, serverChannels,
+            serverStreamIds, clientChannel, clientStreamId, maxClients, clientIdleStrategyFactory, executorService);
+    }
+
+    @Override
+    protected int lanesNumber() {
+        return Configuration.LANES_NUMBER;
+    }
+
+    @Override
+    protected int lane(int messageType) {
+        switch (messageType) {
+            case LAST_PRICE_REQUEST_MESSAGE_TYPE:
+            case MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE:
+                return Lanes.QUERY_LANE;
+            case UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE:
+                return Lanes.BULK_LANE;
+            default:
+                return Lanes.CONTROL_LANE;
+        }
+    }
+
     @Override
     protected LastPriceServiceClient createClient(int clientId, NanoClock nanoClock, IdleStrategy idleStrategy) {
         return new LastPriceServiceClient(
@@ -0,0 +1,20 @@
+package com.xxx.service.lastprice;
+
+import com.xxx.service.lastprice.messages.PriceRecord;
+
+/**
+ * Callback for price updates received by {@link PriceUpdatesSubscriber}.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@FunctionalInterface
+public interface PriceUpdateHandler {
+
+    /**
+     * Handles last price of the instrument. Record is valid only during the call.
+     *
+     * @param priceRecord price record
+     */
+    void onPriceUpdate(PriceRecord priceRecord);
+
+}
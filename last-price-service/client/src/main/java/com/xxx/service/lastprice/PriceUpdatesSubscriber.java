@@ -0,0 +1,63 @@
+package com.xxx.service.lastprice;
+
+import com.xxx.core.protocol.Message;
+import com.xxx.service.lastprice.messages.MessageTypes;
+import com.xxx.service.lastprice.messages.PriceUpdateMessage;
+import io.aeron.Aeron;
+import io.aeron.FragmentAssembler;
+import io.aeron.Subscription;
+import io.aeron.logbuffer.Header;
+import org.agrona.DirectBuffer;
+
+/**
+ * Receives price updates published by the service to the updates multicast or IPC channel.
+ * Server publishes updates of instruments subscribed by any connection, see {@link LastPriceServiceClient#subscribe},
+ * so the handler can receive updates of instruments subscribed by other consumers too.
+ *
+ * Updates are not a history of prices. If the subscriber is lagging, server conflates changes of an instrument
+ * to its latest price, so only the last one is delivered.
+ *
+ * Subscriber is not thread safe, it should be polled by a single thread.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PriceUpdatesSubscriber implements AutoCloseable {
+
+    private final Subscription subscription;
+    private final FragmentAssembler assembler = new FragmentAssembler(this::onFragment);
+    private final PriceUpdateMessage updateMessage = new PriceUpdateMessage();
+
+    private PriceUpdateHandler handler;
+
+    public PriceUpdatesSubscriber(Aeron aeron, String updatesChannel, int updatesStreamId) {
+        this.subscription = aeron.addSubscription(updatesChannel, updatesStreamId);
+    }
+
+    /**
+     * Polls for new price updates.
+     *
+     * @param handler handler to pass updated price records to
+     * @param fragmentLimit max number of update messages to read
+     * @return number of read messages
+     */
+    public int poll(PriceUpdateHandler handler, int fragmentLimit) {
+        this.handler = handler;
+        return subscription.poll(assembler, fragmentLimit);
+    }
+
+    private void onFragment(final DirectBuffer buffer, final int offset, final int length, final Header header) {
+        if (buffer.getInt(offset + Message.TYPE_FIELD_OFFSET) != MessageTypes.PRICE_UPDATE_MESSAGE_TYPE) {
+            return;
+        }
+        updateMessage.wrapForRead(buffer, offset);
+        for (int index = 0; index < updateMessage.recordsNumber(); index++) {
+            handler.onPriceUpdate(updateMessage.priceRecord(index));
+        }
+    }
+
+    @Override
+    public void close() {
+        subscription.close();
+    }
+
+}
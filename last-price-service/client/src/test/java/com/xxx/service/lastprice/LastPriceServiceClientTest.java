@@ -1,15 +1,288 @@
 package com.xxx.service.lastprice;
 
+import com.xxx.core.client.AbstractServiceGateway;
+import com.xxx.core.client.ConnectionTimeoutException;
+import com.xxx.core.protocol.Flyweight;
+import com.xxx.core.protocol.Message;
+import com.xxx.service.lastprice.messages.CancelBatchRunRequest;
+import com.xxx.service.lastprice.messages.CancelBatchRunResponse;
+import com.xxx.service.lastprice.messages.PriceRecordsChunk;
+import com.xxx.service.lastprice.messages.StartBatchRunRequest;
+import com.xxx.service.lastprice.messages.StartBatchRunResponse;
+import com.xxx.service.lastprice.messages.UploadChunkRequest;
+import com.xxx.service.lastprice.messages.UploadChunkResponse;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.OneToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static com.xxx.core.protocol.Message.allocateMemoryForMessage;
+import static com.xxx.service.lastprice.Configuration.CLIENT_UPLOAD_WINDOW_SIZE;
+import static com.xxx.service.lastprice.messages.MessageTypes.CANCEL_BATCH_RESPONSE_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.START_BATCH_RESPONSE_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.UPLOAD_CHUNK_RESPONSE_MESSAGE_TYPE;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+import static org.agrona.concurrent.ringbuffer.RingBufferDescriptor.TRAILER_LENGTH;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
 /**
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public class LastPriceServiceClientTest {
 
+    private static final long BATCH_RUN_ID = 42L;
+    private static final long WAIT_TIMEOUT_NS = 100L;
+    private static final long NO_RESULT = Long.MIN_VALUE;
+
+    private final RingBuffer inboundBuffer = new OneToOneRingBuffer(new UnsafeBuffer(
+        allocateDirectAligned(64 * 1024 + TRAILER_LENGTH, CACHE_LINE_LENGTH)
+    ));
+    private final UploadChunkResponse response = new UploadChunkResponse();
+    private final StartBatchRunResponse startResponse = new StartBatchRunResponse();
+    private final CancelBatchRunResponse cancelResponse = new CancelBatchRunResponse();
+    private final PriceRecordsChunk chunk = new PriceRecordsChunk();
+    private final MutableDirectBuffer payload = new UnsafeBuffer(new byte[SIZE_OF_INT]);
+    // chunk id -> reported status
+    private final Long2LongHashMap results = new Long2LongHashMap(NO_RESULT);
+    // shards the batch run was cancelled on
+    private final IntArrayList cancelledShards = new IntArrayList();
+
+    private long correlationId;
+    private long nanoTime;
+    private boolean autoAdvanceClock;
+    // server is emulated by the gateway when set
+    private boolean respondToRequests;
+    private int responsesToLose;
+    private int shardsNumber;
+    // shard which never responds, -1 if all of them respond
+    private int silentShard;
+    // status of the start batch run response by shard
+    private int[] startStatuses;
+    private LastPriceServiceClient client;
+
+    @BeforeEach
+    public void setUp() {
+        correlationId = 0L;
+        nanoTime = 0L;
+        autoAdvanceClock = false;
+        respondToRequests = false;
+        responsesToLose = 0;
+        shardsNumber = 1;
+        silentShard = -1;
+        startStatuses = new int[] {StartBatchRunResponse.SUCCESS_STATUS};
+        results.clear();
+        cancelledShards.clear();
+        final AbstractServiceGateway<?> gateway = mock(AbstractServiceGateway.class, withSettings().defaultAnswer(invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "nextCorrelationId":
+                    return ++correlationId;
+                case "shardsNumber":
+                    return shardsNumber;
+                case "send":
+                    respond(invocation.getArgument(0), invocation.getArguments().length > 1 ? invocation.getArgument(1) : 0);
+                    return null;
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        }));
+        client = new LastPriceServiceClient(
+            1, () -> autoAdvanceClock ? nanoTime++ : nanoTime, gateway, BusySpinIdleStrategy.INSTANCE, WAIT_TIMEOUT_NS, inboundBuffer
+        );
+        allocateMemoryForMessage(response);
+        allocateMemoryForMessage(startResponse);
+        allocateMemoryForMessage(cancelResponse);
+        Flyweight.allocateMemoryForFlyweight(chunk, PriceRecordsChunk.defineSize(1));
+        chunk.reset();
+        chunk.addRecord("AIR", 100500L, payload, 0, SIZE_OF_INT);
+    }
+
+    @Test
+    public void shouldKeepChunksInFlightAndMatchResponsesByCorrelationId() {
+        for (long chunkId = 0; chunkId < 3; chunkId++) {
+            client.uploadChunkAsync(BATCH_RUN_ID, chunkId, chunk, this::onUploadResult);
+        }
+        assertThat(client.uploadsInFlight(), is(3));
+        putResponse(2L, UploadChunkResponse.SUCCESS_STATUS);
+        putResponse(1L, UploadChunkResponse.BATCH_RUN_NOT_FOUND_STATUS);
+        assertThat(client.pollUploads(), is(2));
+        assertThat(client.uploadsInFlight(), is(1));
+        assertThat(results.get(0L), is((long) UploadChunkResponse.BATCH_RUN_NOT_FOUND_STATUS));
+        assertThat(results.get(1L), is((long) UploadChunkResponse.SUCCESS_STATUS));
+        assertThat(results.get(2L), is(NO_RESULT));
+        putResponse(3L, UploadChunkResponse.SUCCESS_STATUS);
+        client.awaitUploads();
+        assertThat(client.uploadsInFlight(), is(0));
+        assertThat(results.get(2L), is((long) UploadChunkResponse.SUCCESS_STATUS));
+    }
+
+    @Test
+    public void shouldReportChunksWithoutResponseInTimeAsTimedOut() {
+        client.uploadChunkAsync(BATCH_RUN_ID, 0L, chunk, this::onUploadResult);
+        assertThat(client.pollUploads(), is(0));
+        nanoTime += WAIT_TIMEOUT_NS + 1;
+        assertThat(client.pollUploads(), is(1));
+        assertThat(results.get(0L), is((long) ChunkUploadHandler.TIMEOUT_STATUS));
+        // late response is skipped
+        putResponse(1L, UploadChunkResponse.SUCCESS_STATUS);
+        assertThat(client.pollUploads(), is(0));
+    }
+
+    @Test
+    public void whenWindowIsFullThenUploadWaitsForItToBeFreed() {
+        autoAdvanceClock = true;
+        for (long chunkId = 0; chunkId < CLIENT_UPLOAD_WINDOW_SIZE; chunkId++) {
+            client.uploadChunkAsync(BATCH_RUN_ID, chunkId, chunk, this::onUploadResult);
+        }
+        assertThat(client.uploadsInFlight(), is(CLIENT_UPLOAD_WINDOW_SIZE));
+        assertThat(results.size(), is(0));
+        client.uploadChunkAsync(BATCH_RUN_ID, CLIENT_UPLOAD_WINDOW_SIZE, chunk, this::onUploadResult);
+        // the clock ticks on each read, so the next chunks can expire together with the first one
+        assertThat(results.get(0L), is((long) ChunkUploadHandler.TIMEOUT_STATUS));
+        assertThat(results.get(CLIENT_UPLOAD_WINDOW_SIZE), is(NO_RESULT));
+        assertThat(client.uploadsInFlight(), is(CLIENT_UPLOAD_WINDOW_SIZE + 1 - results.size()));
+    }
+
+    @Test
+    public void whenUploadsAreInFlightThenSynchronousCallsAreNotAllowed() {
+        client.uploadChunkAsync(BATCH_RUN_ID, 0L, chunk, this::onUploadResult);
+        assertThrows(IllegalStateException.class, () -> client.completeBatchRun(BATCH_RUN_ID));
+    }
+
+    @Test
+    public void shouldUploadTrackedChunkAgainIfResponseWasNotReceivedInTime() throws ConnectionTimeoutException {
+        autoAdvanceClock = true;
+        respondToRequests = true;
+        responsesToLose = 2;
+        assertThat(client.uploadChunk(BATCH_RUN_ID, 0, 5L, chunk), is(true));
+        assertThat(correlationId, is(3L));
+        assertThat(client.lastChunkSequence(), is(5L));
+    }
+
+    @Test
+    public void whenAllAttemptsTimeOutThenLastChunkSequenceIsUnknown() throws ConnectionTimeoutException {
+        autoAdvanceClock = true;
+        respondToRequests = true;
+        assertThat(client.uploadChunk(BATCH_RUN_ID, 0, 5L, chunk), is(true));
+        assertThat(client.lastChunkSequence(), is(5L));
+        responsesToLose = 3;
+        assertThrows(ConnectionTimeoutException.class, () -> client.uploadChunk(BATCH_RUN_ID, 0, 6L, chunk));
+        assertThat(client.lastChunkSequence(), is(LastPriceServiceClient.UNKNOWN_CHUNK_SEQUENCE));
+    }
+
+    @Test
+    public void whenShardDoesNotAnswerThenLastChunkSequenceIsUnknown() {
+        autoAdvanceClock = true;
+        respondToRequests = true;
+        shardsNumber = 2;
+        // the first shard answers, all attempts on the second one time out
+        silentShard = 1;
+        assertThrows(ConnectionTimeoutException.class, () -> client.uploadChunk(BATCH_RUN_ID, 0, 5L, chunk));
+        assertThat(correlationId, is(4L));
+        assertThat(client.lastChunkSequence(), is(LastPriceServiceClient.UNKNOWN_CHUNK_SEQUENCE));
+    }
+
+    @Test
+    public void shouldNotUploadUntrackedChunkAgain() {
+        autoAdvanceClock = true;
+        respondToRequests = true;
+        responsesToLose = 1;
+        assertThrows(ConnectionTimeoutException.class, () -> client.uploadChunk(BATCH_RUN_ID, chunk));
+        assertThat(correlationId, is(1L));
+    }
+
+    @Test
+    public void whenBatchRunIsStartedOnAllShardsThenItsIdIsReturned() throws ConnectionTimeoutException {
+        respondToRequests = true;
+        shardsNumber = 2;
+        startStatuses = new int[] {StartBatchRunResponse.SUCCESS_STATUS, StartBatchRunResponse.SUCCESS_STATUS};
+        assertThat(client.startBatchRun(), is(BATCH_RUN_ID));
+        assertThat(cancelledShards.isEmpty(), is(true));
+    }
+
     @Test
-    public void test() {
+    public void whenShardRejectsBatchRunThenItIsCancelledAndNotReturned() throws ConnectionTimeoutException {
+        respondToRequests = true;
+        shardsNumber = 3;
+        startStatuses = new int[] {
+            StartBatchRunResponse.SUCCESS_STATUS,
+            StartBatchRunResponse.SUCCESS_STATUS,
+            StartBatchRunResponse.CAN_NOT_CREATE_BATCH_STATUS
+        };
+        assertThat(client.startBatchRun(), is(LastPriceServiceClient.NOT_STARTED_BATCH_ID));
+        assertThat(cancelledShards.toIntArray(), is(new int[] {0, 1}));
+    }
+
+    @Test
+    public void whenFirstShardRejectsBatchRunThenItIsNotReturned() throws ConnectionTimeoutException {
+        respondToRequests = true;
+        shardsNumber = 2;
+        startStatuses = new int[] {StartBatchRunResponse.CAN_NOT_CREATE_BATCH_STATUS, StartBatchRunResponse.SUCCESS_STATUS};
+        assertThat(client.startBatchRun(), is(LastPriceServiceClient.NOT_STARTED_BATCH_ID));
+        assertThat(cancelledShards.isEmpty(), is(true));
+    }
+
+    @Test
+    public void whenBatchRunIdIsTakenOnEachAttemptThenItIsNotReturned() throws ConnectionTimeoutException {
+        respondToRequests = true;
+        shardsNumber = 2;
+        startStatuses = new int[] {StartBatchRunResponse.SUCCESS_STATUS, StartBatchRunResponse.BATCH_ALREADY_EXISTS_STATUS};
+        assertThat(client.startBatchRun(), is(LastPriceServiceClient.NOT_STARTED_BATCH_ID));
+        // the batch run of each attempt is cancelled on the first shard
+        assertThat(cancelledShards.toIntArray(), is(new int[] {0, 0, 0}));
+    }
+
+    private void respond(Message request, int shard) {
+        if (!respondToRequests || shard == silentShard) {
+            return;
+        }
+        if (responsesToLose > 0) {
+            responsesToLose--;
+            return;
+        }
+        if (request instanceof StartBatchRunRequest) {
+            startResponse.correlationId(request.correlationId());
+            startResponse.status(startStatuses[shard]);
+            startResponse.batchId(BATCH_RUN_ID);
+            inboundBuffer.write(
+                START_BATCH_RESPONSE_MESSAGE_TYPE, startResponse.getReadBuffer(), startResponse.getOffset(), startResponse.sizeInBytes()
+            );
+            return;
+        }
+        if (request instanceof CancelBatchRunRequest) {
+            cancelledShards.addInt(shard);
+            cancelResponse.correlationId(request.correlationId());
+            cancelResponse.status(CancelBatchRunResponse.SUCCESS_STATUS);
+            inboundBuffer.write(
+                CANCEL_BATCH_RESPONSE_MESSAGE_TYPE, cancelResponse.getReadBuffer(), cancelResponse.getOffset(), cancelResponse.sizeInBytes()
+            );
+            return;
+        }
+        response.lastChunkSequence(((UploadChunkRequest) request).chunkSequence());
+        putResponse(request.correlationId(), UploadChunkResponse.SUCCESS_STATUS);
+    }
+
+    private void onUploadResult(long batchRunId, long chunkId, int shard, int status) {
+        assertThat(batchRunId, is(BATCH_RUN_ID));
+        assertThat(shard, is(0));
+        results.put(chunkId, status);
+    }
 
+    private void putResponse(long correlationId, int status) {
+        response.correlationId(correlationId);
+        response.status(status);
+        inboundBuffer.write(UPLOAD_CHUNK_RESPONSE_MESSAGE_TYPE, response.getReadBuffer(), response.getOffset(), response.sizeInBytes());
     }
 
 }
@@ -0,0 +1,83 @@
+package com.xxx.service.lastprice;
+
+import io.aeron.Aeron;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.SystemNanoClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.xxx.core.protocol.Lanes.BULK_LANE;
+import static com.xxx.core.protocol.Lanes.CONTROL_LANE;
+import static com.xxx.core.protocol.Lanes.QUERY_LANE;
+import static com.xxx.core.protocol.SystemMessageTypes.CREATE_CONNECTION_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.COMPLETE_BATCH_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.LAST_PRICE_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.START_BATCH_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class LastPriceServiceGatewayTest {
+
+    private final LastPriceServiceGateway gateway = new LastPriceServiceGateway(
+        new ReentrantLock(), mock(Aeron.class), SystemNanoClock.INSTANCE, BusySpinIdleStrategy.INSTANCE,
+        "aeron:ipc", 2001, "aeron:ipc", 2002, 1, () -> BusySpinIdleStrategy.INSTANCE, mock(ExecutorService.class)
+    );
+    private final TwoLanesGateway twoLanesGateway = new TwoLanesGateway();
+
+    @Test
+    public void shouldRouteRequestsToLanesByTheirTypes() {
+        assertThat(gateway.lane(LAST_PRICE_REQUEST_MESSAGE_TYPE), is(QUERY_LANE));
+        assertThat(gateway.lane(MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE), is(QUERY_LANE));
+        assertThat(gateway.lane(UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE), is(BULK_LANE));
+        assertThat(gateway.lane(START_BATCH_REQUEST_MESSAGE_TYPE), is(CONTROL_LANE));
+        assertThat(gateway.lane(COMPLETE_BATCH_REQUEST_MESSAGE_TYPE), is(CONTROL_LANE));
+        assertThat(gateway.lane(CREATE_CONNECTION_MESSAGE_TYPE), is(CONTROL_LANE));
+    }
+
+    @Test
+    public void whenGatewayHasTwoLanesThenBulkRequestsAreSentOnControlLane() {
+        assertThat(twoLanesGateway.lanesNumber(), is(2));
+        assertThat(twoLanesGateway.publicationLane(UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE), is(CONTROL_LANE));
+        assertThat(twoLanesGateway.publicationLane(LAST_PRICE_REQUEST_MESSAGE_TYPE), is(QUERY_LANE));
+        assertThat(twoLanesGateway.publicationLane(START_BATCH_REQUEST_MESSAGE_TYPE), is(CONTROL_LANE));
+    }
+
+    @Test
+    public void whenGatewayHasSingleLaneThenAllRequestsAreSentOnControlLane() {
+        assertThat(twoLanesGateway.singleLanePublicationLane(LAST_PRICE_REQUEST_MESSAGE_TYPE), is(CONTROL_LANE));
+        assertThat(twoLanesGateway.singleLanePublicationLane(UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE), is(CONTROL_LANE));
+    }
+
+    private static final class TwoLanesGateway extends LastPriceServiceGateway {
+
+        private TwoLanesGateway() {
+            super(
+                new ReentrantLock(), mock(Aeron.class), SystemNanoClock.INSTANCE, BusySpinIdleStrategy.INSTANCE,
+                "aeron:ipc", 2001, "aeron:ipc", 2002, 1, () -> BusySpinIdleStrategy.INSTANCE, mock(ExecutorService.class)
+            );
+        }
+
+        @Override
+        protected int lanesNumber() {
+            return 2;
+        }
+
+        private int publicationLane(int messageType) {
+            return publicationLane(messageType, lanesNumber());
+        }
+
+        private int singleLanePublicationLane(int messageType) {
+            return publicationLane(messageType, 1);
+        }
+
+    }
+
+}
@@ -12,22 +12,65 @@ public class Configuration {
     private static final String MAX_CHUNK_SIZE_PROP = "properties.chunk.max_size";
     public static final int MAX_CHUNK_SIZE = Integer.getInteger(MAX_CHUNK_SIZE_PROP, 1000);
 
+    // bigger chunks are applied by the server in slices of this number of records, one slice per duty cycle
+    private static final String CHUNK_SLICE_RECORDS_PROP = "properties.chunk.slice_records";
+    public static final int CHUNK_SLICE_RECORDS = Integer.getInteger(CHUNK_SLICE_RECORDS_PROP, 128);
+
+    // bigger batch runs are merged to the market state in slices of this number of records, one slice per duty cycle
+    private static final String MERGE_SLICE_RECORDS_PROP = "properties.batch.merge_slice_records";
+    public static final int MERGE_SLICE_RECORDS = Integer.getInteger(MERGE_SLICE_RECORDS_PROP, 256);
+
+    private static final String MAX_MULTI_LAST_PRICE_INSTRUMENTS_PROP = "properties.price.multi_request_max_instruments";
+    public static final int MAX_MULTI_LAST_PRICE_INSTRUMENTS = Integer.getInteger(MAX_MULTI_LAST_PRICE_INSTRUMENTS_PROP, 100);
+
+    private static final String MAX_SUBSCRIPTION_INSTRUMENTS_PROP = "properties.subscription.request_max_instruments";
+    public static final int MAX_SUBSCRIPTION_INSTRUMENTS = Integer.getInteger(MAX_SUBSCRIPTION_INSTRUMENTS_PROP, 100);
+
+    private static final String MAX_PRICE_UPDATE_RECORDS_PROP = "properties.subscription.update_max_records";
+    public static final int MAX_PRICE_UPDATE_RECORDS = Integer.getInteger(MAX_PRICE_UPDATE_RECORDS_PROP, 16);
+
     private static final String MAX_ACTIVE_BATCHES_NUMBER_PROP = "properties.batch.max_active_number";
     public static final int MAX_ACTIVE_BATCHES_NUMBER = Integer.getInteger(MAX_ACTIVE_BATCHES_NUMBER_PROP, 100);
 
+    // batch run keeps the memory grown up to this number of records for the next batch runs, memory above it is released
+    private static final String BATCH_RUN_MAX_RETAINED_RECORDS_PROP = "properties.batch.max_retained_records";
+    public static final int BATCH_RUN_MAX_RETAINED_RECORDS = Integer.getInteger(BATCH_RUN_MAX_RETAINED_RECORDS_PROP, 8192);
+
+    private static final String MAX_BATCH_PRODUCERS_PROP = "properties.batch.max_producers";
+    public static final int MAX_BATCH_PRODUCERS = Integer.getInteger(MAX_BATCH_PRODUCERS_PROP, 64);
+
     private static final String PRICE_MAX_PAYLOAD_SIZE_PROP = "properties.price.max_payload_size";
     public static final int PRICE_MAX_PAYLOAD_SIZE = Integer.getInteger(PRICE_MAX_PAYLOAD_SIZE_PROP, 16);
 
+    private static final String PRICE_INLINE_PAYLOAD_SIZE_PROP = "properties.price.inline_payload_size";
+    public static final int PRICE_INLINE_PAYLOAD_SIZE = Integer.getInteger(PRICE_INLINE_PAYLOAD_SIZE_PROP, 8);
+
+    private static final String PAYLOAD_ARENA_PAGE_SIZE_PROP = "properties.price.payload_arena_page_size";
+    public static final int PAYLOAD_ARENA_PAGE_SIZE = Integer.getInteger(PAYLOAD_ARENA_PAGE_SIZE_PROP, 64 * 1024);
+
     private static final String INSTRUMENT_MAX_TICKER_LENGTH_PROP = "properties.instrument.max_ticker_length";
     public static final int INSTRUMENT_MAX_TICKER_LENGTH = Integer.getInteger(INSTRUMENT_MAX_TICKER_LENGTH_PROP, 10);
 
     private static final String BATCH_EVICTION_TIMEOUT_PROP = "properties.batch.eviction_timeout";
     public static final long BATCH_EVICTION_TIMEOUT = Integer.getInteger(BATCH_EVICTION_TIMEOUT_PROP, 5000);
 
+    private static final String MARKET_STATE_SNAPSHOT_INTERVAL_PROP = "properties.market_state.snapshot_interval";
+    public static final long MARKET_STATE_SNAPSHOT_INTERVAL = Integer.getInteger(MARKET_STATE_SNAPSHOT_INTERVAL_PROP, 1000);
+
+    private static final String JOURNAL_SEGMENT_SIZE_PROP = "properties.journal.segment_size";
+    public static final int JOURNAL_SEGMENT_SIZE = Integer.getInteger(JOURNAL_SEGMENT_SIZE_PROP, 64 * 1024 * 1024);
+
+    // server and its clients should use the same number of lanes, 3 separates queries, batch control and chunks
+    private static final String LANES_NUMBER_PROP = "properties.service.lanes_number";
+    public static final int LANES_NUMBER = Integer.getInteger(LANES_NUMBER_PROP, 1);
+
     private static final String CLIENT_WAIT_TIMEOUT_PROP = "properties.client.wait_timeout";
     public static final long CLIENT_WAIT_TIMEOUT = Integer.getInteger(CLIENT_WAIT_TIMEOUT_PROP, (int) TimeUnit.MILLISECONDS.toNanos(300));
 
     private static final String CLIENT_INBOUND_BUFFER_SIZE_PROP = "properties.client.inbound_buffer_size";
-    public static final int CLIENT_INBOUND_BUFFER_SIZE = Integer.getInteger(CLIENT_INBOUND_BUFFER_SIZE_PROP, 2048);
+    public static final int CLIENT_INBOUND_BUFFER_SIZE = Integer.getInteger(CLIENT_INBOUND_BUFFER_SIZE_PROP, 64 * 1024);
+
+    private static final String CLIENT_UPLOAD_WINDOW_SIZE_PROP = "properties.client.upload_window_size";
+    public static final int CLIENT_UPLOAD_WINDOW_SIZE = Integer.getInteger(CLIENT_UPLOAD_WINDOW_SIZE_PROP, 16);
 
 }
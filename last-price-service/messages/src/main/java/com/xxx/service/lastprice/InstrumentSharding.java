@@ -0,0 +1,47 @@
+package com.xxx.service.lastprice;
+
+/**
+ * Defines which server shard owns an instrument. Instruments universe is partitioned by hash of the ticker,
+ * so clients and servers agree on the owner without any coordination. The hash must stay stable between
+ * versions and JVMs, since servers load instruments and clients route requests using it independently.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public final class InstrumentSharding {
+
+    private static final int FNV_OFFSET_BASIS = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private InstrumentSharding() {
+    }
+
+    /**
+     * Defines shard of the given instrument.
+     *
+     * @param instrument instrument ticker
+     * @param shardsNumber number of shards
+     * @return index of the shard owning the instrument, from 0 to shardsNumber - 1
+     */
+    public static int shardOf(CharSequence instrument, int shardsNumber) {
+        if (shardsNumber == 1) {
+            return 0;
+        }
+        return Math.floorMod(hash(instrument), shardsNumber);
+    }
+
+    /**
+     * FNV-1a hash of the ticker characters. Tickers are ASCII, so each char is hashed as one byte.
+     *
+     * @param instrument instrument ticker
+     * @return hash of the ticker
+     */
+    static int hash(CharSequence instrument) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < instrument.length(); i++) {
+            hash ^= instrument.charAt(i) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.xxx.service.lastprice.messages;
+
+
+import com.xxx.core.protocol.Message;
+
+import static com.xxx.service.lastprice.messages.MessageTypes.ADD_INSTRUMENT_RESPONSE_MESSAGE_TYPE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+
+public class AddInstrumentResponse extends Message {
+
+    public static final int SUCCESS_STATUS = 0;
+    public static final int ALREADY_EXISTS_STATUS = 1;
+    public static final int WRONG_INSTRUMENT_STATUS = 2;
+
+    private static final int STATUS_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
+    public static final int MESSAGE_SIZE = STATUS_FIELD_OFFSET + SIZE_OF_INT;
+
+    public int status() {
+        return readBuffer.getInt(offset + STATUS_FIELD_OFFSET);
+    }
+
+    public void status(int status) {
+        writeBuffer.putInt(offset + STATUS_FIELD_OFFSET, status);
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return MESSAGE_SIZE;
+    }
+
+    @Override
+    public int uniqueType() {
+        return ADD_INSTRUMENT_RESPONSE_MESSAGE_TYPE;
+    }
+}
@@ -4,12 +4,18 @@ package com.xxx.service.lastprice.messages;
 import com.xxx.core.protocol.Message;
 
 import static com.xxx.service.lastprice.messages.MessageTypes.COMPLETE_BATCH_REQUEST_MESSAGE_TYPE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.agrona.BitUtil.SIZE_OF_LONG;
 
+/**
+ * Request of the producer to complete the batch run. Prices of the batch run are applied
+ * when all of its producers have completed it.
+ */
 public class CompleteBatchRunRequest extends Message {
 
     public static final int BATCH_ID_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
-    public static final int MESSAGE_SIZE = BATCH_ID_FIELD_OFFSET + SIZE_OF_LONG;
+    public static final int PRODUCER_ID_FIELD_OFFSET = BATCH_ID_FIELD_OFFSET + SIZE_OF_LONG;
+    public static final int MESSAGE_SIZE = PRODUCER_ID_FIELD_OFFSET + SIZE_OF_INT;
 
     public long batchId() {
         return readBuffer.getLong(offset + BATCH_ID_FIELD_OFFSET);
@@ -19,6 +25,14 @@ public class CompleteBatchRunRequest extends Message {
         writeBuffer.putLong(offset + BATCH_ID_FIELD_OFFSET, batchId);
     }
 
+    public int producerId() {
+        return readBuffer.getInt(offset + PRODUCER_ID_FIELD_OFFSET);
+    }
+
+    public void producerId(int producerId) {
+        writeBuffer.putInt(offset + PRODUCER_ID_FIELD_OFFSET, producerId);
+    }
+
     @Override
     public int sizeInBytes() {
         return MESSAGE_SIZE;
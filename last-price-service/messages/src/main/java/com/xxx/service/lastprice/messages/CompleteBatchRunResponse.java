@@ -10,6 +10,9 @@ public class CompleteBatchRunResponse extends Message {
 
     public static final int SUCCESS_STATUS = 0;
     public static final int BATCH_RUN_NOT_FOUND_STATUS = 1;
+    // producer has completed, the batch run waits for the other producers
+    public static final int PRODUCERS_PENDING_STATUS = 2;
+    public static final int WRONG_PRODUCER_STATUS = 3;
 
     private static final int STATUS_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
     private static final int BATCH_ID_FIELD_OFFSET = STATUS_FIELD_OFFSET + SIZE_OF_INT;
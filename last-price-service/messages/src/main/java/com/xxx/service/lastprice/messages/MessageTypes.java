@@ -17,6 +17,17 @@ public final class MessageTypes {
     public static final int LAST_PRICE_REQUEST_MESSAGE_TYPE = 1009;
     public static final int LAST_PRICE_RESPONSE_MESSAGE_TYPE = 1010;
 
+    public static final int ADD_INSTRUMENT_REQUEST_MESSAGE_TYPE = 1011;
+    public static final int ADD_INSTRUMENT_RESPONSE_MESSAGE_TYPE = 1012;
+
+    public static final int MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE = 1013;
+    public static final int MULTI_LAST_PRICE_RESPONSE_MESSAGE_TYPE = 1014;
+
+    public static final int SUBSCRIBE_REQUEST_MESSAGE_TYPE = 1015;
+    public static final int SUBSCRIBE_RESPONSE_MESSAGE_TYPE = 1016;
+
+    public static final int PRICE_UPDATE_MESSAGE_TYPE = 1017;
+
     private MessageTypes() {
     }
 }
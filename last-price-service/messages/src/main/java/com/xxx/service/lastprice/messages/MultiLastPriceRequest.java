@@ -0,0 +1,92 @@
+package com.xxx.service.lastprice.messages;
+
+
+import com.xxx.core.protocol.Message;
+import org.agrona.AsciiSequenceView;
+
+import static com.xxx.service.lastprice.Configuration.INSTRUMENT_MAX_TICKER_LENGTH;
+import static com.xxx.service.lastprice.Configuration.MAX_MULTI_LAST_PRICE_INSTRUMENTS;
+import static com.xxx.service.lastprice.messages.MessageTypes.MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+
+/**
+ * Requests last prices of several instruments in one message. Number of instruments is limited by
+ * {@link com.xxx.service.lastprice.Configuration#MAX_MULTI_LAST_PRICE_INSTRUMENTS}.
+ */
+public class MultiLastPriceRequest extends Message {
+
+    public static final int INSTRUMENTS_NUMBER_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
+    public static final int INSTRUMENTS_FIELD_OFFSET = INSTRUMENTS_NUMBER_FIELD_OFFSET + SIZE_OF_INT;
+
+    public static final int INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET = 0;
+    public static final int INSTRUMENT_TICKER_FIELD_OFFSET = INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int INSTRUMENT_ENTRY_SIZE = INSTRUMENT_TICKER_FIELD_OFFSET + INSTRUMENT_MAX_TICKER_LENGTH;
+
+    private final AsciiSequenceView asciiSequenceView = new AsciiSequenceView();
+
+    public void reset() {
+        instrumentsNumber(0);
+    }
+
+    public int instrumentsNumber() {
+        return readBuffer.getInt(offset + INSTRUMENTS_NUMBER_FIELD_OFFSET);
+    }
+
+    private void instrumentsNumber(int instrumentsNumber) {
+        writeBuffer.putInt(offset + INSTRUMENTS_NUMBER_FIELD_OFFSET, instrumentsNumber);
+    }
+
+    public CharSequence instrument(int index) {
+        final int entryOffset = entryOffset(index);
+        asciiSequenceView.wrap(
+            readBuffer,
+            entryOffset + INSTRUMENT_TICKER_FIELD_OFFSET,
+            readBuffer.getInt(entryOffset + INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET)
+        );
+        return asciiSequenceView;
+    }
+
+    public void addInstrument(CharSequence instrument) {
+        checkInstrument(instrument);
+        final int index = instrumentsNumber();
+        if (index >= MAX_MULTI_LAST_PRICE_INSTRUMENTS) {
+            throw new IllegalStateException("Request is full, max number of instruments is: " + MAX_MULTI_LAST_PRICE_INSTRUMENTS);
+        }
+        instrumentsNumber(index + 1);
+        final int entryOffset = entryOffset(index);
+        writeBuffer.putInt(entryOffset + INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET, instrument.length());
+        for (int i = 0; i < instrument.length(); i++) {
+            writeBuffer.putByte(entryOffset + INSTRUMENT_TICKER_FIELD_OFFSET + i, (byte) instrument.charAt(i));
+        }
+    }
+
+    private int entryOffset(int index) {
+        return offset + INSTRUMENTS_FIELD_OFFSET + index * INSTRUMENT_ENTRY_SIZE;
+    }
+
+    private void checkInstrument(CharSequence instrument) {
+        if (instrument.length() > INSTRUMENT_MAX_TICKER_LENGTH) {
+            throw new IllegalArgumentException(
+                "Instrument length can not be longer than: " + INSTRUMENT_MAX_TICKER_LENGTH
+            );
+        }
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return defineSize(instrumentsNumber());
+    }
+
+    public static int defineSize(int instrumentsNumber) {
+        return INSTRUMENTS_FIELD_OFFSET + instrumentsNumber * INSTRUMENT_ENTRY_SIZE;
+    }
+
+    public static int maxSize() {
+        return defineSize(MAX_MULTI_LAST_PRICE_INSTRUMENTS);
+    }
+
+    @Override
+    public int uniqueType() {
+        return MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE;
+    }
+}
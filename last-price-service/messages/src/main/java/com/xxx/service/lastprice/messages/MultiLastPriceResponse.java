@@ -0,0 +1,95 @@
+package com.xxx.service.lastprice.messages;
+
+
+import com.xxx.core.protocol.Message;
+
+import static com.xxx.service.lastprice.Configuration.MAX_MULTI_LAST_PRICE_INSTRUMENTS;
+import static com.xxx.service.lastprice.messages.MessageTypes.MULTI_LAST_PRICE_RESPONSE_MESSAGE_TYPE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+
+/**
+ * Last prices of several instruments. Each entry has its own status, entry statuses are the same
+ * as {@link LastPriceResponse} ones. Entries are in the same order as instruments in the request.
+ */
+public class MultiLastPriceResponse extends Message {
+
+    public static final int SUCCESS_STATUS = 0;
+    public static final int TOO_MANY_INSTRUMENTS_STATUS = 1;
+
+    public static final int STATUS_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
+    public static final int RECORDS_NUMBER_FIELD_OFFSET = STATUS_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int RECORDS_FIELD_OFFSET = RECORDS_NUMBER_FIELD_OFFSET + SIZE_OF_INT;
+
+    public static final int RECORD_STATUS_FIELD_OFFSET = 0;
+    public static final int PRICE_RECORD_FIELD_OFFSET = RECORD_STATUS_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int RECORD_ENTRY_SIZE = PRICE_RECORD_FIELD_OFFSET + PriceRecord.SIZE_IN_BYTES;
+
+    private final PriceRecord priceRecord = new PriceRecord();
+
+    public int status() {
+        return readBuffer.getInt(offset + STATUS_FIELD_OFFSET);
+    }
+
+    public void status(int status) {
+        writeBuffer.putInt(offset + STATUS_FIELD_OFFSET, status);
+    }
+
+    public int recordsNumber() {
+        return readBuffer.getInt(offset + RECORDS_NUMBER_FIELD_OFFSET);
+    }
+
+    public void recordsNumber(int recordsNumber) {
+        writeBuffer.putInt(offset + RECORDS_NUMBER_FIELD_OFFSET, recordsNumber);
+    }
+
+    public int recordStatus(int index) {
+        return readBuffer.getInt(entryOffset(index) + RECORD_STATUS_FIELD_OFFSET);
+    }
+
+    public void recordStatus(int index, int status) {
+        writeBuffer.putInt(entryOffset(index) + RECORD_STATUS_FIELD_OFFSET, status);
+    }
+
+    public PriceRecord priceRecord(int index) {
+        priceRecord.wrapForRead(readBuffer, entryOffset(index) + PRICE_RECORD_FIELD_OFFSET);
+        return priceRecord;
+    }
+
+    public PriceRecord priceRecordForWrite(int index) {
+        priceRecord.wrapForWrite(writeBuffer, entryOffset(index) + PRICE_RECORD_FIELD_OFFSET);
+        return priceRecord;
+    }
+
+    /**
+     * Copies the entry of another response to the given position of this response.
+     *
+     * @param index position of the entry in this response
+     * @param response response to copy the entry from
+     * @param responseIndex position of the entry in the given response
+     */
+    public void putRecord(int index, MultiLastPriceResponse response, int responseIndex) {
+        writeBuffer.putBytes(entryOffset(index), response.readBuffer, response.entryOffset(responseIndex), RECORD_ENTRY_SIZE);
+    }
+
+    private int entryOffset(int index) {
+        return offset + RECORDS_FIELD_OFFSET + index * RECORD_ENTRY_SIZE;
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return defineSize(recordsNumber());
+    }
+
+    public static int defineSize(int recordsNumber) {
+        return RECORDS_FIELD_OFFSET + recordsNumber * RECORD_ENTRY_SIZE;
+    }
+
+    public static int maxSize() {
+        return defineSize(MAX_MULTI_LAST_PRICE_INSTRUMENTS);
+    }
+
+    @Override
+    public int uniqueType() {
+        return MULTI_LAST_PRICE_RESPONSE_MESSAGE_TYPE;
+    }
+}
@@ -0,0 +1,141 @@
+package com.xxx.service.lastprice.messages;
+
+
+import com.xxx.core.protocol.Flyweight;
+import org.agrona.AsciiSequenceView;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import static com.xxx.service.lastprice.Configuration.INSTRUMENT_MAX_TICKER_LENGTH;
+import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
+
+/**
+ * Variable length price record of {@link PriceRecordsChunk}. Record has no padding:
+ * <pre>
+ *   ticker length (1 byte), ticker ASCII bytes,
+ *   as of timestamp delta from the chunk base timestamp (zigzag varint),
+ *   payload size (varint), payload bytes
+ * </pre>
+ * Fields are decoded once the record is wrapped, so accessors don't parse the record again.
+ */
+public class PackedPriceRecord extends Flyweight {
+
+    public static final int TICKER_LENGTH_FIELD_OFFSET = 0;
+    public static final int TICKER_FIELD_OFFSET = TICKER_LENGTH_FIELD_OFFSET + 1;
+    public static final int MAX_VARINT_LONG_SIZE = 10;
+    public static final int MAX_VARINT_INT_SIZE = 5;
+    public static final int MAX_SIZE_IN_BYTES =
+        TICKER_FIELD_OFFSET + INSTRUMENT_MAX_TICKER_LENGTH + MAX_VARINT_LONG_SIZE + MAX_VARINT_INT_SIZE + PRICE_MAX_PAYLOAD_SIZE;
+
+    private static final int MAX_TICKER_LENGTH = Math.min(INSTRUMENT_MAX_TICKER_LENGTH, 0xFF);
+
+    private final AsciiSequenceView asciiSequenceView = new AsciiSequenceView();
+
+    private long asOfTimestamp;
+    private int payloadSize;
+    private int payloadFieldOffset;
+
+    // position of the last decoded varint
+    private int position;
+
+    /**
+     * Wraps the record for read and decodes its fields.
+     *
+     * @param buffer buffer to read the record from
+     * @param offset offset of the record
+     * @param baseTimestamp base timestamp of the chunk
+     */
+    void wrapForRead(DirectBuffer buffer, int offset, long baseTimestamp) {
+        super.wrapForRead(buffer, offset);
+        position = offset + TICKER_FIELD_OFFSET + instrumentTickerLength();
+        final long delta = readVarLong();
+        asOfTimestamp = baseTimestamp + ((delta >>> 1) ^ -(delta & 1));
+        payloadSize = (int) readVarLong();
+        payloadFieldOffset = position - offset;
+    }
+
+    /**
+     * Encodes the record to the given buffer.
+     *
+     * @return size of the encoded record in bytes
+     */
+    static int encode(
+        MutableDirectBuffer buffer, int offset, CharSequence instrument, long asOfTimestamp, long baseTimestamp,
+        DirectBuffer payload, int payloadOffset, int payloadSize) {
+
+        checkInstrument(instrument);
+        if (payloadSize > PRICE_MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Payload size can not be more than: " + PRICE_MAX_PAYLOAD_SIZE);
+        }
+        buffer.putByte(offset + TICKER_LENGTH_FIELD_OFFSET, (byte) instrument.length());
+        for (int i = 0; i < instrument.length(); i++) {
+            buffer.putByte(offset + TICKER_FIELD_OFFSET + i, (byte) instrument.charAt(i));
+        }
+        int position = offset + TICKER_FIELD_OFFSET + instrument.length();
+        final long delta = asOfTimestamp - baseTimestamp;
+        position = putVarLong(buffer, position, (delta << 1) ^ (delta >> 63));
+        position = putVarLong(buffer, position, payloadSize);
+        buffer.putBytes(position, payload, payloadOffset, payloadSize);
+        return position + payloadSize - offset;
+    }
+
+    public int instrumentTickerLength() {
+        return readBuffer.getByte(offset + TICKER_LENGTH_FIELD_OFFSET) & 0xFF;
+    }
+
+    public CharSequence instrument() {
+        asciiSequenceView.wrap(readBuffer, offset + TICKER_FIELD_OFFSET, instrumentTickerLength());
+        return asciiSequenceView;
+    }
+
+    public long asOfTimestamp() {
+        return asOfTimestamp;
+    }
+
+    public int payloadSize() {
+        return payloadSize;
+    }
+
+    public void getPayload(MutableDirectBuffer writeTo, int writeOffset) {
+        writeTo.putBytes(writeOffset, readBuffer, absolutePayloadOffset(), payloadSize);
+    }
+
+    public int absolutePayloadOffset() {
+        return offset + payloadFieldOffset;
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return payloadFieldOffset + payloadSize;
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = readBuffer.getByte(position++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0 && shift < Long.SIZE);
+        return value;
+    }
+
+    private static int putVarLong(MutableDirectBuffer buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.putByte(position++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.putByte(position++, (byte) value);
+        return position;
+    }
+
+    private static void checkInstrument(CharSequence instrument) {
+        if (instrument.length() > MAX_TICKER_LENGTH) {
+            throw new IllegalArgumentException(
+                "Instrument length can not be longer than: " + MAX_TICKER_LENGTH
+            );
+        }
+    }
+
+}
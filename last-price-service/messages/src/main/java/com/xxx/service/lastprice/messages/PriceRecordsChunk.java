@@ -3,19 +3,46 @@ package com.xxx.service.lastprice.messages;
 
 import com.xxx.core.protocol.Flyweight;
 import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
 
 import static com.xxx.service.lastprice.Configuration.MAX_CHUNK_SIZE;
 import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
 
+/**
+ * Chunk of price records packed one after another without padding, see {@link PackedPriceRecord}.
+ * Timestamps of the records are encoded as deltas from the base timestamp, which is the timestamp of the first record.
+ *
+ * Offsets of the records are found by a forward scan the first time a record is accessed after the chunk is wrapped
+ * and kept in the flyweight, so the records can be accessed by index in constant time afterwards.
+ */
 public class PriceRecordsChunk extends Flyweight {
 
     public static final int RECORDS_NUMBER_FIELD_OFFSET = 0;
-    public static final int CHUNK_HEADER_SIZE = RECORDS_NUMBER_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int RECORDS_LENGTH_FIELD_OFFSET = RECORDS_NUMBER_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int BASE_TIMESTAMP_FIELD_OFFSET = RECORDS_LENGTH_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int CHUNK_HEADER_SIZE = BASE_TIMESTAMP_FIELD_OFFSET + SIZE_OF_LONG;
 
-    private final PriceRecord priceRecord = new PriceRecord();
+    private final PackedPriceRecord priceRecord = new PackedPriceRecord();
+    private final int[] recordOffsets = new int[MAX_CHUNK_SIZE];
+    private int indexedRecordsNumber;
+
+    @Override
+    public void wrapForWrite(MutableDirectBuffer buffer, int offset) {
+        super.wrapForWrite(buffer, offset);
+        indexedRecordsNumber = 0;
+    }
+
+    @Override
+    public void wrapForRead(DirectBuffer buffer, int offset) {
+        super.wrapForRead(buffer, offset);
+        indexedRecordsNumber = 0;
+    }
 
     public void reset() {
         recordsNumber(0);
+        recordsLength(0);
+        indexedRecordsNumber = 0;
     }
 
     public int recordsNumber() {
@@ -26,21 +53,57 @@ public class PriceRecordsChunk extends Flyweight {
         writeBuffer.putInt(offset + RECORDS_NUMBER_FIELD_OFFSET, recordsNumber);
     }
 
+    /**
+     * Returns length of all the records in bytes.
+     *
+     * @return records length
+     */
+    public int recordsLength() {
+        return readBuffer.getInt(offset + RECORDS_LENGTH_FIELD_OFFSET);
+    }
+
+    private void recordsLength(int recordsLength) {
+        writeBuffer.putInt(offset + RECORDS_LENGTH_FIELD_OFFSET, recordsLength);
+    }
+
+    public long baseTimestamp() {
+        return readBuffer.getLong(offset + BASE_TIMESTAMP_FIELD_OFFSET);
+    }
+
     public void addRecord(CharSequence instrument, long asOfTimestamp, DirectBuffer payload, int pOffset, int pSize) {
         checkChunkIsNotFull();
         final int index = recordsNumber();
+        if (index == 0) {
+            writeBuffer.putLong(offset + BASE_TIMESTAMP_FIELD_OFFSET, asOfTimestamp);
+        }
+        final int recordsLength = recordsLength();
+        final int recordLength = PackedPriceRecord.encode(
+            writeBuffer, offset + CHUNK_HEADER_SIZE + recordsLength, instrument, asOfTimestamp, baseTimestamp(),
+            payload, pOffset, pSize
+        );
+        recordsLength(recordsLength + recordLength);
         recordsNumber(index + 1);
-        priceRecord.wrapForWrite(writeBuffer, offset + CHUNK_HEADER_SIZE + index * PriceRecord.SIZE_IN_BYTES);
-        priceRecord.instrument(instrument);
-        priceRecord.asOfTimestamp(asOfTimestamp);
-        priceRecord.putPayload(payload, pOffset, pSize);
     }
 
-    public PriceRecord priceRecord(int index) {
-        priceRecord.wrapForRead(readBuffer, offset + CHUNK_HEADER_SIZE + index * PriceRecord.SIZE_IN_BYTES);
+    public PackedPriceRecord priceRecord(int index) {
+        if (index < 0 || index >= recordsNumber()) {
+            throw new IndexOutOfBoundsException("Price record index is out of bounds: " + index);
+        }
+        final long baseTimestamp = baseTimestamp();
+        while (indexedRecordsNumber <= index) {
+            final int recordOffset = indexedRecordsNumber == 0 ? offset + CHUNK_HEADER_SIZE : nextRecordOffset(baseTimestamp);
+            recordOffsets[indexedRecordsNumber++] = recordOffset;
+        }
+        priceRecord.wrapForRead(readBuffer, recordOffsets[index], baseTimestamp);
         return priceRecord;
     }
 
+    private int nextRecordOffset(long baseTimestamp) {
+        final int lastIndexedOffset = recordOffsets[indexedRecordsNumber - 1];
+        priceRecord.wrapForRead(readBuffer, lastIndexedOffset, baseTimestamp);
+        return lastIndexedOffset + priceRecord.sizeInBytes();
+    }
+
     private void checkChunkIsNotFull() {
         if (recordsNumber() >= MAX_CHUNK_SIZE) {
             throw new IllegalStateException("Chunk is full, max number of records is: " + MAX_CHUNK_SIZE);
@@ -49,11 +112,17 @@ public class PriceRecordsChunk extends Flyweight {
 
     @Override
     public int sizeInBytes() {
-        return defineSize(recordsNumber());
+        return CHUNK_HEADER_SIZE + recordsLength();
     }
 
+    /**
+     * Defines max size of the chunk with the given number of records.
+     *
+     * @param recordsNumber number of records
+     * @return max chunk size in bytes
+     */
     public static int defineSize(int recordsNumber) {
-        return CHUNK_HEADER_SIZE + recordsNumber * PriceRecord.SIZE_IN_BYTES;
+        return CHUNK_HEADER_SIZE + recordsNumber * PackedPriceRecord.MAX_SIZE_IN_BYTES;
     }
 
 }
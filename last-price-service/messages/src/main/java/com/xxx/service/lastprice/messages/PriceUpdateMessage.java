@@ -0,0 +1,73 @@
+package com.xxx.service.lastprice.messages;
+
+
+import com.xxx.core.protocol.Message;
+import org.agrona.DirectBuffer;
+
+import static com.xxx.service.lastprice.Configuration.MAX_PRICE_UPDATE_RECORDS;
+import static com.xxx.service.lastprice.messages.MessageTypes.PRICE_UPDATE_MESSAGE_TYPE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+
+/**
+ * Broadcast message with last prices of instruments changed by completed batch runs.
+ * It is not a response to any request, so connection, client and correlation IDs of the header are not used.
+ * Number of records is limited by {@link com.xxx.service.lastprice.Configuration#MAX_PRICE_UPDATE_RECORDS}.
+ */
+public class PriceUpdateMessage extends Message {
+
+    public static final int RECORDS_NUMBER_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
+    public static final int RECORDS_FIELD_OFFSET = RECORDS_NUMBER_FIELD_OFFSET + SIZE_OF_INT;
+
+    private final PriceRecord priceRecord = new PriceRecord();
+
+    public void reset() {
+        recordsNumber(0);
+    }
+
+    public int recordsNumber() {
+        return readBuffer.getInt(offset + RECORDS_NUMBER_FIELD_OFFSET);
+    }
+
+    private void recordsNumber(int recordsNumber) {
+        writeBuffer.putInt(offset + RECORDS_NUMBER_FIELD_OFFSET, recordsNumber);
+    }
+
+    public void addRecord(CharSequence instrument, long asOfTimestamp, DirectBuffer payload, int pOffset, int pSize) {
+        final int index = recordsNumber();
+        if (index >= MAX_PRICE_UPDATE_RECORDS) {
+            throw new IllegalStateException("Update is full, max number of records is: " + MAX_PRICE_UPDATE_RECORDS);
+        }
+        recordsNumber(index + 1);
+        priceRecord.wrapForWrite(writeBuffer, offset + RECORDS_FIELD_OFFSET + index * PriceRecord.SIZE_IN_BYTES);
+        priceRecord.instrument(instrument);
+        priceRecord.asOfTimestamp(asOfTimestamp);
+        priceRecord.putPayload(payload, pOffset, pSize);
+    }
+
+    public boolean isFull() {
+        return recordsNumber() >= MAX_PRICE_UPDATE_RECORDS;
+    }
+
+    public PriceRecord priceRecord(int index) {
+        priceRecord.wrapForRead(readBuffer, offset + RECORDS_FIELD_OFFSET + index * PriceRecord.SIZE_IN_BYTES);
+        return priceRecord;
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return defineSize(recordsNumber());
+    }
+
+    public static int defineSize(int recordsNumber) {
+        return RECORDS_FIELD_OFFSET + recordsNumber * PriceRecord.SIZE_IN_BYTES;
+    }
+
+    public static int maxSize() {
+        return defineSize(MAX_PRICE_UPDATE_RECORDS);
+    }
+
+    @Override
+    public int uniqueType() {
+        return PRICE_UPDATE_MESSAGE_TYPE;
+    }
+}
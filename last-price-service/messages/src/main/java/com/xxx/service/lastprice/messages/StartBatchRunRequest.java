@@ -4,11 +4,46 @@ package com.xxx.service.lastprice.messages;
 import com.xxx.core.protocol.Message;
 
 import static com.xxx.service.lastprice.messages.MessageTypes.START_BATCH_REQUEST_MESSAGE_TYPE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+
+/**
+ * Request to start a batch run. Batch ID is assigned by the server, unless the client proposes its own one.
+ * Proposed ID is used to start the same batch run on several server shards.
+ *
+ * Several producers can upload chunks to the batch run concurrently, each of them is identified by the producer ID
+ * from 0 until the producers number. The batch run is completed when all the producers have completed it.
+ */
+public class StartBatchRunRequest extends Message {
 
+    public static final long SERVER_ASSIGNED_BATCH_ID = 0L;
 
-public class StartBatchRunRequest extends Message {
+    public static final int SINGLE_PRODUCER = 1;
+
+    private static final int BATCH_ID_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
+    private static final int PRODUCERS_NUMBER_FIELD_OFFSET = BATCH_ID_FIELD_OFFSET + SIZE_OF_LONG;
+    public static final int MESSAGE_SIZE = PRODUCERS_NUMBER_FIELD_OFFSET + SIZE_OF_INT;
+
+    public long batchId() {
+        return readBuffer.getLong(offset + BATCH_ID_FIELD_OFFSET);
+    }
 
-    public static final int MESSAGE_SIZE = MESSAGE_HEADER_LENGTH;
+    public void batchId(long batchId) {
+        writeBuffer.putLong(offset + BATCH_ID_FIELD_OFFSET, batchId);
+    }
+
+    /**
+     * Returns number of producers uploading chunks to the batch run, 0 is treated as {@link #SINGLE_PRODUCER}.
+     *
+     * @return producers number
+     */
+    public int producersNumber() {
+        return readBuffer.getInt(offset + PRODUCERS_NUMBER_FIELD_OFFSET);
+    }
+
+    public void producersNumber(int producersNumber) {
+        writeBuffer.putInt(offset + PRODUCERS_NUMBER_FIELD_OFFSET, producersNumber);
+    }
 
     @Override
     public int sizeInBytes() {
@@ -11,6 +11,8 @@ public class StartBatchRunResponse extends Message {
 
     public static final int SUCCESS_STATUS = 0;
     public static final int CAN_NOT_CREATE_BATCH_STATUS = 1;
+    public static final int BATCH_ALREADY_EXISTS_STATUS = 2;
+    public static final int WRONG_PRODUCERS_NUMBER_STATUS = 3;
 
     private static final int STATUS_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
     public static final int BATCH_ID_FIELD_OFFSET = STATUS_FIELD_OFFSET + SIZE_OF_INT;
@@ -0,0 +1,105 @@
+package com.xxx.service.lastprice.messages;
+
+
+import com.xxx.core.protocol.Message;
+import org.agrona.AsciiSequenceView;
+
+import static com.xxx.service.lastprice.Configuration.INSTRUMENT_MAX_TICKER_LENGTH;
+import static com.xxx.service.lastprice.Configuration.MAX_SUBSCRIPTION_INSTRUMENTS;
+import static com.xxx.service.lastprice.messages.MessageTypes.SUBSCRIBE_REQUEST_MESSAGE_TYPE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+
+/**
+ * Subscribes the connection to price updates of several instruments or unsubscribes it, depending on the action.
+ * Number of instruments is limited by {@link com.xxx.service.lastprice.Configuration#MAX_SUBSCRIPTION_INSTRUMENTS}.
+ * Updates are published as {@link PriceUpdateMessage}.
+ */
+public class SubscribeRequest extends Message {
+
+    public static final int SUBSCRIBE_ACTION = 0;
+    public static final int UNSUBSCRIBE_ACTION = 1;
+
+    public static final int ACTION_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
+    public static final int INSTRUMENTS_NUMBER_FIELD_OFFSET = ACTION_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int INSTRUMENTS_FIELD_OFFSET = INSTRUMENTS_NUMBER_FIELD_OFFSET + SIZE_OF_INT;
+
+    public static final int INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET = 0;
+    public static final int INSTRUMENT_TICKER_FIELD_OFFSET = INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int INSTRUMENT_ENTRY_SIZE = INSTRUMENT_TICKER_FIELD_OFFSET + INSTRUMENT_MAX_TICKER_LENGTH;
+
+    private final AsciiSequenceView asciiSequenceView = new AsciiSequenceView();
+
+    public void reset(int action) {
+        if (action != SUBSCRIBE_ACTION && action != UNSUBSCRIBE_ACTION) {
+            throw new IllegalArgumentException("Unknown subscription action: " + action);
+        }
+        writeBuffer.putInt(offset + ACTION_FIELD_OFFSET, action);
+        instrumentsNumber(0);
+    }
+
+    public int action() {
+        return readBuffer.getInt(offset + ACTION_FIELD_OFFSET);
+    }
+
+    public int instrumentsNumber() {
+        return readBuffer.getInt(offset + INSTRUMENTS_NUMBER_FIELD_OFFSET);
+    }
+
+    private void instrumentsNumber(int instrumentsNumber) {
+        writeBuffer.putInt(offset + INSTRUMENTS_NUMBER_FIELD_OFFSET, instrumentsNumber);
+    }
+
+    public CharSequence instrument(int index) {
+        final int entryOffset = entryOffset(index);
+        asciiSequenceView.wrap(
+            readBuffer,
+            entryOffset + INSTRUMENT_TICKER_FIELD_OFFSET,
+            readBuffer.getInt(entryOffset + INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET)
+        );
+        return asciiSequenceView;
+    }
+
+    public void addInstrument(CharSequence instrument) {
+        checkInstrument(instrument);
+        final int index = instrumentsNumber();
+        if (index >= MAX_SUBSCRIPTION_INSTRUMENTS) {
+            throw new IllegalStateException("Request is full, max number of instruments is: " + MAX_SUBSCRIPTION_INSTRUMENTS);
+        }
+        instrumentsNumber(index + 1);
+        final int entryOffset = entryOffset(index);
+        writeBuffer.putInt(entryOffset + INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET, instrument.length());
+        for (int i = 0; i < instrument.length(); i++) {
+            writeBuffer.putByte(entryOffset + INSTRUMENT_TICKER_FIELD_OFFSET + i, (byte) instrument.charAt(i));
+        }
+    }
+
+    private int entryOffset(int index) {
+        return offset + INSTRUMENTS_FIELD_OFFSET + index * INSTRUMENT_ENTRY_SIZE;
+    }
+
+    private void checkInstrument(CharSequence instrument) {
+        if (instrument.length() > INSTRUMENT_MAX_TICKER_LENGTH) {
+            throw new IllegalArgumentException(
+                "Instrument length can not be longer than: " + INSTRUMENT_MAX_TICKER_LENGTH
+            );
+        }
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return defineSize(instrumentsNumber());
+    }
+
+    public static int defineSize(int instrumentsNumber) {
+        return INSTRUMENTS_FIELD_OFFSET + instrumentsNumber * INSTRUMENT_ENTRY_SIZE;
+    }
+
+    public static int maxSize() {
+        return defineSize(MAX_SUBSCRIPTION_INSTRUMENTS);
+    }
+
+    @Override
+    public int uniqueType() {
+        return SUBSCRIBE_REQUEST_MESSAGE_TYPE;
+    }
+}
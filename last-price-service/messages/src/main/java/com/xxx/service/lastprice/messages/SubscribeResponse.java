@@ -0,0 +1,37 @@
+package com.xxx.service.lastprice.messages;
+
+
+import com.xxx.core.protocol.Message;
+
+import static com.xxx.service.lastprice.messages.MessageTypes.SUBSCRIBE_RESPONSE_MESSAGE_TYPE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+
+public class SubscribeResponse extends Message {
+
+    public static final int SUCCESS_STATUS = 0;
+    public static final int TOO_MANY_INSTRUMENTS_STATUS = 1;
+    // unknown instruments are skipped, known ones are processed
+    public static final int WRONG_INSTRUMENT_STATUS = 2;
+    public static final int SUBSCRIPTIONS_NOT_SUPPORTED_STATUS = 3;
+
+    private static final int STATUS_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
+    public static final int MESSAGE_SIZE = STATUS_FIELD_OFFSET + SIZE_OF_INT;
+
+    public int status() {
+        return readBuffer.getInt(offset + STATUS_FIELD_OFFSET);
+    }
+
+    public void status(int status) {
+        writeBuffer.putInt(offset + STATUS_FIELD_OFFSET, status);
+    }
+
+    @Override
+    public int sizeInBytes() {
+        return MESSAGE_SIZE;
+    }
+
+    @Override
+    public int uniqueType() {
+        return SUBSCRIBE_RESPONSE_MESSAGE_TYPE;
+    }
+}
@@ -5,13 +5,22 @@ import com.xxx.core.protocol.Message;
 
 import static com.xxx.service.lastprice.Configuration.MAX_CHUNK_SIZE;
 import static com.xxx.service.lastprice.messages.MessageTypes.UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE;
-import static com.xxx.service.lastprice.messages.PriceRecordsChunk.CHUNK_HEADER_SIZE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.agrona.BitUtil.SIZE_OF_LONG;
 
+/**
+ * Request to upload a chunk of price records to the batch run. Chunks of each producer are numbered
+ * by the chunk sequence starting from 1, so the server applies them once and in order.
+ * Chunk with {@link #UNTRACKED_CHUNK_SEQUENCE} is applied without the check.
+ */
 public class UploadChunkRequest extends Message {
 
+    public static final long UNTRACKED_CHUNK_SEQUENCE = 0L;
+
     private static final int BATCH_ID_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
-    private static final int REQUEST_HEADER_LENGTH = BATCH_ID_FIELD_OFFSET + SIZE_OF_LONG;
+    private static final int CHUNK_SEQUENCE_FIELD_OFFSET = BATCH_ID_FIELD_OFFSET + SIZE_OF_LONG;
+    private static final int PRODUCER_ID_FIELD_OFFSET = CHUNK_SEQUENCE_FIELD_OFFSET + SIZE_OF_LONG;
+    private static final int REQUEST_HEADER_LENGTH = PRODUCER_ID_FIELD_OFFSET + SIZE_OF_INT;
 
     private final PriceRecordsChunk chunk = new PriceRecordsChunk();
 
@@ -33,18 +42,35 @@ public class UploadChunkRequest extends Message {
         writeBuffer.putLong(offset + BATCH_ID_FIELD_OFFSET, batchId);
     }
 
+    public int producerId() {
+        return readBuffer.getInt(offset + PRODUCER_ID_FIELD_OFFSET);
+    }
+
+    public void producerId(int producerId) {
+        writeBuffer.putInt(offset + PRODUCER_ID_FIELD_OFFSET, producerId);
+    }
+
+    public long chunkSequence() {
+        return readBuffer.getLong(offset + CHUNK_SEQUENCE_FIELD_OFFSET);
+    }
+
+    public void chunkSequence(long chunkSequence) {
+        writeBuffer.putLong(offset + CHUNK_SEQUENCE_FIELD_OFFSET, chunkSequence);
+    }
+
     public void putChunk(PriceRecordsChunk chunk) {
         writeBuffer.putBytes(offset + REQUEST_HEADER_LENGTH, chunk.getReadBuffer(), chunk.getOffset(), chunk.sizeInBytes());
     }
 
     @Override
     public int sizeInBytes() {
-        chunk.wrapForRead(readBuffer, offset + REQUEST_HEADER_LENGTH);
-        return REQUEST_HEADER_LENGTH + chunk.recordsNumber() * PriceRecord.SIZE_IN_BYTES;
+        // read directly, so the chunk flyweight wrapped by the caller is not re-wrapped
+        final int recordsLength = readBuffer.getInt(offset + REQUEST_HEADER_LENGTH + PriceRecordsChunk.RECORDS_LENGTH_FIELD_OFFSET);
+        return REQUEST_HEADER_LENGTH + PriceRecordsChunk.CHUNK_HEADER_SIZE + recordsLength;
     }
 
     public static int maxSize() {
-        return REQUEST_HEADER_LENGTH + CHUNK_HEADER_SIZE + MAX_CHUNK_SIZE * PriceRecord.SIZE_IN_BYTES;
+        return REQUEST_HEADER_LENGTH + PriceRecordsChunk.defineSize(MAX_CHUNK_SIZE);
     }
 
     @Override
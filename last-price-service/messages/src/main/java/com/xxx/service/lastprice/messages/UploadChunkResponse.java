@@ -5,16 +5,26 @@ import com.xxx.core.protocol.Message;
 
 import static com.xxx.service.lastprice.messages.MessageTypes.UPLOAD_CHUNK_RESPONSE_MESSAGE_TYPE;
 import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
 
+/**
+ * Response to the chunk upload. For a producer of the batch run it has the sequence of the last chunk
+ * applied from the producer, so after a timeout or {@link #CHUNK_OUT_OF_ORDER_STATUS} the producer knows
+ * which chunk to upload next.
+ */
 public class UploadChunkResponse extends Message {
 
     public static final int SUCCESS_STATUS = 0;
     public static final int BATCH_RUN_NOT_FOUND_STATUS = 1;
     public static final int INSTRUMENT_NOT_FOUND_STATUS = 2;
+    public static final int WRONG_PRODUCER_STATUS = 3;
+    // previous chunk of the producer was not uploaded
+    public static final int CHUNK_OUT_OF_ORDER_STATUS = 4;
 
     private static final int STATUS_FIELD_OFFSET = MESSAGE_HEADER_LENGTH;
     private static final int BATCH_ID_FIELD_OFFSET = STATUS_FIELD_OFFSET + SIZE_OF_INT;
-    private static final int MESSAGE_SIZE = BATCH_ID_FIELD_OFFSET + SIZE_OF_INT;
+    private static final int LAST_CHUNK_SEQUENCE_FIELD_OFFSET = BATCH_ID_FIELD_OFFSET + SIZE_OF_INT;
+    private static final int MESSAGE_SIZE = LAST_CHUNK_SEQUENCE_FIELD_OFFSET + SIZE_OF_LONG;
 
     public int status() {
         return readBuffer.getInt(offset + STATUS_FIELD_OFFSET);
@@ -24,6 +34,14 @@ public class UploadChunkResponse extends Message {
         writeBuffer.putInt(offset + STATUS_FIELD_OFFSET, status);
     }
 
+    public long lastChunkSequence() {
+        return readBuffer.getLong(offset + LAST_CHUNK_SEQUENCE_FIELD_OFFSET);
+    }
+
+    public void lastChunkSequence(long lastChunkSequence) {
+        writeBuffer.putLong(offset + LAST_CHUNK_SEQUENCE_FIELD_OFFSET, lastChunkSequence);
+    }
+
     @Override
     public int sizeInBytes() {
         return MESSAGE_SIZE;
@@ -0,0 +1,49 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.AsciiSequenceView;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class InstrumentShardingTest {
+
+    @Test
+    public void shouldAlwaysReturnFirstShardIfThereIsOnlyOne() {
+        assertThat(InstrumentSharding.shardOf("AIR", 1), is(0));
+        assertThat(InstrumentSharding.shardOf("TEAM", 1), is(0));
+    }
+
+    @Test
+    public void shouldReturnShardInRange() {
+        final String[] instruments = {"AIR", "TEAM", "NEE", "SAF", "TKWY", "VOW", "RDSA"};
+        for (String instrument : instruments) {
+            final int shard = InstrumentSharding.shardOf(instrument, 3);
+            assertThat(shard, greaterThanOrEqualTo(0));
+            assertThat(shard, lessThan(3));
+        }
+    }
+
+    @Test
+    public void shouldDefineSameShardForStringAndBufferView() {
+        final byte[] bytes = "TKWY".getBytes(StandardCharsets.US_ASCII);
+        final AsciiSequenceView view = new AsciiSequenceView(new UnsafeBuffer(bytes), 0, bytes.length);
+        assertThat(InstrumentSharding.shardOf(view, 5), is(InstrumentSharding.shardOf("TKWY", 5)));
+    }
+
+    @Test
+    public void shouldCalculateStableHash() {
+        // FNV-1a reference values, must not change between versions
+        assertThat(InstrumentSharding.hash(""), is(0x811C9DC5));
+        assertThat(InstrumentSharding.hash("a"), is(0xE40C292C));
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.xxx.service.lastprice.messages;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.xxx.service.lastprice.Configuration.MAX_MULTI_LAST_PRICE_INSTRUMENTS;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class MultiLastPriceRequestTest {
+
+    private final MultiLastPriceRequest request = new MultiLastPriceRequest();
+
+    @BeforeEach
+    public void init() {
+        request.init(new UnsafeBuffer(allocateDirectAligned(MultiLastPriceRequest.maxSize(), CACHE_LINE_LENGTH)), 0);
+        request.reset();
+    }
+
+    @Test
+    public void whenInstrumentsAddedThenReadThemCorrectly() {
+        request.addInstrument("AIR");
+        request.addInstrument("TKWY");
+        assertThat(request.instrumentsNumber(), is(2));
+        assertThat("AIR".contentEquals(request.instrument(0)), is(true));
+        assertThat("TKWY".contentEquals(request.instrument(1)), is(true));
+        assertThat(request.sizeInBytes(), is(MultiLastPriceRequest.defineSize(2)));
+        assertThat(request.type(), is(MessageTypes.MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE));
+    }
+
+    @Test
+    public void shouldThrowIllegalStateExceptionIfRequestIsFull() {
+        for (int i = 0; i < MAX_MULTI_LAST_PRICE_INSTRUMENTS; i++) {
+            request.addInstrument("I" + i);
+        }
+        assertThrows(IllegalStateException.class, () -> request.addInstrument("AIR"));
+    }
+
+    @Test
+    public void whenRecordIsCopiedFromAnotherResponseThenReadItCorrectly() {
+        final MultiLastPriceResponse source = new MultiLastPriceResponse();
+        final MultiLastPriceResponse target = new MultiLastPriceResponse();
+        source.init(new UnsafeBuffer(allocateDirectAligned(MultiLastPriceResponse.maxSize(), CACHE_LINE_LENGTH)), 0);
+        target.init(new UnsafeBuffer(allocateDirectAligned(MultiLastPriceResponse.maxSize(), CACHE_LINE_LENGTH)), 0);
+        source.recordsNumber(1);
+        source.recordStatus(0, LastPriceResponse.SUCCESS_STATUS);
+        source.priceRecordForWrite(0).instrument("AIR");
+        source.priceRecordForWrite(0).asOfTimestamp(100500L);
+        target.recordsNumber(3);
+        target.putRecord(2, source, 0);
+        assertThat(target.recordStatus(2), is(LastPriceResponse.SUCCESS_STATUS));
+        assertThat("AIR".contentEquals(target.priceRecord(2).instrument()), is(true));
+        assertThat(target.priceRecord(2).asOfTimestamp(), is(100500L));
+        assertThat(target.sizeInBytes(), is(MultiLastPriceResponse.defineSize(3)));
+    }
+
+}
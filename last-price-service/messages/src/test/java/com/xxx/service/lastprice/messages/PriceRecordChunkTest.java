@@ -6,6 +6,7 @@ import org.agrona.concurrent.UnsafeBuffer;
 import org.junit.jupiter.api.Test;
 
 import static com.xxx.service.lastprice.Configuration.MAX_CHUNK_SIZE;
+import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
 import static com.xxx.service.lastprice.messages.PriceRecordsChunk.CHUNK_HEADER_SIZE;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BitUtil.SIZE_OF_INT;
@@ -49,21 +50,44 @@ public class PriceRecordChunkTest {
         PAYLOAD_BUFFER.putInt(0, 200);
         chunk.addRecord("SAF", 100501, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
         assertThat(chunk.recordsNumber(), is(2));
-        final PriceRecord airRecord = chunk.priceRecord(0);
+        final PackedPriceRecord airRecord = chunk.priceRecord(0);
         assertThat("AIR".contentEquals(airRecord.instrument()), is(true));
         assertThat(airRecord.asOfTimestamp(), is(100500L));
         airRecord.getPayload(PAYLOAD_BUFFER, 0);
         assertThat(PAYLOAD_BUFFER.getInt(0), is(100));
-        final PriceRecord safRecord = chunk.priceRecord(1);
+        final PackedPriceRecord safRecord = chunk.priceRecord(1);
         assertThat("SAF".contentEquals(safRecord.instrument()), is(true));
         assertThat(safRecord.asOfTimestamp(), is(100501L));
         safRecord.getPayload(PAYLOAD_BUFFER, 0);
         assertThat(PAYLOAD_BUFFER.getInt(0), is(200));
-        assertThat(chunk.sizeInBytes(), is(CHUNK_HEADER_SIZE + 2 * PriceRecord.SIZE_IN_BYTES));
+        // ticker length, ticker, timestamp delta, payload size and payload
+        assertThat(chunk.sizeInBytes(), is(CHUNK_HEADER_SIZE + 2 * (1 + 3 + 1 + 1 + SIZE_OF_INT)));
+    }
+
+    @Test
+    public void shouldAccessPackedRecordsByIndexInAnyOrder() {
+        PRICE_RECORDS_CHUNK.reset();
+        final MutableDirectBuffer payload = new UnsafeBuffer(new byte[PRICE_MAX_PAYLOAD_SIZE]);
+        final long[] timestamps = {1_600_000_000_000L, 1_599_999_999_000L, 1_600_000_000_001L, Long.MAX_VALUE};
+        for (int i = 0; i < timestamps.length; i++) {
+            payload.putInt(0, i);
+            PRICE_RECORDS_CHUNK.addRecord("I" + i, timestamps[i], payload, 0, i == 0 ? 0 : SIZE_OF_INT * i);
+        }
+        assertThat(PRICE_RECORDS_CHUNK.baseTimestamp(), is(timestamps[0]));
+        for (int i = timestamps.length - 1; i >= 0; i--) {
+            final PackedPriceRecord record = PRICE_RECORDS_CHUNK.priceRecord(i);
+            assertThat(("I" + i).contentEquals(record.instrument()), is(true));
+            assertThat(record.asOfTimestamp(), is(timestamps[i]));
+            assertThat(record.payloadSize(), is(i == 0 ? 0 : SIZE_OF_INT * i));
+        }
+        final PackedPriceRecord record = PRICE_RECORDS_CHUNK.priceRecord(2);
+        assertThat(record.getReadBuffer().getInt(record.absolutePayloadOffset()), is(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> PRICE_RECORDS_CHUNK.priceRecord(timestamps.length));
     }
 
     @Test
     public void whenTryToSaveMoreThenMaxChunkSizeThenException() {
+        PRICE_RECORDS_CHUNK.reset();
         PAYLOAD_BUFFER.putInt(0, 1);
         for (int i = 0; i < MAX_CHUNK_SIZE; i++) {
             PRICE_RECORDS_CHUNK.addRecord("AIR", 100500, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
@@ -0,0 +1,50 @@
+package com.xxx.service.lastprice.messages;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.xxx.service.lastprice.Configuration.MAX_PRICE_UPDATE_RECORDS;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PriceUpdateMessageTest {
+
+    private final UnsafeBuffer payload = new UnsafeBuffer(allocateDirectAligned(SIZE_OF_INT, CACHE_LINE_LENGTH));
+    private final PriceUpdateMessage message = new PriceUpdateMessage();
+
+    @BeforeEach
+    public void init() {
+        message.init(new UnsafeBuffer(allocateDirectAligned(PriceUpdateMessage.maxSize(), CACHE_LINE_LENGTH)), 0);
+        message.reset();
+    }
+
+    @Test
+    public void whenRecordsAddedThenReadThemCorrectly() {
+        payload.putInt(0, 12345);
+        message.addRecord("AIR", 100L, payload, 0, SIZE_OF_INT);
+        message.addRecord("TKWY", 200L, payload, 0, SIZE_OF_INT);
+        assertThat(message.recordsNumber(), is(2));
+        assertThat("TKWY".contentEquals(message.priceRecord(1).instrument()), is(true));
+        assertThat(message.priceRecord(1).asOfTimestamp(), is(200L));
+        assertThat(message.sizeInBytes(), is(PriceUpdateMessage.defineSize(2)));
+        assertThat(message.type(), is(MessageTypes.PRICE_UPDATE_MESSAGE_TYPE));
+    }
+
+    @Test
+    public void shouldThrowIllegalStateExceptionIfMessageIsFull() {
+        for (int i = 0; i < MAX_PRICE_UPDATE_RECORDS; i++) {
+            message.addRecord("I" + i, i, payload, 0, SIZE_OF_INT);
+        }
+        assertThat(message.isFull(), is(true));
+        assertThrows(IllegalStateException.class, () -> message.addRecord("AIR", 1L, payload, 0, SIZE_OF_INT));
+    }
+
+}
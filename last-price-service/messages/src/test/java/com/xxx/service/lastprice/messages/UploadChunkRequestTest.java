@@ -1,11 +1,11 @@
 package com.xxx.service.lastprice.messages;
 
 import com.xxx.core.protocol.Flyweight;
+import com.xxx.service.lastprice.Configuration;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.junit.jupiter.api.Test;
 
-import static com.xxx.service.lastprice.messages.PriceRecordsChunk.CHUNK_HEADER_SIZE;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.agrona.BufferUtil.allocateDirectAligned;
@@ -42,13 +42,28 @@ public class UploadChunkRequestTest {
         PRICE_RECORDS_CHUNK.addRecord("SAF", 100501, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
         UPLOAD_CHUNK_REQUEST.putChunk(PRICE_RECORDS_CHUNK);
         final PriceRecordsChunk chunk = UPLOAD_CHUNK_REQUEST.getChunk();
-        final PriceRecord airRecord = chunk.priceRecord(0);
+        final PackedPriceRecord airRecord = chunk.priceRecord(0);
         assertThat("AIR".contentEquals(airRecord.instrument()), is(true));
         assertThat(airRecord.asOfTimestamp(), is(100500L));
-        final PriceRecord safRecord = chunk.priceRecord(1);
+        final PackedPriceRecord safRecord = chunk.priceRecord(1);
         assertThat("SAF".contentEquals(airRecord.instrument()), is(true));
         assertThat(airRecord.asOfTimestamp(), is(100501L));
-        assertThat(chunk.sizeInBytes(), is(CHUNK_HEADER_SIZE + 2 * PriceRecord.SIZE_IN_BYTES));
+        assertThat(chunk.sizeInBytes(), is(PRICE_RECORDS_CHUNK.sizeInBytes()));
+    }
+
+    @Test
+    public void whenSizeIsTakenThenChunkToReadIsKept() {
+        PRICE_RECORDS_CHUNK.reset();
+        PAYLOAD_BUFFER.putInt(0, 1);
+        PRICE_RECORDS_CHUNK.addRecord("AIR", 100500, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        PRICE_RECORDS_CHUNK.addRecord("SAF", 100501, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        UPLOAD_CHUNK_REQUEST.putChunk(PRICE_RECORDS_CHUNK);
+        final PriceRecordsChunk chunk = UPLOAD_CHUNK_REQUEST.getChunkToRead();
+        final PackedPriceRecord safRecord = chunk.priceRecord(1);
+        final int headerLength = UploadChunkRequest.maxSize() - PriceRecordsChunk.defineSize(Configuration.MAX_CHUNK_SIZE);
+        assertThat(UPLOAD_CHUNK_REQUEST.sizeInBytes(), is(headerLength + PRICE_RECORDS_CHUNK.sizeInBytes()));
+        assertThat("SAF".contentEquals(safRecord.instrument()), is(true));
+        assertThat(safRecord.asOfTimestamp(), is(100501L));
     }
 
     @Test
@@ -57,4 +72,13 @@ public class UploadChunkRequestTest {
         assertThat(UPLOAD_CHUNK_REQUEST.batchId(), is(100500L));
     }
 
+    @Test
+    public void whenProducerAndChunkSequenceAreWrittenThenReadThemCorrectly() {
+        UPLOAD_CHUNK_REQUEST.producerId(7);
+        UPLOAD_CHUNK_REQUEST.chunkSequence(100500L);
+        PriceRecordChunkTest.whenAddedRecordsToChunkThenReadThemCorrectly(UPLOAD_CHUNK_REQUEST.getChunk());
+        assertThat(UPLOAD_CHUNK_REQUEST.producerId(), is(7));
+        assertThat(UPLOAD_CHUNK_REQUEST.chunkSequence(), is(100500L));
+    }
+
 }
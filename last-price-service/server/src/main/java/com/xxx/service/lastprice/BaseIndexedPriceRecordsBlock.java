@@ -3,6 +3,9 @@ package com.xxx.service.lastprice;
 import com.xxx.core.protocol.Flyweight;
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
+
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 
 /**
  * Base implementation for price records block. Block holds specified {@link #recordsNumber} memory blocks
@@ -18,35 +21,51 @@ import org.agrona.MutableDirectBuffer;
  * {@code int} indexes are used instead. The structure assumed the instrument String key to int index mapping
  * is done externally. You can use {@link InstrumentIndexer} for this.
  *
- * @see BatchRun
+ * Payloads not fitting inline to the records are kept in the {@link PayloadArena} of the block, each record version
+ * owns its arena block, so the block is changed only under the version word of its record.
+ *
+ * Block is multi versioned: each record has two versions stamped with the epoch of the commit they belong to,
+ * and the header of the block keeps the last committed epoch. Updates are written to the version which is not
+ * the latest committed one and stamped with the next epoch, so readers do not see them until {@link #commit()}
+ * publishes all of them at once by incrementing the committed epoch. Readers pick the newest version
+ * at or below the committed epoch, see {@link #getPriceRecord(int, long)}. Older version of a record is reclaimed
+ * by the next commit changing the record.
+ *
  * @see MarketState
  *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
-public class BaseIndexedPriceRecordsBlock extends Flyweight {
+public class BaseIndexedPriceRecordsBlock extends Flyweight implements UpdatablePriceRecords {
+
+    public static final int COMMITTED_EPOCH_FIELD_OFFSET = 0;
+    public static final int BLOCK_HEADER_SIZE = CACHE_LINE_LENGTH;
+    public static final int VERSIONS_NUMBER = 2;
 
-    final int recordsNumber;
+    int recordsNumber;
 
     /**
      * Price record to read information from the block and write to.
-     * Before using {@link #priceRecord} method {@link #selectRecord(int)} should be called.
+     * Before using {@link #priceRecord} method {@link #selectVersion(int, int)} should be called.
      */
     final IndexedPriceRecord priceRecord = new IndexedPriceRecord();
 
-    private final int headerSize;
+    final PayloadArena arena;
 
-    protected BaseIndexedPriceRecordsBlock(int recordsNumber, int headerSize) {
+    private AtomicBuffer atomicBuffer;
+
+    protected BaseIndexedPriceRecordsBlock(int recordsNumber, PayloadArena arena) {
         this.recordsNumber = recordsNumber;
-        this.headerSize = headerSize;
+        this.arena = arena;
+        this.priceRecord.arena(arena);
     }
 
     /**
-     * Resets timestamps of all records to zeros.
+     * Resets all records and the committed epoch to zeros and frees the payload arena. Walks all records,
+     * so it's not supposed to be used on the request handling path.
      */
     public void reset() {
-        for (int index = 0; index < recordsNumber; index++) {
-            getPriceRecord(index).timestamp(0L);
-        }
+        writeBuffer.setMemory(offset, sizeInBytes(), (byte) 0);
+        arena.reset();
     }
 
     /**
@@ -66,11 +85,54 @@ public class BaseIndexedPriceRecordsBlock extends Flyweight {
                     effectiveCapacity + "bytes"
             );
         }
+        if (!(buffer instanceof AtomicBuffer)) {
+            throw new IllegalArgumentException("Price records block requires atomic buffer, got " + buffer.getClass());
+        }
         super.wrapForWrite(buffer, offset);
+        this.atomicBuffer = (AtomicBuffer) buffer;
+    }
+
+    /**
+     * Moves the block to the given memory region, making it able to hold more records.
+     * All existing records are copied, new records are read from the region as is, so it should be zeroed.
+     *
+     * @param recordsNumber new number of records, can not be less than the current one
+     * @param buffer buffer to move the block to
+     * @param offset offset of the block in the buffer
+     */
+    void resize(int recordsNumber, MutableDirectBuffer buffer, int offset) {
+        if (recordsNumber < this.recordsNumber) {
+            throw new IllegalArgumentException("Block can not be shrunk from " + this.recordsNumber + " to " + recordsNumber);
+        }
+        final int requiredCapacity = defineBlockSizeInBytes(recordsNumber);
+        if (buffer.capacity() - offset < requiredCapacity) {
+            throw new IllegalArgumentException("Insufficient buffer capacity to resize the block, required " + requiredCapacity);
+        }
+        buffer.putBytes(offset, writeBuffer, this.offset, sizeInBytes());
+        this.recordsNumber = recordsNumber;
+        wrapForWrite(buffer, offset);
+    }
+
+    /**
+     * Copies payloads kept in the arena to blocks owned by this block only, used when the block is a copy
+     * of another one still read concurrently. Blocks of the original are not freed, it keeps reading them unchanged.
+     * Should be called before the block is published to the readers.
+     */
+    void detachPayloads() {
+        if (arena == null) {
+            return;
+        }
+        for (int index = 0; index < recordsNumber; index++) {
+            for (int version = 0; version < VERSIONS_NUMBER; version++) {
+                selectVersion(index, version).detachPayload();
+            }
+        }
     }
 
     /**
      * Updates block price record with the given index if provided timestamp greater or equal the current one.
+     * New version of the record becomes visible to readers after the next {@link #commit()}. Record is changed
+     * under its version word, so the block can be read concurrently, see {@link IndexedPriceRecord}.
      *
      * @param priceRecordIndex index of the record to update
      * @param timestamp new timestamp to set to the record
@@ -78,51 +140,112 @@ public class BaseIndexedPriceRecordsBlock extends Flyweight {
      * @param payloadOffset offset to read payload from
      * @param payloadSize payload recordsNumber to read from the given payload buffer
      */
+    @Override
     public void tryUpdateRecord(int priceRecordIndex, long timestamp, DirectBuffer payload, int payloadOffset, int payloadSize) {
         checkRecordIndex(priceRecordIndex);
-        selectRecord(priceRecordIndex);
-        if (timestamp >= priceRecord.timestamp()) {
-            priceRecord.timestamp(timestamp);
+        final long committedEpoch = committedEpoch();
+        final int latestVersion = latestVersion(priceRecordIndex, committedEpoch);
+        // the other version is either the older committed one or the one already changed since the last commit
+        final int updatedVersion = latestVersion ^ 1;
+        selectVersion(priceRecordIndex, updatedVersion);
+        final boolean isPending = priceRecord.epoch() > committedEpoch;
+        selectVersion(priceRecordIndex, isPending ? updatedVersion : latestVersion);
+        if (timestamp < priceRecord.timestamp()) {
+            return;
+        }
+        selectVersion(priceRecordIndex, updatedVersion);
+        priceRecord.beginWrite();
+        try {
+            priceRecord.epoch(committedEpoch + 1);
             priceRecord.putPayload(payload, payloadOffset, payloadSize);
+            priceRecord.timestamp(timestamp);
+        } finally {
+            priceRecord.endWrite();
         }
     }
 
     /**
-     * Retrieves price record to read from.
+     * Makes all records updated since the previous commit visible to the readers at once.
+     * Should be called by the writer thread only.
+     *
+     * @return committed epoch
+     */
+    public long commit() {
+        final long epoch = committedEpoch() + 1;
+        atomicBuffer.putLongOrdered(offset + COMMITTED_EPOCH_FIELD_OFFSET, epoch);
+        return epoch;
+    }
+
+    /**
+     * Returns epoch of the last commit, records of later epochs are not visible to readers.
+     *
+     * @return committed epoch
+     */
+    public long committedEpoch() {
+        return atomicBuffer.getLongVolatile(offset + COMMITTED_EPOCH_FIELD_OFFSET);
+    }
+
+    /**
+     * Retrieves the latest committed version of the price record to read from.
      *
      * @param index price record index.
      * @return price record with specified index
      */
     public IndexedPriceRecord getPriceRecord(int index) {
+        return getPriceRecord(index, committedEpoch());
+    }
+
+    /**
+     * Retrieves the newest version of the price record at or below the given epoch. Concurrent reader should check
+     * that epoch of the consistently read record is not greater than the given one, otherwise the version was reused
+     * by a later commit and the read should be retried with the new committed epoch.
+     *
+     * @param index price record index.
+     * @param committedEpoch committed epoch read by {@link #committedEpoch()}
+     * @return price record with specified index
+     */
+    public IndexedPriceRecord getPriceRecord(int index, long committedEpoch) {
         checkRecordIndex(index);
-        selectRecord(index);
+        selectVersion(index, latestVersion(index, committedEpoch));
         return priceRecord;
     }
 
     @Override
     public int sizeInBytes() {
-        return defineBlockSizeInBytes(headerSize, recordsNumber);
+        return defineBlockSizeInBytes(recordsNumber);
     }
 
     /**
-     * Defines block recordsNumber in bytes for a block with given header recordsNumber and records number.
+     * Defines size in bytes of a block with the given records number.
      *
-     * @param headerSizeInBytes block header recordsNumber in bytes
      * @param recordsNumber number of records in block
-     * @return recordsNumber of the specified block in bytes
+     * @return size of the specified block in bytes
      */
-    public static int defineBlockSizeInBytes(int headerSizeInBytes, int recordsNumber) {
-        return headerSizeInBytes + recordsNumber * IndexedPriceRecord.MESSAGE_SIZE;
+    public static int defineBlockSizeInBytes(int recordsNumber) {
+        return BLOCK_HEADER_SIZE + recordsNumber * VERSIONS_NUMBER * IndexedPriceRecord.MESSAGE_SIZE;
     }
 
     /**
-     * Prepares record with the given index for write and read operations.
+     * Prepares the given version of the record with the given index for write and read operations.
      * Method wraps specific buffer region by the record codec {@link #priceRecord}.
      *
-     * @param index record of the index to prepare for writes. Method assumes index param to be validated externally.
+     * @param index index of the record. Method assumes index param to be validated externally.
+     * @param version version of the record, 0 or 1
+     * @return selected record version
      */
-    final void selectRecord(int index) {
-        priceRecord.wrapForWrite(writeBuffer, offset + headerSize + index * priceRecord.sizeInBytes());
+    final IndexedPriceRecord selectVersion(int index, int version) {
+        priceRecord.wrapForWrite(writeBuffer, recordOffset(index, version));
+        return priceRecord;
+    }
+
+    private int latestVersion(int index, long committedEpoch) {
+        final long firstEpoch = writeBuffer.getLong(recordOffset(index, 0) + IndexedPriceRecord.EPOCH_FIELD_OFFSET);
+        final long secondEpoch = writeBuffer.getLong(recordOffset(index, 1) + IndexedPriceRecord.EPOCH_FIELD_OFFSET);
+        return secondEpoch <= committedEpoch && (secondEpoch > firstEpoch || firstEpoch > committedEpoch) ? 1 : 0;
+    }
+
+    private int recordOffset(int index, int version) {
+        return offset + BLOCK_HEADER_SIZE + (index * VERSIONS_NUMBER + version) * IndexedPriceRecord.MESSAGE_SIZE;
     }
 
     private void checkRecordIndex(int priceRecordIndex) {
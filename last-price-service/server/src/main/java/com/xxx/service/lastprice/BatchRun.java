@@ -1,60 +1,186 @@
 package com.xxx.service.lastprice;
 
 import org.agrona.DirectBuffer;
-import org.agrona.collections.IntHashSet;
+import org.agrona.collections.Hashing;
+import org.agrona.concurrent.UnsafeBuffer;
 
+import java.util.Arrays;
 import java.util.Objects;
 
+import static com.xxx.service.lastprice.Configuration.BATCH_RUN_MAX_RETAINED_RECORDS;
+import static com.xxx.service.lastprice.Configuration.MAX_BATCH_PRODUCERS;
+import static com.xxx.service.lastprice.Configuration.PAYLOAD_ARENA_PAGE_SIZE;
+import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
+import static com.xxx.service.lastprice.messages.StartBatchRunRequest.SINGLE_PRODUCER;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BitUtil.SIZE_OF_INT;
-import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.findNextPositivePowerOfTwo;
+import static org.agrona.BufferUtil.allocateDirectAligned;
 
 /**
  * Represents aggregation view of all previous successful chunk uploading operations.
  *
- * {@inheritDoc}
+ * Batch run keeps only records of the instruments uploaded to it, so its memory depends on the number of uploaded
+ * records rather than on the number of instruments. Records are kept in the off-heap open addressing table with
+ * linear probing, each slot holds the instrument index (key), the epoch the slot was taken in and
+ * {@link IndexedPriceRecord}. Table is grown twice when it becomes half full. Order of the used slots is tracked,
+ * so iteration cost depends on the number of records in the batch run only. Grown table is kept by {@link #reset()},
+ * so pooled batch runs of the same size don't allocate it again, only the table grown above the max retained
+ * capacity is shrunk back to it.
+ *
+ * {@link #reset()} just increments the epoch of the batch run, slots stamped with an older epoch are empty ones.
+ * So resetting the operational batch run on each chunk and the batch run on completion or cancel takes constant time.
+ * Payloads not fitting inline are kept in the own {@link PayloadArena}, which is reset page by page,
+ * so batch runs without such payloads don't pay for it.
+ *
+ * Several producers can upload chunks to the batch run. Sequence of the last chunk applied from each producer
+ * is tracked, so a chunk sent again is not applied twice and a chunk following a lost one is not applied at all.
+ * Batch run should be merged once all the producers have completed it, see {@link #completeProducer(int)}.
+ *
+ * Batch run is used by the single writer thread, records are not versioned for concurrent readers.
  *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
-public class BatchRun extends BaseIndexedPriceRecordsBlock {
+public class BatchRun implements UpdatablePriceRecords {
 
-    public static final int ID_FIELD_OFFSET = 0;
-    public static final int LAST_UPDATE_TIMESTAMP_FIELD_OFFSET = ID_FIELD_OFFSET + SIZE_OF_LONG;
-    public static final int BATCH_RUN_HEADER_SIZE = LAST_UPDATE_TIMESTAMP_FIELD_OFFSET + SIZE_OF_LONG;
+    static final int KEY_FIELD_OFFSET = 0;
+    static final int EPOCH_FIELD_OFFSET = KEY_FIELD_OFFSET + SIZE_OF_INT;
+    static final int RECORD_FIELD_OFFSET = EPOCH_FIELD_OFFSET + SIZE_OF_INT;
+    static final int SLOT_SIZE = RECORD_FIELD_OFFSET + IndexedPriceRecord.MESSAGE_SIZE;
+
+    // zeroed slot is never taken in the current epoch, which is never 0
+    private static final int INITIAL_EPOCH = 1;
 
     private final int index;
-    private final IntHashSet includedRecordIndexes;
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+
+    // chunk sequence of the completed producer
+    private static final long COMPLETED_PRODUCER = -1L;
+
+    private long id;
+    private long lastUpdateTimestamp;
 
+    private int producersNumber = SINGLE_PRODUCER;
+    private int completedProducersNumber;
+    private final long[] lastChunkSequences = new long[MAX_BATCH_PRODUCERS];
+
+    private UnsafeBuffer table;
+    private int mask;
+    private int epoch;
+    // slots in the order of records insertion, table is grown when all of them are used
+    private int[] usedSlots;
+    private int recordsNumber;
+
+    private final PayloadArena arena = PayloadArena.inMemory(PAYLOAD_ARENA_PAGE_SIZE, PRICE_MAX_PAYLOAD_SIZE);
+    private final IndexedPriceRecord priceRecord = new IndexedPriceRecord();
     private final RecordsUpdater recordsUpdater = new RecordsUpdater();
 
     /**
-     * Creates batch run price records block.
+     * Creates batch run.
      *
      * @param index batch run index
-     * @param recordsNumber number of price records in the block
+     * @param initialRecordsCapacity number of records batch run can hold without growing
      */
-    public BatchRun(int index, int recordsNumber) {
-        super(recordsNumber, BATCH_RUN_HEADER_SIZE);
+    public BatchRun(int index, int initialRecordsCapacity) {
+        this(index, initialRecordsCapacity, BATCH_RUN_MAX_RETAINED_RECORDS);
+    }
+
+    /**
+     * Creates batch run.
+     *
+     * @param index batch run index
+     * @param initialRecordsCapacity number of records batch run can hold without growing
+     * @param maxRetainedRecordsCapacity max number of records the grown batch run can hold after {@link #reset()},
+     *                                   memory grown above it is released
+     */
+    public BatchRun(int index, int initialRecordsCapacity, int maxRetainedRecordsCapacity) {
         this.index = index;
-        this.includedRecordIndexes = new IntHashSet(recordsNumber);
+        this.initialCapacity = tableCapacity(initialRecordsCapacity);
+        this.maxRetainedCapacity = Math.max(initialCapacity, tableCapacity(maxRetainedRecordsCapacity));
+        allocateTable(initialCapacity);
+        priceRecord.arena(arena);
     }
 
     /**
      * {@inheritDoc}
      */
+    @Override
     public void tryUpdateRecord(int priceRecordIndex, long timestamp, DirectBuffer payload, int payloadOffset, int payloadSize) {
-        includedRecordIndexes.add(priceRecordIndex);
-        super.tryUpdateRecord(priceRecordIndex, timestamp, payload, payloadOffset, payloadSize);
+        checkRecordIndex(priceRecordIndex);
+        int slot = findSlot(priceRecordIndex);
+        if (!isTaken(slot)) {
+            if (recordsNumber == usedSlots.length) {
+                grow();
+                slot = findSlot(priceRecordIndex);
+            }
+            final int slotOffset = slotOffset(slot);
+            table.putInt(slotOffset + KEY_FIELD_OFFSET, priceRecordIndex);
+            table.putInt(slotOffset + EPOCH_FIELD_OFFSET, epoch);
+            // slot can keep the record of an older epoch
+            table.setMemory(slotOffset + RECORD_FIELD_OFFSET, IndexedPriceRecord.MESSAGE_SIZE, (byte)0);
+            usedSlots[recordsNumber++] = slot;
+        }
+        selectSlot(slot);
+        if (timestamp >= priceRecord.timestamp()) {
+            priceRecord.putPayload(payload, payloadOffset, payloadSize);
+            priceRecord.timestamp(timestamp);
+        }
     }
 
     /**
-     * Merge state of the current batch run to the provided bloc.
-     * All tracking records of the batch will be populated to other block.
+     * Merge state of the current batch run to the provided records.
+     * All tracking records of the batch will be populated to them.
      *
-     * @param priceRecordsBlock block to merge current state to
+     * @param priceRecords records to merge current state to
      */
-    public void mergeTo(BaseIndexedPriceRecordsBlock priceRecordsBlock) {
-        recordsUpdater.setBlockToUpdate(priceRecordsBlock);
-        iterateRecords(recordsUpdater);
+    public void mergeTo(UpdatablePriceRecords priceRecords) {
+        mergeTo(priceRecords, 0, recordsNumber);
+    }
+
+    /**
+     * Merges a slice of the batch run records to the provided records, records are taken in the order of
+     * {@link #iterateRecords(IntIndexedEntityConsumer)}. Batch run should not be changed until all the slices are merged.
+     *
+     * @param priceRecords records to merge current state to
+     * @param fromIndex position of the first record of the slice
+     * @param recordsLimit max number of records in the slice
+     * @return position of the next record to merge, equal to {@link #recordsNumber()} once all the records are merged
+     */
+    public int mergeTo(UpdatablePriceRecords priceRecords, int fromIndex, int recordsLimit) {
+        recordsUpdater.setRecordsToUpdate(priceRecords);
+        final int toIndex = Math.min(recordsNumber, fromIndex + recordsLimit);
+        for (int i = fromIndex; i < toIndex; i++) {
+            final int slot = usedSlots[i];
+            selectSlot(slot);
+            recordsUpdater.accept(table.getInt(slotOffset(slot) + KEY_FIELD_OFFSET), priceRecord);
+        }
+        return toIndex;
+    }
+
+    /**
+     * Retrieves price record of the instrument uploaded to the batch run.
+     *
+     * @param priceRecordIndex instrument index
+     * @return price record or {@code null} if there is no price of the instrument in the batch run
+     */
+    public IndexedPriceRecord getPriceRecord(int priceRecordIndex) {
+        checkRecordIndex(priceRecordIndex);
+        final int slot = findSlot(priceRecordIndex);
+        if (!isTaken(slot)) {
+            return null;
+        }
+        selectSlot(slot);
+        return priceRecord;
+    }
+
+    /**
+     * Returns number of instruments uploaded to the batch run.
+     *
+     * @return number of records
+     */
+    public int recordsNumber() {
+        return recordsNumber;
     }
 
     public int getIndex() {
@@ -67,7 +193,7 @@ public class BatchRun extends BaseIndexedPriceRecordsBlock {
      * @return batch run id
      */
     public long id() {
-        return readBuffer.getLong(offset + ID_FIELD_OFFSET);
+        return id;
     }
 
     /**
@@ -76,7 +202,7 @@ public class BatchRun extends BaseIndexedPriceRecordsBlock {
      * @param id batch run id to set
      */
     void id(long id) {
-        writeBuffer.putLong(offset + ID_FIELD_OFFSET, id);
+        this.id = id;
     }
 
     /**
@@ -85,7 +211,7 @@ public class BatchRun extends BaseIndexedPriceRecordsBlock {
      * @return last update timestamp
      */
     public long lastUpdateTimestamp() {
-        return readBuffer.getLong(offset + LAST_UPDATE_TIMESTAMP_FIELD_OFFSET);
+        return lastUpdateTimestamp;
     }
 
     /**
@@ -94,31 +220,105 @@ public class BatchRun extends BaseIndexedPriceRecordsBlock {
      * @param lastUpdateTimestamp last update timestamp to set
      */
     void lastUpdateTimestamp(long lastUpdateTimestamp) {
-        writeBuffer.putLong(offset + LAST_UPDATE_TIMESTAMP_FIELD_OFFSET, lastUpdateTimestamp);
+        this.lastUpdateTimestamp = lastUpdateTimestamp;
+    }
+
+    /**
+     * Returns number of producers uploading chunks to the batch run.
+     *
+     * @return producers number
+     */
+    public int producersNumber() {
+        return producersNumber;
+    }
+
+    /**
+     * Sets number of producers uploading chunks to the batch run.
+     *
+     * @param producersNumber producers number from 1 to {@link Configuration#MAX_BATCH_PRODUCERS}
+     */
+    void producersNumber(int producersNumber) {
+        if (producersNumber < 1 || producersNumber > MAX_BATCH_PRODUCERS) {
+            throw new IllegalArgumentException("Producers number should be from 1 to " + MAX_BATCH_PRODUCERS + ": " + producersNumber);
+        }
+        this.producersNumber = producersNumber;
     }
 
     /**
-     * Iterates all updated records since the last call of {@link #reset()} method.
+     * Checks whether the producer can upload chunks to the batch run and complete it.
+     *
+     * @param producerId producer id
+     * @return {@code true} if the producer belongs to the batch run and has not completed it yet
+     */
+    public boolean isActiveProducer(int producerId) {
+        return producerId >= 0 && producerId < producersNumber && lastChunkSequences[producerId] != COMPLETED_PRODUCER;
+    }
+
+    /**
+     * Returns sequence of the last chunk applied from the active producer.
+     *
+     * @param producerId producer id
+     * @return chunk sequence or 0 if there were no chunks with the sequence applied
+     */
+    public long lastChunkSequence(int producerId) {
+        return lastChunkSequences[producerId];
+    }
+
+    /**
+     * Sets sequence of the last chunk applied from the active producer.
+     *
+     * @param producerId producer id
+     * @param chunkSequence chunk sequence
+     */
+    void lastChunkSequence(int producerId, long chunkSequence) {
+        lastChunkSequences[producerId] = chunkSequence;
+    }
+
+    /**
+     * Marks the active producer as completed.
+     *
+     * @param producerId producer id
+     * @return {@code true} if all the producers have completed the batch run
+     */
+    boolean completeProducer(int producerId) {
+        lastChunkSequences[producerId] = COMPLETED_PRODUCER;
+        return ++completedProducersNumber == producersNumber;
+    }
+
+    /**
+     * Iterates all updated records since the last call of {@link #reset()} method in the order they were added.
      *
      * @param recordConsumer consumer for updated records traversal.
      */
     public void iterateRecords(IntIndexedEntityConsumer<IndexedPriceRecord> recordConsumer) {
-        for (int index : includedRecordIndexes) {
-            selectRecord(index);
-            recordConsumer.accept(index, priceRecord);
+        for (int i = 0; i < recordsNumber; i++) {
+            final int slot = usedSlots[i];
+            selectSlot(slot);
+            recordConsumer.accept(table.getInt(slotOffset(slot) + KEY_FIELD_OFFSET), priceRecord);
         }
     }
 
     /**
-     * Resets internal state of updated records tracking.
+     * Removes all records by starting the next epoch. Grown table is kept, unless it's grown above
+     * the max retained capacity, then it's shrunk to that capacity. Producers are reset to the single one.
      */
     public void reset() {
-        includedRecordIndexes.clear();
-        super.reset();
+        Arrays.fill(lastChunkSequences, 0, producersNumber, 0L);
+        producersNumber = SINGLE_PRODUCER;
+        completedProducersNumber = 0;
+        arena.reset();
+        if (mask + 1 > maxRetainedCapacity) {
+            allocateTable(maxRetainedCapacity);
+            return;
+        }
+        recordsNumber = 0;
+        if (++epoch == 0) {
+            // epoch has wrapped around, slots of all the previous epochs are cleared once
+            table.setMemory(0, table.capacity(), (byte)0);
+            epoch = INITIAL_EPOCH;
+        }
     }
 
-    // define equals/hashCode since we are going to use BatchRun objects as heap structure elements.
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -132,20 +332,78 @@ public class BatchRun extends BaseIndexedPriceRecordsBlock {
         return Objects.hash(index);
     }
 
+    private int findSlot(int priceRecordIndex) {
+        int slot = Hashing.hash(priceRecordIndex, mask);
+        while (isTaken(slot) && table.getInt(slotOffset(slot) + KEY_FIELD_OFFSET) != priceRecordIndex) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean isTaken(int slot) {
+        return table.getInt(slotOffset(slot) + EPOCH_FIELD_OFFSET) == epoch;
+    }
+
+    private void grow() {
+        final UnsafeBuffer oldTable = table;
+        final int[] oldUsedSlots = usedSlots;
+        final int oldRecordsNumber = recordsNumber;
+        allocateTable((mask + 1) * 2);
+        for (int i = 0; i < oldRecordsNumber; i++) {
+            final int oldSlotOffset = slotOffset(oldUsedSlots[i]);
+            final int slot = findSlot(oldTable.getInt(oldSlotOffset + KEY_FIELD_OFFSET));
+            table.putBytes(slotOffset(slot), oldTable, oldSlotOffset, SLOT_SIZE);
+            table.putInt(slotOffset(slot) + EPOCH_FIELD_OFFSET, epoch);
+            usedSlots[recordsNumber++] = slot;
+        }
+    }
+
+    private void allocateTable(int capacity) {
+        table = new UnsafeBuffer(allocateDirectAligned(capacity * SLOT_SIZE, CACHE_LINE_LENGTH));
+        mask = capacity - 1;
+        epoch = INITIAL_EPOCH;
+        usedSlots = new int[capacity / 2];
+        recordsNumber = 0;
+    }
+
+    // number of records the batch run can hold without growing
+    int capacity() {
+        return usedSlots.length;
+    }
+
+    private void selectSlot(int slot) {
+        priceRecord.wrapForWrite(table, slotOffset(slot) + RECORD_FIELD_OFFSET);
+    }
+
+    // table is kept at most half full
+    private static int tableCapacity(int recordsCapacity) {
+        return findNextPositivePowerOfTwo(Math.max(2, recordsCapacity * 2));
+    }
+
+    private static int slotOffset(int slot) {
+        return slot * SLOT_SIZE;
+    }
+
+    private static void checkRecordIndex(int priceRecordIndex) {
+        if (priceRecordIndex < 0) {
+            throw new IndexOutOfBoundsException("Price record index is out of bounds: " + priceRecordIndex);
+        }
+    }
+
     private static class RecordsUpdater implements IntIndexedEntityConsumer<IndexedPriceRecord> {
 
-        private BaseIndexedPriceRecordsBlock blockToUpdate;
+        private UpdatablePriceRecords recordsToUpdate;
 
-        public void setBlockToUpdate(BaseIndexedPriceRecordsBlock blockToUpdate) {
-            this.blockToUpdate = blockToUpdate;
+        public void setRecordsToUpdate(UpdatablePriceRecords recordsToUpdate) {
+            this.recordsToUpdate = recordsToUpdate;
         }
 
         @Override
         public void accept(int index, IndexedPriceRecord indexedPriceRecord) {
-            blockToUpdate.tryUpdateRecord(
+            recordsToUpdate.tryUpdateRecord(
                 index,
                 indexedPriceRecord.timestamp(),
-                indexedPriceRecord.getReadBuffer(),
+                indexedPriceRecord.payloadBuffer(),
                 indexedPriceRecord.absolutePayloadOffset(),
                 indexedPriceRecord.payloadSize()
             );
@@ -2,6 +2,8 @@ package com.xxx.service.lastprice;
 
 import java.util.function.Consumer;
 
+import static com.xxx.service.lastprice.messages.StartBatchRunRequest.SINGLE_PRODUCER;
+
 /**
  * Repository to manage lifecycle of {@link BatchRun} objects.
  *
@@ -12,12 +14,25 @@ public interface BatchRunRepository {
     Consumer<BatchRun> NO_OP_CONSUMER = br -> {/* do nothing */};
 
     /**
-     * Creates batch run.
+     * Creates batch run uploaded by the single producer.
+     *
+     * @param id id of new batch run
+     * @return created batch run
+     */
+    default BatchRun create(long id) {
+        return create(id, SINGLE_PRODUCER);
+    }
+
+    /**
+     * Creates batch run uploaded by the given number of producers. Chunk sequences of the producers
+     * are tracked by the batch run, see {@link BatchRun#lastChunkSequence(int)}.
      *
      * @param id id of new batch run
+     * @param producersNumber number of producers from 1 to {@link Configuration#MAX_BATCH_PRODUCERS}
      * @return created batch run
+     * @throws IllegalArgumentException if producers number is out of the range
      */
-    BatchRun create(long id);
+    BatchRun create(long id, int producersNumber);
 
     /**
      * Retrieves existing batch run.
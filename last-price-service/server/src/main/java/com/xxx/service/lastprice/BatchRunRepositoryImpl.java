@@ -1,57 +1,58 @@
 package com.xxx.service.lastprice;
 
-import org.agrona.MutableDirectBuffer;
 import org.agrona.collections.IntArrayQueue;
 import org.agrona.collections.Long2LongHashMap;
 import org.agrona.concurrent.EpochClock;
-import org.agrona.concurrent.UnsafeBuffer;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.function.Consumer;
 
 import static com.xxx.service.lastprice.Configuration.MAX_ACTIVE_BATCHES_NUMBER;
-import static java.util.Comparator.comparingLong;
-import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
-import static org.agrona.BufferUtil.allocateDirectAligned;
 
 /**
- * Implementation of batch run repository.
+ * Implementation of batch run repository. Pool of {@link Configuration#MAX_ACTIVE_BATCHES_NUMBER} batch runs is
+ * created upfront, each of them takes memory for the records uploaded to it only, see {@link BatchRun}.
+ *
+ * Active batch runs are linked in the order of their updates by arrays of pool indexes, the least recently updated
+ * one is the head of the list. All batch runs share the same eviction timeout, so saving a batch run just moves it
+ * to the tail in constant time and eviction stops at the first batch run which is not outdated.
  *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public class BatchRunRepositoryImpl implements BatchRunRepository {
 
+    private static final int INITIAL_BATCH_RUN_CAPACITY = 16;
+    private static final int NULL_INDEX = -1;
+
     private final EpochClock epochClock;
-    private final MutableDirectBuffer buffer;
     private final Long2LongHashMap idToIndexMapping;
     private final List<BatchRun> batchRunsPool;
     private final IntArrayQueue freeIndexes;
-    private final PriorityQueue<BatchRun> cleanUpQueue;
+    private final int[] previousIndexes = new int[MAX_ACTIVE_BATCHES_NUMBER];
+    private final int[] nextIndexes = new int[MAX_ACTIVE_BATCHES_NUMBER];
+    private int leastRecentIndex = NULL_INDEX;
+    private int mostRecentIndex = NULL_INDEX;
 
-    public BatchRunRepositoryImpl(EpochClock epochClock, int instrumentsNumber) {
+    public BatchRunRepositoryImpl(EpochClock epochClock) {
         this.epochClock = epochClock;
-        this.buffer = allocateBatchRunsBuffer(instrumentsNumber);
         this.idToIndexMapping = new Long2LongHashMap(-1);
         this.freeIndexes = createFreeIndexesQueue();
-        this.batchRunsPool = createBatchRunsPool(instrumentsNumber);
-        this.cleanUpQueue = new PriorityQueue<>(
-            MAX_ACTIVE_BATCHES_NUMBER, comparingLong(BatchRun::lastUpdateTimestamp)
-        );
+        this.batchRunsPool = createBatchRunsPool();
     }
 
     @Override
-    public BatchRun create(long id) {
+    public BatchRun create(long id, int producersNumber) {
         if (freeIndexes.size() == 0) {
             throw new IllegalStateException("New batch run can not be created, max number of them is reached");
         }
+        final BatchRun batchRun = batchRunsPool.get(freeIndexes.peekInt());
+        batchRun.producersNumber(producersNumber);
         final int index = freeIndexes.pollInt();
-        final BatchRun batchRun = batchRunsPool.get(index);
         batchRun.id(id);
         batchRun.lastUpdateTimestamp(epochClock.time());
         idToIndexMapping.put(id, index);
-        cleanUpQueue.add(batchRun);
+        linkMostRecent(index);
         return batchRun;
     }
 
@@ -69,15 +70,17 @@ public class BatchRunRepositoryImpl implements BatchRunRepository {
     public void remove(BatchRun batchRun) {
         batchRun.reset();
         freeIndexes.addInt(batchRun.getIndex());
-        cleanUpQueue.remove(batchRun);
+        unlink(batchRun.getIndex());
         idToIndexMapping.remove(batchRun.id());
     }
 
     @Override
     public void save(BatchRun batchRun) {
-        cleanUpQueue.remove(batchRun);
         batchRun.lastUpdateTimestamp(epochClock.time());
-        cleanUpQueue.add(batchRun);
+        if (batchRun.getIndex() != mostRecentIndex) {
+            unlink(batchRun.getIndex());
+            linkMostRecent(batchRun.getIndex());
+        }
     }
 
     @Override
@@ -89,8 +92,8 @@ public class BatchRunRepositoryImpl implements BatchRunRepository {
     public int removeOutdated(long evictionTime, int limit, Consumer<BatchRun> consumer) {
         final long lastAllowedMoment = epochClock.time() - evictionTime;
         int removedCounter = 0;
-        while (removedCounter < limit && !cleanUpQueue.isEmpty()) {
-            final BatchRun oldestBatchRun = cleanUpQueue.peek();
+        while (removedCounter < limit && leastRecentIndex != NULL_INDEX) {
+            final BatchRun oldestBatchRun = batchRunsPool.get(leastRecentIndex);
             if (lastAllowedMoment < oldestBatchRun.lastUpdateTimestamp()) {
                 break;
             }
@@ -103,23 +106,41 @@ public class BatchRunRepositoryImpl implements BatchRunRepository {
 
     @Override
     public void removeAll() {
-        while (!cleanUpQueue.isEmpty()) {
-            remove(cleanUpQueue.poll());
+        while (leastRecentIndex != NULL_INDEX) {
+            remove(batchRunsPool.get(leastRecentIndex));
+        }
+    }
+
+    private void linkMostRecent(int index) {
+        previousIndexes[index] = mostRecentIndex;
+        nextIndexes[index] = NULL_INDEX;
+        if (mostRecentIndex == NULL_INDEX) {
+            leastRecentIndex = index;
+        } else {
+            nextIndexes[mostRecentIndex] = index;
         }
+        mostRecentIndex = index;
     }
 
-    private MutableDirectBuffer allocateBatchRunsBuffer(int instrumentsNumber) {
-        final int bufferSize = MAX_ACTIVE_BATCHES_NUMBER *
-            BatchRun.defineBlockSizeInBytes(BatchRun.BATCH_RUN_HEADER_SIZE, instrumentsNumber);
-        return new UnsafeBuffer(allocateDirectAligned(bufferSize, CACHE_LINE_LENGTH));
+    private void unlink(int index) {
+        final int previousIndex = previousIndexes[index];
+        final int nextIndex = nextIndexes[index];
+        if (previousIndex == NULL_INDEX) {
+            leastRecentIndex = nextIndex;
+        } else {
+            nextIndexes[previousIndex] = nextIndex;
+        }
+        if (nextIndex == NULL_INDEX) {
+            mostRecentIndex = previousIndex;
+        } else {
+            previousIndexes[nextIndex] = previousIndex;
+        }
     }
 
-    private List<BatchRun> createBatchRunsPool(int instrumentsNumber) {
+    private List<BatchRun> createBatchRunsPool() {
         final List<BatchRun> batchRunsPool = new ArrayList<>(MAX_ACTIVE_BATCHES_NUMBER);
         for (int i = 0; i < MAX_ACTIVE_BATCHES_NUMBER; i++) {
-            final BatchRun batchRun = new BatchRun(i, instrumentsNumber);
-            batchRun.wrapForWrite(buffer, i * batchRun.sizeInBytes());
-            batchRunsPool.add(batchRun);
+            batchRunsPool.add(new BatchRun(i, INITIAL_BATCH_RUN_CAPACITY));
         }
         return batchRunsPool;
     }
@@ -3,33 +3,126 @@ package com.xxx.service.lastprice;
 import com.xxx.core.protocol.Flyweight;
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
 
+import java.lang.invoke.VarHandle;
+
+import static com.xxx.service.lastprice.Configuration.PRICE_INLINE_PAYLOAD_SIZE;
 import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
 import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.align;
 
 /**
  * Represents price record stored in {@link BaseIndexedPriceRecordsBlock}.
- * Size of this structure is static per runtime. Variational payload size can be defined by system property
- * {@link Configuration#PRICE_MAX_PAYLOAD_SIZE}.
- * Trying to write payload of bigger size will cause {@link IllegalArgumentException}.
+ * Size of this structure is static per runtime. Payloads up to {@link Configuration#PRICE_INLINE_PAYLOAD_SIZE}
+ * are kept in the record itself, bigger ones are kept in the {@link PayloadArena} block referenced by the record.
+ * Max payload size can be defined by system property {@link Configuration#PRICE_MAX_PAYLOAD_SIZE}.
+ * Trying to write payload of bigger size, or payload not fitting inline to a record without arena,
+ * will cause {@link IllegalArgumentException}.
+ *
+ * Record starts with a version word which makes it a seqlock: single writer makes the version odd before changing
+ * the record and even again after the change, so concurrent readers can detect and retry torn reads, see
+ * {@link #beginRead()} and {@link #validateRead(long)}. Records size is aligned to 8 bytes to keep version word
+ * of each record in a block aligned for atomic access.
+ *
+ * Epoch is the number of the market state commit the record belongs to, see {@link BaseIndexedPriceRecordsBlock}.
  *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public class IndexedPriceRecord extends Flyweight {
 
-    public static final int INDEX_FIELD_OFFSET = 0;
-    public static final int TIMESTAMP_FIELD_OFFSET = INDEX_FIELD_OFFSET + SIZE_OF_INT;
+    public static final int VERSION_FIELD_OFFSET = 0;
+    public static final int EPOCH_FIELD_OFFSET = VERSION_FIELD_OFFSET + SIZE_OF_LONG;
+    public static final int TIMESTAMP_FIELD_OFFSET = EPOCH_FIELD_OFFSET + SIZE_OF_LONG;
     public static final int PAYLOAD_SIZE_FIELD_OFFSET = TIMESTAMP_FIELD_OFFSET + SIZE_OF_LONG;
-    public static final int PAYLOAD_FIELD_OFFSET = PAYLOAD_SIZE_FIELD_OFFSET + SIZE_OF_INT;
-    public static final int MESSAGE_SIZE = PAYLOAD_FIELD_OFFSET + PRICE_MAX_PAYLOAD_SIZE;
+    // aligned, so the arena reference is read atomically
+    public static final int PAYLOAD_FIELD_OFFSET = align(PAYLOAD_SIZE_FIELD_OFFSET + SIZE_OF_INT, SIZE_OF_LONG);
+    public static final int INLINE_PAYLOAD_SIZE = Math.max(PRICE_INLINE_PAYLOAD_SIZE, SIZE_OF_LONG);
+    public static final int MESSAGE_SIZE = align(PAYLOAD_FIELD_OFFSET + INLINE_PAYLOAD_SIZE, SIZE_OF_LONG);
+
+    private AtomicBuffer atomicBuffer;
+    private PayloadArena arena;
+
+    /**
+     * Sets arena to keep payloads not fitting inline. Arena is owned by the records block, record doesn't free
+     * blocks when it's wrapped for another record.
+     *
+     * @param arena payload arena
+     */
+    void arena(PayloadArena arena) {
+        this.arena = arena;
+    }
+
+    @Override
+    public void wrapForWrite(MutableDirectBuffer buffer, int offset) {
+        super.wrapForWrite(buffer, offset);
+        this.atomicBuffer = asAtomicBuffer(buffer);
+    }
+
+    @Override
+    public void wrapForRead(DirectBuffer buffer, int offset) {
+        super.wrapForRead(buffer, offset);
+        this.atomicBuffer = asAtomicBuffer(buffer);
+    }
+
+    /**
+     * Returns current version of the record. Odd value means the record is being written at the moment.
+     *
+     * @return version of the record
+     */
+    public long version() {
+        return atomicBuffer.getLongVolatile(offset + VERSION_FIELD_OFFSET);
+    }
+
+    /**
+     * Starts optimistic read of the record. Method spins while the record is being written.
+     *
+     * @return version of the record to be passed to {@link #validateRead(long)} after all fields are read
+     */
+    public long beginRead() {
+        long version;
+        while (((version = version()) & 1) != 0) {
+            Thread.onSpinWait();
+        }
+        return version;
+    }
 
-    public int index() {
-        return readBuffer.getInt(offset + INDEX_FIELD_OFFSET);
+    /**
+     * Checks if fields read after {@link #beginRead()} are consistent, i.e. the record was not changed meanwhile.
+     *
+     * @param version version returned by {@link #beginRead()}
+     * @return true if read values can be used, false if read should be retried
+     */
+    public boolean validateRead(long version) {
+        VarHandle.loadLoadFence();
+        return atomicBuffer.getLong(offset + VERSION_FIELD_OFFSET) == version;
     }
 
-    void index(int index) {
-        writeBuffer.putInt(offset + INDEX_FIELD_OFFSET, index);
+    /**
+     * Marks the record as being written. Should be followed by {@link #endWrite()}.
+     * Only one thread is allowed to write the record.
+     */
+    void beginWrite() {
+        final int versionOffset = offset + VERSION_FIELD_OFFSET;
+        atomicBuffer.putLongOrdered(versionOffset, atomicBuffer.getLong(versionOffset) + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Publishes changes made after {@link #beginWrite()} to the readers.
+     */
+    void endWrite() {
+        final int versionOffset = offset + VERSION_FIELD_OFFSET;
+        atomicBuffer.putLongOrdered(versionOffset, atomicBuffer.getLong(versionOffset) + 1);
+    }
+
+    public long epoch() {
+        return readBuffer.getLong(offset + EPOCH_FIELD_OFFSET);
+    }
+
+    void epoch(long epoch) {
+        writeBuffer.putLong(offset + EPOCH_FIELD_OFFSET, epoch);
     }
 
     public long timestamp() {
@@ -44,24 +137,105 @@ public class IndexedPriceRecord extends Flyweight {
         return readBuffer.getInt(offset + PAYLOAD_SIZE_FIELD_OFFSET);
     }
 
-    private void payloadSize(int payloadSize) {
-        if (payloadSize > PRICE_MAX_PAYLOAD_SIZE) {
-            throw new IllegalArgumentException("Payload size can not be more than: " + PRICE_MAX_PAYLOAD_SIZE);
-        }
-        writeBuffer.putInt(offset + PAYLOAD_SIZE_FIELD_OFFSET, payloadSize);
+    public void getPayload(MutableDirectBuffer writeTo, int writeOffset) {
+        final int payloadSize = payloadSize();
+        writeTo.putBytes(writeOffset, payloadBuffer(payloadSize), absolutePayloadOffset(payloadSize), payloadSize);
     }
 
-    public void getPayload(MutableDirectBuffer writeTo, int writeOffset) {
-        writeTo.putBytes(writeOffset, readBuffer, offset + PAYLOAD_FIELD_OFFSET, payloadSize());
+    /**
+     * Returns buffer holding the payload of the record.
+     *
+     * @return payload buffer
+     */
+    public DirectBuffer payloadBuffer() {
+        return payloadBuffer(payloadSize());
+    }
+
+    /**
+     * Returns buffer holding the payload of the given size. Method is supposed to be used by concurrent readers
+     * with the payload size read once, payload reference can be broken by a concurrent write.
+     *
+     * @param payloadSize payload size read from the record
+     * @return payload buffer or {@code null} if arena reference of the record is broken
+     */
+    public DirectBuffer payloadBuffer(int payloadSize) {
+        return isInlined(payloadSize) ? readBuffer : arena.pageBuffer(payloadReference(), payloadSize);
     }
 
     public int absolutePayloadOffset() {
-        return offset + PAYLOAD_FIELD_OFFSET;
+        return absolutePayloadOffset(payloadSize());
+    }
+
+    /**
+     * Returns offset of the payload of the given size in the {@link #payloadBuffer(int)}.
+     *
+     * @param payloadSize payload size read from the record
+     * @return payload offset
+     */
+    public int absolutePayloadOffset(int payloadSize) {
+        return isInlined(payloadSize) ? offset + PAYLOAD_FIELD_OFFSET : PayloadArena.offset(payloadReference());
+    }
+
+    /**
+     * Returns reference to the arena block of the payload, makes sense only if the payload is not inlined.
+     *
+     * @return arena block reference
+     */
+    long payloadReference() {
+        return readBuffer.getLong(offset + PAYLOAD_FIELD_OFFSET);
     }
 
     void putPayload(DirectBuffer readFrom, int readOffset, int payloadSize) {
-        payloadSize(payloadSize);
-        writeBuffer.putBytes(offset + PAYLOAD_FIELD_OFFSET, readFrom, readOffset, payloadSize);
+        if (payloadSize > PRICE_MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Payload size can not be more than: " + PRICE_MAX_PAYLOAD_SIZE);
+        }
+        final boolean isInlined = isInlined(payloadSize);
+        if (!isInlined && arena == null) {
+            throw new IllegalArgumentException("Payload size can not be more than: " + INLINE_PAYLOAD_SIZE + " without arena");
+        }
+        final int oldPayloadSize = payloadSize();
+        long reference = 0L;
+        if (!isInlined(oldPayloadSize)) {
+            reference = payloadReference();
+            if (isInlined || arena.blockSize(reference) != PayloadArena.blockSize(payloadSize)) {
+                arena.free(reference);
+                reference = 0L;
+            }
+        }
+        if (isInlined) {
+            writeBuffer.putBytes(offset + PAYLOAD_FIELD_OFFSET, readFrom, readOffset, payloadSize);
+        } else {
+            if (reference == 0L) {
+                reference = arena.allocate(payloadSize);
+                writeBuffer.putLong(offset + PAYLOAD_FIELD_OFFSET, reference);
+            }
+            arena.pageBuffer(reference, payloadSize).putBytes(PayloadArena.offset(reference), readFrom, readOffset, payloadSize);
+        }
+        writeBuffer.putInt(offset + PAYLOAD_SIZE_FIELD_OFFSET, payloadSize);
+    }
+
+    /**
+     * Moves the payload kept in the arena to a newly allocated block, the old block is left as is and not freed.
+     */
+    void detachPayload() {
+        final int payloadSize = payloadSize();
+        if (isInlined(payloadSize)) {
+            return;
+        }
+        final long oldReference = payloadReference();
+        final long reference = arena.allocate(payloadSize);
+        arena.pageBuffer(reference, payloadSize).putBytes(
+            PayloadArena.offset(reference), arena.pageBuffer(oldReference, payloadSize), PayloadArena.offset(oldReference), payloadSize
+        );
+        writeBuffer.putLong(offset + PAYLOAD_FIELD_OFFSET, reference);
+    }
+
+    /**
+     * Forgets the payload without returning its arena block, used when the arena is restored or reset
+     * and the block is not owned by the record anymore.
+     */
+    void dropPayload() {
+        writeBuffer.putInt(offset + PAYLOAD_SIZE_FIELD_OFFSET, 0);
     }
 
     @Override
@@ -69,4 +243,15 @@ public class IndexedPriceRecord extends Flyweight {
         return MESSAGE_SIZE;
     }
 
+    private static boolean isInlined(int payloadSize) {
+        return payloadSize <= INLINE_PAYLOAD_SIZE;
+    }
+
+    private static AtomicBuffer asAtomicBuffer(DirectBuffer buffer) {
+        if (!(buffer instanceof AtomicBuffer)) {
+            throw new IllegalArgumentException("Price record requires atomic buffer, got " + buffer.getClass());
+        }
+        return (AtomicBuffer) buffer;
+    }
+
 }
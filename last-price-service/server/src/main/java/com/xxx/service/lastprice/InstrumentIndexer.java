@@ -1,25 +1,253 @@
 package com.xxx.service.lastprice;
 
+import org.agrona.AsciiSequenceView;
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Hashing;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.util.Arrays;
 import java.util.Collection;
 
-import static java.util.Arrays.binarySearch;
-import static java.util.Arrays.sort;
+import static com.xxx.service.lastprice.Configuration.INSTRUMENT_MAX_TICKER_LENGTH;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.align;
+import static org.agrona.BitUtil.findNextPositivePowerOfTwo;
+import static org.agrona.BufferUtil.allocateDirectAligned;
 
 /**
+ * Maps instrument tickers to {@code int} indexes of price records. Indexes are assigned sequentially
+ * in order the instruments are added, so they can be used to address records in {@link BaseIndexedPriceRecordsBlock}.
+ *
+ * Index is an off-heap open addressing hash table with linear probing. Each slot keeps raw ASCII bytes of the ticker,
+ * so lookup by {@link AsciiSequenceView} taken from a message compares bytes right in the message buffer
+ * without creating strings. Table is kept at most half full and is rehashed to a twice bigger one on growth.
+ *
+ * Instruments are added by the single writer thread, lookups are safe from any thread: slot is published by
+ * the ordered write of its ticker length, and a new table is published through the volatile reference
+ * only after it's completely filled.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public class InstrumentIndexer {
 
-    private final String[] sortedInstruments;
+    static final int TICKER_LENGTH_FIELD_OFFSET = 0;
+    static final int INDEX_FIELD_OFFSET = TICKER_LENGTH_FIELD_OFFSET + SIZE_OF_INT;
+    static final int TICKER_FIELD_OFFSET = INDEX_FIELD_OFFSET + SIZE_OF_INT;
+    static final int SLOT_SIZE = align(TICKER_FIELD_OFFSET + INSTRUMENT_MAX_TICKER_LENGTH, SIZE_OF_LONG);
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = findNextPositivePowerOfTwo(Integer.MAX_VALUE / SLOT_SIZE) >> 1;
+
+    private static final int FNV_OFFSET_BASIS = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private volatile AtomicBuffer table;
+    private int size;
+    // offsets of slots by instrument indexes, used by the writer thread only
+    private int[] slotOffsets;
 
     public InstrumentIndexer(Collection<String> instruments) {
-        this.sortedInstruments = new String[instruments.size()];
-        instruments.toArray(this.sortedInstruments);
-        sort(this.sortedInstruments, CharSequence::compare);
+        this.table = allocateTable(capacityFor(instruments.size()));
+        this.slotOffsets = new int[Math.max(MIN_CAPACITY, instruments.size())];
+        for (String instrument : instruments) {
+            addInstrument(instrument);
+        }
     }
 
+    /**
+     * Defines index of the given instrument.
+     *
+     * @param instrument instrument ticker
+     * @return index of the instrument or negative value if the instrument is unknown
+     */
     public int defineIndex(CharSequence instrument) {
-        return binarySearch(sortedInstruments, instrument, CharSequence::compare);
+        if (instrument instanceof AsciiSequenceView) {
+            final AsciiSequenceView view = (AsciiSequenceView) instrument;
+            return defineIndex(view.buffer(), view.offset(), view.length());
+        }
+        final AtomicBuffer table = this.table;
+        final int mask = (table.capacity() / SLOT_SIZE) - 1;
+        int slot = Hashing.hash(hash(instrument), mask);
+        while (true) {
+            final int slotOffset = slot * SLOT_SIZE;
+            final int tickerLength = table.getIntVolatile(slotOffset + TICKER_LENGTH_FIELD_OFFSET);
+            if (tickerLength == 0) {
+                return -1;
+            }
+            if (tickerLength == instrument.length() && tickerEquals(table, slotOffset, instrument)) {
+                return table.getInt(slotOffset + INDEX_FIELD_OFFSET);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Defines index of the instrument which ticker is stored in the buffer as ASCII bytes.
+     *
+     * @param buffer buffer to read the ticker from
+     * @param offset offset of the ticker in the buffer
+     * @param length ticker length
+     * @return index of the instrument or negative value if the instrument is unknown
+     */
+    public int defineIndex(DirectBuffer buffer, int offset, int length) {
+        final AtomicBuffer table = this.table;
+        final int mask = (table.capacity() / SLOT_SIZE) - 1;
+        int slot = Hashing.hash(hash(buffer, offset, length), mask);
+        while (true) {
+            final int slotOffset = slot * SLOT_SIZE;
+            final int tickerLength = table.getIntVolatile(slotOffset + TICKER_LENGTH_FIELD_OFFSET);
+            if (tickerLength == 0) {
+                return -1;
+            }
+            if (tickerLength == length && tickerEquals(table, slotOffset, buffer, offset, length)) {
+                return table.getInt(slotOffset + INDEX_FIELD_OFFSET);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Adds instrument to the index. Should be called by the single writer thread only.
+     *
+     * @param instrument instrument ticker
+     * @return index assigned to the instrument, or existing index if the instrument is already known
+     */
+    public int addInstrument(CharSequence instrument) {
+        checkInstrument(instrument);
+        final int existingIndex = defineIndex(instrument);
+        if (existingIndex >= 0) {
+            return existingIndex;
+        }
+        if ((size + 1) * 2 > table.capacity() / SLOT_SIZE) {
+            rehash(capacityFor(size + 1));
+        }
+        final int index = size;
+        if (index == slotOffsets.length) {
+            slotOffsets = Arrays.copyOf(slotOffsets, index * 2);
+        }
+        slotOffsets[index] = putSlot(table, instrument, index);
+        size++;
+        return index;
+    }
+
+    /**
+     * Wraps the given view over the ticker of the instrument with the given index.
+     * Should be called by the single writer thread only, view is valid until the next instrument is added.
+     *
+     * @param index instrument index
+     * @param view view to wrap over the ticker
+     * @return wrapped view
+     */
+    public CharSequence instrument(int index, AsciiSequenceView view) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Instrument index is out of bounds: " + index);
+        }
+        final int slotOffset = slotOffsets[index];
+        view.wrap(table, slotOffset + TICKER_FIELD_OFFSET, table.getInt(slotOffset + TICKER_LENGTH_FIELD_OFFSET));
+        return view;
+    }
+
+    /**
+     * Returns number of known instruments. Indexes of the instruments are in range from 0 to size - 1.
+     *
+     * @return number of instruments
+     */
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        final AtomicBuffer oldTable = table;
+        final AtomicBuffer newTable = allocateTable(capacity);
+        final AsciiSequenceView ticker = new AsciiSequenceView();
+        for (int slotOffset = 0; slotOffset < oldTable.capacity(); slotOffset += SLOT_SIZE) {
+            final int tickerLength = oldTable.getInt(slotOffset + TICKER_LENGTH_FIELD_OFFSET);
+            if (tickerLength != 0) {
+                ticker.wrap(oldTable, slotOffset + TICKER_FIELD_OFFSET, tickerLength);
+                final int index = oldTable.getInt(slotOffset + INDEX_FIELD_OFFSET);
+                slotOffsets[index] = putSlot(newTable, ticker, index);
+            }
+        }
+        table = newTable;
+    }
+
+    private static int putSlot(AtomicBuffer table, CharSequence instrument, int index) {
+        final int mask = (table.capacity() / SLOT_SIZE) - 1;
+        int slot = Hashing.hash(hash(instrument), mask);
+        while (table.getInt(slot * SLOT_SIZE + TICKER_LENGTH_FIELD_OFFSET) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        final int slotOffset = slot * SLOT_SIZE;
+        table.putInt(slotOffset + INDEX_FIELD_OFFSET, index);
+        for (int i = 0; i < instrument.length(); i++) {
+            table.putByte(slotOffset + TICKER_FIELD_OFFSET + i, (byte) instrument.charAt(i));
+        }
+        // publish the slot to concurrent readers
+        table.putIntOrdered(slotOffset + TICKER_LENGTH_FIELD_OFFSET, instrument.length());
+        return slotOffset;
+    }
+
+    private static boolean tickerEquals(AtomicBuffer table, int slotOffset, CharSequence instrument) {
+        for (int i = 0; i < instrument.length(); i++) {
+            if (table.getByte(slotOffset + TICKER_FIELD_OFFSET + i) != (byte) instrument.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean tickerEquals(AtomicBuffer table, int slotOffset, DirectBuffer buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (table.getByte(slotOffset + TICKER_FIELD_OFFSET + i) != buffer.getByte(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a hash of ticker bytes. Result is additionally mixed by {@link Hashing}, so tickers of one server shard,
+     * which are selected by the same hash, are still spread evenly over the table.
+     */
+    private static int hash(CharSequence instrument) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < instrument.length(); i++) {
+            hash ^= (byte) instrument.charAt(i) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int hash(DirectBuffer buffer, int offset, int length) {
+        int hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++) {
+            hash ^= buffer.getByte(offset + i) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int capacityFor(int instrumentsNumber) {
+        final int capacity = findNextPositivePowerOfTwo(Math.max(MIN_CAPACITY, instrumentsNumber * 2));
+        if (capacity > MAX_CAPACITY || capacity < 0) {
+            throw new IllegalStateException("Instruments index can not hold more than " + MAX_CAPACITY / 2 + " instruments");
+        }
+        return capacity;
+    }
+
+    private static AtomicBuffer allocateTable(int capacity) {
+        return new UnsafeBuffer(allocateDirectAligned(capacity * SLOT_SIZE, CACHE_LINE_LENGTH));
+    }
+
+    private static void checkInstrument(CharSequence instrument) {
+        if (instrument.length() == 0 || instrument.length() > INSTRUMENT_MAX_TICKER_LENGTH) {
+            throw new IllegalArgumentException(
+                "Instrument ticker length should be from 1 to " + INSTRUMENT_MAX_TICKER_LENGTH + ", got " + instrument
+            );
+        }
     }
 
 }
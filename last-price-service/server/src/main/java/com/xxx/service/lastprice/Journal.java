@@ -0,0 +1,271 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.DirectBuffer;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.align;
+
+/**
+ * Append only journal of accepted state changing requests, kept in memory mapped segment files of the same size.
+ * Requests are appended by the writer thread as they are handled, {@link #sync()} flushes all of them appended since
+ * the previous sync by one call, so the server syncs once per poll cycle (group commit) before it sends responses.
+ *
+ * Frame layout:
+ * <pre>
+ *   frame length (written last), checksum of the request bytes, message type, reserved
+ *   request bytes aligned to 8 bytes
+ * </pre>
+ * Rest of a segment which can not fit the next frame is filled with a padding frame. Torn frame at the tail of
+ * the last segment (zero length or wrong checksum) marks the end of the journal and is overwritten by the next append.
+ *
+ * When all journaled changes are flushed somewhere else (see {@link MarketStateFile#snapshot(long)}) and there are
+ * no active batch runs, the journal is {@link #reset()} to the empty one.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class Journal implements AutoCloseable {
+
+    static final int PADDING_MESSAGE_TYPE = -1;
+
+    static final int FRAME_LENGTH_FIELD_OFFSET = 0;
+    static final int CHECKSUM_FIELD_OFFSET = FRAME_LENGTH_FIELD_OFFSET + SIZE_OF_INT;
+    static final int MESSAGE_TYPE_FIELD_OFFSET = CHECKSUM_FIELD_OFFSET + SIZE_OF_INT;
+    static final int FRAME_HEADER_SIZE = align(MESSAGE_TYPE_FIELD_OFFSET + SIZE_OF_INT, SIZE_OF_LONG);
+
+    private static final String SEGMENT_FILE_PREFIX = "journal-";
+    private static final String SEGMENT_FILE_SUFFIX = ".log";
+
+    /**
+     * Handles requests read from the journal.
+     */
+    @FunctionalInterface
+    public interface EntryHandler {
+
+        void onEntry(int messageType, DirectBuffer buffer, int offset, int length);
+
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final CRC32C checksum = new CRC32C();
+
+    private long segmentIndex;
+    private MappedByteBuffer mappedBuffer;
+    // view of the mapped segment to calculate checksums of its frames
+    private ByteBuffer checksumView;
+    private UnsafeBuffer buffer;
+    private int position;
+    private boolean dirty;
+    private int scannedFramesNumber;
+
+    private Journal(File directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens journal in the directory, creates the directory and the first segment if they do not exist.
+     *
+     * @param directory journal directory
+     * @param segmentSize size of a segment file in bytes
+     * @return journal ready for appends after its last valid frame
+     */
+    public static Journal open(File directory, int segmentSize) {
+        if (segmentSize <= FRAME_HEADER_SIZE || segmentSize % SIZE_OF_LONG != 0) {
+            throw new IllegalArgumentException("Wrong journal segment size: " + segmentSize);
+        }
+        IoUtil.ensureDirectoryExists(directory, "journal");
+        final Journal journal = new Journal(directory, segmentSize);
+        final long[] segmentIndexes = journal.segmentIndexes();
+        if (segmentIndexes.length == 0) {
+            journal.createSegment(0);
+        } else {
+            journal.mapSegment(segmentIndexes[segmentIndexes.length - 1]);
+        }
+        return journal;
+    }
+
+    /**
+     * Passes all valid frames of the journal to the handler in the order they were appended.
+     *
+     * @param handler handler of the journaled requests
+     * @return number of replayed requests
+     */
+    public int replay(EntryHandler handler) {
+        int replayed = 0;
+        for (long index : segmentIndexes()) {
+            if (index == segmentIndex) {
+                scan(checksumView, buffer, handler);
+            } else {
+                final MappedByteBuffer segment = IoUtil.mapExistingFile(segmentFile(index), "journal segment");
+                try {
+                    scan(segment.duplicate(), new UnsafeBuffer(segment), handler);
+                } finally {
+                    IoUtil.unmap(segment);
+                }
+            }
+            replayed += scannedFramesNumber;
+        }
+        return replayed;
+    }
+
+    /**
+     * Appends request to the journal. Request is durable only after the next {@link #sync()}.
+     *
+     * @param messageType request message type
+     * @param srcBuffer buffer with the request
+     * @param srcOffset offset of the request in the buffer
+     * @param length request length
+     */
+    public void append(int messageType, DirectBuffer srcBuffer, int srcOffset, int length) {
+        final int frameLength = align(FRAME_HEADER_SIZE + length, SIZE_OF_LONG);
+        if (frameLength > segmentSize) {
+            throw new IllegalArgumentException("Request does not fit journal segment: " + length);
+        }
+        if (position + frameLength > segmentSize) {
+            rollSegment();
+        }
+        buffer.putBytes(position + FRAME_HEADER_SIZE, srcBuffer, srcOffset, length);
+        buffer.putInt(position + CHECKSUM_FIELD_OFFSET, checksum(checksumView, position + FRAME_HEADER_SIZE, length));
+        buffer.putInt(position + MESSAGE_TYPE_FIELD_OFFSET, messageType);
+        buffer.putIntOrdered(position + FRAME_LENGTH_FIELD_OFFSET, FRAME_HEADER_SIZE + length);
+        position += frameLength;
+        dirty = true;
+    }
+
+    /**
+     * Flushes requests appended since the previous sync to the storage.
+     *
+     * @return true if there was something to flush
+     */
+    public boolean sync() {
+        if (!dirty) {
+            return false;
+        }
+        mappedBuffer.force();
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * Removes all journaled requests.
+     */
+    public void reset() {
+        final long nextSegmentIndex = segmentIndex + 1;
+        IoUtil.unmap(mappedBuffer);
+        for (long index : segmentIndexes()) {
+            IoUtil.delete(segmentFile(index), false);
+        }
+        createSegment(nextSegmentIndex);
+        dirty = false;
+    }
+
+    public int segmentsNumber() {
+        return segmentIndexes().length;
+    }
+
+    @Override
+    public void close() {
+        if (mappedBuffer != null) {
+            sync();
+            IoUtil.unmap(mappedBuffer);
+            mappedBuffer = null;
+        }
+    }
+
+    private void rollSegment() {
+        if (position + FRAME_HEADER_SIZE <= segmentSize) {
+            buffer.putInt(position + MESSAGE_TYPE_FIELD_OFFSET, PADDING_MESSAGE_TYPE);
+            buffer.putIntOrdered(position + FRAME_LENGTH_FIELD_OFFSET, segmentSize - position);
+        }
+        // the previous segment is completed, so the next sync flushes only the new one
+        mappedBuffer.force();
+        IoUtil.unmap(mappedBuffer);
+        createSegment(segmentIndex + 1);
+    }
+
+    private void createSegment(long index) {
+        segmentIndex = index;
+        mappedBuffer = IoUtil.mapNewFile(segmentFile(index), segmentSize);
+        checksumView = mappedBuffer.duplicate();
+        buffer = new UnsafeBuffer(mappedBuffer);
+        position = 0;
+    }
+
+    private void mapSegment(long index) {
+        segmentIndex = index;
+        mappedBuffer = IoUtil.mapExistingFile(segmentFile(index), "journal segment");
+        checksumView = mappedBuffer.duplicate();
+        buffer = new UnsafeBuffer(mappedBuffer);
+        position = scan(checksumView, buffer, null);
+        if (position < buffer.capacity() && buffer.getInt(position + FRAME_LENGTH_FIELD_OFFSET) != 0) {
+            // clear the torn frame, so stale bytes are never taken for a frame written after it
+            buffer.setMemory(position, buffer.capacity() - position, (byte)0);
+        }
+    }
+
+    /**
+     * Reads valid frames of the segment, number of the read frames is kept in {@link #scannedFramesNumber}.
+     *
+     * @return position after the last valid frame
+     */
+    private int scan(ByteBuffer segmentView, UnsafeBuffer segmentBuffer, EntryHandler handler) {
+        int framesNumber = 0;
+        int offset = 0;
+        while (offset + FRAME_HEADER_SIZE <= segmentBuffer.capacity()) {
+            final int length = segmentBuffer.getIntVolatile(offset + FRAME_LENGTH_FIELD_OFFSET);
+            if (length < FRAME_HEADER_SIZE || offset + length > segmentBuffer.capacity()) {
+                break;
+            }
+            final int messageType = segmentBuffer.getInt(offset + MESSAGE_TYPE_FIELD_OFFSET);
+            if (messageType == PADDING_MESSAGE_TYPE) {
+                offset = segmentBuffer.capacity();
+                break;
+            }
+            final int requestLength = length - FRAME_HEADER_SIZE;
+            if (segmentBuffer.getInt(offset + CHECKSUM_FIELD_OFFSET) != checksum(segmentView, offset + FRAME_HEADER_SIZE, requestLength)) {
+                break;
+            }
+            if (handler != null) {
+                handler.onEntry(messageType, segmentBuffer, offset + FRAME_HEADER_SIZE, requestLength);
+            }
+            framesNumber++;
+            offset += align(length, SIZE_OF_LONG);
+        }
+        scannedFramesNumber = framesNumber;
+        return offset;
+    }
+
+    private int checksum(ByteBuffer view, int offset, int length) {
+        view.limit(offset + length).position(offset);
+        checksum.reset();
+        checksum.update(view);
+        return (int)checksum.getValue();
+    }
+
+    private long[] segmentIndexes() {
+        final String[] names = directory.list((dir, name) -> name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX));
+        final long[] indexes = new long[names == null ? 0 : names.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = Long.parseLong(
+                names[i].substring(SEGMENT_FILE_PREFIX.length(), names[i].length() - SEGMENT_FILE_SUFFIX.length())
+            );
+        }
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    private File segmentFile(long index) {
+        return new File(directory, String.format("%s%019d%s", SEGMENT_FILE_PREFIX, index, SEGMENT_FILE_SUFFIX));
+    }
+
+}
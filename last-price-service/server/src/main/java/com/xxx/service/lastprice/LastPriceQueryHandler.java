@@ -0,0 +1,172 @@
+package com.xxx.service.lastprice;
+
+import com.xxx.core.protocol.Message;
+import com.xxx.core.server.BufferResponseAllocator;
+import com.xxx.core.server.ResponseAllocator;
+import com.xxx.core.server.ServiceHandler;
+import com.xxx.service.lastprice.messages.LastPriceRequest;
+import com.xxx.service.lastprice.messages.LastPriceResponse;
+import com.xxx.service.lastprice.messages.MultiLastPriceRequest;
+import com.xxx.service.lastprice.messages.MultiLastPriceResponse;
+import com.xxx.service.lastprice.messages.PriceRecord;
+import org.agrona.DirectBuffer;
+
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static com.xxx.service.lastprice.Configuration.MAX_MULTI_LAST_PRICE_INSTRUMENTS;
+import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
+import static com.xxx.service.lastprice.messages.LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS;
+import static com.xxx.service.lastprice.messages.LastPriceResponse.SUCCESS_STATUS;
+import static com.xxx.service.lastprice.messages.LastPriceResponse.WRONG_INSTRUMENT_STATUS;
+import static com.xxx.service.lastprice.messages.MessageTypes.LAST_PRICE_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE;
+
+/**
+ * Handles read only requests of the service. Handler does not change any state and reads {@link MarketState}
+ * using records seqlock protocol, so several handlers over the same market state can be used from different
+ * threads while the market state is being updated by the {@link LastPriceServiceHandler}.
+ *
+ * Market state is replaced by a bigger one when new instruments are added, so the handler takes
+ * the current state from the supplier on each request and reads it through its own view.
+ *
+ * Handler object itself is not thread safe, each thread should use its own instance,
+ * see {@link LastPriceServiceHandler#newReadHandler()}.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class LastPriceQueryHandler implements ServiceHandler {
+
+    private final Supplier<MarketState> marketStateSupplier;
+    private final InstrumentIndexer instrumentIndexer;
+
+    private MarketState sourceMarketState;
+    private MarketState marketState;
+
+    private final LastPriceRequest lastPriceRequest = new LastPriceRequest();
+    private final LastPriceResponse lastPriceResponse = new LastPriceResponse();
+    private final MultiLastPriceRequest multiLastPriceRequest = new MultiLastPriceRequest();
+    private final MultiLastPriceResponse multiLastPriceResponse = new MultiLastPriceResponse();
+
+    private final ResponseAllocator ownResponseAllocator = new BufferResponseAllocator(LastPriceResponse.MESSAGE_SIZE);
+
+    LastPriceQueryHandler(Supplier<MarketState> marketStateSupplier, InstrumentIndexer instrumentIndexer) {
+        this.marketStateSupplier = marketStateSupplier;
+        this.instrumentIndexer = instrumentIndexer;
+    }
+
+    @Override
+    public Message handleRequest(
+        final int messageType,
+        final LongSupplier idGenerator,
+        final DirectBuffer buffer,
+        final int offset,
+        final int length) {
+
+        return handleRequest(messageType, idGenerator, buffer, offset, length, ownResponseAllocator);
+    }
+
+    @Override
+    public Message handleRequest(
+        final int messageType,
+        final LongSupplier idGenerator,
+        final DirectBuffer buffer,
+        final int offset,
+        final int length,
+        final ResponseAllocator responseAllocator) {
+
+        if (messageType == LAST_PRICE_REQUEST_MESSAGE_TYPE) {
+            lastPriceRequest.wrapForRead(buffer, offset);
+            return onLastPrice(lastPriceRequest, responseAllocator);
+        }
+        if (messageType == MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE) {
+            multiLastPriceRequest.wrapForRead(buffer, offset);
+            return onMultiLastPrice(multiLastPriceRequest, responseAllocator);
+        }
+        throw new IllegalArgumentException("Unsupported message type");
+    }
+
+    @Override
+    public boolean isReadRequest(int messageType) {
+        return messageType == LAST_PRICE_REQUEST_MESSAGE_TYPE || messageType == MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE;
+    }
+
+    LastPriceResponse onLastPrice(LastPriceRequest lastPriceRequest, ResponseAllocator responseAllocator) {
+        responseAllocator.allocate(lastPriceResponse);
+        lastPriceResponse.status(readLastPrice(lastPriceRequest.instrument(), lastPriceResponse.priceRecordForWrite()));
+        return lastPriceResponse;
+    }
+
+    MultiLastPriceResponse onMultiLastPrice(MultiLastPriceRequest multiLastPriceRequest, ResponseAllocator responseAllocator) {
+        final int instrumentsNumber = multiLastPriceRequest.instrumentsNumber();
+        if (instrumentsNumber < 0 || instrumentsNumber > MAX_MULTI_LAST_PRICE_INSTRUMENTS) {
+            responseAllocator.allocate(multiLastPriceResponse, MultiLastPriceResponse.defineSize(0));
+            multiLastPriceResponse.status(MultiLastPriceResponse.TOO_MANY_INSTRUMENTS_STATUS);
+            multiLastPriceResponse.recordsNumber(0);
+            return multiLastPriceResponse;
+        }
+        responseAllocator.allocate(multiLastPriceResponse, MultiLastPriceResponse.defineSize(instrumentsNumber));
+        multiLastPriceResponse.status(MultiLastPriceResponse.SUCCESS_STATUS);
+        multiLastPriceResponse.recordsNumber(instrumentsNumber);
+        for (int index = 0; index < instrumentsNumber; index++) {
+            final int status = readLastPrice(
+                multiLastPriceRequest.instrument(index), multiLastPriceResponse.priceRecordForWrite(index)
+            );
+            multiLastPriceResponse.recordStatus(index, status);
+        }
+        return multiLastPriceResponse;
+    }
+
+    /**
+     * Reads last price of the instrument to the given price record.
+     *
+     * @param instrument instrument to read price of
+     * @param priceRecord record to write the price to
+     * @return status of the price, see {@link LastPriceResponse}
+     */
+    private int readLastPrice(CharSequence instrument, PriceRecord priceRecord) {
+        final int instrumentIndex = instrumentIndexer.defineIndex(instrument);
+        if (instrumentIndex < 0) {
+            // index not found
+            return WRONG_INSTRUMENT_STATUS;
+        }
+        priceRecord.instrument(instrument);
+        // market state is taken after the index, it's always big enough for the instruments known by the index
+        final MarketState marketState = currentMarketState();
+        int status = PRICE_NOT_AVAILABLE_STATUS;
+        long committedEpoch;
+        long version;
+        IndexedPriceRecord record;
+        do {
+            committedEpoch = marketState.committedEpoch();
+            record = marketState.getPriceRecord(instrumentIndex, committedEpoch);
+            version = record.beginRead();
+            final long timestamp = record.timestamp();
+            final int payloadSize = record.payloadSize();
+            // price was not initialized, see method com.xxx.service.lastprice.MarketState.reset
+            if (timestamp == 0L) {
+                status = PRICE_NOT_AVAILABLE_STATUS;
+            } else if (payloadSize >= 0 && payloadSize <= PRICE_MAX_PAYLOAD_SIZE) {
+                // size and arena reference can be broken by concurrent write, the read will be retried in this case
+                final DirectBuffer payloadBuffer = record.payloadBuffer(payloadSize);
+                if (payloadBuffer != null) {
+                    status = SUCCESS_STATUS;
+                    priceRecord.asOfTimestamp(timestamp);
+                    priceRecord.putPayload(payloadBuffer, record.absolutePayloadOffset(payloadSize), payloadSize);
+                }
+            }
+            // version of a newer epoch means the record was reused by the writer after the next commits
+        } while (record.epoch() > committedEpoch || !record.validateRead(version));
+        return status;
+    }
+
+    private MarketState currentMarketState() {
+        final MarketState current = marketStateSupplier.get();
+        if (current != sourceMarketState) {
+            sourceMarketState = current;
+            marketState = current.view();
+        }
+        return marketState;
+    }
+
+}
@@ -1,71 +1,292 @@
 package com.xxx.service.lastprice;
 
 import com.xxx.core.protocol.Message;
+import com.xxx.core.server.BufferResponseAllocator;
+import com.xxx.core.server.ResponseAllocator;
+import com.xxx.core.server.ServerCounters;
 import com.xxx.core.server.ServiceHandler;
+import com.xxx.service.lastprice.messages.AddInstrumentRequest;
+import com.xxx.service.lastprice.messages.AddInstrumentResponse;
 import com.xxx.service.lastprice.messages.CancelBatchRunRequest;
 import com.xxx.service.lastprice.messages.CancelBatchRunResponse;
 import com.xxx.service.lastprice.messages.CompleteBatchRunRequest;
 import com.xxx.service.lastprice.messages.CompleteBatchRunResponse;
 import com.xxx.service.lastprice.messages.LastPriceRequest;
 import com.xxx.service.lastprice.messages.LastPriceResponse;
-import com.xxx.service.lastprice.messages.PriceRecord;
+import com.xxx.service.lastprice.messages.PackedPriceRecord;
 import com.xxx.service.lastprice.messages.PriceRecordsChunk;
 import com.xxx.service.lastprice.messages.StartBatchRunRequest;
 import com.xxx.service.lastprice.messages.StartBatchRunResponse;
+import com.xxx.service.lastprice.messages.SubscribeRequest;
+import com.xxx.service.lastprice.messages.SubscribeResponse;
 import com.xxx.service.lastprice.messages.UploadChunkRequest;
 import com.xxx.service.lastprice.messages.UploadChunkResponse;
+import io.aeron.Publication;
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.CachedEpochClock;
 import org.agrona.concurrent.EpochClock;
 import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.status.AtomicCounter;
 
+import java.io.File;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.LongSupplier;
 
 import static com.xxx.core.protocol.Flyweight.allocateMemoryForFlyweight;
 import static com.xxx.core.protocol.Message.allocateMemoryForMessage;
 import static com.xxx.service.lastprice.Configuration.BATCH_EVICTION_TIMEOUT;
+import static com.xxx.service.lastprice.Configuration.CHUNK_SLICE_RECORDS;
+import static com.xxx.service.lastprice.Configuration.INSTRUMENT_MAX_TICKER_LENGTH;
+import static com.xxx.service.lastprice.Configuration.JOURNAL_SEGMENT_SIZE;
+import static com.xxx.service.lastprice.Configuration.MARKET_STATE_SNAPSHOT_INTERVAL;
+import static com.xxx.service.lastprice.Configuration.MAX_BATCH_PRODUCERS;
+import static com.xxx.service.lastprice.Configuration.MAX_CHUNK_SIZE;
 import static com.xxx.service.lastprice.Configuration.MAX_ACTIVE_BATCHES_NUMBER;
-import static com.xxx.service.lastprice.messages.LastPriceResponse.WRONG_INSTRUMENT_STATUS;
+import static com.xxx.service.lastprice.Configuration.MAX_SUBSCRIPTION_INSTRUMENTS;
+import static com.xxx.service.lastprice.Configuration.MERGE_SLICE_RECORDS;
+import static com.xxx.service.lastprice.messages.MessageTypes.ADD_INSTRUMENT_REQUEST_MESSAGE_TYPE;
 import static com.xxx.service.lastprice.messages.MessageTypes.CANCEL_BATCH_REQUEST_MESSAGE_TYPE;
 import static com.xxx.service.lastprice.messages.MessageTypes.COMPLETE_BATCH_REQUEST_MESSAGE_TYPE;
 import static com.xxx.service.lastprice.messages.MessageTypes.LAST_PRICE_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE;
 import static com.xxx.service.lastprice.messages.MessageTypes.START_BATCH_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.MessageTypes.SUBSCRIBE_REQUEST_MESSAGE_TYPE;
 import static com.xxx.service.lastprice.messages.MessageTypes.UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE;
+import static com.xxx.service.lastprice.messages.StartBatchRunRequest.SERVER_ASSIGNED_BATCH_ID;
+import static com.xxx.service.lastprice.messages.StartBatchRunRequest.SINGLE_PRODUCER;
+import static com.xxx.service.lastprice.messages.StartBatchRunResponse.BATCH_ALREADY_EXISTS_STATUS;
 import static com.xxx.service.lastprice.messages.StartBatchRunResponse.CAN_NOT_CREATE_BATCH_STATUS;
+import static com.xxx.service.lastprice.messages.StartBatchRunResponse.WRONG_PRODUCERS_NUMBER_STATUS;
+import static com.xxx.service.lastprice.messages.UploadChunkRequest.UNTRACKED_CHUNK_SEQUENCE;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BufferUtil.allocateDirectAligned;
 
 /**
+ * Service business logic. All state changing requests are handled by the single server thread.
+ * Time is read once per duty cycle in {@link #doWork()}, which also evicts batch runs not updated
+ * for {@link Configuration#BATCH_EVICTION_TIMEOUT}.
+ *
+ * Instruments can be added at runtime. Market state, batch runs and the instruments index are grown
+ * to fit them, and the grown market state is published to the read handlers through a volatile reference
+ * before the instrument becomes visible in the index.
+ *
+ * If the handler is created with an updates publication, connections can subscribe to instruments.
+ * Prices of subscribed instruments changed by a completed batch run are published from {@link #doWork()},
+ * see {@link PriceUpdatesPublisher}.
+ *
+ * Market state can be kept in a memory mapped file (see {@link MarketStateFile}), then the handler started over
+ * the same file serves prices of the previous run right away. Instruments stored in the file keep their indexes,
+ * given instruments unknown to the file are added to it. Changed state is flushed to the file from {@link #doWork()}
+ * not more often than {@link Configuration#MARKET_STATE_SNAPSHOT_INTERVAL}.
+ *
+ * Accepted state changing requests can be appended to the {@link Journal}, then responses to them are sent
+ * only after the journal is synced once per server poll cycle (see {@link #isSyncRequired(int)}). On start
+ * the journal is replayed, so active batch runs and market state survive a crash. The journal is reset after
+ * a market state snapshot when there are no active batch runs, so the journal requires the market state file.
+ * Evicted batch runs are journaled as cancelled, so the replay doesn't bring them back.
+ *
+ * Batch run can be uploaded by several producers concurrently. Chunks of each producer are applied once and in the order
+ * of their sequences, the batch run is merged to the market state when the last of its producers completes it.
+ * Upload response has the sequence of the last applied chunk of the producer, so a producer can retry a chunk
+ * after a timeout or resume from a gap without uploading the whole batch run again.
+ *
+ * Chunks with more than {@link Configuration#CHUNK_SLICE_RECORDS} records are applied in slices, one slice per
+ * duty cycle (see {@link #resumeRequest(ResponseAllocator)}), so the server keeps serving reads meanwhile.
+ * Records are collected in the operational batch run and merged to the batch run only when all of them are applied,
+ * so a chunk is still applied entirely or not at all.
+ *
+ * Batch runs with more than {@link Configuration#MERGE_SLICE_RECORDS} records are merged to the market state in slices
+ * the same way. Merged records become visible to the readers at once, the market state is committed after the last slice.
+ * Server parks other state changing requests meanwhile, batch runs are not evicted and the state is not snapshotted.
+ *
+ * Rejected chunks and evicted batch runs are counted in {@link ServerCounters} shared with the server.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
-public class LastPriceServiceHandler implements ServiceHandler {
+public class LastPriceServiceHandler implements ServiceHandler, AutoCloseable {
 
-    private final MarketState marketState;
+    private static final int MIN_INSTRUMENTS_CAPACITY = 16;
+    private static final int UPDATE_MESSAGES_LIMIT = 10;
+    private static final int EVICTION_LIMIT = 10;
+    private static final int UNKNOWN_INSTRUMENT = -1;
+
+    // replaced by a bigger copy when instruments are added, read handlers pick up the current one
+    private volatile MarketState marketState;
+    // null if market state is kept in memory only
+    private MarketStateFile marketStateFile;
+    private boolean marketStateChanged;
+    private long lastSnapshotTimestamp;
+    // null if requests are not journaled
+    private final Journal journal;
+    private boolean replaying;
+    private final EpochClock epochClock;
+    // updated once per duty cycle, batch runs are stamped by it
+    private final CachedEpochClock cachedEpochClock = new CachedEpochClock();
     private final InstrumentIndexer instrumentIndexer;
     private final BatchRunRepository batchRunRepository;
 
     private final BatchRun operationalBatchRun;
 
+    // copy of the chunk request applied across duty cycles, the original is gone once the handler returns
+    private final UploadChunkRequest pendingUploadChunkRequest = new UploadChunkRequest();
+    private final MutableDirectBuffer pendingRequestBuffer =
+        new UnsafeBuffer(allocateDirectAligned(UploadChunkRequest.maxSize(), CACHE_LINE_LENGTH));
+    private PriceRecordsChunk pendingChunk;
+    private int nextRecordIndex;
+    private boolean uploadChunkPending;
+    // copy of the complete request merged across duty cycles, shares the pending request buffer
+    private final CompleteBatchRunRequest pendingCompleteBatchRunRequest = new CompleteBatchRunRequest();
+    // null if there is no batch run being merged to the market state
+    private BatchRun mergingBatchRun;
+    private int nextMergeIndex;
+    private final LastPriceQueryHandler queryHandler;
+    private final SubscriptionRegistry subscriptionRegistry;
+    // null if subscriptions are not supported
+    private final PriceUpdatesPublisher updatesPublisher;
+    private final IntIndexedEntityConsumer<IndexedPriceRecord> changedRecordsConsumer = this::onPriceChanged;
+
     private final LastPriceRequest getLastPriceRequest = new LastPriceRequest();
     private final StartBatchRunRequest startBatchRunRequest = new StartBatchRunRequest();
     private final UploadChunkRequest uploadChunkRequest = new UploadChunkRequest();
     private final CancelBatchRunRequest cancelBatchRunRequest = new CancelBatchRunRequest();
     private final CompleteBatchRunRequest completeBatchRunRequest = new CompleteBatchRunRequest();
+    private final AddInstrumentRequest addInstrumentRequest = new AddInstrumentRequest();
+    private final SubscribeRequest subscribeRequest = new SubscribeRequest();
+    // start request with the assigned batch ID to journal instead of the received one
+    private final StartBatchRunRequest journaledStartBatchRunRequest = new StartBatchRunRequest();
+    // evicted batch runs are journaled as cancelled, so the replay doesn't bring them back
+    private final CancelBatchRunRequest journaledCancelBatchRunRequest = new CancelBatchRunRequest();
+    private final Consumer<BatchRun> evictedBatchRunConsumer = this::onBatchRunEvicted;
 
-    private final LastPriceResponse lastPriceResponse = new LastPriceResponse();
     private final StartBatchRunResponse startBatchRunResponse = new StartBatchRunResponse();
     private final UploadChunkResponse uploadChunkResponse = new UploadChunkResponse();
     private final CancelBatchRunResponse cancelBatchRunResponse = new CancelBatchRunResponse();
     private final CompleteBatchRunResponse completeBatchRunResponse = new CompleteBatchRunResponse();
+    private final AddInstrumentResponse addInstrumentResponse = new AddInstrumentResponse();
+    private final SubscribeResponse subscribeResponse = new SubscribeResponse();
+
+    private final AtomicCounter rejectedChunks;
+    private final AtomicCounter evictedBatchRuns;
+
+    private final ResponseAllocator ownResponseAllocator = new BufferResponseAllocator(LastPriceResponse.MESSAGE_SIZE);
 
     public LastPriceServiceHandler(EpochClock epochClock, Set<String> instruments) {
-        this.marketState = new MarketState(instruments.size());
-        this.instrumentIndexer = new InstrumentIndexer(instruments);
-        this.batchRunRepository = new BatchRunRepositoryImpl(epochClock, MAX_ACTIVE_BATCHES_NUMBER);
-        this.operationalBatchRun = createOperationalBatchRun(instruments.size());
-        allocateMemoryForMessages();
-        allocateMemoryForFlyweight(marketState);
+        this(epochClock, instruments, null);
+    }
+
+    /**
+     * Creates handler publishing price updates of subscribed instruments.
+     *
+     * @param epochClock epoch clock
+     * @param instruments initial instruments
+     * @param updatesPublication multicast or IPC publication to publish updates to,
+     *                           if null subscriptions are not supported
+     */
+    public LastPriceServiceHandler(EpochClock epochClock, Set<String> instruments, Publication updatesPublication) {
+        this(epochClock, instruments, updatesPublication, null);
+    }
+
+    /**
+     * Creates handler keeping market state in the memory mapped file.
+     *
+     * @param epochClock epoch clock
+     * @param instruments instruments to add to the ones stored in the file
+     * @param updatesPublication multicast or IPC publication to publish updates to,
+     *                           if null subscriptions are not supported
+     * @param marketStateFile file to map market state to, created if does not exist,
+     *                        if null market state is kept in memory only
+     */
+    public LastPriceServiceHandler(
+        EpochClock epochClock, Set<String> instruments, Publication updatesPublication, File marketStateFile) {
+
+        this(epochClock, instruments, updatesPublication, marketStateFile, null);
+    }
+
+    /**
+     * Creates handler journaling accepted state changing requests. Requests found in the journal are replayed.
+     *
+     * @param epochClock epoch clock
+     * @param instruments instruments to add to the ones stored in the market state file
+     * @param updatesPublication multicast or IPC publication to publish updates to,
+     *                           if null subscriptions are not supported
+     * @param marketStateFile file to map market state to, created if does not exist,
+     *                        if null market state is kept in memory only
+     * @param journalDirectory directory of the journal segments, created if does not exist,
+     *                         if null requests are not journaled, requires the market state file
+     */
+    public LastPriceServiceHandler(
+        EpochClock epochClock, Set<String> instruments, Publication updatesPublication, File marketStateFile, File journalDirectory) {
+
+        this(epochClock, instruments, updatesPublication, marketStateFile, journalDirectory, new ServerCounters());
+    }
+
+    /**
+     * Creates handler counting its events in the given server counters.
+     *
+     * @param epochClock epoch clock
+     * @param instruments instruments to add to the ones stored in the market state file
+     * @param updatesPublication multicast or IPC publication to publish updates to,
+     *                           if null subscriptions are not supported
+     * @param marketStateFile file to map market state to, created if does not exist,
+     *                        if null market state is kept in memory only
+     * @param journalDirectory directory of the journal segments, created if does not exist,
+     *                         if null requests are not journaled, requires the market state file
+     * @param counters server counters to allocate the handler counters in
+     */
+    public LastPriceServiceHandler(
+        EpochClock epochClock, Set<String> instruments, Publication updatesPublication, File marketStateFile, File journalDirectory,
+        ServerCounters counters) {
+
+        if (journalDirectory != null && marketStateFile == null) {
+            // the journal is reset after market state snapshots only, without them it would grow forever
+            throw new IllegalArgumentException("Market state file is required to journal requests");
+        }
+        this.rejectedChunks = counters.newCounter("rejected chunks");
+        this.evictedBatchRuns = counters.newCounter("evicted batch runs");
+        this.epochClock = epochClock;
+        // instruments stored in the file go first to keep their indexes
+        final Set<String> allInstruments = new LinkedHashSet<>();
+        if (marketStateFile != null) {
+            this.marketStateFile = MarketStateFile.open(marketStateFile, MIN_INSTRUMENTS_CAPACITY);
+            allInstruments.addAll(this.marketStateFile.instruments());
+        }
+        allInstruments.addAll(instruments);
+        int instrumentsCapacity = Math.max(allInstruments.size(), MIN_INSTRUMENTS_CAPACITY);
+        if (this.marketStateFile != null) {
+            this.marketStateFile = this.marketStateFile.grow(instrumentsCapacity);
+            instrumentsCapacity = this.marketStateFile.capacity();
+            int index = 0;
+            for (String instrument : allInstruments) {
+                if (index >= this.marketStateFile.instrumentsNumber()) {
+                    this.marketStateFile.addInstrument(index, instrument);
+                }
+                index++;
+            }
+            this.marketState = this.marketStateFile.marketState();
+            this.lastSnapshotTimestamp = epochClock.time();
+        } else {
+            final MarketState marketState = new MarketState(instrumentsCapacity);
+            allocateMemoryForFlyweight(marketState);
+            this.marketState = marketState;
+        }
+        this.instrumentIndexer = new InstrumentIndexer(allInstruments);
+        this.cachedEpochClock.update(epochClock.time());
+        this.batchRunRepository = new BatchRunRepositoryImpl(cachedEpochClock);
+        // holds one chunk, so it never grows
+        this.operationalBatchRun = new BatchRun(-1, MAX_CHUNK_SIZE);
+        this.queryHandler = new LastPriceQueryHandler(this::marketState, instrumentIndexer);
+        this.subscriptionRegistry = new SubscriptionRegistry(instrumentsCapacity);
+        this.updatesPublisher = updatesPublication == null ? null :
+            new PriceUpdatesPublisher(updatesPublication, this::marketState, instrumentIndexer, instrumentsCapacity);
+        this.journal = journalDirectory == null ? null : Journal.open(journalDirectory, JOURNAL_SEGMENT_SIZE);
+        if (journal != null) {
+            allocateMemoryForMessage(journaledStartBatchRunRequest);
+            allocateMemoryForMessage(journaledCancelBatchRunRequest);
+            replayJournal();
+        }
     }
 
     @Override
@@ -76,143 +297,537 @@ public class LastPriceServiceHandler implements ServiceHandler {
         final int offset,
         final int length) {
 
-        try {
-            switch (messageType) {
-                case LAST_PRICE_REQUEST_MESSAGE_TYPE:
-                    getLastPriceRequest.wrapForRead(buffer, offset);
-                    return onLastPrice(getLastPriceRequest);
-                case START_BATCH_REQUEST_MESSAGE_TYPE:
-                    startBatchRunRequest.wrapForRead(buffer, offset);
-                    return onStartBatchRun(startBatchRunRequest, idGenerator);
-                case CANCEL_BATCH_REQUEST_MESSAGE_TYPE:
-                    cancelBatchRunRequest.wrapForRead(buffer, offset);
-                    return onCancelBatchRun(cancelBatchRunRequest);
-                case UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE:
-                    uploadChunkRequest.wrapForRead(buffer, offset);
-                    return onUploadChunk(uploadChunkRequest);
-                case COMPLETE_BATCH_REQUEST_MESSAGE_TYPE:
-                    completeBatchRunRequest.wrapForRead(buffer, offset);
-                    return onCompleteBatch(completeBatchRunRequest);
-                default:
-                    throw new IllegalArgumentException("Unsupported message type");
+        return handleRequest(messageType, idGenerator, buffer, offset, length, ownResponseAllocator);
+    }
+
+    @Override
+    public Message handleRequest(
+        final int messageType,
+        final LongSupplier idGenerator,
+        final DirectBuffer buffer,
+        final int offset,
+        final int length,
+        final ResponseAllocator responseAllocator) {
+
+        switch (messageType) {
+            case LAST_PRICE_REQUEST_MESSAGE_TYPE:
+                getLastPriceRequest.wrapForRead(buffer, offset);
+                return queryHandler.onLastPrice(getLastPriceRequest, responseAllocator);
+            case MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE:
+                return queryHandler.handleRequest(messageType, idGenerator, buffer, offset, length, responseAllocator);
+            case START_BATCH_REQUEST_MESSAGE_TYPE:
+                startBatchRunRequest.wrapForRead(buffer, offset);
+                return onStartBatchRun(startBatchRunRequest, idGenerator, responseAllocator);
+            case CANCEL_BATCH_REQUEST_MESSAGE_TYPE:
+                cancelBatchRunRequest.wrapForRead(buffer, offset);
+                return onCancelBatchRun(cancelBatchRunRequest, responseAllocator);
+            case UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE:
+                uploadChunkRequest.wrapForRead(buffer, offset);
+                return onUploadChunk(uploadChunkRequest, responseAllocator);
+            case COMPLETE_BATCH_REQUEST_MESSAGE_TYPE:
+                completeBatchRunRequest.wrapForRead(buffer, offset);
+                return onCompleteBatch(completeBatchRunRequest, responseAllocator);
+            case ADD_INSTRUMENT_REQUEST_MESSAGE_TYPE:
+                addInstrumentRequest.wrapForRead(buffer, offset);
+                return onAddInstrument(addInstrumentRequest, responseAllocator);
+            case SUBSCRIBE_REQUEST_MESSAGE_TYPE:
+                subscribeRequest.wrapForRead(buffer, offset);
+                return onSubscribe(subscribeRequest, responseAllocator);
+            default:
+                throw new IllegalArgumentException("Unsupported message type");
+        }
+    }
+
+    @Override
+    public boolean isReadRequest(int messageType) {
+        return queryHandler.isReadRequest(messageType);
+    }
+
+    /**
+     * Creates handler for read only requests. It shares market state with this handler and can be used
+     * from another thread.
+     *
+     * @return new read only handler
+     */
+    @Override
+    public ServiceHandler newReadHandler() {
+        return new LastPriceQueryHandler(this::marketState, instrumentIndexer);
+    }
+
+    @Override
+    public boolean isRequestPending() {
+        return uploadChunkPending || mergingBatchRun != null;
+    }
+
+    /**
+     * Applies the next slice of the pending chunk or merges the next slice of the completed batch run.
+     *
+     * @param responseAllocator allocator to wrap the response message over
+     * @return response to the pending request or {@code null} if not all records of the chunk or the batch run
+     * are processed yet
+     */
+    @Override
+    public Message resumeRequest(ResponseAllocator responseAllocator) {
+        if (mergingBatchRun != null) {
+            return resumeMerge(responseAllocator);
+        }
+        if (!uploadChunkPending) {
+            throw new IllegalStateException("There is no pending request");
+        }
+        // if applying fails the chunk is dropped, the server closes the connection
+        uploadChunkPending = false;
+        nextRecordIndex = applyRecords(pendingChunk, nextRecordIndex, CHUNK_SLICE_RECORDS);
+        if (nextRecordIndex != UNKNOWN_INSTRUMENT && nextRecordIndex < pendingChunk.recordsNumber()) {
+            uploadChunkPending = true;
+            return null;
+        }
+        return completeUploadChunk(pendingUploadChunkRequest, nextRecordIndex != UNKNOWN_INSTRUMENT, responseAllocator);
+    }
+
+    @Override
+    public boolean isSyncRequired(int messageType) {
+        if (journal == null) {
+            return false;
+        }
+        switch (messageType) {
+            case START_BATCH_REQUEST_MESSAGE_TYPE:
+            case CANCEL_BATCH_REQUEST_MESSAGE_TYPE:
+            case UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE:
+            case COMPLETE_BATCH_REQUEST_MESSAGE_TYPE:
+            case ADD_INSTRUMENT_REQUEST_MESSAGE_TYPE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Flushes requests journaled since the previous sync.
+     */
+    @Override
+    public void sync() {
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    @Override
+    public int doWork() {
+        cachedEpochClock.update(epochClock.time());
+        int workCount = 0;
+        // merged batch run should stay in the repository, and the file is not consistent until the merge ends
+        if (mergingBatchRun == null) {
+            workCount += snapshotMarketState();
+            final int evicted = batchRunRepository.removeOutdated(BATCH_EVICTION_TIMEOUT, EVICTION_LIMIT, evictedBatchRunConsumer);
+            if (evicted > 0) {
+                evictedBatchRuns.getAndAddOrdered(evicted);
             }
-        } finally {
-            // on each message try to clean up some resources
-            cleanUpCycle();
+            workCount += evicted;
+        }
+        if (updatesPublisher != null) {
+            workCount += updatesPublisher.publish(UPDATE_MESSAGES_LIMIT);
+        }
+        return workCount;
+    }
+
+    @Override
+    public void onConnectionClosed(long connectionId) {
+        subscriptionRegistry.removeConnection(connectionId);
+    }
+
+    /**
+     * Flushes market state and journal to their files, if any.
+     */
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+        if (marketStateFile != null) {
+            marketStateFile.close();
         }
     }
 
+    MarketState marketState() {
+        return marketState;
+    }
+
     protected void reset() {
         marketState.reset();
         operationalBatchRun.reset();
+        uploadChunkPending = false;
+        if (mergingBatchRun != null) {
+            mergingBatchRun = null;
+            endMerge();
+        }
         batchRunRepository.removeAll();
     }
 
-    private LastPriceResponse onLastPrice(LastPriceRequest lastPriceRequest) {
-        final CharSequence instrument = lastPriceRequest.instrument();
-        final int instrumentIndex = instrumentIndexer.defineIndex(instrument);
-        if (instrumentIndex < 0) {
-            // index not found
-            lastPriceResponse.status(WRONG_INSTRUMENT_STATUS);
-        } else {
-            final IndexedPriceRecord record = marketState.getPriceRecord(instrumentIndex);
-            // price was not initialized, see method com.xxx.service.lastprice.MarketState.reset
-            if (record.timestamp() == 0L) {
-                lastPriceResponse.status(LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS);
-            } else {
-                lastPriceResponse.status(LastPriceResponse.SUCCESS_STATUS);
-                final PriceRecord priceRecord = lastPriceResponse.priceRecordForWrite();
-                priceRecord.instrument(instrument);
-                priceRecord.asOfTimestamp(record.timestamp());
-                priceRecord.putPayload(record.getReadBuffer(), record.absolutePayloadOffset(), record.payloadSize());
-            }
-        }
-        return lastPriceResponse;
-    }
+    private StartBatchRunResponse onStartBatchRun(
+        StartBatchRunRequest request, LongSupplier idGenerator, ResponseAllocator responseAllocator) {
 
-    private StartBatchRunResponse onStartBatchRun(StartBatchRunRequest request, LongSupplier idGenerator) {
+        responseAllocator.allocate(startBatchRunResponse);
+        final long proposedBatchId = request.batchId();
+        final int producersNumber = request.producersNumber() == 0 ? SINGLE_PRODUCER : request.producersNumber();
         if (batchRunRepository.size() == MAX_ACTIVE_BATCHES_NUMBER) {
             startBatchRunResponse.status(CAN_NOT_CREATE_BATCH_STATUS);
+        } else if (producersNumber < SINGLE_PRODUCER || producersNumber > MAX_BATCH_PRODUCERS) {
+            startBatchRunResponse.status(WRONG_PRODUCERS_NUMBER_STATUS);
+        } else if (proposedBatchId != SERVER_ASSIGNED_BATCH_ID && batchRunRepository.get(proposedBatchId) != null) {
+            // batch run with the same ID was started by another client, it should retry with another ID
+            startBatchRunResponse.status(BATCH_ALREADY_EXISTS_STATUS);
         } else {
-            final long batchId = idGenerator.getAsLong();
-            batchRunRepository.create(batchId);
+            final long batchId = proposedBatchId == SERVER_ASSIGNED_BATCH_ID ? generateBatchId(idGenerator) : proposedBatchId;
+            batchRunRepository.create(batchId, producersNumber);
+            if (isJournaling()) {
+                // replay should start the batch run with the same ID
+                journaledStartBatchRunRequest.batchId(batchId);
+                journaledStartBatchRunRequest.producersNumber(producersNumber);
+                appendToJournal(START_BATCH_REQUEST_MESSAGE_TYPE, journaledStartBatchRunRequest);
+            }
             startBatchRunResponse.status(StartBatchRunResponse.SUCCESS_STATUS);
             startBatchRunResponse.batchId(batchId);
         }
         return startBatchRunResponse;
     }
 
-    private UploadChunkResponse onUploadChunk(UploadChunkRequest uploadChunkRequest) {
-        final long batchId = uploadChunkRequest.batchId();
-        final BatchRun batchRun = batchRunRepository.get(batchId);
+    private UploadChunkResponse onUploadChunk(UploadChunkRequest uploadChunkRequest, ResponseAllocator responseAllocator) {
+        final BatchRun batchRun = batchRunRepository.get(uploadChunkRequest.batchId());
+        final int producerId = uploadChunkRequest.producerId();
+        final long chunkSequence = uploadChunkRequest.chunkSequence();
+        final int status;
         if (batchRun == null) {
-            uploadChunkResponse.status(UploadChunkResponse.BATCH_RUN_NOT_FOUND_STATUS);
+            status = UploadChunkResponse.BATCH_RUN_NOT_FOUND_STATUS;
+        } else if (!batchRun.isActiveProducer(producerId)) {
+            status = UploadChunkResponse.WRONG_PRODUCER_STATUS;
+        } else if (chunkSequence != UNTRACKED_CHUNK_SEQUENCE && chunkSequence <= batchRun.lastChunkSequence(producerId)) {
+            // chunk is sent again, e.g. the response was lost, it's applied already
+            status = UploadChunkResponse.SUCCESS_STATUS;
+        } else if (chunkSequence != UNTRACKED_CHUNK_SEQUENCE && chunkSequence != batchRun.lastChunkSequence(producerId) + 1) {
+            status = UploadChunkResponse.CHUNK_OUT_OF_ORDER_STATUS;
         } else {
-            operationalBatchRun.reset();
-            final PriceRecordsChunk chunk = uploadChunkRequest.getChunkToRead();
-            boolean chunkProcessed = true;
-            for (int index = 0; index < chunk.recordsNumber(); index++) {
-                final PriceRecord priceRecord = chunk.priceRecord(index);
-                final int instrumentIndex = instrumentIndexer.defineIndex(priceRecord.instrument());
-                if (instrumentIndex < 0) {
-                    uploadChunkResponse.status(UploadChunkResponse.INSTRUMENT_NOT_FOUND_STATUS);
-                    chunkProcessed = false;
-                    break;
-                } else {
-                    operationalBatchRun.tryUpdateRecord(
-                        instrumentIndex, priceRecord.asOfTimestamp(),
-                        priceRecord.getReadBuffer(), priceRecord.absolutePayloadOffset(), priceRecord.payloadSize()
-                    );
-                }
+            return applyChunk(uploadChunkRequest, responseAllocator);
+        }
+        return uploadChunkResponse(status, batchRun, producerId, responseAllocator);
+    }
+
+    private UploadChunkResponse applyChunk(UploadChunkRequest uploadChunkRequest, ResponseAllocator responseAllocator) {
+        operationalBatchRun.reset();
+        final PriceRecordsChunk chunk = uploadChunkRequest.getChunkToRead();
+        // replayed requests are applied at once, nobody waits for their responses
+        if (!replaying && chunk.recordsNumber() > CHUNK_SLICE_RECORDS) {
+            pendingRequestBuffer.putBytes(
+                0, uploadChunkRequest.getReadBuffer(), uploadChunkRequest.getOffset(), uploadChunkRequest.sizeInBytes()
+            );
+            pendingUploadChunkRequest.wrapForRead(pendingRequestBuffer, 0);
+            pendingChunk = pendingUploadChunkRequest.getChunkToRead();
+            nextRecordIndex = 0;
+            uploadChunkPending = true;
+            return null;
+        }
+        final boolean applied = applyRecords(chunk, 0, chunk.recordsNumber()) != UNKNOWN_INSTRUMENT;
+        return completeUploadChunk(uploadChunkRequest, applied, responseAllocator);
+    }
+
+    /**
+     * Applies records of the chunk to the operational batch run.
+     *
+     * @return index of the next record to apply or {@link #UNKNOWN_INSTRUMENT} if a record has an unknown instrument
+     */
+    private int applyRecords(PriceRecordsChunk chunk, int fromIndex, int recordsLimit) {
+        final int toIndex = Math.min(chunk.recordsNumber(), fromIndex + recordsLimit);
+        for (int index = fromIndex; index < toIndex; index++) {
+            final PackedPriceRecord priceRecord = chunk.priceRecord(index);
+            final int instrumentIndex = instrumentIndexer.defineIndex(priceRecord.instrument());
+            if (instrumentIndex < 0) {
+                return UNKNOWN_INSTRUMENT;
             }
-            if (chunkProcessed) {
-                operationalBatchRun.mergeTo(batchRun);
-                batchRunRepository.save(batchRun);
+            operationalBatchRun.tryUpdateRecord(
+                instrumentIndex, priceRecord.asOfTimestamp(),
+                priceRecord.getReadBuffer(), priceRecord.absolutePayloadOffset(), priceRecord.payloadSize()
+            );
+        }
+        return toIndex;
+    }
+
+    private UploadChunkResponse completeUploadChunk(
+        UploadChunkRequest uploadChunkRequest, boolean applied, ResponseAllocator responseAllocator) {
+
+        // batch run could be evicted while the chunk was applied in slices
+        final BatchRun batchRun = batchRunRepository.get(uploadChunkRequest.batchId());
+        final int producerId = uploadChunkRequest.producerId();
+        final int status;
+        if (!applied) {
+            status = UploadChunkResponse.INSTRUMENT_NOT_FOUND_STATUS;
+        } else if (batchRun == null) {
+            status = UploadChunkResponse.BATCH_RUN_NOT_FOUND_STATUS;
+        } else {
+            operationalBatchRun.mergeTo(batchRun);
+            final long chunkSequence = uploadChunkRequest.chunkSequence();
+            if (chunkSequence != UNTRACKED_CHUNK_SEQUENCE) {
+                batchRun.lastChunkSequence(producerId, chunkSequence);
             }
+            batchRunRepository.save(batchRun);
+            appendToJournal(UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE, uploadChunkRequest);
+            status = UploadChunkResponse.SUCCESS_STATUS;
+        }
+        return uploadChunkResponse(status, batchRun, producerId, responseAllocator);
+    }
+
+    private UploadChunkResponse uploadChunkResponse(
+        int status, BatchRun batchRun, int producerId, ResponseAllocator responseAllocator) {
+
+        if (status != UploadChunkResponse.SUCCESS_STATUS) {
+            rejectedChunks.incrementOrdered();
         }
+        responseAllocator.allocate(uploadChunkResponse);
+        uploadChunkResponse.status(status);
+        final boolean activeProducer = batchRun != null && batchRun.isActiveProducer(producerId);
+        uploadChunkResponse.lastChunkSequence(activeProducer ? batchRun.lastChunkSequence(producerId) : UNTRACKED_CHUNK_SEQUENCE);
         return uploadChunkResponse;
     }
 
-    private CompleteBatchRunResponse onCompleteBatch(CompleteBatchRunRequest completeBatchRunRequest) {
+    private CompleteBatchRunResponse onCompleteBatch(
+        CompleteBatchRunRequest completeBatchRunRequest, ResponseAllocator responseAllocator) {
+
         final long batchId = completeBatchRunRequest.batchId();
         final BatchRun batchRun = batchRunRepository.get(batchId);
+        final int status;
         if (batchRun == null) {
-            completeBatchRunResponse.status(CompleteBatchRunResponse.BATCH_RUN_NOT_FOUND_STATUS);
+            status = CompleteBatchRunResponse.BATCH_RUN_NOT_FOUND_STATUS;
+        } else if (!batchRun.isActiveProducer(completeBatchRunRequest.producerId())) {
+            status = CompleteBatchRunResponse.WRONG_PRODUCER_STATUS;
+        } else if (!batchRun.completeProducer(completeBatchRunRequest.producerId())) {
+            batchRunRepository.save(batchRun);
+            appendToJournal(COMPLETE_BATCH_REQUEST_MESSAGE_TYPE, completeBatchRunRequest);
+            status = CompleteBatchRunResponse.PRODUCERS_PENDING_STATUS;
+        } else if (!replaying && batchRun.recordsNumber() > MERGE_SLICE_RECORDS) {
+            // replayed requests are merged at once, nobody waits for their responses
+            pendingRequestBuffer.putBytes(
+                0, completeBatchRunRequest.getReadBuffer(), completeBatchRunRequest.getOffset(), completeBatchRunRequest.sizeInBytes()
+            );
+            pendingCompleteBatchRunRequest.wrapForRead(pendingRequestBuffer, 0);
+            beginMerge();
+            mergingBatchRun = batchRun;
+            nextMergeIndex = 0;
+            return null;
         } else {
-            batchRun.mergeTo(marketState);
-            batchRunRepository.remove(batchRun);
-            completeBatchRunResponse.status(CompleteBatchRunResponse.SUCCESS_STATUS);
+            beginMerge();
+            mergeSlice(batchRun, 0, batchRun.recordsNumber());
+            completeMerge(batchRun, completeBatchRunRequest);
+            status = CompleteBatchRunResponse.SUCCESS_STATUS;
         }
+        return completeBatchRunResponse(status, responseAllocator);
+    }
+
+    private CompleteBatchRunResponse resumeMerge(ResponseAllocator responseAllocator) {
+        final BatchRun batchRun = mergingBatchRun;
+        // if merging fails the batch run is not merged, the server closes the connection
+        mergingBatchRun = null;
+        nextMergeIndex = mergeSlice(batchRun, nextMergeIndex, MERGE_SLICE_RECORDS);
+        if (nextMergeIndex < batchRun.recordsNumber()) {
+            mergingBatchRun = batchRun;
+            return null;
+        }
+        completeMerge(batchRun, pendingCompleteBatchRunRequest);
+        return completeBatchRunResponse(CompleteBatchRunResponse.SUCCESS_STATUS, responseAllocator);
+    }
+
+    private CompleteBatchRunResponse completeBatchRunResponse(int status, ResponseAllocator responseAllocator) {
+        responseAllocator.allocate(completeBatchRunResponse);
+        completeBatchRunResponse.status(status);
         return completeBatchRunResponse;
     }
 
-    private CancelBatchRunResponse onCancelBatchRun(CancelBatchRunRequest cancelBatchRunRequest) {
+    private AddInstrumentResponse onAddInstrument(AddInstrumentRequest request, ResponseAllocator responseAllocator) {
+        responseAllocator.allocate(addInstrumentResponse);
+        // ticker length is checked by the client only, it can not be trusted
+        final int tickerLength = request.instrumentTickerLength();
+        if (tickerLength <= 0 || tickerLength > INSTRUMENT_MAX_TICKER_LENGTH) {
+            addInstrumentResponse.status(AddInstrumentResponse.WRONG_INSTRUMENT_STATUS);
+            return addInstrumentResponse;
+        }
+        final CharSequence instrument = request.instrument();
+        if (instrumentIndexer.defineIndex(instrument) >= 0) {
+            addInstrumentResponse.status(AddInstrumentResponse.ALREADY_EXISTS_STATUS);
+        } else {
+            ensureInstrumentsCapacity(instrumentIndexer.size() + 1);
+            final int index = instrumentIndexer.size();
+            // the file is written once the indexer has accepted the instrument, so they never diverge
+            instrumentIndexer.addInstrument(instrument);
+            if (marketStateFile != null) {
+                marketStateFile.addInstrument(index, instrument);
+            }
+            appendToJournal(ADD_INSTRUMENT_REQUEST_MESSAGE_TYPE, request);
+            addInstrumentResponse.status(AddInstrumentResponse.SUCCESS_STATUS);
+        }
+        return addInstrumentResponse;
+    }
+
+    private void beginMerge() {
+        if (marketStateFile != null) {
+            marketStateFile.beginMerge();
+        }
+    }
+
+    private void endMerge() {
+        if (marketStateFile != null) {
+            marketStateFile.endMerge();
+        }
+    }
+
+    /**
+     * Merges records of the batch run to the market state, they are not visible to the readers before
+     * {@link #completeMerge(BatchRun, CompleteBatchRunRequest)}.
+     *
+     * @return position of the next record to merge
+     */
+    private int mergeSlice(BatchRun batchRun, int fromIndex, int recordsLimit) {
+        try {
+            return batchRun.mergeTo(marketState, fromIndex, recordsLimit);
+        } catch (RuntimeException e) {
+            endMerge();
+            throw e;
+        }
+    }
+
+    private void completeMerge(BatchRun batchRun, CompleteBatchRunRequest completeBatchRunRequest) {
+        try {
+            marketState.commit();
+        } finally {
+            endMerge();
+        }
+        marketStateChanged = true;
+        if (updatesPublisher != null) {
+            batchRun.iterateRecords(changedRecordsConsumer);
+        }
+        batchRunRepository.remove(batchRun);
+        appendToJournal(COMPLETE_BATCH_REQUEST_MESSAGE_TYPE, completeBatchRunRequest);
+    }
+
+    private int snapshotMarketState() {
+        if (marketStateFile == null || !marketStateChanged) {
+            return 0;
+        }
+        final long now = cachedEpochClock.time();
+        if (now - lastSnapshotTimestamp < MARKET_STATE_SNAPSHOT_INTERVAL) {
+            return 0;
+        }
+        marketStateFile.snapshot(now);
+        lastSnapshotTimestamp = now;
+        marketStateChanged = false;
+        if (journal != null && batchRunRepository.size() == 0) {
+            // everything journaled so far is in the snapshot
+            journal.reset();
+        }
+        return 1;
+    }
+
+    private SubscribeResponse onSubscribe(SubscribeRequest request, ResponseAllocator responseAllocator) {
+        responseAllocator.allocate(subscribeResponse);
+        final int instrumentsNumber = request.instrumentsNumber();
+        if (updatesPublisher == null) {
+            subscribeResponse.status(SubscribeResponse.SUBSCRIPTIONS_NOT_SUPPORTED_STATUS);
+        } else if (instrumentsNumber < 0 || instrumentsNumber > MAX_SUBSCRIPTION_INSTRUMENTS) {
+            subscribeResponse.status(SubscribeResponse.TOO_MANY_INSTRUMENTS_STATUS);
+        } else {
+            final long connectionId = request.connectionId();
+            final boolean subscribe = request.action() == SubscribeRequest.SUBSCRIBE_ACTION;
+            int status = SubscribeResponse.SUCCESS_STATUS;
+            for (int index = 0; index < instrumentsNumber; index++) {
+                final int instrumentIndex = instrumentIndexer.defineIndex(request.instrument(index));
+                if (instrumentIndex < 0) {
+                    status = SubscribeResponse.WRONG_INSTRUMENT_STATUS;
+                } else if (subscribe) {
+                    subscriptionRegistry.subscribe(connectionId, instrumentIndex);
+                } else {
+                    subscriptionRegistry.unsubscribe(connectionId, instrumentIndex);
+                }
+            }
+            subscribeResponse.status(status);
+        }
+        return subscribeResponse;
+    }
+
+    private void onPriceChanged(int instrumentIndex, IndexedPriceRecord priceRecord) {
+        if (subscriptionRegistry.hasSubscribers(instrumentIndex)) {
+            updatesPublisher.onPriceChanged(instrumentIndex);
+        }
+    }
+
+    private void ensureInstrumentsCapacity(int instrumentsNumber) {
+        final MarketState currentMarketState = marketState;
+        if (instrumentsNumber <= currentMarketState.recordsNumber) {
+            return;
+        }
+        final int capacity;
+        final MarketState grownMarketState;
+        if (marketStateFile != null) {
+            marketStateFile = marketStateFile.grow(instrumentsNumber);
+            capacity = marketStateFile.capacity();
+            grownMarketState = marketStateFile.marketState();
+        } else {
+            capacity = Math.max(instrumentsNumber, currentMarketState.recordsNumber * 2);
+            grownMarketState = currentMarketState.grow(capacity);
+        }
+        subscriptionRegistry.ensureCapacity(capacity);
+        if (updatesPublisher != null) {
+            updatesPublisher.ensureCapacity(capacity);
+        }
+        // publish the grown state before the new instrument can be found in the index
+        marketState = grownMarketState;
+    }
+
+    private CancelBatchRunResponse onCancelBatchRun(
+        CancelBatchRunRequest cancelBatchRunRequest, ResponseAllocator responseAllocator) {
+
+        responseAllocator.allocate(cancelBatchRunResponse);
         final long batchId = cancelBatchRunRequest.batchId();
         final BatchRun batchRun = batchRunRepository.get(batchId);
         if (batchRun != null) {
             batchRunRepository.remove(batchRun);
+            appendToJournal(CANCEL_BATCH_REQUEST_MESSAGE_TYPE, cancelBatchRunRequest);
         }
         cancelBatchRunResponse.status(CancelBatchRunResponse.SUCCESS_STATUS);
         return cancelBatchRunResponse;
     }
 
-    private void cleanUpCycle() {
-        batchRunRepository.removeOutdated(BATCH_EVICTION_TIMEOUT);
+    private void onBatchRunEvicted(BatchRun batchRun) {
+        if (isJournaling()) {
+            journaledCancelBatchRunRequest.batchId(batchRun.id());
+            appendToJournal(CANCEL_BATCH_REQUEST_MESSAGE_TYPE, journaledCancelBatchRunRequest);
+        }
+    }
+
+    private long generateBatchId(LongSupplier idGenerator) {
+        long batchId;
+        do {
+            // generator can start over after restart, while batch runs replayed from the journal are still active
+            batchId = idGenerator.getAsLong();
+        } while (batchId == SERVER_ASSIGNED_BATCH_ID || batchRunRepository.get(batchId) != null);
+        return batchId;
     }
 
-    private BatchRun createOperationalBatchRun(int instrumentsNumber) {
-        final BatchRun operationalBatchRun = new BatchRun(-1, instrumentsNumber);
-        final MutableDirectBuffer buffer = new UnsafeBuffer(allocateDirectAligned(operationalBatchRun.sizeInBytes(), CACHE_LINE_LENGTH));
-        operationalBatchRun.wrapForWrite(buffer, 0);
-        return operationalBatchRun;
+    private boolean isJournaling() {
+        return journal != null && !replaying;
     }
 
-    private void allocateMemoryForMessages() {
-        allocateMemoryForMessage(lastPriceResponse);
-        allocateMemoryForMessage(startBatchRunResponse);
-        allocateMemoryForMessage(uploadChunkResponse);
-        allocateMemoryForMessage(cancelBatchRunResponse);
-        allocateMemoryForMessage(completeBatchRunResponse);
+    private void appendToJournal(int messageType, Message request) {
+        if (isJournaling()) {
+            journal.append(messageType, request.getReadBuffer(), request.getOffset(), request.sizeInBytes());
+        }
+    }
+
+    private void replayJournal() {
+        final ResponseAllocator replayResponseAllocator = new BufferResponseAllocator(LastPriceResponse.MESSAGE_SIZE);
+        replaying = true;
+        try {
+            journal.replay((messageType, buffer, offset, length) ->
+                handleRequest(messageType, null, buffer, offset, length, replayResponseAllocator)
+            );
+        } finally {
+            replaying = false;
+        }
     }
 
 }
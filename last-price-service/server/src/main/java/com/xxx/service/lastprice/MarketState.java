@@ -1,15 +1,64 @@
 package com.xxx.service.lastprice;
 
+import org.agrona.concurrent.UnsafeBuffer;
+
+import static com.xxx.service.lastprice.Configuration.PAYLOAD_ARENA_PAGE_SIZE;
+import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BufferUtil.allocateDirectAligned;
 
 /**
  * Represents current markIt state for all instruments ;)
  *
+ * Market state is changed by single writer only, but can be read by several threads at the same time.
+ * Each reading thread should use its own flyweight obtained by {@link #view()}, records should be read
+ * with the {@link IndexedPriceRecord} seqlock protocol. Records merged by the writer are visible to readers
+ * only after {@link #commit()}, so readers never see a partially merged batch run.
+ *
+ * Market state has fixed number of records. When the instruments universe grows, the writer creates a bigger
+ * copy of the state by {@link #grow(int)} and publishes it to the readers, the old state is not changed anymore.
+ * Payload arena is shared by all copies, its pages are never moved. Payloads of the copy are moved to fresh arena
+ * blocks, so rewrites of the copy never touch blocks a reader of the old state can still read. The old blocks
+ * are not reused, which costs at most one block per record version on each grow, and grows double the capacity.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public class MarketState extends BaseIndexedPriceRecordsBlock {
 
     protected MarketState(int recordsNumber) {
-        super(recordsNumber, 0);
+        this(recordsNumber, PayloadArena.inMemory(PAYLOAD_ARENA_PAGE_SIZE, PRICE_MAX_PAYLOAD_SIZE));
+    }
+
+    protected MarketState(int recordsNumber, PayloadArena arena) {
+        super(recordsNumber, arena);
+    }
+
+    /**
+     * Creates another flyweight over the same memory. Returned object is supposed to be used by another thread
+     * to read the market state.
+     *
+     * @return new market state flyweight wrapping the same memory region
+     */
+    public MarketState view() {
+        final MarketState view = new MarketState(recordsNumber, arena);
+        view.wrapForWrite(writeBuffer, offset);
+        return view;
+    }
+
+    /**
+     * Creates market state able to hold the given number of records in a newly allocated memory
+     * and copies all records of this state to it. This state is not changed.
+     *
+     * @param recordsNumber number of records of the new state
+     * @return new market state
+     */
+    public MarketState grow(int recordsNumber) {
+        final MarketState grown = view();
+        grown.resize(recordsNumber, new UnsafeBuffer(
+            allocateDirectAligned(defineBlockSizeInBytes(recordsNumber), CACHE_LINE_LENGTH)
+        ), 0);
+        grown.detachPayloads();
+        return grown;
     }
 
 }
@@ -0,0 +1,366 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.AsciiSequenceView;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.xxx.service.lastprice.Configuration.INSTRUMENT_MAX_TICKER_LENGTH;
+import static com.xxx.service.lastprice.Configuration.PAYLOAD_ARENA_PAGE_SIZE;
+import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.align;
+
+/**
+ * Memory mapped file keeping {@link MarketState} and tickers of its instruments in the order of their indexes,
+ * so the service can be restarted by mapping the file again without reloading prices.
+ *
+ * File layout:
+ * <pre>
+ *   header (one cache line): magic, layout version, record size, ticker slot size, capacity, instruments number,
+ *                            merge in progress flag, last snapshot timestamp
+ *   records:                 committed epoch (one cache line),
+ *                            capacity * 2 versions * {@link IndexedPriceRecord#MESSAGE_SIZE}
+ *   tickers:                 capacity * (ticker length, ticker ASCII bytes)
+ * </pre>
+ *
+ * Market state is changed in the mapped memory directly, so the file always reflects the current state.
+ * Snapshot made by {@link #snapshot(long)} flushes the mapped memory to the storage. It's taken by the writer thread
+ * between requests, so the flushed state never contains a partially merged batch run. If the process is stopped
+ * in the middle of the merge (see {@link #beginMerge()}), record versions not committed before the stop, including
+ * ones left in the middle of a write, are discarded on the next start, so the batch run is not merged at all.
+ * Producer is supposed to upload not acknowledged batch run again.
+ *
+ * Payloads not fitting inline to the records are kept in the {@link PayloadArena} pages mapped from the separate files
+ * next to the market state file ({@code <file>.arena-<page index>}). Arena pages are never moved, so they are shared
+ * by all copies of the file. Free blocks of the arena are found again on start by the references of the records.
+ *
+ * File is grown by copying it to a bigger file which replaces the original one. Old mapping is not unmapped,
+ * so read handlers can keep reading the old market state until they pick up the new one.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class MarketStateFile implements AutoCloseable {
+
+    static final int MAGIC = 0x4C505346;
+    static final int LAYOUT_VERSION = 3;
+
+    static final int MAGIC_FIELD_OFFSET = 0;
+    static final int LAYOUT_VERSION_FIELD_OFFSET = MAGIC_FIELD_OFFSET + SIZE_OF_INT;
+    static final int RECORD_SIZE_FIELD_OFFSET = LAYOUT_VERSION_FIELD_OFFSET + SIZE_OF_INT;
+    static final int TICKER_SLOT_SIZE_FIELD_OFFSET = RECORD_SIZE_FIELD_OFFSET + SIZE_OF_INT;
+    static final int CAPACITY_FIELD_OFFSET = TICKER_SLOT_SIZE_FIELD_OFFSET + SIZE_OF_INT;
+    static final int INSTRUMENTS_NUMBER_FIELD_OFFSET = CAPACITY_FIELD_OFFSET + SIZE_OF_INT;
+    static final int MERGE_IN_PROGRESS_FIELD_OFFSET = INSTRUMENTS_NUMBER_FIELD_OFFSET + SIZE_OF_INT;
+    static final int SNAPSHOT_TIMESTAMP_FIELD_OFFSET = align(MERGE_IN_PROGRESS_FIELD_OFFSET + SIZE_OF_INT, SIZE_OF_LONG);
+    static final int HEADER_SIZE = CACHE_LINE_LENGTH;
+
+    static final int TICKER_LENGTH_FIELD_OFFSET = 0;
+    static final int TICKER_FIELD_OFFSET = TICKER_LENGTH_FIELD_OFFSET + SIZE_OF_INT;
+    static final int TICKER_SLOT_SIZE = align(TICKER_FIELD_OFFSET + INSTRUMENT_MAX_TICKER_LENGTH, SIZE_OF_LONG);
+
+    private final File file;
+    private final MappedByteBuffer mappedBuffer;
+    private final AtomicBuffer buffer;
+    private final int capacity;
+    private final List<MappedByteBuffer> arenaPages;
+    private final MarketState marketState;
+    private final int repairedRecordsNumber;
+
+    private MarketStateFile(File file, MappedByteBuffer mappedBuffer, PayloadArena arena, List<MappedByteBuffer> arenaPages) {
+        this.file = file;
+        this.mappedBuffer = mappedBuffer;
+        this.buffer = new UnsafeBuffer(mappedBuffer);
+        checkLayout(buffer, file);
+        this.capacity = buffer.getInt(CAPACITY_FIELD_OFFSET);
+        this.arenaPages = arenaPages;
+        this.marketState = new MarketState(capacity, arena);
+        this.marketState.wrapForWrite(buffer, HEADER_SIZE);
+        this.repairedRecordsNumber = isMergeInProgress() ? repairTornRecords() : 0;
+    }
+
+    /**
+     * Maps existing market state file or creates a new one able to hold the given number of instruments.
+     *
+     * @param file file to map
+     * @param minCapacity min number of instruments the state should be able to hold
+     * @return mapped market state file
+     */
+    public static MarketStateFile open(File file, int minCapacity) {
+        final List<MappedByteBuffer> arenaPages = new ArrayList<>();
+        final PayloadArena arena = new PayloadArena(
+            PAYLOAD_ARENA_PAGE_SIZE, PRICE_MAX_PAYLOAD_SIZE, index -> mapArenaPage(file, index, arenaPages)
+        );
+        if (!file.exists()) {
+            // pages left by a removed market state file are not valid anymore
+            for (int index = 0; arenaPageFile(file, index).exists(); index++) {
+                IoUtil.delete(arenaPageFile(file, index), false);
+            }
+            return new MarketStateFile(file, createFile(file, minCapacity), arena, arenaPages);
+        }
+        final MarketStateFile stateFile = new MarketStateFile(file, IoUtil.mapExistingFile(file, "market state"), arena, arenaPages);
+        stateFile.restoreArena();
+        return stateFile.capacity < minCapacity ? stateFile.grow(minCapacity) : stateFile;
+    }
+
+    /**
+     * Returns market state backed by the mapped file.
+     *
+     * @return market state
+     */
+    public MarketState marketState() {
+        return marketState;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns tickers of the instruments in the order of their indexes.
+     *
+     * @return instruments of the market state
+     */
+    public List<String> instruments() {
+        final int instrumentsNumber = instrumentsNumber();
+        final List<String> instruments = new ArrayList<>(instrumentsNumber);
+        final AsciiSequenceView ticker = new AsciiSequenceView();
+        for (int index = 0; index < instrumentsNumber; index++) {
+            final int slotOffset = tickerSlotOffset(index);
+            ticker.wrap(buffer, slotOffset + TICKER_FIELD_OFFSET, buffer.getInt(slotOffset + TICKER_LENGTH_FIELD_OFFSET));
+            instruments.add(ticker.toString());
+        }
+        return instruments;
+    }
+
+    public int instrumentsNumber() {
+        return buffer.getIntVolatile(INSTRUMENTS_NUMBER_FIELD_OFFSET);
+    }
+
+    /**
+     * Stores ticker of the instrument with the next index.
+     *
+     * @param index index of the instrument, should be equal to the current instruments number
+     * @param instrument instrument ticker, at most {@link Configuration#INSTRUMENT_MAX_TICKER_LENGTH} long
+     */
+    public void addInstrument(int index, CharSequence instrument) {
+        if (index != instrumentsNumber() || index >= capacity) {
+            throw new IllegalArgumentException("Unexpected instrument index " + index + ", capacity " + capacity);
+        }
+        if (instrument.length() == 0 || instrument.length() > INSTRUMENT_MAX_TICKER_LENGTH) {
+            throw new IllegalArgumentException(
+                "Instrument ticker length should be from 1 to " + INSTRUMENT_MAX_TICKER_LENGTH + ", got " + instrument
+            );
+        }
+        final int slotOffset = tickerSlotOffset(index);
+        buffer.putInt(slotOffset + TICKER_LENGTH_FIELD_OFFSET, instrument.length());
+        for (int i = 0; i < instrument.length(); i++) {
+            buffer.putByte(slotOffset + TICKER_FIELD_OFFSET + i, (byte) instrument.charAt(i));
+        }
+        buffer.putIntOrdered(INSTRUMENTS_NUMBER_FIELD_OFFSET, index + 1);
+    }
+
+    /**
+     * Marks the market state as being changed by a batch run merge. Should be followed by {@link #endMerge()}.
+     */
+    public void beginMerge() {
+        buffer.putIntOrdered(MERGE_IN_PROGRESS_FIELD_OFFSET, 1);
+    }
+
+    public void endMerge() {
+        buffer.putIntOrdered(MERGE_IN_PROGRESS_FIELD_OFFSET, 0);
+    }
+
+    public boolean isMergeInProgress() {
+        return buffer.getIntVolatile(MERGE_IN_PROGRESS_FIELD_OFFSET) != 0;
+    }
+
+    /**
+     * Flushes the mapped memory to the storage. Should be called by the writer thread while no merge is in progress.
+     *
+     * @param timestamp time of the snapshot
+     */
+    public void snapshot(long timestamp) {
+        if (isMergeInProgress()) {
+            throw new IllegalStateException("Snapshot can not be taken in the middle of the merge");
+        }
+        buffer.putLong(SNAPSHOT_TIMESTAMP_FIELD_OFFSET, timestamp);
+        force();
+    }
+
+    public long snapshotTimestamp() {
+        return buffer.getLong(SNAPSHOT_TIMESTAMP_FIELD_OFFSET);
+    }
+
+    /**
+     * Returns number of records with versions not committed before the stop, found when the file was mapped.
+     *
+     * @return repaired records number
+     */
+    public int repairedRecordsNumber() {
+        return repairedRecordsNumber;
+    }
+
+    /**
+     * Copies the file to a bigger one, which replaces this file. This object is not changed and its memory
+     * is not unmapped, so the old market state can still be read.
+     *
+     * @param minCapacity min number of instruments the new state should hold
+     * @return new market state file
+     */
+    public MarketStateFile grow(int minCapacity) {
+        if (minCapacity <= capacity) {
+            return this;
+        }
+        final int newCapacity = Math.max(minCapacity, capacity * 2);
+        final File growingFile = new File(file.getPath() + ".grow");
+        final MappedByteBuffer newMappedBuffer = createFile(growingFile, newCapacity);
+        final UnsafeBuffer newBuffer = new UnsafeBuffer(newMappedBuffer);
+        final int recordsSize = BaseIndexedPriceRecordsBlock.defineBlockSizeInBytes(capacity);
+        newBuffer.putBytes(HEADER_SIZE, buffer, HEADER_SIZE, recordsSize);
+        newBuffer.putBytes(tickersOffset(newCapacity), buffer, tickersOffset(capacity), capacity * TICKER_SLOT_SIZE);
+        newBuffer.putInt(INSTRUMENTS_NUMBER_FIELD_OFFSET, instrumentsNumber());
+        newBuffer.putLong(SNAPSHOT_TIMESTAMP_FIELD_OFFSET, snapshotTimestamp());
+        // old state can still be read, the new one gets its own payload blocks, see MarketState
+        final MarketState grownMarketState = new MarketState(newCapacity, marketState.arena);
+        grownMarketState.wrapForWrite(newBuffer, HEADER_SIZE);
+        grownMarketState.detachPayloads();
+        forceArenaPages();
+        newMappedBuffer.force();
+        try {
+            Files.move(growingFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Market state file can not be replaced", e);
+        }
+        return new MarketStateFile(file, newMappedBuffer, marketState.arena, arenaPages);
+    }
+
+    @Override
+    public void close() {
+        if (!isMergeInProgress()) {
+            force();
+        }
+    }
+
+    private void force() {
+        forceArenaPages();
+        mappedBuffer.force();
+    }
+
+    // records are flushed after the arena blocks they reference
+    private void forceArenaPages() {
+        for (int i = 0; i < arenaPages.size(); i++) {
+            arenaPages.get(i).force();
+        }
+    }
+
+    /**
+     * Maps existing arena pages and frees blocks not referenced by the records.
+     */
+    private void restoreArena() {
+        int pagesNumber = 0;
+        while (arenaPageFile(file, pagesNumber).exists()) {
+            pagesNumber++;
+        }
+        final PayloadArena arena = marketState.arena;
+        arena.restorePages(pagesNumber);
+        for (int index = 0; index < capacity; index++) {
+            for (int version = 0; version < BaseIndexedPriceRecordsBlock.VERSIONS_NUMBER; version++) {
+                final IndexedPriceRecord record = marketState.selectVersion(index, version);
+                if (record.payloadSize() > IndexedPriceRecord.INLINE_PAYLOAD_SIZE && !arena.markUsed(record.payloadReference())) {
+                    // reference is broken, the price is not available
+                    record.timestamp(0L);
+                    record.dropPayload();
+                }
+            }
+        }
+        arena.completeRestore();
+    }
+
+    private int repairTornRecords() {
+        final long committedEpoch = marketState.committedEpoch();
+        int repaired = 0;
+        for (int index = 0; index < capacity; index++) {
+            boolean isRepaired = false;
+            for (int version = 0; version < BaseIndexedPriceRecordsBlock.VERSIONS_NUMBER; version++) {
+                final IndexedPriceRecord record = marketState.selectVersion(index, version);
+                if ((record.version() & 1) != 0 || record.epoch() > committedEpoch) {
+                    // the version was not committed, its price can be broken or belong to the not finished merge
+                    record.epoch(0L);
+                    record.timestamp(0L);
+                    if ((record.version() & 1) != 0) {
+                        record.endWrite();
+                    }
+                    isRepaired = true;
+                }
+            }
+            if (isRepaired) {
+                repaired++;
+            }
+        }
+        endMerge();
+        return repaired;
+    }
+
+    private int tickerSlotOffset(int index) {
+        return tickersOffset(capacity) + index * TICKER_SLOT_SIZE;
+    }
+
+    private static int tickersOffset(int capacity) {
+        return HEADER_SIZE + BaseIndexedPriceRecordsBlock.defineBlockSizeInBytes(capacity);
+    }
+
+    private static AtomicBuffer mapArenaPage(File file, int index, List<MappedByteBuffer> arenaPages) {
+        final File pageFile = arenaPageFile(file, index);
+        final MappedByteBuffer page = pageFile.exists()
+            ? IoUtil.mapExistingFile(pageFile, "payload arena page")
+            : IoUtil.mapNewFile(pageFile, PAYLOAD_ARENA_PAGE_SIZE);
+        arenaPages.add(page);
+        return new UnsafeBuffer(page);
+    }
+
+    private static File arenaPageFile(File file, int index) {
+        return new File(file.getPath() + ".arena-" + index);
+    }
+
+    private static MappedByteBuffer createFile(File file, int capacity) {
+        final long fileLength = (long) tickersOffset(capacity) + (long) capacity * TICKER_SLOT_SIZE;
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Market state for " + capacity + " instruments is too big to be mapped");
+        }
+        final MappedByteBuffer mappedBuffer = IoUtil.mapNewFile(file, fileLength);
+        final UnsafeBuffer buffer = new UnsafeBuffer(mappedBuffer);
+        buffer.putInt(LAYOUT_VERSION_FIELD_OFFSET, LAYOUT_VERSION);
+        buffer.putInt(RECORD_SIZE_FIELD_OFFSET, IndexedPriceRecord.MESSAGE_SIZE);
+        buffer.putInt(TICKER_SLOT_SIZE_FIELD_OFFSET, TICKER_SLOT_SIZE);
+        buffer.putInt(CAPACITY_FIELD_OFFSET, capacity);
+        // magic is written the last, file without it is not complete
+        buffer.putIntOrdered(MAGIC_FIELD_OFFSET, MAGIC);
+        return mappedBuffer;
+    }
+
+    private static void checkLayout(AtomicBuffer buffer, File file) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getIntVolatile(MAGIC_FIELD_OFFSET) != MAGIC) {
+            throw new IllegalStateException("File is not a complete market state file: " + file);
+        }
+        if (buffer.getInt(LAYOUT_VERSION_FIELD_OFFSET) != LAYOUT_VERSION
+            || buffer.getInt(RECORD_SIZE_FIELD_OFFSET) != IndexedPriceRecord.MESSAGE_SIZE
+            || buffer.getInt(TICKER_SLOT_SIZE_FIELD_OFFSET) != TICKER_SLOT_SIZE) {
+            throw new IllegalStateException(
+                "Market state file " + file + " was created with another layout, payload size or ticker length"
+            );
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntFunction;
+
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.findNextPositivePowerOfTwo;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+
+/**
+ * Off-heap memory for price payloads which do not fit into {@link IndexedPriceRecord} inline. So records keep their
+ * fixed small size and only prices with big payloads pay for them.
+ *
+ * Arena consists of pages of the same size which are never moved or released, so a payload block can be referenced
+ * by a {@code long} value of page index and offset in the page. Each page is split to blocks of one size class,
+ * size classes are powers of two from {@link #MIN_BLOCK_SIZE} to the max payload size. Block size of the page
+ * is kept in the page header, so blocks of a restored arena can be found again, see {@link #restorePages(int)}.
+ * Freed blocks are kept in the free list of their size class and reused first.
+ *
+ * Blocks are allocated and freed by the single writer thread. Readers only read pages by references taken from
+ * the records, published pages are visible to them through the volatile pages array.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PayloadArena {
+
+    public static final int BLOCK_SIZE_FIELD_OFFSET = 0;
+    public static final int PAGE_HEADER_SIZE = CACHE_LINE_LENGTH;
+    public static final int MIN_BLOCK_SIZE = 16;
+
+    private static final int NO_PAGE = -1;
+
+    private final int pageSize;
+    private final int classesNumber;
+    private final IntFunction<AtomicBuffer> pageAllocator;
+
+    private volatile AtomicBuffer[] pages = new AtomicBuffer[0];
+    private int[] pageBlockSizes = new int[0];
+
+    private final LongArrayList[] freeBlocks;
+    private final int[] currentPages;
+    private final int[] currentPageOffsets;
+    private final IntArrayList freePages = new IntArrayList();
+    private BitSet[] usedBlocks;
+
+    /**
+     * Creates arena.
+     *
+     * @param pageSize size of the arena page in bytes
+     * @param maxPayloadSize max size of the payload to allocate
+     * @param pageAllocator allocates memory of the page with the given index, memory should be zeroed
+     */
+    public PayloadArena(int pageSize, int maxPayloadSize, IntFunction<AtomicBuffer> pageAllocator) {
+        final int maxBlockSize = blockSize(maxPayloadSize);
+        if (pageSize < PAGE_HEADER_SIZE + maxBlockSize) {
+            throw new IllegalArgumentException("Arena page of " + pageSize + " bytes can not hold block of " + maxBlockSize);
+        }
+        this.pageSize = pageSize;
+        this.pageAllocator = pageAllocator;
+        this.classesNumber = sizeClass(maxBlockSize) + 1;
+        this.freeBlocks = new LongArrayList[classesNumber];
+        for (int i = 0; i < classesNumber; i++) {
+            freeBlocks[i] = new LongArrayList();
+        }
+        this.currentPages = new int[classesNumber];
+        this.currentPageOffsets = new int[classesNumber];
+        Arrays.fill(currentPages, NO_PAGE);
+    }
+
+    /**
+     * Creates arena with pages allocated in the direct memory.
+     *
+     * @param pageSize size of the arena page in bytes
+     * @param maxPayloadSize max size of the payload to allocate
+     * @return arena
+     */
+    public static PayloadArena inMemory(int pageSize, int maxPayloadSize) {
+        return new PayloadArena(pageSize, maxPayloadSize, index -> new UnsafeBuffer(allocateDirectAligned(pageSize, CACHE_LINE_LENGTH)));
+    }
+
+    /**
+     * Allocates block able to hold payload of the given size.
+     *
+     * @param payloadSize size of the payload
+     * @return reference to the block
+     */
+    public long allocate(int payloadSize) {
+        final int blockSize = blockSize(payloadSize);
+        final int sizeClass = sizeClass(blockSize);
+        if (sizeClass >= classesNumber) {
+            throw new IllegalArgumentException("Payload of " + payloadSize + " bytes is too big for the arena");
+        }
+        final LongArrayList classFreeBlocks = freeBlocks[sizeClass];
+        if (!classFreeBlocks.isEmpty()) {
+            return classFreeBlocks.popLong();
+        }
+        if (currentPages[sizeClass] == NO_PAGE || currentPageOffsets[sizeClass] + blockSize > pageSize) {
+            currentPages[sizeClass] = takePage(blockSize);
+            currentPageOffsets[sizeClass] = PAGE_HEADER_SIZE;
+        }
+        final int offset = currentPageOffsets[sizeClass];
+        currentPageOffsets[sizeClass] += blockSize;
+        return reference(currentPages[sizeClass], offset);
+    }
+
+    /**
+     * Returns the block to the free list of its size class.
+     *
+     * @param reference reference to the block
+     */
+    public void free(long reference) {
+        freeBlocks[sizeClass(blockSize(reference))].pushLong(reference);
+    }
+
+    /**
+     * Returns size of the referenced block.
+     *
+     * @param reference reference to the block
+     * @return block size in bytes
+     */
+    public int blockSize(long reference) {
+        return pageBlockSizes[pageIndex(reference)];
+    }
+
+    /**
+     * Returns page buffer of the referenced block. Reference read concurrently can be broken, so the method
+     * validates it.
+     *
+     * @param reference reference to the block
+     * @param payloadSize size of the payload to read from the block
+     * @return page buffer or {@code null} if the reference does not point to a block able to hold the payload
+     */
+    public AtomicBuffer pageBuffer(long reference, int payloadSize) {
+        final AtomicBuffer[] pages = this.pages;
+        final int pageIndex = pageIndex(reference);
+        final int offset = offset(reference);
+        if (pageIndex < 0 || pageIndex >= pages.length || offset < PAGE_HEADER_SIZE || offset > pageSize - payloadSize) {
+            return null;
+        }
+        return pages[pageIndex];
+    }
+
+    /**
+     * Frees all blocks. Pages are kept to be reused by any size class.
+     */
+    public void reset() {
+        final int pagesNumber = pageBlockSizes.length;
+        if (pagesNumber == 0) {
+            return;
+        }
+        freePages.clear();
+        for (int pageIndex = 0; pageIndex < pagesNumber; pageIndex++) {
+            pages[pageIndex].putInt(BLOCK_SIZE_FIELD_OFFSET, 0);
+            pageBlockSizes[pageIndex] = 0;
+            freePages.addInt(pageIndex);
+        }
+        for (int i = 0; i < classesNumber; i++) {
+            freeBlocks[i].clear();
+            currentPages[i] = NO_PAGE;
+        }
+    }
+
+    public int pagesNumber() {
+        return pageBlockSizes.length;
+    }
+
+    /**
+     * Starts restore of the arena with the given number of existing pages, their memory is taken from the page allocator.
+     * Blocks used by the records should be marked with {@link #markUsed(long)}, then {@link #completeRestore()}
+     * makes all other blocks free.
+     *
+     * @param pagesNumber number of existing pages
+     */
+    void restorePages(int pagesNumber) {
+        if (pageBlockSizes.length != 0) {
+            throw new IllegalStateException("Only empty arena can be restored");
+        }
+        usedBlocks = new BitSet[pagesNumber];
+        for (int pageIndex = 0; pageIndex < pagesNumber; pageIndex++) {
+            final AtomicBuffer page = addPage();
+            final int blockSize = page.getInt(BLOCK_SIZE_FIELD_OFFSET);
+            if (blockSize != 0 && (blockSize != blockSize(blockSize) || sizeClass(blockSize) >= classesNumber)) {
+                throw new IllegalStateException("Arena page " + pageIndex + " has unexpected block size " + blockSize);
+            }
+            pageBlockSizes[pageIndex] = blockSize;
+            usedBlocks[pageIndex] = new BitSet();
+        }
+    }
+
+    /**
+     * Marks the block as used by a record while the arena is restored.
+     *
+     * @param reference reference to the block
+     * @return true if the reference points to a block of a restored page
+     */
+    boolean markUsed(long reference) {
+        final int pageIndex = pageIndex(reference);
+        final int offset = offset(reference);
+        if (pageIndex < 0 || pageIndex >= usedBlocks.length || pageBlockSizes[pageIndex] == 0 || offset < PAGE_HEADER_SIZE
+            || offset > pageSize - pageBlockSizes[pageIndex] || (offset - PAGE_HEADER_SIZE) % pageBlockSizes[pageIndex] != 0) {
+            return false;
+        }
+        usedBlocks[pageIndex].set((offset - PAGE_HEADER_SIZE) / pageBlockSizes[pageIndex]);
+        return true;
+    }
+
+    /**
+     * Completes restore started by {@link #restorePages(int)}: not used blocks are moved to the free lists
+     * and pages without used blocks can be taken by any size class.
+     */
+    void completeRestore() {
+        for (int pageIndex = 0; pageIndex < usedBlocks.length; pageIndex++) {
+            final int blockSize = pageBlockSizes[pageIndex];
+            if (blockSize == 0 || usedBlocks[pageIndex].isEmpty()) {
+                pages[pageIndex].putInt(BLOCK_SIZE_FIELD_OFFSET, 0);
+                pageBlockSizes[pageIndex] = 0;
+                freePages.addInt(pageIndex);
+                continue;
+            }
+            final int blocksNumber = (pageSize - PAGE_HEADER_SIZE) / blockSize;
+            for (int block = blocksNumber - 1; block >= 0; block--) {
+                if (!usedBlocks[pageIndex].get(block)) {
+                    freeBlocks[sizeClass(blockSize)].pushLong(reference(pageIndex, PAGE_HEADER_SIZE + block * blockSize));
+                }
+            }
+        }
+        usedBlocks = null;
+    }
+
+    /**
+     * Defines size of the block for the given payload size.
+     *
+     * @param payloadSize size of the payload
+     * @return block size
+     */
+    public static int blockSize(int payloadSize) {
+        return findNextPositivePowerOfTwo(Math.max(payloadSize, MIN_BLOCK_SIZE));
+    }
+
+    public static int offset(long reference) {
+        return (int) reference;
+    }
+
+    private static int pageIndex(long reference) {
+        return (int) (reference >>> 32);
+    }
+
+    private static long reference(int pageIndex, int offset) {
+        return ((long) pageIndex << 32) | offset;
+    }
+
+    private static int sizeClass(int blockSize) {
+        return Integer.numberOfTrailingZeros(blockSize) - Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE);
+    }
+
+    private int takePage(int blockSize) {
+        final int pageIndex;
+        if (freePages.isEmpty()) {
+            addPage();
+            pageIndex = pageBlockSizes.length - 1;
+        } else {
+            pageIndex = freePages.popInt();
+        }
+        pages[pageIndex].putInt(BLOCK_SIZE_FIELD_OFFSET, blockSize);
+        pageBlockSizes[pageIndex] = blockSize;
+        return pageIndex;
+    }
+
+    private AtomicBuffer addPage() {
+        final int pageIndex = pageBlockSizes.length;
+        final AtomicBuffer page = pageAllocator.apply(pageIndex);
+        if (page.capacity() != pageSize) {
+            throw new IllegalStateException("Arena page " + pageIndex + " has " + page.capacity() + " bytes, expected " + pageSize);
+        }
+        pageBlockSizes = Arrays.copyOf(pageBlockSizes, pageIndex + 1);
+        final AtomicBuffer[] newPages = Arrays.copyOf(pages, pageIndex + 1);
+        newPages[pageIndex] = page;
+        // published to the readers after the page is ready
+        pages = newPages;
+        return page;
+    }
+
+}
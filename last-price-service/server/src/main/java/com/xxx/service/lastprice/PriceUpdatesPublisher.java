@@ -0,0 +1,171 @@
+package com.xxx.service.lastprice;
+
+import com.xxx.service.lastprice.messages.PriceUpdateMessage;
+import io.aeron.Publication;
+import org.agrona.AsciiSequenceView;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.util.function.Supplier;
+
+import static io.aeron.Publication.ADMIN_ACTION;
+import static io.aeron.Publication.BACK_PRESSURED;
+import static io.aeron.Publication.NOT_CONNECTED;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+
+/**
+ * Publishes last prices of changed instruments to subscribers as {@link PriceUpdateMessage}s.
+ * Publication is shared by all subscribers, so it's supposed to be a multicast or IPC one.
+ *
+ * Changed instruments are kept in the pending queue, each instrument at most once. Prices are read from
+ * the market state only when the update is sent, so if the publication is back pressured by a slow subscriber,
+ * all changes of an instrument made meanwhile are conflated to its latest price.
+ *
+ * Publisher is used by the single server thread only.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PriceUpdatesPublisher {
+
+    private final Publication publication;
+    private final Supplier<MarketState> marketStateSupplier;
+    private final InstrumentIndexer instrumentIndexer;
+
+    private final PriceUpdateMessage updateMessage = new PriceUpdateMessage();
+    private final AsciiSequenceView ticker = new AsciiSequenceView();
+
+    // ring of pending instrument indexes and flags of pending instruments
+    private int[] pendingIndexes;
+    private boolean[] pendingFlags;
+    private int pendingHead;
+    private int pendingNumber;
+
+    private long conflatedUpdatesCount;
+    private long backPressureCount;
+
+    public PriceUpdatesPublisher(
+        Publication publication, Supplier<MarketState> marketStateSupplier, InstrumentIndexer instrumentIndexer, int instrumentsNumber) {
+
+        this.publication = publication;
+        this.marketStateSupplier = marketStateSupplier;
+        this.instrumentIndexer = instrumentIndexer;
+        this.pendingIndexes = new int[instrumentsNumber];
+        this.pendingFlags = new boolean[instrumentsNumber];
+        this.updateMessage.init(new UnsafeBuffer(allocateDirectAligned(PriceUpdateMessage.maxSize(), CACHE_LINE_LENGTH)), 0);
+    }
+
+    /**
+     * Marks price of the instrument as changed, so it will be published with the next updates.
+     *
+     * @param instrumentIndex instrument index
+     */
+    public void onPriceChanged(int instrumentIndex) {
+        if (pendingFlags[instrumentIndex]) {
+            conflatedUpdatesCount++;
+            return;
+        }
+        pendingFlags[instrumentIndex] = true;
+        pendingIndexes[(pendingHead + pendingNumber) % pendingIndexes.length] = instrumentIndex;
+        pendingNumber++;
+    }
+
+    /**
+     * Publishes pending updates while the publication accepts them.
+     *
+     * @param messagesLimit max number of update messages to publish
+     * @return number of published messages
+     */
+    public int publish(int messagesLimit) {
+        int published = 0;
+        while (published < messagesLimit && pendingNumber > 0) {
+            final int recordsNumber = fillUpdateMessage(marketStateSupplier.get());
+            final long result = publication.offer(updateMessage.getReadBuffer(), updateMessage.getOffset(), updateMessage.sizeInBytes());
+            if (result > 0) {
+                removePending(recordsNumber);
+                published++;
+            } else if (result == NOT_CONNECTED) {
+                // there are no subscribers to deliver updates to
+                removePending(pendingNumber);
+            } else if (result == BACK_PRESSURED || result == ADMIN_ACTION) {
+                // keep updates pending, new changes of the same instruments are conflated
+                backPressureCount++;
+                break;
+            } else {
+                throw new IllegalStateException("Unexpected publication state: " + result);
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Makes the publisher able to track changes of the given number of instruments.
+     *
+     * @param instrumentsNumber number of instruments
+     */
+    public void ensureCapacity(int instrumentsNumber) {
+        if (instrumentsNumber <= pendingIndexes.length) {
+            return;
+        }
+        final int[] newPendingIndexes = new int[instrumentsNumber];
+        for (int i = 0; i < pendingNumber; i++) {
+            newPendingIndexes[i] = pendingIndexes[(pendingHead + i) % pendingIndexes.length];
+        }
+        final boolean[] newPendingFlags = new boolean[instrumentsNumber];
+        System.arraycopy(pendingFlags, 0, newPendingFlags, 0, pendingFlags.length);
+        pendingIndexes = newPendingIndexes;
+        pendingFlags = newPendingFlags;
+        pendingHead = 0;
+    }
+
+    /**
+     * Returns number of instruments which changes are not published yet.
+     *
+     * @return pending instruments number
+     */
+    public int pendingNumber() {
+        return pendingNumber;
+    }
+
+    /**
+     * Returns number of changes merged into already pending updates.
+     *
+     * @return conflated updates count
+     */
+    public long conflatedUpdatesCount() {
+        return conflatedUpdatesCount;
+    }
+
+    /**
+     * Returns how many times the publication did not accept updates.
+     *
+     * @return back pressure events count
+     */
+    public long backPressureCount() {
+        return backPressureCount;
+    }
+
+    private int fillUpdateMessage(MarketState marketState) {
+        updateMessage.reset();
+        int recordsNumber = 0;
+        while (recordsNumber < pendingNumber && !updateMessage.isFull()) {
+            final int instrumentIndex = pendingIndexes[(pendingHead + recordsNumber) % pendingIndexes.length];
+            final IndexedPriceRecord record = marketState.getPriceRecord(instrumentIndex);
+            updateMessage.addRecord(
+                instrumentIndexer.instrument(instrumentIndex, ticker),
+                record.timestamp(),
+                record.payloadBuffer(), record.absolutePayloadOffset(), record.payloadSize()
+            );
+            recordsNumber++;
+        }
+        return recordsNumber;
+    }
+
+    private void removePending(int number) {
+        for (int i = 0; i < number; i++) {
+            pendingFlags[pendingIndexes[pendingHead]] = false;
+            pendingHead = (pendingHead + 1) % pendingIndexes.length;
+        }
+        pendingNumber -= number;
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.collections.IntHashSet;
+import org.agrona.collections.Long2ObjectHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of instruments the connections are subscribed to. For each instrument it counts subscribed
+ * connections, so the check if a changed price should be published is a single array read.
+ *
+ * Registry is used by the single server thread only.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class SubscriptionRegistry {
+
+    private final Long2ObjectHashMap<IntHashSet> subscriptionsByConnection = new Long2ObjectHashMap<>();
+    private int[] subscribersNumbers;
+
+    public SubscriptionRegistry(int instrumentsNumber) {
+        this.subscribersNumbers = new int[instrumentsNumber];
+    }
+
+    /**
+     * Subscribes connection to the instrument.
+     *
+     * @param connectionId connection ID
+     * @param instrumentIndex instrument index
+     * @return true if the connection was not subscribed to the instrument before
+     */
+    public boolean subscribe(long connectionId, int instrumentIndex) {
+        checkInstrumentIndex(instrumentIndex);
+        IntHashSet subscriptions = subscriptionsByConnection.get(connectionId);
+        if (subscriptions == null) {
+            subscriptions = new IntHashSet();
+            subscriptionsByConnection.put(connectionId, subscriptions);
+        }
+        if (subscriptions.add(instrumentIndex)) {
+            subscribersNumbers[instrumentIndex]++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Unsubscribes connection from the instrument.
+     *
+     * @param connectionId connection ID
+     * @param instrumentIndex instrument index
+     * @return true if the connection was subscribed to the instrument
+     */
+    public boolean unsubscribe(long connectionId, int instrumentIndex) {
+        checkInstrumentIndex(instrumentIndex);
+        final IntHashSet subscriptions = subscriptionsByConnection.get(connectionId);
+        if (subscriptions != null && subscriptions.remove(instrumentIndex)) {
+            subscribersNumbers[instrumentIndex]--;
+            if (subscriptions.isEmpty()) {
+                subscriptionsByConnection.remove(connectionId);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all subscriptions of the connection.
+     *
+     * @param connectionId connection ID
+     */
+    public void removeConnection(long connectionId) {
+        final IntHashSet subscriptions = subscriptionsByConnection.remove(connectionId);
+        if (subscriptions != null) {
+            final IntHashSet.IntIterator iterator = subscriptions.iterator();
+            while (iterator.hasNext()) {
+                subscribersNumbers[iterator.nextValue()]--;
+            }
+        }
+    }
+
+    /**
+     * Checks if any connection is subscribed to the instrument.
+     *
+     * @param instrumentIndex instrument index
+     * @return true if the instrument has subscribers
+     */
+    public boolean hasSubscribers(int instrumentIndex) {
+        return instrumentIndex < subscribersNumbers.length && subscribersNumbers[instrumentIndex] > 0;
+    }
+
+    /**
+     * Makes the registry able to keep subscriptions to the given number of instruments.
+     *
+     * @param instrumentsNumber number of instruments
+     */
+    public void ensureCapacity(int instrumentsNumber) {
+        if (instrumentsNumber > subscribersNumbers.length) {
+            subscribersNumbers = Arrays.copyOf(subscribersNumbers, instrumentsNumber);
+        }
+    }
+
+    private void checkInstrumentIndex(int instrumentIndex) {
+        if (instrumentIndex < 0 || instrumentIndex >= subscribersNumbers.length) {
+            throw new IndexOutOfBoundsException("Instrument index is out of bounds: " + instrumentIndex);
+        }
+    }
+
+}
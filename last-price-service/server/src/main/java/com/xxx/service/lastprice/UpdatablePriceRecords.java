@@ -0,0 +1,26 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * Price records indexed by instrument index which can be updated by newer prices.
+ *
+ * @see BaseIndexedPriceRecordsBlock
+ * @see BatchRun
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public interface UpdatablePriceRecords {
+
+    /**
+     * Updates price record with the given index if provided timestamp greater or equal the current one.
+     *
+     * @param priceRecordIndex index of the record to update
+     * @param timestamp new timestamp to set to the record
+     * @param payload buffer with new payload of the record
+     * @param payloadOffset offset to read payload from
+     * @param payloadSize payload size to read from the given payload buffer
+     */
+    void tryUpdateRecord(int priceRecordIndex, long timestamp, DirectBuffer payload, int payloadOffset, int payloadSize);
+
+}
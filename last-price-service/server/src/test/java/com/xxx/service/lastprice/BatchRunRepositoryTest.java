@@ -1,13 +1,20 @@
 package com.xxx.service.lastprice;
 
 import org.agrona.concurrent.EpochClock;
+import org.agrona.concurrent.UnsafeBuffer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.xxx.service.lastprice.Configuration.MAX_ACTIVE_BATCHES_NUMBER;
+import static com.xxx.service.lastprice.Configuration.MAX_BATCH_PRODUCERS;
+import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
@@ -19,10 +26,9 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 public class BatchRunRepositoryTest {
 
     private static final long BATCH_RUN_ID = 100500L;
-    private static final int INSTRUMENTS_NUMBER = 2;
 
     private final EpochClock clock = Mockito.mock(EpochClock.class);
-    private final BatchRunRepository repository = new BatchRunRepositoryImpl(clock, INSTRUMENTS_NUMBER);
+    private final BatchRunRepository repository = new BatchRunRepositoryImpl(clock);
 
 
     @BeforeEach
@@ -38,6 +44,35 @@ public class BatchRunRepositoryTest {
         assertThat(repository.size(), is(1));
     }
 
+    @Test
+    public void shouldCreateBatchRunWithProducers() {
+        final BatchRun batchRun = repository.create(BATCH_RUN_ID, 3);
+        assertThat(batchRun.producersNumber(), is(3));
+        assertThat(batchRun.isActiveProducer(2), is(true));
+        assertThat(batchRun.isActiveProducer(3), is(false));
+        assertThat(batchRun.lastChunkSequence(2), is(0L));
+    }
+
+    @Test
+    public void shouldNotCreateBatchRunWithWrongProducersNumber() {
+        assertThrows(IllegalArgumentException.class, () -> repository.create(BATCH_RUN_ID, 0));
+        assertThrows(IllegalArgumentException.class, () -> repository.create(BATCH_RUN_ID, MAX_BATCH_PRODUCERS + 1));
+        assertThat(repository.size(), is(0));
+        assertThat(repository.get(BATCH_RUN_ID), is(nullValue()));
+    }
+
+    @Test
+    public void shouldResetProducersOfRemovedBatchRun() {
+        final BatchRun batchRun = repository.create(BATCH_RUN_ID, 2);
+        batchRun.lastChunkSequence(0, 10L);
+        assertThat(batchRun.completeProducer(1), is(false));
+        repository.remove(batchRun);
+        assertThat(batchRun.producersNumber(), is(1));
+        assertThat(batchRun.lastChunkSequence(0), is(0L));
+        assertThat(batchRun.isActiveProducer(0), is(true));
+        assertThat(batchRun.completeProducer(0), is(true));
+    }
+
     @Test
     public void shouldRemoveOutdated() {
         repository.create(BATCH_RUN_ID);
@@ -66,6 +101,31 @@ public class BatchRunRepositoryTest {
         assertThat(repository.size(), is(1));
     }
 
+    @Test
+    public void shouldRemoveOutdatedInOrderOfLastUpdates() {
+        final BatchRun first = repository.create(1L);
+        final BatchRun second = repository.create(2L);
+        final BatchRun third = repository.create(3L);
+        Mockito.when(clock.time()).thenReturn(10L);
+        repository.save(first);
+        repository.save(third);
+        repository.remove(third);
+        Mockito.when(clock.time()).thenReturn(20L);
+        repository.save(second);
+        Mockito.when(clock.time()).thenReturn(55L);
+        final List<Long> removedIds = new ArrayList<>();
+        assertThat(repository.removeOutdated(40L, MAX_ACTIVE_BATCHES_NUMBER, batchRun -> removedIds.add(batchRun.id())), is(1));
+        assertThat(removedIds, contains(1L));
+        assertThat(repository.get(2L), is(second));
+        Mockito.when(clock.time()).thenReturn(60L);
+        assertThat(repository.removeOutdated(40L, MAX_ACTIVE_BATCHES_NUMBER, batchRun -> removedIds.add(batchRun.id())), is(1));
+        assertThat(removedIds, contains(1L, 2L));
+        assertThat(repository.size(), is(0));
+        // freed batch runs are linked again when reused
+        repository.create(4L);
+        assertThat(repository.removeOutdated(0L, MAX_ACTIVE_BATCHES_NUMBER, BatchRunRepository.NO_OP_CONSUMER), is(1));
+    }
+
     @Test
     public void shouldReturnSameObjectForGetOperation() {
         final BatchRun batchRun = repository.create(BATCH_RUN_ID);
@@ -87,6 +147,20 @@ public class BatchRunRepositoryTest {
         });
     }
 
+    @Test
+    public void shouldResetRecordsOfRemovedBatchRun() {
+        final UnsafeBuffer payload = new UnsafeBuffer(new byte[SIZE_OF_INT]);
+        final BatchRun batchRun = repository.create(BATCH_RUN_ID);
+        for (int i = 0; i < 1000; i++) {
+            batchRun.tryUpdateRecord(i * 1000, 100L, payload, 0, SIZE_OF_INT);
+        }
+        assertThat(repository.get(BATCH_RUN_ID).recordsNumber(), is(1000));
+        repository.remove(batchRun);
+        // pooled batch run is ready to be reused
+        assertThat(batchRun.recordsNumber(), is(0));
+        assertThat(batchRun.getPriceRecord(1000), is(nullValue()));
+    }
+
     @Test
     public void shouldRemoveAll() {
         for (long i = 0L; i < MAX_ACTIVE_BATCHES_NUMBER; i++) {
@@ -3,19 +3,21 @@ package com.xxx.service.lastprice;
 import com.xxx.core.protocol.Flyweight;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
-import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.List;
 
-import static com.xxx.service.lastprice.BatchRun.BATCH_RUN_HEADER_SIZE;
 import static java.util.Objects.hash;
+import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
 import static org.agrona.BufferUtil.allocateDirectAligned;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
@@ -31,7 +33,6 @@ public class BatchRunTest {
 
     static {
         PAYLOAD_BUFFER = new UnsafeBuffer(allocateDirectAligned(SIZE_OF_INT, CACHE_LINE_LENGTH));
-        Flyweight.allocateMemoryForFlyweight(BATCH_RUN);
     }
 
     @Test
@@ -41,6 +42,101 @@ public class BatchRunTest {
             PAYLOAD_BUFFER.putInt(0, i);
             BATCH_RUN.tryUpdateRecord(i, 100500L + i, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
         }
+        assertThat(BATCH_RUN.recordsNumber(), is(NUMBER_OF_INSTRUMENTS));
+        for (int i = 0; i < NUMBER_OF_INSTRUMENTS; i++) {
+            final IndexedPriceRecord record = BATCH_RUN.getPriceRecord(i);
+            record.getPayload(PAYLOAD_BUFFER, 0);
+            assertThat(record.timestamp(), is(100500L + i));
+            assertThat(PAYLOAD_BUFFER.getInt(0), is(i));
+        }
+    }
+
+    @Test
+    public void shouldKeepOnlyUploadedRecordsOfSparseInstruments() {
+        final BatchRun batchRun = new BatchRun(1, 2);
+        final int[] instrumentIndexes = {5_000_000, 7, 123_456, 42, 1_000_000_000};
+        for (int i = 0; i < instrumentIndexes.length; i++) {
+            PAYLOAD_BUFFER.putInt(0, i);
+            batchRun.tryUpdateRecord(instrumentIndexes[i], 1L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        }
+        // older price is ignored, the record is not duplicated
+        batchRun.tryUpdateRecord(42, 0L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        assertThat(batchRun.recordsNumber(), is(instrumentIndexes.length));
+        assertThat(batchRun.getPriceRecord(8), is(nullValue()));
+
+        final List<Integer> iterated = new ArrayList<>();
+        batchRun.iterateRecords((index, record) -> {
+            record.getPayload(PAYLOAD_BUFFER, 0);
+            assertThat(PAYLOAD_BUFFER.getInt(0), is(iterated.size()));
+            iterated.add(index);
+        });
+        assertThat(iterated, is(List.of(5_000_000, 7, 123_456, 42, 1_000_000_000)));
+
+        batchRun.reset();
+        assertThat(batchRun.recordsNumber(), is(0));
+        assertThat(batchRun.getPriceRecord(42), is(nullValue()));
+        batchRun.tryUpdateRecord(42, 0L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        assertThat(batchRun.getPriceRecord(42).timestamp(), is(0L));
+    }
+
+    @Test
+    public void shouldKeepGrownTableUpToMaxRetainedCapacity() {
+        final BatchRun batchRun = new BatchRun(1, 2, 8);
+        for (int i = 0; i < 6; i++) {
+            batchRun.tryUpdateRecord(i, 1L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        }
+        assertThat(batchRun.capacity(), is(8));
+        batchRun.reset();
+        assertThat(batchRun.capacity(), is(8));
+        assertThat(batchRun.getPriceRecord(5), is(nullValue()));
+
+        for (int i = 0; i < 10; i++) {
+            batchRun.tryUpdateRecord(i, 1L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        }
+        assertThat(batchRun.capacity(), is(16));
+        batchRun.reset();
+        assertThat(batchRun.capacity(), is(8));
+        assertThat(batchRun.recordsNumber(), is(0));
+        batchRun.tryUpdateRecord(9, 2L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        assertThat(batchRun.getPriceRecord(9).timestamp(), is(2L));
+    }
+
+    @Test
+    public void shouldForgetRecordsOfPreviousEpochsWhenGrows() {
+        final BatchRun batchRun = new BatchRun(1, 4);
+        for (int epoch = 0; epoch < 3; epoch++) {
+            PAYLOAD_BUFFER.putInt(0, epoch);
+            for (int i = 0; i < 4; i++) {
+                batchRun.tryUpdateRecord(i, 10L - epoch, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+            }
+            batchRun.reset();
+        }
+        // records of the previous epochs have greater timestamps, but are not taken into account
+        for (int i = 0; i < 100; i++) {
+            batchRun.tryUpdateRecord(i, 1L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        }
+        assertThat(batchRun.recordsNumber(), is(100));
+        for (int i = 0; i < 100; i++) {
+            final IndexedPriceRecord record = batchRun.getPriceRecord(i);
+            assertThat(record.timestamp(), is(1L));
+            record.getPayload(PAYLOAD_BUFFER, 0);
+            assertThat(PAYLOAD_BUFFER.getInt(0), is(2));
+        }
+    }
+
+    @Test
+    public void shouldMergeToAnotherBatchRun() {
+        final BatchRun source = new BatchRun(1, NUMBER_OF_INSTRUMENTS);
+        final BatchRun target = new BatchRun(2, NUMBER_OF_INSTRUMENTS);
+        PAYLOAD_BUFFER.putInt(0, 1);
+        target.tryUpdateRecord(3, 200L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        PAYLOAD_BUFFER.putInt(0, 2);
+        source.tryUpdateRecord(3, 100L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        source.tryUpdateRecord(4, 100L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        source.mergeTo(target);
+        assertThat(target.recordsNumber(), is(2));
+        assertThat(target.getPriceRecord(3).timestamp(), is(200L));
+        assertThat(target.getPriceRecord(4).timestamp(), is(100L));
     }
 
     @Test
@@ -58,6 +154,7 @@ public class BatchRunTest {
         final MarketState marketState = new MarketState(NUMBER_OF_INSTRUMENTS);
         Flyweight.allocateMemoryForFlyweight(marketState);
         BATCH_RUN.mergeTo(marketState);
+        marketState.commit();
         for (int i = 0; i < NUMBER_OF_INSTRUMENTS; i++) {
             final IndexedPriceRecord record = marketState.getPriceRecord(i);
             record.getPayload(PAYLOAD_BUFFER, 0);
@@ -66,6 +163,26 @@ public class BatchRunTest {
         }
     }
 
+    @Test
+    public void shouldMergePayloadsKeptInArena() {
+        final BatchRun batchRun = new BatchRun(1, NUMBER_OF_INSTRUMENTS);
+        final MutableDirectBuffer payload = new UnsafeBuffer(new byte[PRICE_MAX_PAYLOAD_SIZE]);
+        for (int i = 0; i < NUMBER_OF_INSTRUMENTS; i++) {
+            payload.putLong(0, i);
+            batchRun.tryUpdateRecord(i, 100L, payload, 0, i % 2 == 0 ? PRICE_MAX_PAYLOAD_SIZE : SIZE_OF_LONG);
+        }
+        final MarketState marketState = new MarketState(NUMBER_OF_INSTRUMENTS);
+        Flyweight.allocateMemoryForFlyweight(marketState);
+        batchRun.mergeTo(marketState);
+        marketState.commit();
+        batchRun.reset();
+        for (int i = 0; i < NUMBER_OF_INSTRUMENTS; i++) {
+            final IndexedPriceRecord record = marketState.getPriceRecord(i);
+            assertThat(record.payloadSize(), is(i % 2 == 0 ? PRICE_MAX_PAYLOAD_SIZE : SIZE_OF_LONG));
+            assertThat(record.payloadBuffer().getLong(record.absolutePayloadOffset()), is((long) i));
+        }
+    }
+
     @Test
     public void shouldWriteAndReadIdCorrectly() {
         final long id = 1234L;
@@ -89,7 +206,7 @@ public class BatchRunTest {
     @Test
     public void shouldThrowIndexOutOfBoundsExceptionIfRecordRequestedByWrongIndex() {
         assertThrows(IndexOutOfBoundsException.class, () -> {
-            BATCH_RUN.getPriceRecord(NUMBER_OF_INSTRUMENTS);
+            BATCH_RUN.getPriceRecord(-1);
         });
     }
 
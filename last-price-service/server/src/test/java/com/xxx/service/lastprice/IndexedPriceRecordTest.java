@@ -2,12 +2,20 @@ package com.xxx.service.lastprice;
 
 import com.xxx.core.protocol.Flyweight;
 import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.xxx.service.lastprice.Configuration.PAYLOAD_ARENA_PAGE_SIZE;
 import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
 import static org.agrona.BufferUtil.allocateDirectAligned;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -19,12 +27,12 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 public class IndexedPriceRecordTest {
 
     @Test
-    public void shouldWriteAndReadIndexCorrectly() {
+    public void shouldWriteAndReadEpochCorrectly() {
         final IndexedPriceRecord priceRecord = new IndexedPriceRecord();
         Flyweight.allocateMemoryForFlyweight(priceRecord);
-        final int index = 12345;
-        priceRecord.index(index);
-        assertThat(priceRecord.index(), is(index));
+        final long epoch = 12345L;
+        priceRecord.epoch(epoch);
+        assertThat(priceRecord.epoch(), is(epoch));
     }
 
     @Test
@@ -37,4 +45,121 @@ public class IndexedPriceRecordTest {
         });
     }
 
+    @Test
+    public void shouldKeepPayloadNotFittingInlineInArena() {
+        final PayloadArena arena = PayloadArena.inMemory(PAYLOAD_ARENA_PAGE_SIZE, PRICE_MAX_PAYLOAD_SIZE);
+        final IndexedPriceRecord priceRecord = new IndexedPriceRecord();
+        priceRecord.arena(arena);
+        Flyweight.allocateMemoryForFlyweight(priceRecord);
+        final MutableDirectBuffer payload = new UnsafeBuffer(new byte[PRICE_MAX_PAYLOAD_SIZE]);
+        final MutableDirectBuffer readPayload = new UnsafeBuffer(new byte[PRICE_MAX_PAYLOAD_SIZE]);
+
+        payload.putInt(0, 1);
+        priceRecord.putPayload(payload, 0, SIZE_OF_INT);
+        assertThat(priceRecord.payloadBuffer(), is(priceRecord.getReadBuffer()));
+        assertThat(arena.pagesNumber(), is(0));
+
+        payload.putLong(PRICE_MAX_PAYLOAD_SIZE - SIZE_OF_LONG, 2L);
+        priceRecord.putPayload(payload, 0, PRICE_MAX_PAYLOAD_SIZE);
+        final long reference = priceRecord.payloadReference();
+        assertThat(arena.pagesNumber(), is(1));
+        priceRecord.getPayload(readPayload, 0);
+        assertThat(readPayload.getLong(PRICE_MAX_PAYLOAD_SIZE - SIZE_OF_LONG), is(2L));
+
+        // payload of the same size class is written to the same block
+        priceRecord.putPayload(payload, 0, PRICE_MAX_PAYLOAD_SIZE - 1);
+        assertThat(priceRecord.payloadReference(), is(reference));
+
+        // block is freed when payload fits inline again
+        priceRecord.putPayload(payload, 0, SIZE_OF_INT);
+        priceRecord.getPayload(readPayload, 0);
+        assertThat(readPayload.getInt(0), is(1));
+        assertThat(arena.allocate(PRICE_MAX_PAYLOAD_SIZE), is(reference));
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionIfPayloadDoesNotFitWithoutArena() {
+        final IndexedPriceRecord priceRecord = new IndexedPriceRecord();
+        Flyweight.allocateMemoryForFlyweight(priceRecord);
+        final DirectBuffer buffer = new UnsafeBuffer(new byte[IndexedPriceRecord.INLINE_PAYLOAD_SIZE + 1]);
+        assertThrows(IllegalArgumentException.class, () -> {
+            priceRecord.putPayload(buffer, 0, IndexedPriceRecord.INLINE_PAYLOAD_SIZE + 1);
+        });
+    }
+
+    @Test
+    public void shouldMakeVersionOddWhileWriting() {
+        final IndexedPriceRecord priceRecord = new IndexedPriceRecord();
+        Flyweight.allocateMemoryForFlyweight(priceRecord);
+        final long version = priceRecord.beginRead();
+        priceRecord.beginWrite();
+        assertThat(priceRecord.version() % 2, is(1L));
+        assertThat(priceRecord.validateRead(version), is(false));
+        priceRecord.endWrite();
+        assertThat(priceRecord.version(), is(version + 2));
+        assertThat(priceRecord.validateRead(priceRecord.beginRead()), is(true));
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionIfNotAtomicBuffer() {
+        final IndexedPriceRecord priceRecord = new IndexedPriceRecord();
+        final MutableDirectBuffer buffer = new ExpandableArrayBuffer(IndexedPriceRecord.MESSAGE_SIZE);
+        assertThrows(IllegalArgumentException.class, () -> priceRecord.wrapForWrite(buffer, 0));
+    }
+
+    @Test
+    public void shouldNotReadTornRecordWhileWriterUpdatesIt() throws InterruptedException {
+        final UnsafeBuffer memory = new UnsafeBuffer(allocateDirectAligned(IndexedPriceRecord.MESSAGE_SIZE, CACHE_LINE_LENGTH));
+        final PayloadArena arena = PayloadArena.inMemory(PAYLOAD_ARENA_PAGE_SIZE, PRICE_MAX_PAYLOAD_SIZE);
+        final IndexedPriceRecord writerRecord = new IndexedPriceRecord();
+        writerRecord.arena(arena);
+        writerRecord.wrapForWrite(memory, 0);
+        final IndexedPriceRecord readerRecord = new IndexedPriceRecord();
+        readerRecord.arena(arena);
+        readerRecord.wrapForRead(memory, 0);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread writer = new Thread(() -> {
+            final UnsafeBuffer payload = new UnsafeBuffer(ByteBuffer.allocateDirect(SIZE_OF_LONG * 2));
+            long value = 1;
+            while (running.get()) {
+                payload.putLong(0, value);
+                payload.putLong(SIZE_OF_LONG, value);
+                writerRecord.beginWrite();
+                writerRecord.timestamp(value);
+                writerRecord.putPayload(payload, 0, SIZE_OF_LONG * 2);
+                writerRecord.endWrite();
+                value++;
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 1_000_000; i++) {
+                long version;
+                long timestamp;
+                long first;
+                long second;
+                do {
+                    version = readerRecord.beginRead();
+                    timestamp = readerRecord.timestamp();
+                    final int payloadSize = readerRecord.payloadSize();
+                    final DirectBuffer payloadBuffer = readerRecord.payloadBuffer(payloadSize);
+                    if (payloadBuffer == null || payloadSize != SIZE_OF_LONG * 2) {
+                        first = second = timestamp;
+                        continue;
+                    }
+                    first = payloadBuffer.getLong(readerRecord.absolutePayloadOffset(payloadSize));
+                    second = payloadBuffer.getLong(readerRecord.absolutePayloadOffset(payloadSize) + SIZE_OF_LONG);
+                } while (!readerRecord.validateRead(version));
+                if (timestamp != 0) {
+                    assertThat(first, is(timestamp));
+                    assertThat(second, is(timestamp));
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
 }
@@ -1,13 +1,17 @@
 package com.xxx.service.lastprice;
 
+import org.agrona.AsciiSequenceView;
+import org.agrona.concurrent.UnsafeBuffer;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
@@ -27,4 +31,55 @@ public class InstrumentIndexerTest {
         assertThat(indexer.defineIndex("DNKN"), is(lessThan(0)));
     }
 
+    @Test
+    public void shouldDefineIndexOfTickerInBuffer() {
+        final InstrumentIndexer indexer = new InstrumentIndexer(List.of("AAPL", "AMZN"));
+        final byte[] bytes = "XAMZNX".getBytes(StandardCharsets.US_ASCII);
+        final UnsafeBuffer buffer = new UnsafeBuffer(bytes);
+        assertThat(indexer.defineIndex(new AsciiSequenceView(buffer, 1, 4)), is(1));
+        assertThat(indexer.defineIndex(buffer, 1, 4), is(1));
+        assertThat(indexer.defineIndex(buffer, 1, 3), is(lessThan(0)));
+    }
+
+    @Test
+    public void shouldAddInstrumentsAtRuntime() {
+        final InstrumentIndexer indexer = new InstrumentIndexer(List.of("AAPL"));
+        final int instrumentsNumber = 100_000;
+        for (int i = 0; i < instrumentsNumber; i++) {
+            assertThat(indexer.addInstrument("I" + i), is(i + 1));
+        }
+        assertThat(indexer.size(), is(instrumentsNumber + 1));
+        assertThat(indexer.defineIndex("AAPL"), is(0));
+        for (int i = 0; i < instrumentsNumber; i++) {
+            assertThat(indexer.defineIndex("I" + i), is(i + 1));
+        }
+        assertThat(indexer.defineIndex("I" + instrumentsNumber), is(lessThan(0)));
+    }
+
+    @Test
+    public void shouldDefineInstrumentByIndexAfterRehash() {
+        final InstrumentIndexer indexer = new InstrumentIndexer(List.of("AAPL"));
+        for (int i = 0; i < 1000; i++) {
+            indexer.addInstrument("I" + i);
+        }
+        final AsciiSequenceView view = new AsciiSequenceView();
+        assertThat(indexer.instrument(0, view).toString(), is("AAPL"));
+        assertThat(indexer.instrument(501, view).toString(), is("I500"));
+        assertThrows(IndexOutOfBoundsException.class, () -> indexer.instrument(1001, view));
+    }
+
+    @Test
+    public void shouldReturnExistingIndexIfInstrumentIsAlreadyAdded() {
+        final InstrumentIndexer indexer = new InstrumentIndexer(List.of("AAPL", "AMZN"));
+        assertThat(indexer.addInstrument("AMZN"), is(1));
+        assertThat(indexer.size(), is(2));
+    }
+
+    @Test
+    public void shouldNotAddTooLongTicker() {
+        final InstrumentIndexer indexer = new InstrumentIndexer(List.of());
+        assertThrows(IllegalArgumentException.class, () -> indexer.addInstrument("VERY_LONG_TICKER"));
+        assertThrows(IllegalArgumentException.class, () -> indexer.addInstrument(""));
+    }
+
 }
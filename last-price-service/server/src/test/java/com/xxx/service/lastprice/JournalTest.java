@@ -0,0 +1,109 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.align;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class JournalTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    private final UnsafeBuffer request = new UnsafeBuffer(new byte[64]);
+
+    @Test
+    public void shouldReplayRequestsOfAllSegmentsInOrder(@TempDir File directory) {
+        try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                append(journal, i);
+            }
+            assertThat(journal.sync(), is(true));
+            assertThat(journal.sync(), is(false));
+            assertThat(journal.segmentsNumber(), is(4));
+        }
+        try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+            assertThat(replay(journal), is(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L)));
+            append(journal, 10);
+            assertThat(replay(journal).size(), is(11));
+        }
+    }
+
+    @Test
+    public void shouldStopAtTornFrameAndOverwriteIt(@TempDir File directory) throws IOException {
+        try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+            append(journal, 0);
+            append(journal, 1);
+        }
+        final File segment = directory.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // corrupt the value of the second request
+            final int secondRequestOffset = frameLength() + Journal.FRAME_HEADER_SIZE;
+            file.seek(secondRequestOffset);
+            file.writeLong(-1L);
+        }
+        try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+            assertThat(replay(journal), is(List.of(0L)));
+            append(journal, 2);
+            assertThat(replay(journal), is(List.of(0L, 2L)));
+        }
+    }
+
+    @Test
+    public void shouldRemoveAllRequestsOnReset(@TempDir File directory) {
+        try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 5; i++) {
+                append(journal, i);
+            }
+            journal.reset();
+            assertThat(journal.segmentsNumber(), is(1));
+            assertThat(replay(journal).size(), is(0));
+            append(journal, 5);
+        }
+        try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+            assertThat(replay(journal), is(List.of(5L)));
+        }
+    }
+
+    @Test
+    public void shouldNotAppendRequestBiggerThanSegment(@TempDir File directory) {
+        try (Journal journal = Journal.open(directory, SEGMENT_SIZE)) {
+            final UnsafeBuffer bigRequest = new UnsafeBuffer(new byte[SEGMENT_SIZE]);
+            assertThrows(IllegalArgumentException.class, () -> journal.append(1, bigRequest, 0, SEGMENT_SIZE));
+        }
+        assertThrows(IllegalArgumentException.class, () -> Journal.open(directory, Journal.FRAME_HEADER_SIZE));
+    }
+
+    private void append(Journal journal, long value) {
+        request.putLong(0, value);
+        journal.append(7, request, 0, request.capacity());
+    }
+
+    private List<Long> replay(Journal journal) {
+        final List<Long> values = new ArrayList<>();
+        journal.replay((messageType, buffer, offset, length) -> {
+            assertThat(messageType, is(7));
+            assertThat(length, is(request.capacity()));
+            values.add(buffer.getLong(offset));
+        });
+        return values;
+    }
+
+    private int frameLength() {
+        return align(Journal.FRAME_HEADER_SIZE + request.capacity(), SIZE_OF_LONG);
+    }
+
+}
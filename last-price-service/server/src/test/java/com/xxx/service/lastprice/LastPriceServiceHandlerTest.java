@@ -2,36 +2,63 @@ package com.xxx.service.lastprice;
 
 import com.xxx.core.protocol.Flyweight;
 import com.xxx.core.protocol.Message;
+import com.xxx.core.server.BufferResponseAllocator;
+import com.xxx.core.server.ResponseAllocator;
+import com.xxx.core.server.ServerCounters;
+import com.xxx.core.server.ServiceHandler;
+import com.xxx.service.lastprice.messages.AddInstrumentRequest;
+import com.xxx.service.lastprice.messages.AddInstrumentResponse;
 import com.xxx.service.lastprice.messages.CancelBatchRunRequest;
 import com.xxx.service.lastprice.messages.CancelBatchRunResponse;
 import com.xxx.service.lastprice.messages.CompleteBatchRunRequest;
 import com.xxx.service.lastprice.messages.CompleteBatchRunResponse;
 import com.xxx.service.lastprice.messages.LastPriceRequest;
 import com.xxx.service.lastprice.messages.LastPriceResponse;
+import com.xxx.service.lastprice.messages.MultiLastPriceRequest;
+import com.xxx.service.lastprice.messages.MultiLastPriceResponse;
+import com.xxx.service.lastprice.messages.MessageTypes;
 import com.xxx.service.lastprice.messages.PriceRecordsChunk;
 import com.xxx.service.lastprice.messages.StartBatchRunRequest;
 import com.xxx.service.lastprice.messages.StartBatchRunResponse;
+import com.xxx.service.lastprice.messages.SubscribeRequest;
+import com.xxx.service.lastprice.messages.SubscribeResponse;
 import com.xxx.service.lastprice.messages.UploadChunkRequest;
 import com.xxx.service.lastprice.messages.UploadChunkResponse;
+import io.aeron.Publication;
+import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.EpochClock;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
+import java.io.File;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.LongSupplier;
 
+import static com.xxx.service.lastprice.Configuration.CHUNK_SLICE_RECORDS;
 import static com.xxx.service.lastprice.Configuration.MAX_ACTIVE_BATCHES_NUMBER;
+import static com.xxx.service.lastprice.Configuration.MAX_BATCH_PRODUCERS;
+import static com.xxx.service.lastprice.Configuration.MERGE_SLICE_RECORDS;
+import static com.xxx.service.lastprice.messages.UploadChunkRequest.UNTRACKED_CHUNK_SEQUENCE;
 import static java.util.Set.of;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.agrona.BufferUtil.allocateDirectAligned;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
@@ -53,9 +80,13 @@ public class LastPriceServiceHandlerTest {
     private final UploadChunkRequest uploadChunkRequest = new UploadChunkRequest();
     private final CancelBatchRunRequest cancelBatchRunRequest = new CancelBatchRunRequest();
     private final CompleteBatchRunRequest completeBatchRunRequest = new CompleteBatchRunRequest();
+    private final AddInstrumentRequest addInstrumentRequest = new AddInstrumentRequest();
+    private final SubscribeRequest subscribeRequest = new SubscribeRequest();
 
     private final EpochClock clock = Mockito.mock(EpochClock.class);
-    private final LastPriceServiceHandler serviceHandler = new LastPriceServiceHandler(clock, INSTRUMENTS);
+    private UploadChunkResponse lastUploadChunkResponse;
+    private final ServerCounters counters = new ServerCounters();
+    private final LastPriceServiceHandler serviceHandler = new LastPriceServiceHandler(clock, INSTRUMENTS, null, null, null, counters);
 
     @BeforeEach
     public void init() {
@@ -64,6 +95,8 @@ public class LastPriceServiceHandlerTest {
         uploadChunkRequest.init(new UnsafeBuffer(allocateDirectAligned(UploadChunkRequest.maxSize(), CACHE_LINE_LENGTH)), 0);
         Message.allocateMemoryForMessage(cancelBatchRunRequest);
         Message.allocateMemoryForMessage(completeBatchRunRequest);
+        Message.allocateMemoryForMessage(addInstrumentRequest);
+        subscribeRequest.init(new UnsafeBuffer(allocateDirectAligned(SubscribeRequest.maxSize(), CACHE_LINE_LENGTH)), 0);
         serviceHandler.reset();
     }
 
@@ -75,6 +108,22 @@ public class LastPriceServiceHandlerTest {
         assertThat(response.batchId(), is(batchId));
     }
 
+    @Test
+    public void shouldStartBatchRunWithProposedId() {
+        startBatchRunRequest.batchId(100500L);
+        final StartBatchRunResponse response = call(startBatchRunRequest, () -> 1L);
+        assertThat(response.status(), is(StartBatchRunResponse.SUCCESS_STATUS));
+        assertThat(response.batchId(), is(100500L));
+    }
+
+    @Test
+    public void shouldNotStartBatchRunWithProposedIdOfActiveBatchRun() {
+        startBatchRunRequest.batchId(100500L);
+        call(startBatchRunRequest, () -> 1L);
+        final StartBatchRunResponse response = call(startBatchRunRequest, () -> 1L);
+        assertThat(response.status(), is(StartBatchRunResponse.BATCH_ALREADY_EXISTS_STATUS));
+    }
+
     @Test
     public void shouldCancelBatchRun() {
         final long batchId = 100500L;
@@ -113,6 +162,320 @@ public class LastPriceServiceHandlerTest {
         assertThat(PAYLOAD_BUFFER.getInt(0), is(12345));
     }
 
+    @Test
+    public void shouldServeLastPriceFromReadHandler() {
+        final ServiceHandler readHandler = serviceHandler.newReadHandler();
+        assertThat(serviceHandler.isReadRequest(getLastPriceRequest.uniqueType()), is(true));
+        assertThat(serviceHandler.isReadRequest(startBatchRunRequest.uniqueType()), is(false));
+        assertThat(readHandler.isReadRequest(getLastPriceRequest.uniqueType()), is(true));
+
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        final PriceRecordsChunk priceRecordsChunk = new PriceRecordsChunk();
+        Flyweight.allocateMemoryForFlyweight(priceRecordsChunk, PriceRecordsChunk.defineSize(1));
+        PAYLOAD_BUFFER.putInt(0, 12345);
+        priceRecordsChunk.addRecord("MSFT", 100L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        uploadChunkRequest.batchId(batchId);
+        uploadChunkRequest.putChunk(priceRecordsChunk);
+        call(uploadChunkRequest, null);
+        completeBatchRunRequest.batchId(batchId);
+        call(completeBatchRunRequest, null);
+
+        getLastPriceRequest.instrument("MSFT");
+        final LastPriceResponse lastPriceResponse = (LastPriceResponse) readHandler.handleRequest(
+            getLastPriceRequest.uniqueType(), null,
+            getLastPriceRequest.getReadBuffer(), getLastPriceRequest.getOffset(), getLastPriceRequest.sizeInBytes()
+        );
+        assertThat(lastPriceResponse.status(), is(LastPriceResponse.SUCCESS_STATUS));
+        assertThat(lastPriceResponse.priceRecord().asOfTimestamp(), is(100L));
+        lastPriceResponse.priceRecord().getPayload(PAYLOAD_BUFFER, 0);
+        assertThat(PAYLOAD_BUFFER.getInt(0), is(12345));
+    }
+
+    @Test
+    public void shouldAddInstrumentsKeepingActiveBatchRunAndMarketState() {
+        final ServiceHandler readHandler = serviceHandler.newReadHandler();
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        uploadPrice(batchId, "MSFT", 100L, 1);
+
+        // grow instruments universe far beyond the initial capacity while the batch run is active
+        for (int i = 0; i < 100; i++) {
+            addInstrumentRequest.instrument("INS" + i);
+            final AddInstrumentResponse response = call(addInstrumentRequest, null);
+            assertThat(response.status(), is(AddInstrumentResponse.SUCCESS_STATUS));
+        }
+        uploadPrice(batchId, "INS99", 200L, 2);
+        completeBatchRunRequest.batchId(batchId);
+        final CompleteBatchRunResponse completeResponse = call(completeBatchRunRequest, null);
+        assertThat(completeResponse.status(), is(CompleteBatchRunResponse.SUCCESS_STATUS));
+
+        assertThat(readPrice(readHandler, "MSFT"), is(1));
+        assertThat(readPrice(readHandler, "INS99"), is(2));
+        getLastPriceRequest.instrument("INS50");
+        final LastPriceResponse notAvailable = call(getLastPriceRequest, null);
+        assertThat(notAvailable.status(), is(LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS));
+    }
+
+    @Test
+    public void shouldServeMultiLastPriceWithStatusPerInstrument() {
+        final ServiceHandler readHandler = serviceHandler.newReadHandler();
+        assertThat(serviceHandler.isReadRequest(MessageTypes.MULTI_LAST_PRICE_REQUEST_MESSAGE_TYPE), is(true));
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        uploadPrice(batchId, "MSFT", 100L, 1);
+        uploadPrice(batchId, "AAPL", 200L, 2);
+        completeBatchRunRequest.batchId(batchId);
+        call(completeBatchRunRequest, null);
+
+        final MultiLastPriceRequest request = new MultiLastPriceRequest();
+        request.init(new UnsafeBuffer(allocateDirectAligned(MultiLastPriceRequest.maxSize(), CACHE_LINE_LENGTH)), 0);
+        request.reset();
+        request.addInstrument("AAPL");
+        request.addInstrument("DNKN");
+        request.addInstrument("AMZN");
+        request.addInstrument("MSFT");
+        final MultiLastPriceResponse response = (MultiLastPriceResponse) readHandler.handleRequest(
+            request.uniqueType(), null, request.getReadBuffer(), request.getOffset(), request.sizeInBytes()
+        );
+        assertThat(response.status(), is(MultiLastPriceResponse.SUCCESS_STATUS));
+        assertThat(response.recordsNumber(), is(4));
+        assertThat(response.recordStatus(0), is(LastPriceResponse.SUCCESS_STATUS));
+        assertThat(response.priceRecord(0).asOfTimestamp(), is(200L));
+        assertThat(response.recordStatus(1), is(LastPriceResponse.WRONG_INSTRUMENT_STATUS));
+        assertThat(response.recordStatus(2), is(LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS));
+        assertThat(response.recordStatus(3), is(LastPriceResponse.SUCCESS_STATUS));
+        assertThat("MSFT".contentEquals(response.priceRecord(3).instrument()), is(true));
+        response.priceRecord(3).getPayload(PAYLOAD_BUFFER, 0);
+        assertThat(PAYLOAD_BUFFER.getInt(0), is(1));
+    }
+
+    @Test
+    public void shouldPublishChangedPricesOfSubscribedInstrumentsOnBatchCompletion() {
+        final Publication updatesPublication = Mockito.mock(Publication.class);
+        when(updatesPublication.offer(any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(1L);
+        final LastPriceServiceHandler handler = new LastPriceServiceHandler(clock, INSTRUMENTS, updatesPublication);
+        subscribeRequest.connectionId(7L);
+        subscribeRequest.reset(SubscribeRequest.SUBSCRIBE_ACTION);
+        subscribeRequest.addInstrument("AAPL");
+        subscribeRequest.addInstrument("DNKN");
+        final SubscribeResponse subscribeResponse = call(handler, subscribeRequest, null);
+        assertThat(subscribeResponse.status(), is(SubscribeResponse.WRONG_INSTRUMENT_STATUS));
+
+        completeBatch(handler, 1L, "AMZN");
+        assertThat(handler.doWork(), is(0));
+        completeBatch(handler, 2L, "AAPL");
+        assertThat(handler.doWork(), is(1));
+        verify(updatesPublication, times(1)).offer(any(DirectBuffer.class), anyInt(), anyInt(), isNull());
+
+        handler.onConnectionClosed(7L);
+        completeBatch(handler, 3L, "AAPL");
+        assertThat(handler.doWork(), is(0));
+    }
+
+    @Test
+    public void shouldNotSubscribeIfUpdatesPublicationIsNotDefined() {
+        subscribeRequest.reset(SubscribeRequest.SUBSCRIBE_ACTION);
+        subscribeRequest.addInstrument("AAPL");
+        final SubscribeResponse response = call(subscribeRequest, null);
+        assertThat(response.status(), is(SubscribeResponse.SUBSCRIPTIONS_NOT_SUPPORTED_STATUS));
+        assertThat(serviceHandler.doWork(), is(0));
+    }
+
+    @Test
+    public void shouldServePricesAndInstrumentsOfPreviousRunFromMarketStateFile(@TempDir File directory) {
+        final File file = new File(directory, "market-state.dat");
+        when(clock.time()).thenReturn(0L);
+        try (LastPriceServiceHandler handler = new LastPriceServiceHandler(clock, INSTRUMENTS, null, file)) {
+            addInstrumentRequest.instrument("DNKN");
+            final AddInstrumentResponse addResponse = call(handler, addInstrumentRequest, null);
+            assertThat(addResponse.status(), is(AddInstrumentResponse.SUCCESS_STATUS));
+            PAYLOAD_BUFFER.putInt(0, 12345);
+            completeBatch(handler, 1L, "DNKN");
+            when(clock.time()).thenReturn(Configuration.MARKET_STATE_SNAPSHOT_INTERVAL);
+            assertThat(handler.doWork(), is(1));
+            assertThat(handler.doWork(), is(0));
+        }
+        try (LastPriceServiceHandler handler = new LastPriceServiceHandler(clock, of("TSLA"), null, file)) {
+            assertThat(readPrice(handler.newReadHandler(), "DNKN"), is(12345));
+            getLastPriceRequest.instrument("TSLA");
+            final LastPriceResponse response = call(handler, getLastPriceRequest, null);
+            assertThat(response.status(), is(LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS));
+        }
+    }
+
+    @Test
+    public void shouldReplayJournaledRequestsOnStart(@TempDir File directory) {
+        final File marketStateFile = new File(directory, "market-state.dat");
+        assertThat(serviceHandler.isSyncRequired(MessageTypes.UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE), is(false));
+        try (LastPriceServiceHandler handler = new LastPriceServiceHandler(clock, INSTRUMENTS, null, marketStateFile, directory)) {
+            assertThat(handler.isSyncRequired(MessageTypes.UPLOAD_CHUNK_REQUEST_MESSAGE_TYPE), is(true));
+            assertThat(handler.isSyncRequired(MessageTypes.LAST_PRICE_REQUEST_MESSAGE_TYPE), is(false));
+            PAYLOAD_BUFFER.putInt(0, 12345);
+            completeBatch(handler, 1L, "AAPL");
+            addInstrumentRequest.instrument("DNKN");
+            call(handler, addInstrumentRequest, null);
+            // batch run with the server assigned ID stays active
+            final StartBatchRunResponse startResponse = call(handler, startBatchRunRequest, () -> 2L);
+            assertThat(startResponse.batchId(), is(2L));
+            uploadChunkRequest.batchId(2L);
+            PAYLOAD_BUFFER.putInt(0, 54321);
+            final PriceRecordsChunk priceRecordsChunk = new PriceRecordsChunk();
+            Flyweight.allocateMemoryForFlyweight(priceRecordsChunk, PriceRecordsChunk.defineSize(1));
+            priceRecordsChunk.addRecord("DNKN", 2L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+            uploadChunkRequest.putChunk(priceRecordsChunk);
+            call(handler, uploadChunkRequest, null);
+            handler.sync();
+        }
+        try (LastPriceServiceHandler handler = new LastPriceServiceHandler(clock, INSTRUMENTS, null, marketStateFile, directory)) {
+            assertThat(readPrice(handler.newReadHandler(), "AAPL"), is(12345));
+            // generated ID of the replayed active batch run is skipped
+            final StartBatchRunResponse startResponse = call(handler, startBatchRunRequest, new AtomicLong(2L)::getAndIncrement);
+            assertThat(startResponse.batchId(), is(3L));
+            completeBatchRunRequest.batchId(2L);
+            final CompleteBatchRunResponse response = call(handler, completeBatchRunRequest, null);
+            assertThat(response.status(), is(CompleteBatchRunResponse.SUCCESS_STATUS));
+            assertThat(readPrice(handler.newReadHandler(), "DNKN"), is(54321));
+        }
+    }
+
+    @Test
+    public void whenBatchRunIsEvictedThenItIsNotReplayed(@TempDir File directory) {
+        final File marketStateFile = new File(directory, "market-state.dat");
+        final long batchId = 100500L;
+        try (LastPriceServiceHandler handler = new LastPriceServiceHandler(clock, INSTRUMENTS, null, marketStateFile, directory)) {
+            when(clock.time()).thenReturn(0L);
+            handler.doWork();
+            call(handler, startBatchRunRequest, () -> batchId);
+            uploadChunkRequest.batchId(batchId);
+            PAYLOAD_BUFFER.putInt(0, 12345);
+            final PriceRecordsChunk priceRecordsChunk = new PriceRecordsChunk();
+            Flyweight.allocateMemoryForFlyweight(priceRecordsChunk, PriceRecordsChunk.defineSize(1));
+            priceRecordsChunk.addRecord("AAPL", 1L, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+            uploadChunkRequest.putChunk(priceRecordsChunk);
+            call(handler, uploadChunkRequest, null);
+            when(clock.time()).thenReturn(Configuration.BATCH_EVICTION_TIMEOUT);
+            assertThat(handler.doWork(), is(1));
+            handler.sync();
+        }
+        try (LastPriceServiceHandler handler = new LastPriceServiceHandler(clock, INSTRUMENTS, null, marketStateFile, directory)) {
+            // the ID is free again and the new batch run doesn't get chunks of the evicted one
+            startBatchRunRequest.batchId(batchId);
+            final StartBatchRunResponse startResponse = call(handler, startBatchRunRequest, () -> 1L);
+            assertThat(startResponse.status(), is(StartBatchRunResponse.SUCCESS_STATUS));
+            completeBatchRunRequest.batchId(batchId);
+            final CompleteBatchRunResponse response = call(handler, completeBatchRunRequest, null);
+            assertThat(response.status(), is(CompleteBatchRunResponse.SUCCESS_STATUS));
+            getLastPriceRequest.instrument("AAPL");
+            final LastPriceResponse priceResponse = call(handler, getLastPriceRequest, null);
+            assertThat(priceResponse.status(), is(LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS));
+        }
+    }
+
+    @Test
+    public void shouldNotJournalWithoutMarketStateFile(@TempDir File directory) {
+        assertThrows(IllegalArgumentException.class, () -> new LastPriceServiceHandler(clock, INSTRUMENTS, null, null, directory));
+    }
+
+    @Test
+    public void shouldNotAddInstrumentWithTooLongTicker() {
+        addInstrumentRequest.instrument("AAPL");
+        // the client does not send such a ticker, so it's written to the request directly
+        ((MutableDirectBuffer) addInstrumentRequest.getReadBuffer()).putInt(
+            addInstrumentRequest.getOffset() + AddInstrumentRequest.INSTRUMENT_TICKER_LENGTH_FIELD_OFFSET,
+            Configuration.INSTRUMENT_MAX_TICKER_LENGTH + 1
+        );
+        final AddInstrumentResponse response = call(addInstrumentRequest, null);
+        assertThat(response.status(), is(AddInstrumentResponse.WRONG_INSTRUMENT_STATUS));
+        addInstrumentRequest.instrument("DNKN");
+        final AddInstrumentResponse addResponse = call(addInstrumentRequest, null);
+        assertThat(addResponse.status(), is(AddInstrumentResponse.SUCCESS_STATUS));
+    }
+
+    @Test
+    public void shouldNotAddKnownInstrument() {
+        addInstrumentRequest.instrument("AAPL");
+        final AddInstrumentResponse response = call(addInstrumentRequest, null);
+        assertThat(response.status(), is(AddInstrumentResponse.ALREADY_EXISTS_STATUS));
+    }
+
+    @Test
+    public void shouldNotHandleStateChangingRequestsInReadHandler() {
+        final ServiceHandler readHandler = serviceHandler.newReadHandler();
+        assertThrows(IllegalArgumentException.class, () -> {
+            readHandler.handleRequest(
+                startBatchRunRequest.uniqueType(), () -> 1L,
+                startBatchRunRequest.getReadBuffer(), startBatchRunRequest.getOffset(), startBatchRunRequest.sizeInBytes()
+            );
+        });
+    }
+
+    @Test
+    public void shouldCompleteBatchRunWhenAllProducersCompletedIt() {
+        final long batchId = 100500L;
+        startBatchRunRequest.producersNumber(2);
+        call(startBatchRunRequest, () -> batchId);
+        assertThat(uploadPrice(batchId, 0, 1L, "AAPL", 100L, 1), is(UploadChunkResponse.SUCCESS_STATUS));
+        assertThat(uploadPrice(batchId, 1, 1L, "MSFT", 100L, 2), is(UploadChunkResponse.SUCCESS_STATUS));
+        assertThat(uploadPrice(batchId, 2, 1L, "MSFT", 100L, 2), is(UploadChunkResponse.WRONG_PRODUCER_STATUS));
+
+        completeBatchRunRequest.batchId(batchId);
+        completeBatchRunRequest.producerId(0);
+        CompleteBatchRunResponse completeResponse = call(completeBatchRunRequest, null);
+        assertThat(completeResponse.status(), is(CompleteBatchRunResponse.PRODUCERS_PENDING_STATUS));
+        getLastPriceRequest.instrument("AAPL");
+        final LastPriceResponse lastPriceResponse = call(getLastPriceRequest, null);
+        assertThat(lastPriceResponse.status(), is(LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS));
+        // completed producer can not upload or complete again
+        assertThat(uploadPrice(batchId, 0, 2L, "AAPL", 101L, 3), is(UploadChunkResponse.WRONG_PRODUCER_STATUS));
+        completeResponse = call(completeBatchRunRequest, null);
+        assertThat(completeResponse.status(), is(CompleteBatchRunResponse.WRONG_PRODUCER_STATUS));
+
+        assertThat(uploadPrice(batchId, 1, 2L, "AAPL", 101L, 4), is(UploadChunkResponse.SUCCESS_STATUS));
+        completeBatchRunRequest.producerId(1);
+        completeResponse = call(completeBatchRunRequest, null);
+        assertThat(completeResponse.status(), is(CompleteBatchRunResponse.SUCCESS_STATUS));
+        assertThat(readPrice(serviceHandler, "AAPL"), is(4));
+        assertThat(readPrice(serviceHandler, "MSFT"), is(2));
+    }
+
+    @Test
+    public void shouldApplyChunksOfProducerOnceAndInOrder() {
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        assertThat(uploadPrice(batchId, 0, 1L, "AAPL", 100L, 1), is(UploadChunkResponse.SUCCESS_STATUS));
+        // sent again with another price, it's not applied
+        assertThat(uploadPrice(batchId, 0, 1L, "AAPL", 101L, 2), is(UploadChunkResponse.SUCCESS_STATUS));
+        assertThat(uploadPrice(batchId, 0, 3L, "AAPL", 102L, 3), is(UploadChunkResponse.CHUNK_OUT_OF_ORDER_STATUS));
+        completeBatchRunRequest.batchId(batchId);
+        final CompleteBatchRunResponse completeResponse = call(completeBatchRunRequest, null);
+        assertThat(completeResponse.status(), is(CompleteBatchRunResponse.SUCCESS_STATUS));
+        assertThat(readPrice(serviceHandler, "AAPL"), is(1));
+    }
+
+    @Test
+    public void shouldReportLastAppliedChunkSequenceOfProducer() {
+        final long batchId = 100500L;
+        startBatchRunRequest.producersNumber(2);
+        call(startBatchRunRequest, () -> batchId);
+        uploadPrice(batchId, 1, 1L, "AAPL", 100L, 1);
+        uploadPrice(batchId, 1, 2L, "AAPL", 101L, 2);
+        // response of the chunk was lost, it's sent again
+        assertThat(uploadPrice(batchId, 1, 2L, "AAPL", 101L, 2), is(UploadChunkResponse.SUCCESS_STATUS));
+        assertThat(lastUploadChunkResponse.lastChunkSequence(), is(2L));
+        assertThat(uploadPrice(batchId, 1, 4L, "AAPL", 103L, 4), is(UploadChunkResponse.CHUNK_OUT_OF_ORDER_STATUS));
+        assertThat(lastUploadChunkResponse.lastChunkSequence(), is(2L));
+        assertThat(uploadPrice(batchId, 0, 1L, "MSFT", 100L, 1), is(UploadChunkResponse.SUCCESS_STATUS));
+        assertThat(lastUploadChunkResponse.lastChunkSequence(), is(1L));
+    }
+
+    @Test
+    public void shouldNotStartBatchRunWithTooManyProducers() {
+        startBatchRunRequest.producersNumber(MAX_BATCH_PRODUCERS + 1);
+        final StartBatchRunResponse response = call(startBatchRunRequest, () -> 1L);
+        assertThat(response.status(), is(StartBatchRunResponse.WRONG_PRODUCERS_NUMBER_STATUS));
+    }
+
     @Test
     public void shouldReturnBatchNotFoundIfUploadToWrongBatch() {
         final PriceRecordsChunk priceRecordsChunk = new PriceRecordsChunk();
@@ -181,17 +544,201 @@ public class LastPriceServiceHandlerTest {
 
     @Test
     public void shouldReturnCanNotCreateBatchStatusIfMaxNumberCreated() {
-        for (long i = 0; i < MAX_ACTIVE_BATCHES_NUMBER; i++) {
+        for (long i = 1; i <= MAX_ACTIVE_BATCHES_NUMBER; i++) {
             final long batchId = i;
             call(startBatchRunRequest, () -> batchId);
         }
-        final StartBatchRunResponse response = call(startBatchRunRequest, () -> MAX_ACTIVE_BATCHES_NUMBER);
+        final StartBatchRunResponse response = call(startBatchRunRequest, () -> MAX_ACTIVE_BATCHES_NUMBER + 1);
         assertThat(response.status(), is(StartBatchRunResponse.CAN_NOT_CREATE_BATCH_STATUS));
     }
 
-    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldEvictOutdatedBatchRunsOnDutyCycle() {
+        when(clock.time()).thenReturn(0L);
+        serviceHandler.doWork();
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        when(clock.time()).thenReturn(Configuration.BATCH_EVICTION_TIMEOUT);
+        // requests neither evict batch runs nor read the clock
+        assertThat(uploadPrice(batchId, 0, UNTRACKED_CHUNK_SEQUENCE, "AAPL", 1L, 1), is(UploadChunkResponse.SUCCESS_STATUS));
+        assertThat(serviceHandler.doWork(), is(1));
+        assertThat(uploadPrice(batchId, 0, UNTRACKED_CHUNK_SEQUENCE, "AAPL", 1L, 1), is(UploadChunkResponse.BATCH_RUN_NOT_FOUND_STATUS));
+    }
+
+    @Test
+    public void shouldCountRejectedChunksAndEvictedBatchRuns() {
+        when(clock.time()).thenReturn(0L);
+        serviceHandler.doWork();
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        assertThat(uploadPrice(batchId, 0, UNTRACKED_CHUNK_SEQUENCE, "AAPL", 1L, 1), is(UploadChunkResponse.SUCCESS_STATUS));
+        final int status = uploadPrice(batchId + 1, 0, UNTRACKED_CHUNK_SEQUENCE, "AAPL", 1L, 1);
+        assertThat(status, is(UploadChunkResponse.BATCH_RUN_NOT_FOUND_STATUS));
+        assertThat(counterValue("rejected chunks"), is(1L));
+        assertThat(counterValue("evicted batch runs"), is(0L));
+        when(clock.time()).thenReturn(Configuration.BATCH_EVICTION_TIMEOUT);
+        serviceHandler.doWork();
+        assertThat(counterValue("evicted batch runs"), is(1L));
+    }
+
+    @Test
+    public void shouldApplyBigChunkInSlicesAndServeReadsMeanwhile() {
+        PAYLOAD_BUFFER.putInt(0, 111);
+        completeBatch(serviceHandler, 1L, "MSFT");
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        // two full slices and one more record
+        putBigChunk(batchId, 2 * CHUNK_SLICE_RECORDS + 1, "AAPL");
+        final UploadChunkResponse pendingResponse = call(uploadChunkRequest, null);
+        assertThat(pendingResponse, is(nullValue()));
+        assertThat(serviceHandler.isRequestPending(), is(true));
+        assertThat(readPrice(serviceHandler, "MSFT"), is(111));
+        final ResponseAllocator responseAllocator = new BufferResponseAllocator(LastPriceResponse.MESSAGE_SIZE);
+        assertThat(serviceHandler.resumeRequest(responseAllocator), is(nullValue()));
+        assertThat(serviceHandler.resumeRequest(responseAllocator), is(nullValue()));
+        final UploadChunkResponse response = (UploadChunkResponse) serviceHandler.resumeRequest(responseAllocator);
+        assertThat(response.status(), is(UploadChunkResponse.SUCCESS_STATUS));
+        assertThat(serviceHandler.isRequestPending(), is(false));
+        completeBatchRunRequest.batchId(batchId);
+        final CompleteBatchRunResponse completeResponse = call(completeBatchRunRequest, null);
+        assertThat(completeResponse.status(), is(CompleteBatchRunResponse.SUCCESS_STATUS));
+        assertThat(readPrice(serviceHandler, "AAPL"), is(2 * CHUNK_SLICE_RECORDS));
+        assertThat(readPrice(serviceHandler, "AMZN"), is(2 * CHUNK_SLICE_RECORDS - 1));
+    }
+
+    @Test
+    public void whenSlicedChunkHasUnknownInstrumentThenNoneOfItsRecordsIsApplied() {
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        putBigChunk(batchId, CHUNK_SLICE_RECORDS + 1, "XXX");
+        assertThat(call(uploadChunkRequest, null), is(nullValue()));
+        final ResponseAllocator responseAllocator = new BufferResponseAllocator(LastPriceResponse.MESSAGE_SIZE);
+        assertThat(serviceHandler.resumeRequest(responseAllocator), is(nullValue()));
+        final UploadChunkResponse response = (UploadChunkResponse) serviceHandler.resumeRequest(responseAllocator);
+        assertThat(response.status(), is(UploadChunkResponse.INSTRUMENT_NOT_FOUND_STATUS));
+        assertThrows(IllegalStateException.class, () -> serviceHandler.resumeRequest(responseAllocator));
+        completeBatchRunRequest.batchId(batchId);
+        call(completeBatchRunRequest, null);
+        getLastPriceRequest.instrument("AAPL");
+        final LastPriceResponse lastPriceResponse = call(getLastPriceRequest, null);
+        assertThat(lastPriceResponse.status(), is(LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS));
+    }
+
+    @Test
+    public void shouldMergeBigBatchRunInSlicesAndMakeItVisibleAtOnce() {
+        PAYLOAD_BUFFER.putInt(0, 111);
+        completeBatch(serviceHandler, 1L, "MSFT");
+        // two full slices and one more record with MSFT
+        for (int i = 0; i < 2 * MERGE_SLICE_RECORDS; i++) {
+            addInstrumentRequest.instrument("INS" + i);
+            call(addInstrumentRequest, null);
+        }
+        final long batchId = 100500L;
+        call(startBatchRunRequest, () -> batchId);
+        for (int i = 0; i < 2 * MERGE_SLICE_RECORDS; i++) {
+            uploadPrice(batchId, 0, UNTRACKED_CHUNK_SEQUENCE, "INS" + i, 100L, i);
+        }
+        uploadPrice(batchId, 0, UNTRACKED_CHUNK_SEQUENCE, "MSFT", 100L, 222);
+        completeBatchRunRequest.batchId(batchId);
+        assertThat(call(completeBatchRunRequest, null), is(nullValue()));
+        assertThat(serviceHandler.isRequestPending(), is(true));
+        final ResponseAllocator responseAllocator = new BufferResponseAllocator(LastPriceResponse.MESSAGE_SIZE);
+        for (int i = 0; i < 2; i++) {
+            assertThat(serviceHandler.resumeRequest(responseAllocator), is(nullValue()));
+            assertThat(readPrice(serviceHandler, "MSFT"), is(111));
+            getLastPriceRequest.instrument("INS0");
+            assertThat(((LastPriceResponse) call(getLastPriceRequest, null)).status(), is(LastPriceResponse.PRICE_NOT_AVAILABLE_STATUS));
+        }
+        final CompleteBatchRunResponse response = (CompleteBatchRunResponse) serviceHandler.resumeRequest(responseAllocator);
+        assertThat(response.status(), is(CompleteBatchRunResponse.SUCCESS_STATUS));
+        assertThat(serviceHandler.isRequestPending(), is(false));
+        assertThat(readPrice(serviceHandler, "MSFT"), is(222));
+        assertThat(readPrice(serviceHandler, "INS0"), is(0));
+        assertThat(readPrice(serviceHandler, "INS" + (2 * MERGE_SLICE_RECORDS - 1)), is(2 * MERGE_SLICE_RECORDS - 1));
+        final CompleteBatchRunResponse repeatedResponse = call(completeBatchRunRequest, null);
+        assertThat(repeatedResponse.status(), is(CompleteBatchRunResponse.BATCH_RUN_NOT_FOUND_STATUS));
+    }
+
+    /**
+     * Puts chunk of AAPL and AMZN records in turn to the upload request, price of each record is its index.
+     */
+    private void putBigChunk(long batchId, int recordsNumber, String lastInstrument) {
+        final PriceRecordsChunk priceRecordsChunk = new PriceRecordsChunk();
+        Flyweight.allocateMemoryForFlyweight(priceRecordsChunk, PriceRecordsChunk.defineSize(recordsNumber));
+        for (int i = 0; i < recordsNumber; i++) {
+            PAYLOAD_BUFFER.putInt(0, i);
+            final String instrument = i == recordsNumber - 1 ? lastInstrument : i % 2 == 0 ? "AAPL" : "AMZN";
+            priceRecordsChunk.addRecord(instrument, i, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        }
+        uploadChunkRequest.batchId(batchId);
+        uploadChunkRequest.putChunk(priceRecordsChunk);
+    }
+
+    private void uploadPrice(long batchId, String instrument, long timestamp, int price) {
+        final PriceRecordsChunk priceRecordsChunk = new PriceRecordsChunk();
+        Flyweight.allocateMemoryForFlyweight(priceRecordsChunk, PriceRecordsChunk.defineSize(1));
+        PAYLOAD_BUFFER.putInt(0, price);
+        priceRecordsChunk.addRecord(instrument, timestamp, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        uploadChunkRequest.batchId(batchId);
+        uploadChunkRequest.putChunk(priceRecordsChunk);
+        final UploadChunkResponse response = call(uploadChunkRequest, null);
+        assertThat(response.status(), is(UploadChunkResponse.SUCCESS_STATUS));
+    }
+
+    private int uploadPrice(long batchId, int producerId, long chunkSequence, String instrument, long timestamp, int price) {
+        final PriceRecordsChunk priceRecordsChunk = new PriceRecordsChunk();
+        Flyweight.allocateMemoryForFlyweight(priceRecordsChunk, PriceRecordsChunk.defineSize(1));
+        PAYLOAD_BUFFER.putInt(0, price);
+        priceRecordsChunk.addRecord(instrument, timestamp, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        uploadChunkRequest.batchId(batchId);
+        uploadChunkRequest.producerId(producerId);
+        uploadChunkRequest.chunkSequence(chunkSequence);
+        uploadChunkRequest.putChunk(priceRecordsChunk);
+        lastUploadChunkResponse = call(uploadChunkRequest, null);
+        return lastUploadChunkResponse.status();
+    }
+
+    private int readPrice(ServiceHandler readHandler, String instrument) {
+        getLastPriceRequest.instrument(instrument);
+        final LastPriceResponse response = (LastPriceResponse) readHandler.handleRequest(
+            getLastPriceRequest.uniqueType(), null,
+            getLastPriceRequest.getReadBuffer(), getLastPriceRequest.getOffset(), getLastPriceRequest.sizeInBytes()
+        );
+        assertThat(response.status(), is(LastPriceResponse.SUCCESS_STATUS));
+        response.priceRecord().getPayload(PAYLOAD_BUFFER, 0);
+        return PAYLOAD_BUFFER.getInt(0);
+    }
+
+    private void completeBatch(LastPriceServiceHandler handler, long batchId, String instrument) {
+        call(handler, startBatchRunRequest, () -> batchId);
+        final PriceRecordsChunk priceRecordsChunk = new PriceRecordsChunk();
+        Flyweight.allocateMemoryForFlyweight(priceRecordsChunk, PriceRecordsChunk.defineSize(1));
+        priceRecordsChunk.addRecord(instrument, batchId, PAYLOAD_BUFFER, 0, PAYLOAD_BUFFER.capacity());
+        uploadChunkRequest.batchId(batchId);
+        uploadChunkRequest.putChunk(priceRecordsChunk);
+        call(handler, uploadChunkRequest, null);
+        completeBatchRunRequest.batchId(batchId);
+        final CompleteBatchRunResponse response = call(handler, completeBatchRunRequest, null);
+        assertThat(response.status(), is(CompleteBatchRunResponse.SUCCESS_STATUS));
+    }
+
+    private long counterValue(String label) {
+        final AtomicLong value = new AtomicLong(-1);
+        counters.reader().forEach((counterValue, counterId, counterLabel) -> {
+            if (label.equals(counterLabel)) {
+                value.set(counterValue);
+            }
+        });
+        return value.get();
+    }
+
     private <T extends Message> T call(Message request, LongSupplier idGenerator) {
-        return (T) serviceHandler.handleRequest(
+        return call(serviceHandler, request, idGenerator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Message> T call(ServiceHandler handler, Message request, LongSupplier idGenerator) {
+        return (T) handler.handleRequest(
             request.uniqueType(), idGenerator, request.getReadBuffer(), request.getOffset(), request.sizeInBytes()
         );
     }
@@ -0,0 +1,164 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+
+import static com.xxx.service.lastprice.Configuration.PRICE_MAX_PAYLOAD_SIZE;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class MarketStateFileTest {
+
+    private static final MutableDirectBuffer PAYLOAD_BUFFER =
+        new UnsafeBuffer(allocateDirectAligned(SIZE_OF_INT, CACHE_LINE_LENGTH));
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void shouldRestoreInstrumentsAndPricesAfterReopen() {
+        final File file = new File(directory, "market-state.dat");
+        try (MarketStateFile stateFile = MarketStateFile.open(file, 4)) {
+            stateFile.addInstrument(0, "AAPL");
+            stateFile.addInstrument(1, "AMZN");
+            updatePrice(stateFile.marketState(), 1, 100L, 12345);
+            stateFile.snapshot(500L);
+        }
+        try (MarketStateFile stateFile = MarketStateFile.open(file, 4)) {
+            assertThat(stateFile.instruments(), is(List.of("AAPL", "AMZN")));
+            assertThat(stateFile.snapshotTimestamp(), is(500L));
+            assertThat(readPrice(stateFile.marketState(), 1), is(12345));
+            assertThat(stateFile.marketState().getPriceRecord(0).timestamp(), is(0L));
+        }
+    }
+
+    @Test
+    public void shouldKeepStateWhenGrown() {
+        final File file = new File(directory, "market-state.dat");
+        final MarketStateFile stateFile = MarketStateFile.open(file, 2);
+        stateFile.addInstrument(0, "AAPL");
+        updatePrice(stateFile.marketState(), 0, 100L, 12345);
+        final MarketStateFile grownFile = stateFile.grow(3);
+        assertThat(grownFile.capacity(), is(4));
+        grownFile.addInstrument(1, "AMZN");
+        updatePrice(grownFile.marketState(), 3, 100L, 54321);
+        // old state is still readable
+        assertThat(readPrice(stateFile.marketState(), 0), is(12345));
+        grownFile.close();
+
+        try (MarketStateFile reopenedFile = MarketStateFile.open(file, 2)) {
+            assertThat(reopenedFile.capacity(), is(4));
+            assertThat(reopenedFile.instruments(), is(List.of("AAPL", "AMZN")));
+            assertThat(readPrice(reopenedFile.marketState(), 0), is(12345));
+            assertThat(readPrice(reopenedFile.marketState(), 3), is(54321));
+        }
+    }
+
+    @Test
+    public void shouldDiscardRecordsNotCommittedBeforeStop() {
+        final File file = new File(directory, "market-state.dat");
+        final MarketStateFile stateFile = MarketStateFile.open(file, 2);
+        updatePrice(stateFile.marketState(), 0, 100L, 12345);
+        updatePrice(stateFile.marketState(), 1, 100L, 54321);
+        stateFile.beginMerge();
+        PAYLOAD_BUFFER.putInt(0, 11111);
+        stateFile.marketState().tryUpdateRecord(0, 200L, PAYLOAD_BUFFER, 0, SIZE_OF_INT);
+        // the second record is left in the middle of the write to its not used version
+        final int tornVersion = stateFile.marketState().selectVersion(1, 0).timestamp() == 0L ? 0 : 1;
+        final IndexedPriceRecord tornRecord = stateFile.marketState().selectVersion(1, tornVersion);
+        tornRecord.beginWrite();
+        tornRecord.epoch(stateFile.marketState().committedEpoch() + 1);
+        assertThrows(IllegalStateException.class, () -> stateFile.snapshot(500L));
+
+        try (MarketStateFile reopenedFile = MarketStateFile.open(file, 2)) {
+            assertThat(reopenedFile.repairedRecordsNumber(), is(2));
+            assertThat(reopenedFile.isMergeInProgress(), is(false));
+            assertThat(readPrice(reopenedFile.marketState(), 0), is(12345));
+            assertThat(readPrice(reopenedFile.marketState(), 1), is(54321));
+            assertThat(reopenedFile.marketState().selectVersion(1, tornVersion).version() & 1, is(0L));
+            // discarded versions are reused by the next merge
+            updatePrice(reopenedFile.marketState(), 1, 300L, 22222);
+            assertThat(readPrice(reopenedFile.marketState(), 1), is(22222));
+        }
+    }
+
+    @Test
+    public void shouldRestorePayloadsKeptInArenaAfterReopen() {
+        final File file = new File(directory, "market-state.dat");
+        final MutableDirectBuffer payload = new UnsafeBuffer(new byte[PRICE_MAX_PAYLOAD_SIZE]);
+        try (MarketStateFile stateFile = MarketStateFile.open(file, 4)) {
+            for (int index = 0; index < 3; index++) {
+                payload.putLong(0, index);
+                stateFile.marketState().tryUpdateRecord(index, 100L, payload, 0, PRICE_MAX_PAYLOAD_SIZE);
+            }
+            stateFile.marketState().commit();
+            // the second price is inlined now, the older version still keeps its arena block
+            stateFile.marketState().tryUpdateRecord(1, 200L, payload, 0, SIZE_OF_INT);
+            stateFile.marketState().commit();
+            stateFile.snapshot(500L);
+        }
+        assertThat(new File(file.getPath() + ".arena-0").exists(), is(true));
+        try (MarketStateFile stateFile = MarketStateFile.open(file, 4)) {
+            final MarketState marketState = stateFile.marketState();
+            for (int index = 3; index >= 0; index--) {
+                payload.putLong(0, 10L + index);
+                marketState.tryUpdateRecord(index, 300L, payload, 0, PRICE_MAX_PAYLOAD_SIZE);
+            }
+            // free blocks found on restore are reused, blocks of the committed prices are not
+            assertThat(readLong(marketState, 0), is(0L));
+            assertThat(readLong(marketState, 2), is(2L));
+            marketState.commit();
+            for (int index = 0; index < 4; index++) {
+                assertThat(readLong(marketState, index), is(10L + index));
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotAddInstrumentOutOfOrder() {
+        try (MarketStateFile stateFile = MarketStateFile.open(new File(directory, "market-state.dat"), 2)) {
+            assertThrows(IllegalArgumentException.class, () -> stateFile.addInstrument(1, "AAPL"));
+        }
+    }
+
+    @Test
+    public void shouldNotAddInstrumentNotFittingTickerSlot() {
+        try (MarketStateFile stateFile = MarketStateFile.open(new File(directory, "market-state.dat"), 2)) {
+            final String ticker = new String(new char[Configuration.INSTRUMENT_MAX_TICKER_LENGTH + 1]).replace('\0', 'A');
+            assertThrows(IllegalArgumentException.class, () -> stateFile.addInstrument(0, ticker));
+            assertThrows(IllegalArgumentException.class, () -> stateFile.addInstrument(0, ""));
+            assertThat(stateFile.instrumentsNumber(), is(0));
+            stateFile.addInstrument(0, "AAPL");
+            assertThat(stateFile.instruments(), is(List.of("AAPL")));
+        }
+    }
+
+    private static void updatePrice(MarketState marketState, int index, long timestamp, int price) {
+        PAYLOAD_BUFFER.putInt(0, price);
+        marketState.tryUpdateRecord(index, timestamp, PAYLOAD_BUFFER, 0, SIZE_OF_INT);
+        marketState.commit();
+    }
+
+    private static long readLong(MarketState marketState, int index) {
+        final IndexedPriceRecord record = marketState.getPriceRecord(index);
+        return record.payloadBuffer().getLong(record.absolutePayloadOffset());
+    }
+
+    private static int readPrice(MarketState marketState, int index) {
+        final IndexedPriceRecord record = marketState.getPriceRecord(index);
+        return record.getReadBuffer().getInt(record.absolutePayloadOffset());
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.xxx.service.lastprice;
+
+import com.xxx.core.protocol.Flyweight;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class MarketStateTest {
+
+    private static final int NUMBER_OF_INSTRUMENTS = 4;
+
+    private final MutableDirectBuffer payloadBuffer = new UnsafeBuffer(new byte[SIZE_OF_INT]);
+    private final MarketState marketState = new MarketState(NUMBER_OF_INSTRUMENTS);
+    private final MarketState view;
+
+    public MarketStateTest() {
+        Flyweight.allocateMemoryForFlyweight(marketState);
+        view = marketState.view();
+    }
+
+    @Test
+    public void shouldMakeUpdatesVisibleOnCommitOnly() {
+        updatePrice(0, 100L, 1);
+        updatePrice(1, 100L, 2);
+        assertThat(view.getPriceRecord(0).timestamp(), is(0L));
+        assertThat(view.getPriceRecord(1).timestamp(), is(0L));
+
+        assertThat(marketState.commit(), is(1L));
+        assertThat(readPrice(0), is(1));
+        assertThat(readPrice(1), is(2));
+
+        updatePrice(0, 200L, 3);
+        assertThat(readPrice(0), is(1));
+        marketState.commit();
+        assertThat(readPrice(0), is(3));
+        assertThat(readPrice(1), is(2));
+    }
+
+    @Test
+    public void shouldKeepNewestPriceWhenUpdatedTwiceBeforeCommit() {
+        updatePrice(2, 100L, 1);
+        marketState.commit();
+        updatePrice(2, 300L, 2);
+        updatePrice(2, 200L, 3);
+        updatePrice(2, 50L, 4);
+        marketState.commit();
+        assertThat(readPrice(2), is(2));
+        assertThat(view.getPriceRecord(2).timestamp(), is(300L));
+
+        updatePrice(2, 250L, 5);
+        marketState.commit();
+        assertThat(readPrice(2), is(2));
+    }
+
+    @Test
+    public void shouldReadVersionOfTheGivenEpoch() {
+        updatePrice(3, 100L, 1);
+        final long firstEpoch = marketState.commit();
+        updatePrice(3, 200L, 2);
+        marketState.commit();
+        final IndexedPriceRecord record = view.getPriceRecord(3, firstEpoch);
+        assertThat(record.epoch(), is(firstEpoch));
+        assertThat(record.timestamp(), is(100L));
+    }
+
+    @Test
+    public void shouldKeepCommittedRecordsWhenGrown() {
+        updatePrice(3, 100L, 1);
+        marketState.commit();
+        final MarketState grown = marketState.grow(NUMBER_OF_INSTRUMENTS * 2);
+        assertThat(grown.committedEpoch(), is(1L));
+        assertThat(grown.getPriceRecord(3).timestamp(), is(100L));
+        assertThat(grown.getPriceRecord(7).timestamp(), is(0L));
+    }
+
+    @Test
+    public void shouldNotRewritePayloadReadFromTheStateBeforeGrow() {
+        final MutableDirectBuffer arenaPayloadBuffer = new UnsafeBuffer(new byte[SIZE_OF_LONG * 2]);
+        updateArenaPrice(marketState, arenaPayloadBuffer, 0, 100L, 1L);
+        marketState.commit();
+        // reader of the old state is in the middle of reading the payload
+        final IndexedPriceRecord record = view.getPriceRecord(0);
+        final long version = record.beginRead();
+        final DirectBuffer payload = record.payloadBuffer();
+        final int payloadOffset = record.absolutePayloadOffset();
+
+        final MarketState grown = marketState.grow(NUMBER_OF_INSTRUMENTS * 2);
+        updateArenaPrice(grown, arenaPayloadBuffer, 0, 200L, 2L);
+        grown.commit();
+        updateArenaPrice(grown, arenaPayloadBuffer, 0, 300L, 3L);
+        grown.commit();
+
+        assertThat(payload.getLong(payloadOffset), is(1L));
+        assertThat(payload.getLong(payloadOffset + SIZE_OF_LONG), is(1L));
+        assertThat(record.validateRead(version), is(true));
+        final IndexedPriceRecord grownRecord = grown.getPriceRecord(0);
+        assertThat(grownRecord.payloadBuffer().getLong(grownRecord.absolutePayloadOffset()), is(3L));
+    }
+
+    private void updateArenaPrice(MarketState state, MutableDirectBuffer buffer, int index, long timestamp, long price) {
+        // payload does not fit the record, it is kept in the arena
+        buffer.putLong(0, price);
+        buffer.putLong(SIZE_OF_LONG, price);
+        state.tryUpdateRecord(index, timestamp, buffer, 0, buffer.capacity());
+    }
+
+    private void updatePrice(int index, long timestamp, int price) {
+        payloadBuffer.putInt(0, price);
+        marketState.tryUpdateRecord(index, timestamp, payloadBuffer, 0, SIZE_OF_INT);
+    }
+
+    private int readPrice(int index) {
+        final IndexedPriceRecord record = view.getPriceRecord(index);
+        return record.getReadBuffer().getInt(record.absolutePayloadOffset());
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.xxx.service.lastprice;
+
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PayloadArenaTest {
+
+    private static final int PAGE_SIZE = PayloadArena.PAGE_HEADER_SIZE + 64;
+    private static final int MAX_PAYLOAD_SIZE = 64;
+
+    private final List<AtomicBuffer> pages = new ArrayList<>();
+    private final PayloadArena arena = new PayloadArena(PAGE_SIZE, MAX_PAYLOAD_SIZE, this::page);
+
+    @Test
+    public void shouldAllocateBlocksOfSizeClassesOnSeparatePages() {
+        final long first = arena.allocate(10);
+        final long second = arena.allocate(16);
+        final long big = arena.allocate(17);
+        assertThat(arena.blockSize(first), is(16));
+        assertThat(arena.blockSize(big), is(32));
+        assertThat(PayloadArena.offset(second), is(PayloadArena.offset(first) + 16));
+        assertThat(arena.pagesNumber(), is(2));
+        assertThat(pages.get(1).getInt(PayloadArena.BLOCK_SIZE_FIELD_OFFSET), is(32));
+
+        // page of 16 bytes blocks holds 4 of them
+        arena.allocate(16);
+        arena.allocate(16);
+        arena.allocate(16);
+        assertThat(arena.pagesNumber(), is(3));
+    }
+
+    @Test
+    public void shouldReuseFreedBlocks() {
+        final long first = arena.allocate(16);
+        final long second = arena.allocate(16);
+        arena.free(first);
+        assertThat(arena.allocate(12), is(first));
+        assertThat(arena.allocate(12), is(not(second)));
+        assertThat(arena.pagesNumber(), is(1));
+    }
+
+    @Test
+    public void shouldReusePagesForAnySizeClassAfterReset() {
+        arena.allocate(16);
+        arena.allocate(64);
+        arena.reset();
+        assertThat(arena.blockSize(arena.allocate(64)), is(64));
+        assertThat(arena.blockSize(arena.allocate(32)), is(32));
+        assertThat(arena.pagesNumber(), is(2));
+    }
+
+    @Test
+    public void shouldNotReturnPageBufferForBrokenReference() {
+        final long reference = arena.allocate(16);
+        assertThat(arena.pageBuffer(reference, 16), is(pages.get(0)));
+        assertThat(arena.pageBuffer(reference + (1L << 32), 16), is(nullValue()));
+        assertThat(arena.pageBuffer(PayloadArena.PAGE_HEADER_SIZE - 1, 16), is(nullValue()));
+        assertThat(arena.pageBuffer(reference, PAGE_SIZE), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFreeBlocksNotMarkedAsUsedOnRestore() {
+        final long used = arena.allocate(16);
+        final long notUsed = arena.allocate(16);
+        arena.allocate(32);
+
+        final PayloadArena restored = new PayloadArena(PAGE_SIZE, MAX_PAYLOAD_SIZE, pages::get);
+        restored.restorePages(pages.size());
+        assertThat(restored.markUsed(used), is(true));
+        assertThat(restored.markUsed(used + 1), is(false));
+        restored.completeRestore();
+
+        assertThat(restored.allocate(16), is(notUsed));
+        assertThat(restored.allocate(16), is(not(used)));
+        // page without used blocks can be taken by any size class
+        assertThat(restored.blockSize(restored.allocate(64)), is(64));
+        assertThat(restored.pagesNumber(), is(2));
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentExceptionIfBlockDoesNotFitPage() {
+        assertThrows(IllegalArgumentException.class, () -> new PayloadArena(PAGE_SIZE, MAX_PAYLOAD_SIZE + 1, this::page));
+        assertThrows(IllegalArgumentException.class, () -> arena.allocate(MAX_PAYLOAD_SIZE + 1));
+    }
+
+    private AtomicBuffer page(int index) {
+        final AtomicBuffer page = new UnsafeBuffer(new byte[PAGE_SIZE]);
+        pages.add(page);
+        return page;
+    }
+
+}
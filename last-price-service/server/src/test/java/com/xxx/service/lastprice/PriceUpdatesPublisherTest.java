@@ -0,0 +1,120 @@
+package com.xxx.service.lastprice;
+
+import com.xxx.core.protocol.Flyweight;
+import com.xxx.service.lastprice.messages.PriceUpdateMessage;
+import io.aeron.Publication;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.xxx.service.lastprice.Configuration.MAX_PRICE_UPDATE_RECORDS;
+import static io.aeron.Publication.BACK_PRESSURED;
+import static io.aeron.Publication.CLOSED;
+import static io.aeron.Publication.NOT_CONNECTED;
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BufferUtil.allocateDirectAligned;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PriceUpdatesPublisherTest {
+
+    private static final int INSTRUMENTS_NUMBER = MAX_PRICE_UPDATE_RECORDS + 1;
+
+    private static final MutableDirectBuffer PAYLOAD_BUFFER =
+        new UnsafeBuffer(allocateDirectAligned(SIZE_OF_INT, CACHE_LINE_LENGTH));
+
+    private final Publication publication = mock(Publication.class);
+    private final MarketState marketState = new MarketState(INSTRUMENTS_NUMBER);
+    private final InstrumentIndexer instrumentIndexer = new InstrumentIndexer(List.of());
+    private final PriceUpdatesPublisher publisher =
+        new PriceUpdatesPublisher(publication, () -> marketState, instrumentIndexer, INSTRUMENTS_NUMBER);
+
+    private final PriceUpdateMessage updateMessage = new PriceUpdateMessage();
+    // prices of published records
+    private final List<Integer> publishedPrices = new ArrayList<>();
+
+    @BeforeEach
+    public void init() {
+        Flyweight.allocateMemoryForFlyweight(marketState);
+        for (int i = 0; i < INSTRUMENTS_NUMBER; i++) {
+            instrumentIndexer.addInstrument("I" + i);
+        }
+    }
+
+    @Test
+    public void shouldPublishChangedPricesInSeveralMessages() {
+        acceptUpdates();
+        for (int i = 0; i < INSTRUMENTS_NUMBER; i++) {
+            changePrice(i, i);
+        }
+        assertThat(publisher.publish(10), is(2));
+        assertThat(publishedPrices.size(), is(INSTRUMENTS_NUMBER));
+        assertThat(publishedPrices.get(INSTRUMENTS_NUMBER - 1), is(INSTRUMENTS_NUMBER - 1));
+        assertThat(publisher.pendingNumber(), is(0));
+    }
+
+    @Test
+    public void shouldConflateChangesWhileBackPressured() {
+        when(publication.offer(any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(BACK_PRESSURED);
+        changePrice(0, 1);
+        assertThat(publisher.publish(10), is(0));
+        changePrice(0, 2);
+        changePrice(0, 3);
+        assertThat(publisher.publish(10), is(0));
+        assertThat(publisher.backPressureCount(), is(2L));
+        assertThat(publisher.conflatedUpdatesCount(), is(2L));
+
+        acceptUpdates();
+        assertThat(publisher.publish(10), is(1));
+        assertThat(publishedPrices, is(List.of(3)));
+    }
+
+    @Test
+    public void shouldDropUpdatesIfThereAreNoSubscribers() {
+        when(publication.offer(any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(NOT_CONNECTED);
+        changePrice(0, 1);
+        assertThat(publisher.publish(10), is(0));
+        assertThat(publisher.pendingNumber(), is(0));
+    }
+
+    @Test
+    public void shouldThrowIllegalStateExceptionIfPublicationIsClosed() {
+        when(publication.offer(any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenReturn(CLOSED);
+        changePrice(0, 1);
+        assertThrows(IllegalStateException.class, () -> publisher.publish(10));
+    }
+
+    private void changePrice(int instrumentIndex, int price) {
+        PAYLOAD_BUFFER.putInt(0, price);
+        marketState.tryUpdateRecord(instrumentIndex, 100L + price, PAYLOAD_BUFFER, 0, SIZE_OF_INT);
+        marketState.commit();
+        publisher.onPriceChanged(instrumentIndex);
+    }
+
+    private void acceptUpdates() {
+        when(publication.offer(any(DirectBuffer.class), anyInt(), anyInt(), isNull())).thenAnswer(invocation -> {
+            updateMessage.wrapForRead(invocation.getArgument(0), invocation.getArgument(1));
+            for (int i = 0; i < updateMessage.recordsNumber(); i++) {
+                updateMessage.priceRecord(i).getPayload(PAYLOAD_BUFFER, 0);
+                publishedPrices.add(PAYLOAD_BUFFER.getInt(0));
+            }
+            return 1L;
+        });
+    }
+
+}
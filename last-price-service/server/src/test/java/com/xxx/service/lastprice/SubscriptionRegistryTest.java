@@ -0,0 +1,47 @@
+package com.xxx.service.lastprice;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class SubscriptionRegistryTest {
+
+    private final SubscriptionRegistry registry = new SubscriptionRegistry(4);
+
+    @Test
+    public void shouldCountSubscribersOfInstrument() {
+        assertThat(registry.subscribe(1L, 2), is(true));
+        assertThat(registry.subscribe(1L, 2), is(false));
+        assertThat(registry.subscribe(2L, 2), is(true));
+        assertThat(registry.unsubscribe(1L, 2), is(true));
+        assertThat(registry.hasSubscribers(2), is(true));
+        assertThat(registry.unsubscribe(2L, 2), is(true));
+        assertThat(registry.unsubscribe(2L, 2), is(false));
+        assertThat(registry.hasSubscribers(2), is(false));
+    }
+
+    @Test
+    public void shouldRemoveSubscriptionsOfClosedConnection() {
+        registry.subscribe(1L, 0);
+        registry.subscribe(1L, 3);
+        registry.subscribe(2L, 3);
+        registry.removeConnection(1L);
+        assertThat(registry.hasSubscribers(0), is(false));
+        assertThat(registry.hasSubscribers(3), is(true));
+    }
+
+    @Test
+    public void shouldSubscribeToAddedInstruments() {
+        assertThrows(IndexOutOfBoundsException.class, () -> registry.subscribe(1L, 4));
+        assertThat(registry.hasSubscribers(4), is(false));
+        registry.ensureCapacity(8);
+        assertThat(registry.subscribe(1L, 4), is(true));
+        assertThat(registry.hasSubscribers(4), is(true));
+    }
+
+}
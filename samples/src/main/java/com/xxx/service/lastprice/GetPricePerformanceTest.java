@@ -28,8 +28,8 @@ import java.util.function.Supplier;
 import static com.xxx.service.lastprice.SampleConfiguration.CLIENT_CHANNEL;
 import static com.xxx.service.lastprice.SampleConfiguration.CLIENT_STREAM_ID;
 import static com.xxx.service.lastprice.SampleConfiguration.MAX_LOCAL_CLIENTS_NUMBER;
-import static com.xxx.service.lastprice.SampleConfiguration.SERVER_CHANNEL;
-import static com.xxx.service.lastprice.SampleConfiguration.SERVER_STREAM_ID;
+import static com.xxx.service.lastprice.SampleConfiguration.serverChannels;
+import static com.xxx.service.lastprice.SampleConfiguration.serverStreamIds;
 import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
 import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.agrona.BufferUtil.allocateDirectAligned;
@@ -69,7 +69,7 @@ public class GetPricePerformanceTest {
                  aeron,
                  nanoClock,
                  busySpinIdleStrategyFactory.get(),
-                 SERVER_CHANNEL, SERVER_STREAM_ID,
+                 serverChannels(), serverStreamIds(),
                  CLIENT_CHANNEL, CLIENT_STREAM_ID,
                  MAX_LOCAL_CLIENTS_NUMBER,
                  busySpinIdleStrategyFactory,
@@ -1,35 +1,63 @@
 package com.xxx.service.lastprice;
 
 import com.xxx.core.server.Server;
-import com.xxx.core.server.ServiceHandler;
+import com.xxx.core.server.ServerCounters;
 import io.aeron.Aeron;
+import io.aeron.Publication;
 import org.agrona.concurrent.BusySpinIdleStrategy;
 import org.agrona.concurrent.EpochClock;
 import org.agrona.concurrent.IdleStrategy;
 import org.agrona.concurrent.SystemEpochClock;
 
+import java.io.File;
 import java.util.HashSet;
 import java.util.Set;
 
-import static com.xxx.service.lastprice.SampleConfiguration.SERVER_CHANNEL;
-import static com.xxx.service.lastprice.SampleConfiguration.SERVER_STREAM_ID;
+import static com.xxx.core.server.Configuration.THREADING_MODE;
+import static com.xxx.service.lastprice.SampleConfiguration.JOURNAL_DIR;
+import static com.xxx.service.lastprice.SampleConfiguration.MARKET_STATE_FILE;
+import static com.xxx.service.lastprice.SampleConfiguration.SERVER_READERS_NUMBER;
+import static com.xxx.service.lastprice.SampleConfiguration.SERVER_SHARDS_NUMBER;
+import static com.xxx.service.lastprice.SampleConfiguration.SERVER_SHARD_INDEX;
+import static com.xxx.service.lastprice.SampleConfiguration.UPDATES_CHANNEL;
+import static com.xxx.service.lastprice.SampleConfiguration.UPDATES_STREAM_ID;
+import static com.xxx.service.lastprice.SampleConfiguration.countersFile;
+import static com.xxx.service.lastprice.SampleConfiguration.serverChannel;
+import static com.xxx.service.lastprice.SampleConfiguration.serverStreamId;
 
 /**
+ * Runs one shard of the service, shard index and number of shards are defined by
+ * {@link SampleConfiguration#SERVER_SHARD_INDEX} and {@link SampleConfiguration#SERVER_SHARDS_NUMBER}.
+ * Shard loads only instruments it owns. Price updates of subscribed instruments are published to
+ * {@link SampleConfiguration#UPDATES_CHANNEL}, all shards share it. If {@link SampleConfiguration#MARKET_STATE_FILE}
+ * is defined, prices survive restarts of the shard. If {@link SampleConfiguration#JOURNAL_DIR} is defined,
+ * accepted uploads are journaled, so active batch runs survive restarts as well.
+ * Counters of the shard are mapped to {@link SampleConfiguration#countersFile(int)}, see {@link LastPriceStat}.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public class LastPriceServiceRunner {
 
     public static void main(String[] args) {
         final EpochClock epochClock = SystemEpochClock.INSTANCE;
-        final ServiceHandler handler = createServiceHandler(epochClock);
         final IdleStrategy serverIdleStrategy = BusySpinIdleStrategy.INSTANCE;
         try (Aeron aeron = Aeron.connect();
-             Server server = new Server(epochClock, aeron, SERVER_CHANNEL, SERVER_STREAM_ID, serverIdleStrategy, handler)) {
+             ServerCounters counters = ServerCounters.create(countersFile(SERVER_SHARD_INDEX));
+             Publication updatesPublication = aeron.addPublication(UPDATES_CHANNEL, UPDATES_STREAM_ID);
+             LastPriceServiceHandler handler = createServiceHandler(epochClock, updatesPublication, counters);
+             Server server = new Server(
+                 epochClock, aeron, serverChannel(SERVER_SHARD_INDEX), serverStreamId(SERVER_SHARD_INDEX), serverIdleStrategy,
+                 handler, SERVER_READERS_NUMBER, () -> BusySpinIdleStrategy.INSTANCE, Configuration.LANES_NUMBER,
+                 THREADING_MODE, counters
+             )) {
             server.start();
         }
     }
 
-    private static ServiceHandler createServiceHandler(EpochClock epochClock) {
+    private static LastPriceServiceHandler createServiceHandler(
+        EpochClock epochClock, Publication updatesPublication, ServerCounters counters) {
+
+
         final Set<String> instruments = new HashSet<>();
         instruments.add("AIR");
         instruments.add("TEAM");
@@ -38,7 +66,10 @@ public class LastPriceServiceRunner {
         instruments.add("TKWY");
         instruments.add("VOW");
         instruments.add("RDSA");
-        return new LastPriceServiceHandler(epochClock, instruments);
+        instruments.removeIf(instrument -> InstrumentSharding.shardOf(instrument, SERVER_SHARDS_NUMBER) != SERVER_SHARD_INDEX);
+        final File marketStateFile = MARKET_STATE_FILE == null ? null : new File(MARKET_STATE_FILE);
+        final File journalDirectory = JOURNAL_DIR == null ? null : new File(JOURNAL_DIR);
+        return new LastPriceServiceHandler(epochClock, instruments, updatesPublication, marketStateFile, journalDirectory, counters);
     }
 
 }
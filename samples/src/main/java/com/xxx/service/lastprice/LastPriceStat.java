@@ -0,0 +1,39 @@
+package com.xxx.service.lastprice;
+
+import com.xxx.core.server.ServerCounters;
+import org.agrona.concurrent.SigInt;
+import org.agrona.concurrent.status.CountersReader;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.xxx.service.lastprice.SampleConfiguration.SERVER_SHARD_INDEX;
+import static com.xxx.service.lastprice.SampleConfiguration.countersFile;
+
+/**
+ * Prints counters of the server shard {@link SampleConfiguration#SERVER_SHARD_INDEX} once a second.
+ * Counters are read from the file mapped by the running shard (see {@link ServerCounters}),
+ * the server is not involved at all.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class LastPriceStat {
+
+    private static final long PRINT_INTERVAL_MS = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        final File file = countersFile(SERVER_SHARD_INDEX);
+        final CountersReader reader = ServerCounters.mapForRead(file);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        SigInt.register(() -> running.set(false));
+        while (running.get()) {
+            System.out.print("\033[H\033[2J");
+            System.out.format("%1$tH:%1$tM:%1$tS - %2$s%n", new Date(), file);
+            System.out.println("==========================");
+            reader.forEach((value, counterId, label) -> System.out.format("%3d: %,20d - %s%n", counterId, value, label));
+            Thread.sleep(PRINT_INTERVAL_MS);
+        }
+    }
+
+}
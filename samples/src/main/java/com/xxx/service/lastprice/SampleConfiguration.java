@@ -1,5 +1,7 @@
 package com.xxx.service.lastprice;
 
+import java.io.File;
+
 /**
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
@@ -11,6 +13,30 @@ public class SampleConfiguration {
     public static final String SERVER_STREAM_ID_PROP = "server.streamId";
     public static final int SERVER_STREAM_ID = Integer.getInteger(SERVER_STREAM_ID_PROP, 2001);
 
+    public static final String SERVER_SHARDS_NUMBER_PROP = "server.shards_number";
+    public static final int SERVER_SHARDS_NUMBER = Integer.getInteger(SERVER_SHARDS_NUMBER_PROP, 1);
+
+    public static final String SERVER_SHARD_INDEX_PROP = "server.shard_index";
+    public static final int SERVER_SHARD_INDEX = Integer.getInteger(SERVER_SHARD_INDEX_PROP, 0);
+
+    public static final String SERVER_READERS_NUMBER_PROP = "server.readers_number";
+    public static final int SERVER_READERS_NUMBER = Integer.getInteger(SERVER_READERS_NUMBER_PROP, 0);
+
+    public static final String MARKET_STATE_FILE_PROP = "server.market_state_file";
+    public static final String MARKET_STATE_FILE = System.getProperty(MARKET_STATE_FILE_PROP);
+
+    public static final String JOURNAL_DIR_PROP = "server.journal_dir";
+    public static final String JOURNAL_DIR = System.getProperty(JOURNAL_DIR_PROP);
+
+    public static final String COUNTERS_DIR_PROP = "server.counters_dir";
+    public static final String COUNTERS_DIR = System.getProperty(COUNTERS_DIR_PROP, System.getProperty("java.io.tmpdir"));
+
+    public static final String UPDATES_CHANNEL_PROP = "updates.channel";
+    public static final String UPDATES_CHANNEL = System.getProperty(UPDATES_CHANNEL_PROP, "aeron:ipc");
+
+    public static final String UPDATES_STREAM_ID_PROP = "updates.streamId";
+    public static final int UPDATES_STREAM_ID = Integer.getInteger(UPDATES_STREAM_ID_PROP, 2101);
+
     public static final String CLIENT_CHANNEL_PROP = "client.channel";
     public static final String CLIENT_CHANNEL = System.getProperty(CLIENT_CHANNEL_PROP, "aeron:udp?endpoint=localhost:40123");
 
@@ -20,4 +46,51 @@ public class SampleConfiguration {
     public static final String MAX_LOCAL_CLIENTS_NUMBER_PROP = "client.max_clients_number";
     public static final int MAX_LOCAL_CLIENTS_NUMBER = Integer.getInteger(MAX_LOCAL_CLIENTS_NUMBER_PROP, 10);
 
+    /**
+     * Channel of the server shard, can be set by property "server.channel.{shard}" for shards on different hosts.
+     * By default all shards share {@link #SERVER_CHANNEL}.
+     *
+     * @param shard shard index
+     * @return server shard channel
+     */
+    public static String serverChannel(int shard) {
+        return System.getProperty(SERVER_CHANNEL_PROP + "." + shard, SERVER_CHANNEL);
+    }
+
+    /**
+     * Stream ID of the server shard. Shards use consecutive streams starting from {@link #SERVER_STREAM_ID}.
+     *
+     * @param shard shard index
+     * @return server shard stream ID
+     */
+    public static int serverStreamId(int shard) {
+        return SERVER_STREAM_ID + shard;
+    }
+
+    /**
+     * Counters file of the server shard in {@link #COUNTERS_DIR}, see {@link com.xxx.core.server.ServerCounters}.
+     *
+     * @param shard shard index
+     * @return counters file of the shard
+     */
+    public static File countersFile(int shard) {
+        return new File(COUNTERS_DIR, "last-price-service-" + shard + ".cnc");
+    }
+
+    public static String[] serverChannels() {
+        final String[] channels = new String[SERVER_SHARDS_NUMBER];
+        for (int shard = 0; shard < SERVER_SHARDS_NUMBER; shard++) {
+            channels[shard] = serverChannel(shard);
+        }
+        return channels;
+    }
+
+    public static int[] serverStreamIds() {
+        final int[] streamIds = new int[SERVER_SHARDS_NUMBER];
+        for (int shard = 0; shard < SERVER_SHARDS_NUMBER; shard++) {
+            streamIds[shard] = serverStreamId(shard);
+        }
+        return streamIds;
+    }
+
 }
@@ -20,8 +20,8 @@ import java.util.function.Supplier;
 import static com.xxx.service.lastprice.SampleConfiguration.CLIENT_CHANNEL;
 import static com.xxx.service.lastprice.SampleConfiguration.CLIENT_STREAM_ID;
 import static com.xxx.service.lastprice.SampleConfiguration.MAX_LOCAL_CLIENTS_NUMBER;
-import static com.xxx.service.lastprice.SampleConfiguration.SERVER_CHANNEL;
-import static com.xxx.service.lastprice.SampleConfiguration.SERVER_STREAM_ID;
+import static com.xxx.service.lastprice.SampleConfiguration.serverChannels;
+import static com.xxx.service.lastprice.SampleConfiguration.serverStreamIds;
 
 /**
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
@@ -40,7 +40,7 @@ public class StartCancelBatchRunPerformanceTest {
                  aeron,
                  nanoClock,
                  busySpinIdleStrategyFactory.get(),
-                 SERVER_CHANNEL, SERVER_STREAM_ID,
+                 serverChannels(), serverStreamIds(),
                  CLIENT_CHANNEL, CLIENT_STREAM_ID,
                  MAX_LOCAL_CLIENTS_NUMBER,
                  busySpinIdleStrategyFactory,